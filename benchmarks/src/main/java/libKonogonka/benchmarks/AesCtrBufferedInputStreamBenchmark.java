@@ -0,0 +1,116 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.benchmarks;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.synthetic.SyntheticContent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential decryption of NCA section by AesCtrBufferedInputStream with reads of different sizes,
+ * and skipping through the section. 16 bytes reads show per-call overhead of the stream (e.g. trace logging).
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AesCtrBufferedInputStreamBenchmark {
+    private static final long NCA_OFFSET = 0x400;
+    private static final long MEDIA_START = 0x6;
+    private static final int SECTION_SIZE = 0x1000000;
+
+    @Param({"16", "512", "16384", "1048576"})
+    public int bufferSize;
+
+    private File file;
+    private InFileStreamProducer producer;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() throws Exception{
+        file = File.createTempFile("aesctr", ".nca");
+        file.deleteOnExit();
+        Files.write(file.toPath(), SyntheticContent.random((int) (NCA_OFFSET + MEDIA_START * 0x200) + SECTION_SIZE, 1));
+        producer = new InFileStreamProducer(file, NCA_OFFSET, 0,
+                new AesCtrDecryptForMediaBlocks(SyntheticContent.random(0x10, 2), SyntheticContent.random(0x10, 3),
+                        MEDIA_START * 0x200),
+                MEDIA_START, MEDIA_START + SECTION_SIZE / 0x200);
+        buffer = new byte[bufferSize];
+    }
+
+    @State(Scope.Benchmark)
+    public static class SkipParameters {
+        @Param({"4096", "1048576"})
+        public int skipSize;
+    }
+
+    @TearDown
+    public void tearDown(){
+        file.delete();
+    }
+    /**
+     * Read whole file (mostly encrypted section) by bufferSize chunks
+     * */
+    @Benchmark
+    public long readSection(Blackhole blackhole) throws Exception{
+        long total = 0;
+        long end = NCA_OFFSET + MEDIA_START * 0x200 + SECTION_SIZE;
+        try (BufferedInputStream stream = producer.produce()){
+            while (total < end){
+                int read = stream.read(buffer, 0, (int) Math.min(buffer.length, end - total));
+                if (read <= 0)
+                    break;
+                blackhole.consume(buffer);
+                total += read;
+            }
+        }
+        return total;
+    }
+    /**
+     * Skip skipSize bytes, then read bufferSize bytes, till the end of the section
+     * */
+    @Benchmark
+    public long skipThroughSection(SkipParameters parameters, Blackhole blackhole) throws Exception{
+        int skipSize = parameters.skipSize;
+        long total = 0;
+        try (BufferedInputStream stream = producer.produce()){
+            long end = NCA_OFFSET + MEDIA_START * 0x200 + SECTION_SIZE;
+            long position = 0;
+            while (position + skipSize + buffer.length <= end){
+                long skipped = stream.skip(skipSize);
+                int read = stream.read(buffer);
+                if (skipped <= 0 || read <= 0)
+                    break;
+                blackhole.consume(buffer);
+                position += skipped + read;
+                total += read;
+            }
+        }
+        return total;
+    }
+}
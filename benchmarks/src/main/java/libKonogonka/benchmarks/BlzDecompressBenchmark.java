@@ -0,0 +1,60 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.benchmarks;
+
+import libKonogonka.blz.BlzDecompress;
+import libKonogonka.synthetic.BlzCompressor;
+import libKonogonka.synthetic.SyntheticContent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompression of KIP1-like BLZ compressed segment
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlzDecompressBenchmark {
+    @Param({"65536", "1048576"})
+    public int size;
+
+    private final BlzDecompress decompressor = new BlzDecompress();
+    private byte[] compressed;
+    private byte[] decompressed;
+
+    @Setup
+    public void setup() throws Exception{
+        byte[] data = SyntheticContent.compressible(size, 6);
+        compressed = BlzCompressor.compress(data, 0x100);
+        decompressed = new byte[data.length];
+        decompressor.decompress(compressed, decompressed);
+        if (! java.util.Arrays.equals(data, decompressed))
+            throw new IllegalStateException("Synthetic BLZ data is broken");
+    }
+
+    @Benchmark
+    public byte[] decompress() throws Exception{
+        decompressor.decompress(compressed, decompressed);
+        return decompressed;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.benchmarks;
+
+import libKonogonka.Converter;
+import libKonogonka.synthetic.SyntheticContent;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Little-endian field reads as every header parser does them: all ints (longs) of 64 KB table one by one.
+ * '*ByteBuffer' benchmarks keep former implementation (ByteBuffer wrapped for every field) as a baseline.
+ * On Java 9+ Converter uses VarHandle readers. Run benchmarks.jar on Java 8 JVM to compare shift-based Java 8
+ * readers with the baseline: ByteBuffer of Java 9+ reads whole words, so it's not representative for Java 8.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+    private byte[] table;
+
+    @Setup
+    public void setup(){
+        table = SyntheticContent.random(0x10000, 10);
+    }
+
+    @Benchmark
+    public long getLEint(){
+        long sum = 0;
+        for (int i = 0; i + 4 <= table.length; i += 4)
+            sum += Converter.getLEint(table, i);
+        return sum;
+    }
+
+    @Benchmark
+    public long getLElong(){
+        long sum = 0;
+        for (int i = 0; i + 8 <= table.length; i += 8)
+            sum += Converter.getLElong(table, i);
+        return sum;
+    }
+
+    @Benchmark
+    public long getLElongOfInt(){
+        long sum = 0;
+        for (int i = 0; i + 4 <= table.length; i += 4)
+            sum += Converter.getLElongOfInt(table, i);
+        return sum;
+    }
+
+    @Benchmark
+    public long getLEintByteBuffer(){
+        long sum = 0;
+        for (int i = 0; i + 4 <= table.length; i += 4)
+            sum += ByteBuffer.wrap(table, i, 0x4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        return sum;
+    }
+
+    @Benchmark
+    public long getLElongByteBuffer(){
+        long sum = 0;
+        for (int i = 0; i + 8 <= table.length; i += 8)
+            sum += ByteBuffer.wrap(table, i, 0x8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        return sum;
+    }
+
+    @Benchmark
+    public long getLElongOfIntByteBuffer(){
+        long sum = 0;
+        for (int i = 0; i + 4 <= table.length; i += 4){
+            byte[] holder = new byte[8];
+            System.arraycopy(table, i, holder, 0, 4);
+            sum += ByteBuffer.wrap(holder).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.benchmarks;
+
+import libKonogonka.Converter;
+import libKonogonka.fs.RomFs.FileSystemEntry;
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of complete RomFS tree out of directories and files metadata tables
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSystemEntryBenchmark {
+    @Param({"1000", "50000"})
+    public int filesCount;
+
+    private byte[] directoriesTable;
+    private byte[] filesTable;
+
+    @Setup
+    public void setup(){
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        byte[] empty = new byte[0];
+        for (int i = 0; i < filesCount; i++)
+            builder.addFile("/level"+(i % 7)+"/dir"+(i % 97)+"/file_"+i+".bin", empty);
+        byte[] image = builder.build();
+        directoriesTable = slice(image, 0x18);
+        filesTable = slice(image, 0x38);
+    }
+    /**
+     * @param position position of table offset in level 6 header; table length goes next
+     * */
+    private static byte[] slice(byte[] image, int position){
+        int offset = (int) Converter.getLElong(image, position);
+        int length = (int) Converter.getLElong(image, position + 8);
+        return Arrays.copyOfRange(image, offset, offset + length);
+    }
+
+    @Benchmark
+    public FileSystemEntry buildTree() throws Exception{
+        return new FileSystemEntry(directoriesTable, filesTable);
+    }
+}
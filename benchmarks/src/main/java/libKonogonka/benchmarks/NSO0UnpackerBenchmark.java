@@ -0,0 +1,65 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.benchmarks;
+
+import libKonogonka.fs.NSO.NSO0Provider;
+import libKonogonka.fs.NSO.NSO0Raw;
+import libKonogonka.synthetic.Nso0Builder;
+import libKonogonka.synthetic.SyntheticContent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompression of LZ4 compressed NSO0 segments including reading and SHA-256 validation
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NSO0UnpackerBenchmark {
+    @Param({"262144", "4194304"})
+    public int textSize;
+
+    private File file;
+    private NSO0Provider provider;
+
+    @Setup
+    public void setup() throws Exception{
+        file = File.createTempFile("main", ".nso");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new Nso0Builder(SyntheticContent.compressible(textSize, 7),
+                SyntheticContent.compressible(textSize / 4, 8), SyntheticContent.compressible(textSize / 8, 9)).build());
+        provider = new NSO0Provider(file);
+    }
+
+    @TearDown
+    public void tearDown(){
+        file.delete();
+    }
+
+    @Benchmark
+    public NSO0Raw decompressSegments() throws Exception{
+        return provider.getAsDecompressedNSO0();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.benchmarks;
+
+import libKonogonka.xtsaes.XTSAESCipher;
+import libKonogonka.synthetic.SyntheticContent;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decryption of one data unit (sector) with NCA header tweak
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XTSAESCipherBenchmark {
+    @Param({"512", "16384"})
+    public int dataUnitSize;
+
+    private XTSAESCipher cipher;
+    private byte[] input;
+    private byte[] output;
+    private long sequenceNumber;
+
+    @Setup
+    public void setup(){
+        byte[] key = SyntheticContent.random(0x20, 4);
+        cipher = new XTSAESCipher(false).init(false,
+                new KeyParameter(key, 0, 0x10), new KeyParameter(key, 0x10, 0x10));
+        input = SyntheticContent.random(dataUnitSize, 5);
+        output = new byte[dataUnitSize];
+    }
+
+    @Benchmark
+    public byte[] processDataUnit(){
+        cipher.processDataUnit(input, 0, input.length, output, 0, sequenceNumber++ & 0xF);
+        return output;
+    }
+}
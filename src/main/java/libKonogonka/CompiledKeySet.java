@@ -0,0 +1,155 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package libKonogonka;
+
+import libKonogonka.xtsaes.XTSAESEngine;
+import net.jcip.annotations.ThreadSafe;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Key set converted into binary form on demand. Key area keys and title KEKs are indexed by (type, generation) and
+ * parsed on first use, so creating key set is cheap and NCA pays only for keys it actually needs. Every key has its
+ * own AES-ECB cipher per thread, so key schedule is calculated once for the thread and reused across NCAs.
+ * Title keys are looked up in the raw key set (it could be populated later by title.keys).
+ * */
+@ThreadSafe
+public class CompiledKeySet {
+    public static final int KEY_AREA_KEY_APPLICATION = 0;
+    public static final int KEY_AREA_KEY_OCEAN = 1;
+    public static final int KEY_AREA_KEY_SYSTEM = 2;
+    private static final int GENERATIONS = 0x100;
+    private static final String[] KEY_AREA_KEY_PREFIXES = {
+            "key_area_key_application_",
+            "key_area_key_ocean_",
+            "key_area_key_system_"
+    };
+    private static final String TITLEKEK_PREFIX = "titlekek_";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Map<String, String> rawKeySet;
+    private final AtomicReferenceArray<AesKey> keyAreaKeys =
+            new AtomicReferenceArray<>(KEY_AREA_KEY_PREFIXES.length * GENERATIONS);
+    private final AtomicReferenceArray<AesKey> titlekeks = new AtomicReferenceArray<>(GENERATIONS);
+    private volatile XTSAESEngine headerDecryptor;
+
+    public CompiledKeySet(Map<String, String> rawKeySet){
+        this.rawKeySet = rawKeySet;
+    }
+    /**
+     * @return key parsed from raw key set entry like 'titlekek_0a' or null if there is no such entry
+     * */
+    private AesKey getKey(AtomicReferenceArray<AesKey> keys, int index, String prefix, int generation){
+        AesKey key = keys.get(index);
+        if (key != null)
+            return key;
+        String hexKey = rawKeySet.get(prefix + HEX[generation >> 4] + HEX[generation & 0xF]);
+        if (hexKey == null)
+            return null;
+        keys.compareAndSet(index, null, new AesKey(hexKey));
+        return keys.get(index);
+    }
+
+    private AesKey getKeyAreaKey(int type, int generation){
+        if (type < 0 || type >= KEY_AREA_KEY_PREFIXES.length || generation < 0 || generation >= GENERATIONS)
+            return null;
+        return getKey(keyAreaKeys, type * GENERATIONS + generation, KEY_AREA_KEY_PREFIXES[type], generation);
+    }
+
+    public XTSAESEngine getHeaderDecryptor() throws Exception{
+        XTSAESEngine engine = headerDecryptor;
+        if (engine == null){
+            synchronized (this){
+                engine = headerDecryptor;
+                if (engine == null){
+                    engine = XTSAESEngine.createHeaderDecryptor(rawKeySet.get("header_key"));
+                    headerDecryptor = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    public boolean hasKeyAreaKey(int type, int generation){
+        return getKeyAreaKey(type, generation) != null;
+    }
+    /**
+     * Decrypt key area (or its part) of NCA header
+     * @param type key area key index from NCA header: KEY_AREA_KEY_APPLICATION, KEY_AREA_KEY_OCEAN or KEY_AREA_KEY_SYSTEM
+     * @param generation key generation ('real' crypto type)
+     * @param length must be multiple of 0x10
+     * */
+    public void decryptKeyArea(int type, int generation, byte[] in, int inOffset, byte[] out, int outOffset, int length)
+            throws Exception{
+        AesKey key = getKeyAreaKey(type, generation);
+        if (key == null)
+            throw new Exception("Key area key "+type+" of generation "+generation+" is not found");
+        key.decrypt(in, inOffset, out, outOffset, length);
+    }
+    /**
+     * @return decrypted title key for rights ID or null if title key or title KEK is not found
+     * */
+    public byte[] decryptTitleKey(byte[] rightsId, int generation) throws Exception{
+        String encryptedTitleKey = rawKeySet.get(toHexString(rightsId));
+        if (encryptedTitleKey == null || generation < 0 || generation >= GENERATIONS)
+            return null;
+        AesKey titlekek = getKey(titlekeks, generation, TITLEKEK_PREFIX, generation);
+        if (titlekek == null)
+            return null;
+        byte[] titleKey = Converter.hexStringToByteArray(encryptedTitleKey);
+        titlekek.decrypt(titleKey, 0, titleKey, 0, titleKey.length);
+        return titleKey;
+    }
+
+    public boolean hasTitleKey(byte[] rightsId){
+        return rawKeySet.containsKey(toHexString(rightsId));
+    }
+
+    static String toHexString(byte[] bytes){
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++){
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static class AesKey {
+        private final SecretKeySpec key;
+        private final ThreadLocal<Cipher> ciphers;
+
+        private AesKey(String hexKey){
+            this.key = new SecretKeySpec(Converter.hexStringToByteArray(hexKey), "AES");
+            this.ciphers = new ThreadLocal<>();
+        }
+
+        private void decrypt(byte[] in, int inOffset, byte[] out, int outOffset, int length) throws Exception{
+            Cipher cipher = ciphers.get();
+            if (cipher == null){
+                cipher = Cipher.getInstance("AES/ECB/NoPadding");
+                cipher.init(Cipher.DECRYPT_MODE, key);
+                ciphers.set(cipher);
+            }
+            cipher.doFinal(in, inOffset, length, out, outOffset);
+        }
+    }
+}
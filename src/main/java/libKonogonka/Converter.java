@@ -18,23 +18,18 @@
 */
 package libKonogonka;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 public class Converter {
-    private final static Logger log = LogManager.getLogger(Converter.class);
-
+    /**
+     * @throws IndexOutOfBoundsException if there are less than 4 bytes starting from fromOffset
+     * */
     public static int getLEint(byte[] bytes, int fromOffset){
-        if (fromOffset < 0 || fromOffset >= bytes.length)
-            log.debug("\tLen =" + bytes.length + "\tFrom =" + fromOffset);
-        return ByteBuffer.wrap(bytes, fromOffset, 0x4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        return LittleEndian.getInt(bytes, fromOffset);
     }
-
+    /**
+     * @throws IndexOutOfBoundsException if there are less than 8 bytes starting from fromOffset
+     * */
     public static long getLElong(byte[] bytes, int fromOffset){
-        return ByteBuffer.wrap(bytes, fromOffset, 0x8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        return LittleEndian.getLong(bytes, fromOffset);
     }
     /**
      * Convert (usually unsigned) int to long. Workaround to store unsigned int
@@ -42,9 +37,7 @@ public class Converter {
      * @param fromOffset start position of the 4-bytes value
      * */
     public static long getLElongOfInt(byte[] bytes, int fromOffset){
-        final byte[] holder = new byte[8];
-        System.arraycopy(bytes, fromOffset, holder, 0, 4);
-        return ByteBuffer.wrap(holder).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        return LittleEndian.getInt(bytes, fromOffset) & 0xFFFFFFFFL;
     }
 
     public static String byteArrToHexStringAsLE(byte[] array){
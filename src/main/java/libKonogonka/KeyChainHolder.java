@@ -29,6 +29,7 @@ public class KeyChainHolder {
     private final File keysFile;
     private final String xci_header_key;
     private HashMap<String, String> rawKeySet;
+    private CompiledKeySet compiledKeySet;
     private HashMap<String, String> key_area_key_application,
             key_area_key_ocean,
             key_area_key_system,
@@ -76,6 +77,14 @@ public class KeyChainHolder {
     public String getXci_header_key() { return xci_header_key; }
     public String getHeader_key() { return rawKeySet.get("header_key"); }
     public HashMap<String, String> getRawKeySet() { return rawKeySet; }
+    /**
+     * @return keys converted into binary form; built on first call and shared by all NCAs opened with it
+     * */
+    public synchronized CompiledKeySet getCompiledKeySet() {
+        if (compiledKeySet == null)
+            compiledKeySet = new CompiledKeySet(rawKeySet);
+        return compiledKeySet;
+    }
     public HashMap<String, String> getKey_area_key_application() { return key_area_key_application; }
     public HashMap<String, String> getKey_area_key_ocean() { return key_area_key_ocean; }
     public HashMap<String, String> getKey_area_key_system() { return key_area_key_system; }
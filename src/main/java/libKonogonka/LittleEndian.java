@@ -0,0 +1,46 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka;
+
+/**
+ * Little-endian readers used by Converter. Values are assembled with shifts: nothing is allocated per call.
+ * Java 8 heap ByteBuffer assembles values byte by byte as well, so shifts are faster there.
+ * Java 9+ runtimes load multi-release variant of this class (META-INF/versions/9) that reads through VarHandle.
+ * */
+final class LittleEndian {
+    private LittleEndian(){}
+
+    static int getInt(byte[] bytes, int offset){
+        return (bytes[offset] & 0xFF) |
+                (bytes[offset + 1] & 0xFF) << 8 |
+                (bytes[offset + 2] & 0xFF) << 16 |
+                bytes[offset + 3] << 24;
+    }
+
+    static long getLong(byte[] bytes, int offset){
+        return (bytes[offset] & 0xFFL) |
+                (bytes[offset + 1] & 0xFFL) << 8 |
+                (bytes[offset + 2] & 0xFFL) << 16 |
+                (bytes[offset + 3] & 0xFFL) << 24 |
+                (bytes[offset + 4] & 0xFFL) << 32 |
+                (bytes[offset + 5] & 0xFFL) << 40 |
+                (bytes[offset + 6] & 0xFFL) << 48 |
+                (long) bytes[offset + 7] << 56;
+    }
+}
@@ -0,0 +1,374 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Optional memory-mapped backing for files used by providers. When enabled, every provider and stream producer
+ * reads the file through shared set of MappedByteBuffer windows (1 GB each, to stay under 2 GB limit of single
+ * mapping) instead of opening it again. Disabled by default.
+ * <p>
+ * Mapped windows are shared between all readers of the same file. Registry keeps only the most recently used
+ * mappings (see setRegistryCapacity()); mapping dropped from registry by eviction, release() or releaseAll() stays
+ * valid for readers already opened and is unmapped by the garbage collector once they are gone.
+ * File is mapped again once its identity (file key, size, modification time) changes.
+ */
+public class MemoryMappedFile {
+    private final static Logger log = LogManager.getLogger(MemoryMappedFile.class);
+
+    private static final int WINDOW_SIZE_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SIZE_SHIFT;
+
+    private static volatile boolean enabled;
+    private static int registryCapacity = 16;
+    private static final LinkedHashMap<String, MemoryMappedFile> registry =
+            new LinkedHashMap<String, MemoryMappedFile>(32, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MemoryMappedFile> eldest){
+                    return size() > registryCapacity;
+                }
+            };
+
+    private final File file;
+    private final MappedByteBuffer[] windows;
+    private final long size;
+    private final Object fileKey;
+    private final long attributesSize;
+    private final long lastModified;
+
+    private MemoryMappedFile(File file, BasicFileAttributes attributes) throws IOException{
+        this.file = file;
+        this.fileKey = attributes.fileKey();
+        this.attributesSize = attributes.size();
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            this.size = channel.size();
+            int windowsCount = (int) ((size + WINDOW_SIZE - 1) >> WINDOW_SIZE_SHIFT);
+            this.windows = new MappedByteBuffer[windowsCount];
+            for (int i = 0; i < windowsCount; i++){
+                long windowStart = i * WINDOW_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(WINDOW_SIZE, size - windowStart));
+            }
+        }
+        if (log.isTraceEnabled())
+            log.trace("Mapped "+file.getAbsolutePath()+" ("+size+" bytes) into "+windows.length+" window(s)");
+    }
+    /**
+     * Attributes are taken before mapping: if file is changed while being mapped, it's mapped again on next request
+     * */
+    private boolean isMappingOf(BasicFileAttributes attributes){
+        Object key = attributes.fileKey();
+        return (key == null ? fileKey == null : key.equals(fileKey)) &&
+                attributes.size() == attributesSize &&
+                attributes.lastModifiedTime().toMillis() == lastModified;
+    }
+
+    /**
+     * Enable or disable memory-mapped mode for providers created afterwards.
+     * */
+    public static void setEnabled(boolean isEnabled){
+        enabled = isEnabled;
+        if (! isEnabled)
+            releaseAll();
+    }
+    public static boolean isEnabled(){ return enabled; }
+    /**
+     * Set how many mappings are kept in registry, least recently used ones are dropped first. Default is 16.
+     * */
+    public static void setRegistryCapacity(int mappings){
+        if (mappings < 0)
+            throw new IllegalArgumentException("Registry capacity must not be negative: "+mappings);
+        synchronized (registry){
+            registryCapacity = mappings;
+            while (registry.size() > mappings)
+                registry.remove(registry.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Get shared mapping of the file. Mapping is created on first request and once file is replaced or modified.
+     * */
+    public static MemoryMappedFile get(File file) throws IOException{
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        String path = file.getCanonicalPath();
+        synchronized (registry){
+            MemoryMappedFile mapped = registry.get(path);
+            if (mapped == null || ! mapped.isMappingOf(attributes)){
+                mapped = new MemoryMappedFile(file, attributes);
+                registry.put(path, mapped);
+            }
+            return mapped;
+        }
+    }
+    /**
+     * Drop shared mapping of the file. Readers already opened keep working.
+     * */
+    public static void release(File file) throws IOException{
+        String path = file.getCanonicalPath();
+        synchronized (registry){
+            registry.remove(path);
+        }
+    }
+    public static void releaseAll(){
+        synchronized (registry){
+            registry.clear();
+        }
+    }
+
+    /**
+     * Open stream at file beginning. Memory-mapped if enabled, regular file stream otherwise.
+     * */
+    public static InputStream openInputStream(File file) throws IOException{
+        if (enabled)
+            return get(file).newInputStream();
+        return Files.newInputStream(file.toPath());
+    }
+    /**
+     * Open read-only channel. Memory-mapped if enabled, regular file channel otherwise.
+     * Positional reads of returned channel are thread-safe in both cases.
+     * */
+    public static FileChannel openChannel(File file) throws IOException{
+        if (enabled)
+            return get(file).newChannel();
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    public long size(){ return size; }
+
+    /**
+     * Thread-safe positional read.
+     * @return number of bytes read or -1 if position is beyond the end of file
+     * */
+    public int read(long position, byte[] b, int off, int len){
+        if (position >= size)
+            return -1;
+        if (len > size - position)
+            len = (int) (size - position);
+
+        int done = 0;
+        while (done < len){
+            long current = position + done;
+            ByteBuffer window = windows[(int) (current >> WINDOW_SIZE_SHIFT)].duplicate();
+            int positionInWindow = (int) (current & (WINDOW_SIZE - 1));
+            int chunkSize = Math.min(len - done, window.limit() - positionInWindow);
+            window.position(positionInWindow);
+            window.get(b, off + done, chunkSize);
+            done += chunkSize;
+        }
+        return len;
+    }
+
+    public InputStream newInputStream(){
+        return new MappedInputStream();
+    }
+    public FileChannel newChannel(){
+        return new MappedChannel();
+    }
+
+    private class MappedInputStream extends InputStream {
+        private long position;
+
+        @Override
+        public int read(){
+            byte[] b = new byte[1];
+            if (MemoryMappedFile.this.read(position, b, 0, 1) != 1)
+                return -1;
+            position++;
+            return b[0] & 0xff;
+        }
+        @Override
+        public int read(byte[] b, int off, int len){
+            if (len == 0)
+                return 0;
+            int read = MemoryMappedFile.this.read(position, b, off, len);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+        @Override
+        public long skip(long n){
+            if (n <= 0)
+                return 0;
+            long skipped = Math.min(n, size - position);
+            position += skipped;
+            return skipped;
+        }
+        @Override
+        public int available(){
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+    }
+
+    /**
+     * Read-only FileChannel over mapped windows. Mapping and locking are passed to regular FileChannel of the same
+     * file opened on first such call.
+     * */
+    private class MappedChannel extends FileChannel {
+        private long position;
+        private FileChannel delegate;
+
+        private synchronized FileChannel getDelegate() throws IOException{
+            if (! isOpen())
+                throw new ClosedChannelException();
+            if (delegate == null)
+                delegate = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            return delegate;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException{
+            int read = read(dst, position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException{
+            long total = 0;
+            for (int i = offset; i < offset + length; i++){
+                if (! dsts[i].hasRemaining())
+                    continue;
+                int read = read(dsts[i]);
+                if (read < 0)
+                    return total == 0 ? -1 : total;
+                total += read;
+            }
+            return total;
+        }
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException{
+            if (! isOpen())
+                throw new ClosedChannelException();
+            if (position < 0)
+                throw new IllegalArgumentException("Negative position: "+position);
+            if (position >= size)
+                return -1;
+            int len = (int) Math.min(dst.remaining(), size - position);
+            if (dst.hasArray()){
+                MemoryMappedFile.this.read(position, dst.array(), dst.arrayOffset() + dst.position(), len);
+                dst.position(dst.position() + len);
+            }
+            else {
+                byte[] holder = new byte[len];
+                MemoryMappedFile.this.read(position, holder, 0, len);
+                dst.put(holder);
+            }
+            return len;
+        }
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException{
+            if (! isOpen())
+                throw new ClosedChannelException();
+            long end = Math.min(size, position + count);
+            long done = 0;
+            while (position + done < end){
+                long current = position + done;
+                ByteBuffer window = windows[(int) (current >> WINDOW_SIZE_SHIFT)].duplicate();
+                int positionInWindow = (int) (current & (WINDOW_SIZE - 1));
+                window.position(positionInWindow);
+                window.limit((int) Math.min(window.limit(), positionInWindow + (end - current)));
+                int written = target.write(window);
+                if (written <= 0)
+                    break;
+                done += written;
+            }
+            return done;
+        }
+        @Override
+        public long position() throws IOException{
+            if (! isOpen())
+                throw new ClosedChannelException();
+            return position;
+        }
+        @Override
+        public FileChannel position(long newPosition) throws IOException{
+            if (! isOpen())
+                throw new ClosedChannelException();
+            if (newPosition < 0)
+                throw new IllegalArgumentException("Negative position: "+newPosition);
+            position = newPosition;
+            return this;
+        }
+        @Override
+        public long size() throws IOException{
+            if (! isOpen())
+                throw new ClosedChannelException();
+            return size;
+        }
+        @Override
+        public void force(boolean metaData){ }
+        @Override
+        public int write(ByteBuffer src){
+            throw new NonWritableChannelException();
+        }
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length){
+            throw new NonWritableChannelException();
+        }
+        @Override
+        public int write(ByteBuffer src, long position){
+            throw new NonWritableChannelException();
+        }
+        @Override
+        public FileChannel truncate(long size){
+            throw new NonWritableChannelException();
+        }
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count){
+            throw new NonWritableChannelException();
+        }
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException{
+            return getDelegate().map(mode, position, size);
+        }
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException{
+            return getDelegate().lock(position, size, shared);
+        }
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException{
+            return getDelegate().tryLock(position, size, shared);
+        }
+        @Override
+        protected synchronized void implCloseChannel() throws IOException{
+            if (delegate != null)
+                delegate.close();
+        }
+    }
+}
@@ -32,7 +32,7 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
     private final long encryptedEndOffset;
     private final long fileSize;
 
-    private byte[] decryptedBytes;
+    private final byte[] decryptedBytes = new byte[0x200];
     private long pseudoPos;
     private int pointerInsideDecryptedSection;
 
@@ -57,9 +57,10 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
         this.encryptedEndOffset = ncaOffsetPosition + (mediaEndOffset * 0x200);
         this.fileSize = fileSize;
 
-        log.trace("\n  Offset Position             "+ncaOffsetPosition+
-                  "\n  MediaOffsetPositionStart    "+RainbowDump.formatDecHexString(encryptedStartOffset)+
-                  "\n  MediaOffsetPositionEnd      "+RainbowDump.formatDecHexString(encryptedEndOffset));
+        if (log.isTraceEnabled())
+            log.trace("\n  Offset Position             "+ncaOffsetPosition+
+                      "\n  MediaOffsetPositionStart    "+RainbowDump.formatDecHexString(encryptedStartOffset)+
+                      "\n  MediaOffsetPositionEnd      "+RainbowDump.formatDecHexString(encryptedEndOffset));
     }
 
     /**
@@ -81,89 +82,114 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
         this.encryptedEndOffset = encryptedEndOffset;
         this.fileSize = fileSize;
 
-        log.trace("  EncryptedStartOffset   : "+RainbowDump.formatDecHexString(encryptedStartOffset)+
-                "\n  EncryptedEndOffset     : "+RainbowDump.formatDecHexString(encryptedEndOffset));
+        if (log.isTraceEnabled())
+            log.trace("  EncryptedStartOffset   : "+RainbowDump.formatDecHexString(encryptedStartOffset)+
+                    "\n  EncryptedEndOffset     : "+RainbowDump.formatDecHexString(encryptedEndOffset));
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        if (off != 0 || len != b.length)
-            throw new IOException("Not supported");
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
 
         if (isPointerInsideEncryptedSection()){
             int bytesFromFirstBlock = 0x200 - pointerInsideDecryptedSection;
             if (bytesFromFirstBlock > len){
-                log.trace("1.2. Pointer Inside + End Position Inside (Decrypted) Encrypted Section ("+pseudoPos+"-"+(pseudoPos+b.length)+")");
-                System.arraycopy(decryptedBytes, pointerInsideDecryptedSection, b, 0, len);
+                traceRange("1.2. Pointer Inside + End Position Inside (Decrypted) Encrypted Section", len);
+                System.arraycopy(decryptedBytes, pointerInsideDecryptedSection, b, off, len);
 
                 pseudoPos += len;
                 pointerInsideDecryptedSection += len;
-                return b.length;
+                return len;
             }
 
-            if (isEndPositionInsideEncryptedSection(b.length)) {
-                log.trace("1.1. Pointer Inside + End Position Inside Encrypted Section ("+pseudoPos+"-"+(pseudoPos+b.length)+")");
+            if (isEndPositionInsideEncryptedSection(len)) {
+                traceRange("1.1. Pointer Inside + End Position Inside Encrypted Section", len);
                 int middleBlocksCount = (len - bytesFromFirstBlock) / 0x200;
                 int bytesFromLastBlock = (len - bytesFromFirstBlock) % 0x200;
                 //1
-                System.arraycopy(decryptedBytes, pointerInsideDecryptedSection, b, 0, bytesFromFirstBlock);
+                System.arraycopy(decryptedBytes, pointerInsideDecryptedSection, b, off, bytesFromFirstBlock);
                 //2
-                for (int i = 0; i < middleBlocksCount; i++) {
-                    fillDecryptedCache();
-                    System.arraycopy(decryptedBytes, 0, b, bytesFromFirstBlock+i*0x200, 0x200);
-                }
+                readAndDecryptBlocks(b, off + bytesFromFirstBlock, middleBlocksCount);
                 //3
                 if(fileSize > (pseudoPos+len)) {
                     fillDecryptedCache();
-                    System.arraycopy(decryptedBytes, 0, b, bytesFromFirstBlock + middleBlocksCount * 0x200, bytesFromLastBlock);
+                    System.arraycopy(decryptedBytes, 0, b, off + bytesFromFirstBlock + middleBlocksCount * 0x200, bytesFromLastBlock);
                 }
                 pseudoPos += len;
                 pointerInsideDecryptedSection = bytesFromLastBlock;
-                return b.length;
+                return len;
             }
-            log.trace("1. Pointer Inside + End Position Outside Encrypted Section ("+pseudoPos+"-"+(pseudoPos+b.length)+")");
+            traceRange("1. Pointer Inside + End Position Outside Encrypted Section", len);
             int middleBlocksCount = (int) ((encryptedEndOffset - (pseudoPos+bytesFromFirstBlock)) / 0x200);
             int bytesFromEnd = len - bytesFromFirstBlock - middleBlocksCount * 0x200;
             //1
-            System.arraycopy(decryptedBytes, pointerInsideDecryptedSection, b, 0, bytesFromFirstBlock);
+            System.arraycopy(decryptedBytes, pointerInsideDecryptedSection, b, off, bytesFromFirstBlock);
             //2
-            //log.debug("\n"+bytesFromFirstBlock+"\n"+ middleBlocksCount+" = "+(middleBlocksCount*0x200)+" bytes\n"+ bytesFromEnd+"\n");
-            for (int i = 0; i < middleBlocksCount; i++) {
-                fillDecryptedCache();
-                System.arraycopy(decryptedBytes, 0, b, bytesFromFirstBlock+i*0x200, 0x200);
-            }
-            //3             // TODO: if it's zero?
-            System.arraycopy(readChunk(bytesFromEnd), 0, b, bytesFromFirstBlock+middleBlocksCount*0x200, bytesFromEnd);
+            readAndDecryptBlocks(b, off + bytesFromFirstBlock, middleBlocksCount);
+            //3
+            readFully(b, off + bytesFromFirstBlock + middleBlocksCount * 0x200, bytesFromEnd);
             pseudoPos += len;
             pointerInsideDecryptedSection = 0;
-            return b.length;
+            return len;
         }
         if (isEndPositionInsideEncryptedSection(len)) {
-            log.trace("2. End Position Inside Encrypted Section ("+pseudoPos+"-"+(pseudoPos+b.length)+")");
+            traceRange("2. End Position Inside Encrypted Section", len);
             int bytesTillEncrypted = (int) (encryptedStartOffset - pseudoPos);
             int fullEncryptedBlocks = (len - bytesTillEncrypted) / 0x200;
             int incompleteEncryptedBytes = (len - bytesTillEncrypted) % 0x200;
-            System.arraycopy(readChunk(bytesTillEncrypted), 0, b, 0, bytesTillEncrypted);
+            readFully(b, off, bytesTillEncrypted);
             //2
-            for (int i = 0; i < fullEncryptedBlocks; i++) {
-                fillDecryptedCache();
-                System.arraycopy(decryptedBytes, 0, b, fullEncryptedBlocks+i*0x200, 0x200);
-            }
+            readAndDecryptBlocks(b, off + bytesTillEncrypted, fullEncryptedBlocks);
             //3
             fillDecryptedCache();
-            System.arraycopy(decryptedBytes, 0, b, bytesTillEncrypted+fullEncryptedBlocks*0x200, incompleteEncryptedBytes);
+            System.arraycopy(decryptedBytes, 0, b, off + bytesTillEncrypted + fullEncryptedBlocks * 0x200, incompleteEncryptedBytes);
             pseudoPos += len;
             pointerInsideDecryptedSection = incompleteEncryptedBytes;
-            return b.length;
+            return len;
+        }
+        if (pseudoPos < encryptedStartOffset && pseudoPos + len > encryptedStartOffset) {
+            traceRange("2.1. Encrypted Section Inside", len);
+            int bytesTillEncrypted = (int) (encryptedStartOffset - pseudoPos);
+            read(b, off, bytesTillEncrypted);
+            return bytesTillEncrypted + read(b, off + bytesTillEncrypted, len - bytesTillEncrypted);
+        }
+        traceRange("3. Not encrypted", len);
+        int actuallyRead = 0;
+        while (actuallyRead < len){
+            int chunkSize = super.read(b, off + actuallyRead, len - actuallyRead);
+            if (chunkSize < 0)
+                break;
+            actuallyRead += chunkSize;
         }
-        log.trace("3. Not encrypted ("+pseudoPos+"-"+(pseudoPos+b.length)+")");
-        pseudoPos += len;
+        pseudoPos += actuallyRead;
         pointerInsideDecryptedSection = 0;
-        return super.read(b);
+        if (actuallyRead == 0)
+            return -1;
+        return actuallyRead;
     }
+    /**
+     * Decrypts next 0x200 block into reusable decryptedBytes buffer
+     * */
     private void fillDecryptedCache() throws IOException{
+        readFully(decryptedBytes, 0, 0x200);
         try{
-            decryptedBytes = decryptor.decryptNext(readChunk(0x200));
+            decryptor.decryptNext(decryptedBytes, 0, 0x200, decryptedBytes, 0);
+        }
+        catch (Exception e){ throw new IOException(e); }
+    }
+    /**
+     * Reads and decrypts (in place) contiguous 0x200 blocks straight into caller's buffer using single cipher call
+     * */
+    private void readAndDecryptBlocks(byte[] b, int off, int blocksCount) throws IOException{
+        if (blocksCount == 0)
+            return;
+        int length = blocksCount * 0x200;
+        readFully(b, off, length);
+        try{
+            decryptor.decryptNext(b, off, length, b, off);
         }
         catch (Exception e){ throw new IOException(e); }
     }
@@ -175,12 +201,14 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
         catch (Exception e){ throw new IOException(e); }
     }
 
-    private byte[] readChunk(int bytes) throws IOException{
-        byte[] chunkBytes = new byte[bytes];
-        long actuallyRead = super.read(chunkBytes, 0, bytes);
-        if (actuallyRead != bytes)
-            throw new IOException("Can't read. "+ bytes +"/" + actuallyRead);
-        return chunkBytes;
+    private void readFully(byte[] b, int off, int bytes) throws IOException{
+        int actuallyRead = 0;
+        while (actuallyRead < bytes){
+            int chunkSize = super.read(b, off + actuallyRead, bytes - actuallyRead);
+            if (chunkSize < 0)
+                throw new IOException("Can't read. "+ bytes +"/" + actuallyRead);
+            actuallyRead += chunkSize;
+        }
     }
 
     private boolean isPointerInsideEncryptedSection(){
@@ -188,8 +216,8 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
                 (pseudoPos-pointerInsideDecryptedSection < encryptedEndOffset);
     }
     private boolean isEndPositionInsideEncryptedSection(long requestedBytesCount){
-        return ((pseudoPos-pointerInsideDecryptedSection + requestedBytesCount) >= encryptedStartOffset) &&
-                ((pseudoPos-pointerInsideDecryptedSection + requestedBytesCount) < encryptedEndOffset);
+        return ((pseudoPos + requestedBytesCount) >= encryptedStartOffset) &&
+                ((pseudoPos + requestedBytesCount) < encryptedEndOffset);
     }
 
     @Override
@@ -203,7 +231,7 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
             }
 
             if (isEndPositionInsideEncryptedSection(n)){ // If we need to move somewhere out of the encrypted section
-                log.trace("4.1. Pointer Inside + End Position Inside Encrypted Section ("+pseudoPos+"-"+(pseudoPos+n)+")");
+                traceRange("4.1. Pointer Inside + End Position Inside Encrypted Section", n);
                 long blocksToSkipCountingFromStart = (pseudoPos+n - encryptedStartOffset) / 0x200;        // always positive
                 resetAndSkip(blocksToSkipCountingFromStart);
 
@@ -215,7 +243,7 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
                 pointerInsideDecryptedSection = (int) leftovers;
                 return n;
             }
-            log.trace("4. Pointer Inside + End Position Outside Encrypted Section ("+pseudoPos+"-"+(pseudoPos+n)+")");
+            traceRange("4. Pointer Inside + End Position Outside Encrypted Section", n);
             skipLoop(realCountOfBytesToSkip);
             pseudoPos += n;
             pointerInsideDecryptedSection = 0;
@@ -224,7 +252,7 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
         }
 
         if (isEndPositionInsideEncryptedSection(n)) {  //pointer will be inside Encrypted Section, but now outside
-            log.trace("5. End Position Inside Encrypted Section ("+pseudoPos+"-"+(pseudoPos+n)+")");
+            traceRange("5. End Position Inside Encrypted Section", n);
             //skip to start if the block we need
             long bytesToSkipTillEncryptedBlock = encryptedStartOffset - pseudoPos;
             long blocksToSkipCountingFromStart = (n - bytesToSkipTillEncryptedBlock) / 0x200;        // always positive
@@ -237,14 +265,15 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
                         bytesToSkipTillEncryptedBlock +
                         ".\nActually skipped: " + skipped +
                         ".\nLeftovers inside encrypted section: " + leftovers);
-            log.trace("\tBlocks skipped "+blocksToSkipCountingFromStart);
+            if (log.isTraceEnabled())
+                log.trace("\tBlocks skipped "+blocksToSkipCountingFromStart);
             resetAndSkip(blocksToSkipCountingFromStart);
             fillDecryptedCache();
             pseudoPos += n;
             pointerInsideDecryptedSection = (int) leftovers;
             return n;
         }
-        log.trace("6. Not encrypted ("+pseudoPos+"-"+(pseudoPos+n)+")");
+        traceRange("6. Not encrypted", n);
         skipLoop(n);
         pseudoPos += n;
         pointerInsideDecryptedSection = 0;
@@ -253,18 +282,27 @@ public class AesCtrBufferedInputStream extends BufferedInputStream {
     private void skipLoop(long size) throws IOException{
         long mustSkip = size;
         long skipped = 0;
+        boolean trace = log.isTraceEnabled();
         while (mustSkip > 0){
             skipped += super.skip(mustSkip);
             mustSkip = size - skipped;
-            log.trace("Skip loop: skipped: "+skipped+"\tmustSkip "+mustSkip);
+            if (trace)
+                log.trace("Skip loop: skipped: "+skipped+"\tmustSkip "+mustSkip);
         }
     }
+    /**
+     * Called on every read and skip: message is built only when trace level is enabled
+     * */
+    private void traceRange(String step, long count){
+        if (log.isTraceEnabled())
+            log.trace(step+" ("+pseudoPos+"-"+(pseudoPos+count)+")");
+    }
 
     @Override
     public synchronized int read() throws IOException {
         byte[] b = new byte[1];
         if (read(b, 0, 1) != -1)
-            return b[0];
+            return b[0] & 0xff;
         return -1;
     }
 
@@ -2,6 +2,7 @@ package libKonogonka.aesctr;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import javax.crypto.Cipher;
 import java.security.Security;
 
 public abstract class AesCtrDecrypt {
@@ -16,6 +17,12 @@ public abstract class AesCtrDecrypt {
      * @return Decrypted bytes
      */
     abstract public byte[] decryptNext(byte[] encryptedBlock);
+    /**
+     * Decrypts len bytes of input into provided output buffer without allocating anything. Input and output could be
+     * the same array (in-place decryption).
+     * @param len - for sequential calls must be aligned to 0x10 except the last one
+     * */
+    abstract public void decryptNext(byte[] input, int inputOffset, int len, byte[] output, int outputOffset) throws Exception;
     /**
      * Initializes cipher again using updated IV (CTR)
      * @param blockCount - how many blockCount from encrypted section start should be skipped. Block size = 0x200
@@ -25,4 +32,20 @@ public abstract class AesCtrDecrypt {
      * Initializes cipher again using initial IV (CTR)
      * */
     abstract public void reset() throws Exception;
+    /**
+     * Creates new cipher with IV (CTR) calculated for requested position. Doesn't touch cipher used by this
+     * instance, thus could be used for random access and in parallel threads.
+     * @param offset - bytes counted from encrypted section start. Must be aligned to 0x10.
+     * */
+    public Cipher createCipherAt(long offset) throws Exception{
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding", "BC");
+        reinitCipherAt(cipher, offset);
+        return cipher;
+    }
+    /**
+     * Initializes provided cipher again with IV (CTR) calculated for requested position.
+     * @param cipher - cipher previously received from createCipherAt()
+     * @param offset - bytes counted from encrypted section start. Must be aligned to 0x10.
+     * */
+    abstract public void reinitCipherAt(Cipher cipher, long offset) throws Exception;
 }
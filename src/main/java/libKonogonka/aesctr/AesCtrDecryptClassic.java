@@ -43,6 +43,10 @@ public class AesCtrDecryptClassic extends AesCtrDecrypt {
         return cipher.update(encryptedData);
     }
 
+    @Override
+    public void decryptNext(byte[] input, int inputOffset, int len, byte[] output, int outputOffset) throws Exception{
+        cipher.update(input, inputOffset, len, output, outputOffset);
+    }
     @Override
     public void resetAndSkip(long blockCount) throws Exception{
         reset(calculateCtr(blockCount * 0x200));
@@ -65,6 +69,11 @@ public class AesCtrDecryptClassic extends AesCtrDecrypt {
         reset(ivArray.clone());
     }
 
+    @Override
+    public void reinitCipherAt(Cipher cipher, long offset) throws Exception{
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(calculateCtr(offset)));
+    }
+
     private void reset(byte[] updatedIvArray) throws Exception{
         cipher = Cipher.getInstance("AES/CTR/NoPadding", "BC");
         IvParameterSpec iv = new IvParameterSpec(updatedIvArray);
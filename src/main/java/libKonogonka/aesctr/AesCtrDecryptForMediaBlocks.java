@@ -21,6 +21,8 @@ package libKonogonka.aesctr;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.Arrays;
 
 /**
@@ -32,12 +34,17 @@ public class AesCtrDecryptForMediaBlocks extends AesCtrDecrypt {
     private Cipher cipher;
 
     private final long initialOffset;
+    private final byte[] identity;
 
     public AesCtrDecryptForMediaBlocks(byte[] key, byte[] sectionCTR, long realMediaOffset) throws Exception{
         super();
         this.key = new SecretKeySpec(key, "AES");
         this.ivArray = Arrays.copyOf(sectionCTR, 0x10);  // IV for CTR == 16 bytes; Populate first 4 bytes taken from Header's section Block CTR (aka SecureValue)
         this.initialOffset = realMediaOffset;
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(key);
+        digest.update(ivArray);
+        this.identity = digest.digest(ByteBuffer.allocate(8).putLong(realMediaOffset).array());
         reset();
     }
     @Override
@@ -45,6 +52,10 @@ public class AesCtrDecryptForMediaBlocks extends AesCtrDecrypt {
         return cipher.update(encryptedBlock);
     }
     @Override
+    public void decryptNext(byte[] input, int inputOffset, int len, byte[] output, int outputOffset) throws Exception{
+        cipher.update(input, inputOffset, len, output, outputOffset);
+    }
+    @Override
     public void resetAndSkip(long blockCount) throws Exception{
         cipher = Cipher.getInstance("AES/CTR/NoPadding", "BC");
         long mediaOffset = initialOffset + (blockCount * 0x200L);
@@ -63,4 +74,14 @@ public class AesCtrDecryptForMediaBlocks extends AesCtrDecrypt {
     public void reset() throws Exception{
         resetAndSkip(0);
     }
+    /**
+     * @return SHA-256 of key, section CTR and media offset. Decryptors of equal identity produce the same data.
+     * */
+    byte[] getIdentity(){
+        return identity;
+    }
+    @Override
+    public void reinitCipherAt(Cipher cipher, long offset) throws Exception{
+        cipher.init(Cipher.DECRYPT_MODE, key, getIv(initialOffset + offset));
+    }
 }
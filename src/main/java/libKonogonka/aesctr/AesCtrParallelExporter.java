@@ -0,0 +1,181 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import libKonogonka.MemoryMappedFile;
+import libKonogonka.RainbowDump;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.Cipher;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decrypts AES-CTR encrypted range of the file into another file using all available cores.
+ * Since CTR for any offset could be calculated, range is split into chunks and every chunk is decrypted by
+ * its own Cipher and written by positional FileChannel write.
+ */
+public class AesCtrParallelExporter {
+    private final static Logger log = LogManager.getLogger(AesCtrParallelExporter.class);
+
+    private static final int LEAF_SIZE = 0x1000000;
+    private static final int BUFFER_SIZE = 0x100000;
+
+    private final AesCtrDecrypt decryptor;
+    private final long encryptedStartOffset;
+    private final ForkJoinPool pool;
+
+    /**
+     * AES CTR for 'Media Blocks'. Used in NCA.
+     * @param decryptor AesCtrDecryptForMediaBlocks
+     * @param ncaOffsetPosition NCA offset in file. If NCA is inside XCI, NSP. Otherwise, must be 0.
+     * @param mediaStartOffset 'Media Start Offset' in NCA representation. Small value, not bytes.
+     * @param pool pool to run decryption at
+     */
+    public AesCtrParallelExporter(AesCtrDecryptForMediaBlocks decryptor,
+                                  long ncaOffsetPosition,
+                                  long mediaStartOffset,
+                                  ForkJoinPool pool){
+        this(decryptor, ncaOffsetPosition + mediaStartOffset * 0x200, pool);
+    }
+    /**
+     * AES CTR 'classic' implementation. Used for system2 (PK21) decrypt.
+     * @param decryptor AesCtrDecryptClassic
+     * @param encryptedStartOffset Encrypted start position in bytes.
+     * @param pool pool to run decryption at
+     */
+    public AesCtrParallelExporter(AesCtrDecryptClassic decryptor, long encryptedStartOffset, ForkJoinPool pool){
+        this((AesCtrDecrypt) decryptor, encryptedStartOffset, pool);
+    }
+    /**
+     * Not encrypted file. Data copied as is.
+     * @param pool pool to run copying at
+     */
+    public AesCtrParallelExporter(ForkJoinPool pool){
+        this(null, 0, pool);
+    }
+
+    private AesCtrParallelExporter(AesCtrDecrypt decryptor, long encryptedStartOffset, ForkJoinPool pool){
+        this.decryptor = decryptor;
+        this.encryptedStartOffset = encryptedStartOffset;
+        this.pool = pool;
+    }
+
+    /**
+     * Decrypt range of source file into target file. Range must be inside encrypted section.
+     * @param source file to read from
+     * @param offset position in source file (since file beginning) where range starts
+     * @param size range size
+     * @param target file to write to. Will be overwritten.
+     * */
+    public void export(File source, long offset, long size, File target) throws Exception{
+        if (decryptor != null && offset < encryptedStartOffset)
+            throw new Exception("Requested offset "+offset+" is before encrypted section start "+encryptedStartOffset);
+
+        log.trace("Parallel export: "+RainbowDump.formatDecHexString(offset)+" size "+
+                RainbowDump.formatDecHexString(size)+" to "+target.getAbsolutePath());
+
+        try (FileChannel sourceChannel = MemoryMappedFile.openChannel(source);
+             FileChannel targetChannel = FileChannel.open(target.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            if (offset + size > sourceChannel.size())
+                throw new Exception("Requested range exceeds file size: "+(offset + size)+" > "+sourceChannel.size());
+            pool.invoke(new Chunk(sourceChannel, targetChannel, offset, 0, size));
+        }
+    }
+
+    private class Chunk extends RecursiveAction {
+        private final FileChannel sourceChannel;
+        private final FileChannel targetChannel;
+        private final long rangeStart;
+        private final long from;
+        private final long to;
+
+        Chunk(FileChannel sourceChannel, FileChannel targetChannel, long rangeStart, long from, long to){
+            this.sourceChannel = sourceChannel;
+            this.targetChannel = targetChannel;
+            this.rangeStart = rangeStart;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if (to - from > LEAF_SIZE){
+                long middle = from + ((to - from) / 2 / LEAF_SIZE) * LEAF_SIZE;
+                if (middle == from)
+                    middle = from + LEAF_SIZE;
+                invokeAll(new Chunk(sourceChannel, targetChannel, rangeStart, from, middle),
+                        new Chunk(sourceChannel, targetChannel, rangeStart, middle, to));
+                return;
+            }
+            try {
+                processLeaf();
+            }
+            catch (Exception e){
+                throw new RuntimeException("Unable to process chunk "+from+"-"+to, e);
+            }
+        }
+
+        private void processLeaf() throws Exception{
+            byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE + 0x10, to - from + 0x10)];
+            Cipher cipher = null;
+
+            long position = from;
+            while (position < to){
+                long sourcePosition = rangeStart + position;
+                int headBytes = decryptor == null ? 0 : (int) ((sourcePosition - encryptedStartOffset) & 0xF);
+                int length = (int) Math.min(BUFFER_SIZE, to - position);
+
+                readFully(buffer, headBytes + length, sourcePosition - headBytes);
+                if (decryptor != null){
+                    long relativeOffset = sourcePosition - headBytes - encryptedStartOffset;
+                    if (cipher == null)
+                        cipher = decryptor.createCipherAt(relativeOffset);
+                    else
+                        decryptor.reinitCipherAt(cipher, relativeOffset);
+                    cipher.doFinal(buffer, 0, headBytes + length, buffer, 0);
+                }
+                writeFully(ByteBuffer.wrap(buffer, headBytes, length), position);
+                position += length;
+            }
+        }
+
+        private void readFully(byte[] buffer, int length, long position) throws IOException{
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+            while (byteBuffer.hasRemaining()){
+                int read = sourceChannel.read(byteBuffer, position + byteBuffer.position());
+                if (read < 0)
+                    throw new IOException("Can't read. "+length+"/"+byteBuffer.position());
+            }
+        }
+
+        private void writeFully(ByteBuffer byteBuffer, long position) throws IOException{
+            long written = 0;
+            while (byteBuffer.hasRemaining())
+                written += targetChannel.write(byteBuffer, position + written);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Random access reader for AES-CTR encrypted files. Unlike AesCtrBufferedInputStream it never reads data
+ * that is not requested: IV (CTR) is calculated from the absolute offset and file is accessed by positional reads,
+ * so read(offset, ...) costs the same for any offset.
+ * Positions are counted since file beginning, same as AesCtrBufferedInputStream does.
+ * Data outside of encrypted section returned as is.
+ */
+@NotThreadSafe
+public class AesCtrSeekableChannel implements SeekableByteChannel, ISeekableSource {
+    private static final int MAX_CHUNK_SIZE = 0x100000;
+
+    private final FileChannel channel;
+    private final AesCtrDecrypt decryptor;
+    private final long encryptedStartOffset;
+    private final long encryptedEndOffset;
+    private final long fileSize;
+
+    private Cipher cipher;
+    private byte[] chunk;
+    private long position;
+
+    /**
+     * AES CTR for 'Media Blocks'. Used in NCA.
+     * @param decryptor AesCtrDecryptForMediaBlocks
+     * @param ncaOffsetPosition NCA offset in file. If NCA is inside XCI, NSP. Otherwise, must be 0.
+     * @param mediaStartOffset 'Media Start Offset' in NCA representation. Small value, not bytes.
+     * @param mediaEndOffset 'Media End Offset' in NCA representation. Small value, not bytes.
+     * @param channel FileChannel of the file. Will be closed along with this channel.
+     */
+    public AesCtrSeekableChannel(AesCtrDecryptForMediaBlocks decryptor,
+                                 long ncaOffsetPosition,
+                                 long mediaStartOffset,
+                                 long mediaEndOffset,
+                                 FileChannel channel) throws IOException{
+        this(decryptor,
+                ncaOffsetPosition + (mediaStartOffset * 0x200),
+                ncaOffsetPosition + (mediaEndOffset * 0x200),
+                channel);
+    }
+
+    /**
+     * AES CTR 'classic' implementation. Used for system2 (PK21) decrypt.
+     * @param decryptor AesCtrDecryptClassic
+     * @param encryptedStartOffset Encrypted start position in bytes.
+     * @param encryptedEndOffset Encrypted end position in bytes.
+     * @param channel FileChannel of the file. Will be closed along with this channel.
+     */
+    public AesCtrSeekableChannel(AesCtrDecryptClassic decryptor,
+                                 long encryptedStartOffset,
+                                 long encryptedEndOffset,
+                                 FileChannel channel) throws IOException{
+        this((AesCtrDecrypt) decryptor, encryptedStartOffset, encryptedEndOffset, channel);
+    }
+
+    /**
+     * Not encrypted file.
+     * @param channel FileChannel of the file. Will be closed along with this channel.
+     */
+    public AesCtrSeekableChannel(FileChannel channel) throws IOException{
+        this(null, 0, 0, channel);
+    }
+
+    private AesCtrSeekableChannel(AesCtrDecrypt decryptor,
+                                  long encryptedStartOffset,
+                                  long encryptedEndOffset,
+                                  FileChannel channel) throws IOException{
+        this.decryptor = decryptor;
+        this.encryptedStartOffset = encryptedStartOffset;
+        this.encryptedEndOffset = encryptedEndOffset;
+        this.channel = channel;
+        this.fileSize = channel.size();
+    }
+
+    /**
+     * Read bytes starting from requested position. Doesn't change position of this channel.
+     * @param offset position since file beginning
+     * @return number of bytes read or -1 if offset is beyond the end of file
+     * */
+    @Override
+    public int read(long offset, byte[] b, int off, int len) throws IOException{
+        if (! channel.isOpen())
+            throw new ClosedChannelException();
+        if (offset < 0 || off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (offset >= fileSize)
+            return -1;
+        if (len > fileSize - offset)
+            len = (int) (fileSize - offset);
+
+        int done = 0;
+        while (done < len){
+            long current = offset + done;
+            int left = len - done;
+
+            if (decryptor == null || current >= encryptedEndOffset){
+                readRaw(current, b, off + done, left);
+                done = len;
+            }
+            else if (current < encryptedStartOffset){
+                int size = (int) Math.min(left, encryptedStartOffset - current);
+                readRaw(current, b, off + done, size);
+                done += size;
+            }
+            else {
+                int size = (int) Math.min(left, encryptedEndOffset - current);
+                size = Math.min(size, MAX_CHUNK_SIZE - 0x10);
+                readDecrypted(current, b, off + done, size);
+                done += size;
+            }
+        }
+        return len;
+    }
+
+    private void readDecrypted(long offset, byte[] b, int off, int len) throws IOException{
+        long relativeOffset = offset - encryptedStartOffset;
+        int headBytes = (int) (relativeOffset & 0xF);
+        int alignedLen = (headBytes + len + 0xF) & ~0xF;
+
+        if (chunk == null || chunk.length < alignedLen)
+            chunk = new byte[Math.min(MAX_CHUNK_SIZE, Math.max(alignedLen, 0x4000))];
+        // Last 0x10 block of the section could be incomplete when file is truncated
+        int toRead = (int) Math.min(alignedLen, fileSize - (offset - headBytes));
+        readRaw(offset - headBytes, chunk, 0, toRead);
+        try {
+            if (cipher == null)
+                cipher = decryptor.createCipherAt(relativeOffset - headBytes);
+            else
+                decryptor.reinitCipherAt(cipher, relativeOffset - headBytes);
+            cipher.doFinal(chunk, 0, toRead, chunk, 0);
+        }
+        catch (Exception e){
+            throw new IOException(e);
+        }
+        System.arraycopy(chunk, headBytes, b, off, len);
+    }
+
+    private void readRaw(long offset, byte[] b, int off, int len) throws IOException{
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        long position = offset;
+        while (buffer.hasRemaining()){
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Can't read. "+len+"/"+(position-offset));
+            position += read;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException{
+        int read;
+        if (dst.hasArray()){
+            read = read(position, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (read > 0)
+                dst.position(dst.position() + read);
+        }
+        else {
+            byte[] holder = new byte[Math.min(dst.remaining(), MAX_CHUNK_SIZE)];
+            read = read(position, holder, 0, holder.length);
+            if (read > 0)
+                dst.put(holder, 0, read);
+        }
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException{
+        if (! channel.isOpen())
+            throw new ClosedChannelException();
+        return position;
+    }
+
+    @Override
+    public AesCtrSeekableChannel position(long newPosition) throws IOException{
+        if (! channel.isOpen())
+            throw new ClosedChannelException();
+        if (newPosition < 0)
+            throw new IllegalArgumentException("Negative position: "+newPosition);
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException{
+        if (! channel.isOpen())
+            throw new ClosedChannelException();
+        return fileSize;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+
+    public boolean isEncrypted(){
+        return decryptor != null;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads whole pages through DecryptedBlockCache: pages missing in cache are read from wrapped source and cached.
+ * Last page of the source is cached as is, shorter than page size.
+ * */
+@NotThreadSafe
+class CachedSeekableSource implements ISeekableSource {
+    private final DecryptedBlockCache cache;
+    private final ISeekableSource source;
+    private final Object section;
+    private final int pageSize;
+
+    CachedSeekableSource(DecryptedBlockCache cache, ISeekableSource source, Object section){
+        this.cache = cache;
+        this.source = source;
+        this.section = section;
+        this.pageSize = cache.getPageSize();
+    }
+
+    @Override
+    public int read(long offset, byte[] b, int off, int len) throws IOException{
+        if (offset < 0 || off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        int done = 0;
+        while (done < len){
+            long position = offset + done;
+            long page = position / pageSize;
+            byte[] data = cache.get(section, page);
+            if (data == null){
+                data = readPage(page);
+                cache.put(section, page, data);
+            }
+            int shift = (int) (position - page * pageSize);
+            if (shift >= data.length)
+                break;
+            int size = Math.min(len - done, data.length - shift);
+            System.arraycopy(data, shift, b, off + done, size);
+            done += size;
+            if (data.length < pageSize)
+                break;
+        }
+        if (done == 0 && len > 0)
+            return -1;
+        return done;
+    }
+
+    private byte[] readPage(long page) throws IOException{
+        byte[] data = new byte[pageSize];
+        int done = 0;
+        while (done < pageSize){
+            int read = source.read(page * pageSize + done, data, done, pageSize - done);
+            if (read <= 0)
+                break;
+            done += read;
+        }
+        return done == pageSize ? data : Arrays.copyOf(data, done);
+    }
+
+    @Override
+    public void close() throws IOException{
+        source.close();
+    }
+}
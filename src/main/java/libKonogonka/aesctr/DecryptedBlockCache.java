@@ -0,0 +1,272 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of decrypted pages shared by streams and sources of encrypted sections.
+ * Pages are keyed by (file identity, section position, decryptor identity, page index). Cache is split into independently locked
+ * stripes, each of them is LRU bounded by its share of capacity.
+ * <p>
+ * Disabled by default. Once cache is installed by install(), every encrypted InFileStreamProducer reads through it.
+ * </p>
+ * */
+@ThreadSafe
+public class DecryptedBlockCache {
+    public static final int DEFAULT_PAGE_SIZE = 0x4000;
+    private static final int DEFAULT_STRIPES = 16;
+
+    private static volatile DecryptedBlockCache installed;
+
+    private final int pageSize;
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity maximum size of cached data in bytes
+     * */
+    public DecryptedBlockCache(long capacity){
+        this(capacity, DEFAULT_PAGE_SIZE, DEFAULT_STRIPES);
+    }
+    /**
+     * @param capacity maximum size of cached data in bytes
+     * @param pageSize size of cached page, multiple of 0x200
+     * @param stripesCount number of independently locked parts of cache, power of 2
+     * */
+    public DecryptedBlockCache(long capacity, int pageSize, int stripesCount){
+        if (pageSize <= 0 || pageSize % 0x200 != 0)
+            throw new IllegalArgumentException("Page size must be positive multiple of 0x200: "+pageSize);
+        if (stripesCount <= 0 || Integer.bitCount(stripesCount) != 1)
+            throw new IllegalArgumentException("Stripes count must be power of 2: "+stripesCount);
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity must not be negative: "+capacity);
+        this.pageSize = pageSize;
+        this.stripes = new Stripe[stripesCount];
+        for (int i = 0; i < stripesCount; i++)
+            stripes[i] = new Stripe(capacity / stripesCount);
+    }
+    /**
+     * Make cache used by all encrypted InFileStreamProducer instances.
+     * @param cache cache to use or null to disable caching
+     * */
+    public static void install(DecryptedBlockCache cache){
+        installed = cache;
+    }
+    /**
+     * @return cache installed or null if caching is disabled
+     * */
+    public static DecryptedBlockCache getInstalled(){
+        return installed;
+    }
+    /**
+     * @param source source of decrypted data. Positions are counted from file beginning.
+     * @param file file source reads
+     * @param sectionPosition position of encrypted section in file
+     * @param decryptor decryptor source uses; pages decrypted with different key or CTR are never shared
+     * @return source that takes pages from this cache and populates it on misses
+     * */
+    public ISeekableSource wrap(ISeekableSource source,
+                                File file,
+                                long sectionPosition,
+                                AesCtrDecryptForMediaBlocks decryptor) throws IOException{
+        return new CachedSeekableSource(this, source,
+                new SectionIdentity(identify(file), sectionPosition, decryptor.getIdentity()));
+    }
+    /**
+     * File identity changes once file is modified, so cached pages of previous content are never returned
+     * */
+    private static Object identify(File file) throws IOException{
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        return new FileIdentity(fileKey == null ? file.getAbsolutePath() : fileKey,
+                attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    byte[] get(Object section, long page){
+        PageKey key = new PageKey(section, page);
+        byte[] data = getStripe(key).get(key);
+        if (data == null)
+            misses.increment();
+        else
+            hits.increment();
+        return data;
+    }
+
+    void put(Object section, long page, byte[] data){
+        PageKey key = new PageKey(section, page);
+        getStripe(key).put(key, data);
+    }
+
+    private Stripe getStripe(PageKey key){
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    public int getPageSize(){ return pageSize; }
+    public long getHits(){ return hits.sum(); }
+    public long getMisses(){ return misses.sum(); }
+    public long getEvictions(){ return evictions.sum(); }
+    /**
+     * @return size of cached data in bytes
+     * */
+    public long getCachedBytes(){
+        long size = 0;
+        for (Stripe stripe : stripes)
+            size += stripe.getCachedBytes();
+        return size;
+    }
+    /**
+     * Drop all cached pages. Statistics are not reset.
+     * */
+    public void clear(){
+        for (Stripe stripe : stripes)
+            stripe.clear();
+    }
+
+    @Override
+    public String toString(){
+        return "DecryptedBlockCache: hits " + getHits() + ", misses " + getMisses() + ", evictions " +
+                getEvictions() + ", cached bytes " + getCachedBytes();
+    }
+
+    private class Stripe {
+        private final long capacity;
+        private final LinkedHashMap<PageKey, byte[]> pages = new LinkedHashMap<>(16, 0.75f, true);
+        private long cachedBytes;
+
+        Stripe(long capacity){
+            this.capacity = capacity;
+        }
+
+        synchronized byte[] get(PageKey key){
+            return pages.get(key);
+        }
+
+        synchronized void put(PageKey key, byte[] data){
+            if (data.length > capacity)
+                return;
+            byte[] previous = pages.put(key, data);
+            cachedBytes += data.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<PageKey, byte[]>> iterator = pages.entrySet().iterator();
+            while (cachedBytes > capacity){
+                cachedBytes -= iterator.next().getValue().length;
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized long getCachedBytes(){
+            return cachedBytes;
+        }
+
+        synchronized void clear(){
+            pages.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private static class FileIdentity {
+        private final Object key;
+        private final long size;
+        private final long lastModified;
+
+        FileIdentity(Object key, long size, long lastModified){
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (! (o instanceof FileIdentity))
+                return false;
+            FileIdentity other = (FileIdentity) o;
+            return key.equals(other.key) && size == other.size && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode(){
+            return 31 * (31 * key.hashCode() + Long.hashCode(size)) + Long.hashCode(lastModified);
+        }
+    }
+
+    private static class SectionIdentity {
+        private final Object file;
+        private final long sectionPosition;
+        private final byte[] decryptor;
+        private final int hash;
+
+        SectionIdentity(Object file, long sectionPosition, byte[] decryptor){
+            this.file = file;
+            this.sectionPosition = sectionPosition;
+            this.decryptor = decryptor;
+            this.hash = 31 * (31 * file.hashCode() + Long.hashCode(sectionPosition)) + Arrays.hashCode(decryptor);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (! (o instanceof SectionIdentity))
+                return false;
+            SectionIdentity other = (SectionIdentity) o;
+            return hash == other.hash && sectionPosition == other.sectionPosition && file.equals(other.file) &&
+                    Arrays.equals(decryptor, other.decryptor);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+    }
+
+    private static class PageKey {
+        private final Object section;
+        private final long page;
+
+        PageKey(Object section, long page){
+            this.section = section;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (! (o instanceof PageKey))
+                return false;
+            PageKey other = (PageKey) o;
+            return page == other.page && section.equals(other.section);
+        }
+
+        @Override
+        public int hashCode(){
+            return 31 * section.hashCode() + Long.hashCode(page);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Decrypted data available by positional reads. Positions are counted the same way InFileStreamProducer counts
+ * them for produce(): since the beginning of the (maybe virtual) file.
+ * */
+public interface ISeekableSource extends Closeable {
+    /**
+     * Read bytes starting from requested position
+     * @return number of bytes read or -1 if offset is beyond the end
+     * */
+    int read(long offset, byte[] b, int off, int len) throws IOException;
+}
@@ -18,6 +18,8 @@
  */
 package libKonogonka.aesctr;
 
+import libKonogonka.MemoryMappedFile;
+
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.InputStream;
@@ -140,7 +142,7 @@ public class InFileStreamClassicProducer implements IProducer {
         if (filePath == null)
             is = parentProducer.produce();
         else
-            is = Files.newInputStream(filePath);
+            is = MemoryMappedFile.openInputStream(filePath.toFile());
 
         AesCtrBufferedInputStream stream = new AesCtrBufferedInputStream(
                 decryptor, encryptedStartOffset, encryptedEndOffset, is, fileSize);
@@ -157,7 +159,7 @@ public class InFileStreamClassicProducer implements IProducer {
         if (filePath == null)
             stream = new BufferedInputStream(parentProducer.produce());
         else
-            stream = new BufferedInputStream(Files.newInputStream(filePath));
+            stream = new BufferedInputStream(MemoryMappedFile.openInputStream(filePath.toFile()));
 
         if (offset != stream.skip(offset))
             throw new Exception("Unable to skip offset: "+offset);
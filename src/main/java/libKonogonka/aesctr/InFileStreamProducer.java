@@ -18,11 +18,16 @@
  */
 package libKonogonka.aesctr;
 
+import libKonogonka.MemoryMappedFile;
+
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 
 public class InFileStreamProducer implements IProducer {
+    private static final int CACHED_STREAM_BUFFER_SIZE = 0x80000;
+
     private boolean encrypted;
 
     private final File file;
@@ -59,6 +64,9 @@ public class InFileStreamProducer implements IProducer {
     }
     @Override
     public BufferedInputStream produce() throws Exception{
+        if (encrypted && DecryptedBlockCache.getInstalled() != null)
+            return new BufferedInputStream(new SeekableSourceInputStream(produceSource(), subOffset),
+                    CACHED_STREAM_BUFFER_SIZE);
         if (encrypted)
             return produceAesCtr();
         return produceNotEncrypted();
@@ -70,16 +78,53 @@ public class InFileStreamProducer implements IProducer {
                 initialOffset,
                 mediaStartOffset,
                 mediaEndOffset,
-                Files.newInputStream(file.toPath()),
+                MemoryMappedFile.openInputStream(file),
                 Files.size(file.toPath()));     // Files.size(file.toPath())-initialOffset); ?
         skipBytesTillBeginning(stream, subOffset);
         return stream;
     }
     private BufferedInputStream produceNotEncrypted() throws Exception{
-        BufferedInputStream stream = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        BufferedInputStream stream = new BufferedInputStream(MemoryMappedFile.openInputStream(file));
         skipBytesTillBeginning(stream, subOffset);
         return stream;
     }
+    /**
+     * Random access alternative to produce(). Positions of returned channel are counted since file beginning,
+     * subOffset is used as initial position.
+     * */
+    public AesCtrSeekableChannel produceSeekable() throws Exception{
+        FileChannel channel = MemoryMappedFile.openChannel(file);
+        AesCtrSeekableChannel seekableChannel;
+        if (encrypted)
+            seekableChannel = new AesCtrSeekableChannel(
+                    decryptor,
+                    initialOffset,
+                    mediaStartOffset,
+                    mediaEndOffset,
+                    channel);
+        else
+            seekableChannel = new AesCtrSeekableChannel(channel);
+        seekableChannel.position(subOffset);
+        return seekableChannel;
+    }
+    /**
+     * Positional reads source used by parallel export and verifiers. Same as produceSeekable() for files;
+     * producers of virtual images (e.g. patched sections) provide their own sources.
+     * Encrypted data is read through DecryptedBlockCache once it's installed.
+     * */
+    public ISeekableSource produceSource() throws Exception{
+        DecryptedBlockCache cache = DecryptedBlockCache.getInstalled();
+        if (cache == null || ! encrypted)
+            return produceSeekable();
+        AesCtrSeekableChannel channel = produceSeekable();
+        try {
+            return cache.wrap(channel, file, initialOffset + mediaStartOffset * 0x200, decryptor);
+        }
+        catch (Exception e){
+            channel.close();
+            throw e;
+        }
+    }
     @Override
     public InFileStreamProducer getSuccessor(long subOffset){
         return new InFileStreamProducer(file, initialOffset, subOffset, decryptor, mediaStartOffset, mediaEndOffset);
@@ -0,0 +1,71 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sequential stream over ISeekableSource. Skip costs nothing: it only moves position.
+ * */
+@NotThreadSafe
+public class SeekableSourceInputStream extends InputStream {
+    private final ISeekableSource source;
+    private long position;
+
+    public SeekableSourceInputStream(ISeekableSource source, long position){
+        this.source = source;
+        this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException{
+        byte[] one = new byte[1];
+        if (read(one, 0, 1) < 0)
+            return -1;
+        return one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException{
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        int read = source.read(position, b, off, len);
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n){
+        if (n <= 0)
+            return 0;
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException{
+        source.close();
+    }
+}
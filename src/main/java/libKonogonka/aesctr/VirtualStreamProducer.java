@@ -0,0 +1,79 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+
+/**
+ * Producer of images that don't exist as a continuous region of a file (patched, compressed, sparse NCA sections).
+ * Every stream and source gets own ISeekableSource from factory. Positions are counted since image beginning.
+ * produceSeekable() is not supported: use produceSource().
+ * */
+public class VirtualStreamProducer extends InFileStreamProducer {
+    private static final int BUFFER_SIZE = 0x80000;
+
+    public interface SourceFactory {
+        ISeekableSource open() throws Exception;
+    }
+
+    private final SourceFactory factory;
+    private final boolean encrypted;
+    private final long subOffset;
+
+    /**
+     * @param file file where image data is located. Used for naming only.
+     * @param encrypted true if image data is stored encrypted
+     * */
+    public VirtualStreamProducer(File file, SourceFactory factory, boolean encrypted){
+        this(file, factory, encrypted, 0);
+    }
+
+    private VirtualStreamProducer(File file, SourceFactory factory, boolean encrypted, long subOffset){
+        super(file, subOffset);
+        this.factory = factory;
+        this.encrypted = encrypted;
+        this.subOffset = subOffset;
+    }
+
+    @Override
+    public BufferedInputStream produce() throws Exception{
+        return new BufferedInputStream(new SeekableSourceInputStream(factory.open(), subOffset), BUFFER_SIZE);
+    }
+
+    @Override
+    public AesCtrSeekableChannel produceSeekable() throws Exception{
+        throw new Exception("Virtual image can't be read as a file channel: "+getFile().getName());
+    }
+
+    @Override
+    public ISeekableSource produceSource() throws Exception{
+        return factory.open();
+    }
+
+    @Override
+    public VirtualStreamProducer getSuccessor(long subOffset){
+        return new VirtualStreamProducer(getFile(), factory, encrypted, subOffset);
+    }
+
+    @Override
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+}
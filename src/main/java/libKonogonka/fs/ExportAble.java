@@ -7,6 +7,9 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 
 public abstract class ExportAble {
+    /** Multiple of 0x200 so AES-CTR streams decrypt whole chunk at once */
+    private static final int EXPORT_BLOCK_SIZE = 0x80000;
+
     protected BufferedInputStream stream;
 
     protected boolean export(String saveTo, String fileName, long skip, long size) throws Exception{
@@ -19,25 +22,26 @@ public abstract class ExportAble {
         try (BufferedOutputStream extractedFileBOS = new BufferedOutputStream(
                 Files.newOutputStream(Paths.get(saveTo+File.separator+fileName)))){
 
-            int blockSize = 0x200;
-            if (size < 0x200)
+            int blockSize = EXPORT_BLOCK_SIZE;
+            if (size < EXPORT_BLOCK_SIZE)
                 blockSize = (int) size;
 
             long i = 0;
             byte[] block = new byte[blockSize];
 
             int actuallyRead;
-            while (true) {
-                if ((actuallyRead = stream.read(block)) != blockSize)
-                    throw new Exception("Read failure. "+blockSize+"/"+actuallyRead);
-                extractedFileBOS.write(block);
-                i += blockSize;
-                if ((i + blockSize) > size) {
+            while (i < size) {
+                if (size - i < blockSize)
                     blockSize = (int) (size - i);
-                    if (blockSize == 0)
-                        break;
-                    block = new byte[blockSize];
+                actuallyRead = 0;
+                while (actuallyRead < blockSize) {
+                    int chunkSize = stream.read(block, actuallyRead, blockSize - actuallyRead);
+                    if (chunkSize < 0)
+                        throw new Exception("Read failure. "+blockSize+"/"+actuallyRead);
+                    actuallyRead += chunkSize;
                 }
+                extractedFileBOS.write(block, 0, blockSize);
+                i += blockSize;
             }
         }
         stream.close();
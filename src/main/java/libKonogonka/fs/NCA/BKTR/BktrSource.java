@@ -0,0 +1,181 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.MemoryMappedFile;
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.ISeekableSource;
+import net.jcip.annotations.NotThreadSafe;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads patched section: every request is split by relocation entries; base ranges are read from base section,
+ * patch ranges are read from update NCA and decrypted with IV of the subsection they belong to.
+ * */
+@NotThreadSafe
+class BktrSource implements ISeekableSource {
+    private static final int MAX_CHUNK_SIZE = 0x100000;
+    private static final long DEFAULT_GENERATION = -1;  // Generation from section FS header
+
+    private final BktrStorage storage;
+    private final ISeekableSource base;
+    private final FileChannel patch;
+    private final long patchFileSize;
+    private final Map<Long, AesCtrDecryptForMediaBlocks> decryptors = new HashMap<>();
+
+    private Cipher cipher;
+    private byte[] chunk;
+
+    BktrSource(BktrStorage storage) throws Exception{
+        this.storage = storage;
+        this.patch = MemoryMappedFile.openChannel(storage.getPatchFile());
+        try {
+            this.patchFileSize = patch.size();
+            this.base = storage.getBaseProducer().produceSource();
+        }
+        catch (Exception e){
+            patch.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(long offset, byte[] b, int off, int len) throws IOException{
+        if (offset < 0 || off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        long size = storage.getSize();
+        if (offset >= size)
+            return -1;
+        if (len > size - offset)
+            len = (int) (size - offset);
+
+        BucketTree relocations = storage.getRelocations();
+        int done = 0;
+        while (done < len){
+            long current = offset + done;
+            int relocation = relocations.find(current);
+            long shift = current - relocations.getOffset(relocation);
+            int chunkSize = (int) Math.min(len - done, relocations.getEntryEnd(relocation) - current);
+            long physicalOffset = storage.getPhysicalOffset(relocation) + shift;
+            if (storage.isFromPatch(relocation))
+                readPatch(physicalOffset, b, off + done, chunkSize);
+            else
+                readBase(physicalOffset, b, off + done, chunkSize);
+            done += chunkSize;
+        }
+        return len;
+    }
+
+    private void readBase(long physicalOffset, byte[] b, int off, int len) throws IOException{
+        int done = 0;
+        while (done < len){
+            int read = base.read(storage.getBaseSectionPosition() + physicalOffset + done, b, off + done, len - done);
+            if (read <= 0)
+                throw new IOException("Can't read base section at 0x"+Long.toHexString(physicalOffset + done));
+            done += read;
+        }
+    }
+
+    private void readPatch(long physicalOffset, byte[] b, int off, int len) throws IOException{
+        BucketTree subsections = storage.getSubsections();
+        int done = 0;
+        while (done < len){
+            long current = physicalOffset + done;
+            int subsection = subsections.find(current);
+            long generation;
+            long end;
+            if (subsection < 0){
+                generation = DEFAULT_GENERATION;
+                end = subsections.size() > 0 ? subsections.getOffset(0) : Long.MAX_VALUE;
+            }
+            else if (current >= subsections.getEndOffset()){
+                generation = DEFAULT_GENERATION;
+                end = Long.MAX_VALUE;
+            }
+            else {
+                generation = storage.getGeneration(subsection) & 0xFFFFFFFFL;
+                end = subsections.getEntryEnd(subsection);
+            }
+            int size = (int) Math.min(Math.min(len - done, end - current), MAX_CHUNK_SIZE - 0x10);
+            readDecrypted(current, generation, b, off + done, size);
+            done += size;
+        }
+    }
+
+    private void readDecrypted(long physicalOffset, long generation, byte[] b, int off, int len) throws IOException{
+        int headBytes = (int) (physicalOffset & 0xF);
+        int alignedLen = (headBytes + len + 0xF) & ~0xF;
+        if (chunk == null || chunk.length < alignedLen)
+            chunk = new byte[Math.min(MAX_CHUNK_SIZE, Math.max(alignedLen, 0x4000))];
+
+        long position = storage.getPatchSectionPosition() + physicalOffset - headBytes;
+        int toRead = (int) Math.min(alignedLen, patchFileSize - position);
+        if (toRead < headBytes + len)
+            throw new IOException("Can't read patch section at 0x"+Long.toHexString(physicalOffset));
+        ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, toRead);
+        while (buffer.hasRemaining()){
+            if (patch.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Can't read patch section at 0x"+Long.toHexString(physicalOffset));
+        }
+        try {
+            AesCtrDecryptForMediaBlocks decryptor = getDecryptor(generation);
+            if (cipher == null)
+                cipher = decryptor.createCipherAt(physicalOffset - headBytes);
+            else
+                decryptor.reinitCipherAt(cipher, physicalOffset - headBytes);
+            cipher.doFinal(chunk, 0, toRead, chunk, 0);
+        }
+        catch (Exception e){
+            throw new IOException(e);
+        }
+        System.arraycopy(chunk, headBytes, b, off, len);
+    }
+
+    private AesCtrDecryptForMediaBlocks getDecryptor(long generation) throws Exception{
+        AesCtrDecryptForMediaBlocks decryptor = decryptors.get(generation);
+        if (decryptor == null){
+            byte[] ctr = storage.getSectionCtr().clone();
+            if (generation != DEFAULT_GENERATION){
+                ctr[4] = (byte) (generation >>> 24);
+                ctr[5] = (byte) (generation >>> 16);
+                ctr[6] = (byte) (generation >>> 8);
+                ctr[7] = (byte) generation;
+            }
+            decryptor = new AesCtrDecryptForMediaBlocks(storage.getKey(), ctr, storage.getPatchMediaOffset());
+            decryptors.put(generation, decryptor);
+        }
+        return decryptor;
+    }
+
+    @Override
+    public void close() throws IOException{
+        try {
+            base.close();
+        }
+        finally {
+            patch.close();
+        }
+    }
+}
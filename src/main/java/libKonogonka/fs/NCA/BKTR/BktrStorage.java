@@ -0,0 +1,162 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.aesctr.*;
+import libKonogonka.fs.NCA.NCAHeaderTableEntry;
+import libKonogonka.fs.NCA.NCASectionTableBlock.NcaFsHeader;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.File;
+
+import static libKonogonka.Converter.getLEint;
+import static libKonogonka.Converter.getLElong;
+
+/**
+ * Patched section of update NCA (BKTR): virtual image assembled from base NCA section and update NCA section.
+ * Relocation table maps virtual ranges to base or patch section, subsection table defines AES-CTR generation
+ * for ranges of patch section. Both tables are loaded once into primitive arrays and searched by binary search;
+ * data is never copied to disk. Use getStreamProducer() to read it like regular section.
+ * <pre>
+ * Relocation entry (0x14): 0x0 long virtual offset, 0x8 long physical offset, 0x10 int storage (0 - base, 1 - patch)
+ * Subsection entry (0x10): 0x0 long physical offset, 0x8 int reserved, 0xC int generation (IV bytes 4-7)
+ * </pre>
+ * */
+@ThreadSafe
+public class BktrStorage {
+    static final int RELOCATION_ENTRY_SIZE = 0x14;
+    static final int SUBSECTION_ENTRY_SIZE = 0x10;
+
+    private final InFileStreamProducer baseProducer;
+    private final long baseSectionPosition;
+
+    private final File patchFile;
+    private final long patchSectionPosition;
+    private final long patchMediaOffset;
+    private final byte[] key;
+    private final byte[] sectionCtr;
+
+    private final BucketTree relocations;
+    private final long[] physicalOffsets;
+    private final boolean[] fromPatch;
+    private final BucketTree subsections;
+    private final int[] generations;
+
+    /**
+     * @param baseProducer producer of base NCA section stream
+     * @param baseSectionPosition position of base section start in stream baseProducer creates
+     * @param patchFile file that contains update NCA
+     * @param patchNcaOffset update NCA position in patchFile
+     * @param patchTableEntry update NCA section table entry
+     * @param patchFsHeader update NCA section FS header
+     * @param key decrypted key of update NCA section
+     * */
+    public BktrStorage(InFileStreamProducer baseProducer,
+                       long baseSectionPosition,
+                       File patchFile,
+                       long patchNcaOffset,
+                       NCAHeaderTableEntry patchTableEntry,
+                       NcaFsHeader patchFsHeader,
+                       byte[] key) throws Exception{
+        if (! "BKTR".equals(patchFsHeader.getPatchInfoMagicSection1())
+                || ! "BKTR".equals(patchFsHeader.getPatchInfoMagicSection2()))
+            throw new Exception("Section has no BKTR patch info");
+        if (key == null)
+            throw new Exception("No decrypted key provided for patch section");
+        this.baseProducer = baseProducer;
+        this.baseSectionPosition = baseSectionPosition;
+        this.patchFile = patchFile;
+        this.patchMediaOffset = patchTableEntry.getMediaStartOffset() * 0x200;
+        this.patchSectionPosition = patchNcaOffset + patchMediaOffset;
+        this.key = key;
+        this.sectionCtr = patchFsHeader.getSectionCTR();
+
+        InFileStreamProducer patchProducer = new InFileStreamProducer(patchFile, patchNcaOffset, 0,
+                new AesCtrDecryptForMediaBlocks(key, sectionCtr, patchMediaOffset),
+                patchTableEntry.getMediaStartOffset(), patchTableEntry.getMediaEndOffset());
+        byte[] relocationTable;
+        byte[] subsectionTable;
+        try (AesCtrSeekableChannel channel = patchProducer.produceSeekable()){
+            relocationTable = readTable(channel, patchFsHeader.getPatchInfoOffsetSection1(),
+                    patchFsHeader.getPatchInfoSizeSection1());
+            subsectionTable = readTable(channel, patchFsHeader.getPatchInfoOffsetSection2(),
+                    patchFsHeader.getPatchInfoSizeSection2());
+        }
+
+        this.relocations = new BucketTree(relocationTable, RELOCATION_ENTRY_SIZE,
+                patchFsHeader.getEntryCountSection1());
+        this.physicalOffsets = new long[relocations.size()];
+        this.fromPatch = new boolean[relocations.size()];
+        for (int i = 0; i < relocations.size(); i++){
+            int position = relocations.getEntryPosition(i);
+            physicalOffsets[i] = getLElong(relocationTable, position + 0x8);
+            fromPatch[i] = getLEint(relocationTable, position + 0x10) != 0;
+        }
+        if (relocations.size() == 0 || relocations.getOffset(0) != 0)
+            throw new Exception("BKTR relocation table doesn't start at virtual offset 0");
+
+        this.subsections = new BucketTree(subsectionTable, SUBSECTION_ENTRY_SIZE,
+                patchFsHeader.getEntryCountSection2());
+        this.generations = new int[subsections.size()];
+        for (int i = 0; i < subsections.size(); i++)
+            generations[i] = getLEint(subsectionTable, subsections.getEntryPosition(i) + 0xC);
+    }
+
+    private byte[] readTable(AesCtrSeekableChannel channel, long offset, long size) throws Exception{
+        if (size < 0 || size > Integer.MAX_VALUE)
+            throw new Exception("BKTR table size is not supported: "+size);
+        byte[] table = new byte[(int) size];
+        if (channel.read(patchSectionPosition + offset, table, 0, table.length) != table.length)
+            throw new Exception("Unable to read BKTR table at 0x"+Long.toHexString(offset));
+        return table;
+    }
+
+    /**
+     * @return size of patched (virtual) section
+     * */
+    public long getSize(){ return relocations.getEndOffset(); }
+    public int getRelocationEntriesCount(){ return relocations.size(); }
+    public int getSubsectionEntriesCount(){ return subsections.size(); }
+    /**
+     * @return new source of patched section data. Positions are counted from section start.
+     * */
+    public ISeekableSource open() throws Exception{
+        return new BktrSource(this);
+    }
+    /**
+     * @return producer of patched section streams. Positions are counted from section start.
+     * */
+    public VirtualStreamProducer getStreamProducer(){
+        return new VirtualStreamProducer(patchFile, this::open, true);
+    }
+
+    // Used by BktrSource
+    InFileStreamProducer getBaseProducer(){ return baseProducer; }
+    long getBaseSectionPosition(){ return baseSectionPosition; }
+    File getPatchFile(){ return patchFile; }
+    long getPatchSectionPosition(){ return patchSectionPosition; }
+    long getPatchMediaOffset(){ return patchMediaOffset; }
+    byte[] getKey(){ return key; }
+    byte[] getSectionCtr(){ return sectionCtr; }
+    BucketTree getRelocations(){ return relocations; }
+    long getPhysicalOffset(int relocation){ return physicalOffsets[relocation]; }
+    boolean isFromPatch(int relocation){ return fromPatch[relocation]; }
+    BucketTree getSubsections(){ return subsections; }
+    int getGeneration(int subsection){ return generations[subsection]; }
+}
@@ -0,0 +1,106 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import java.util.Arrays;
+
+import static libKonogonka.Converter.getLEint;
+import static libKonogonka.Converter.getLElong;
+
+/**
+ * Bucket tree as it's stored in NCA: offset node (0x4000 bytes: header and start offsets of entry sets) followed
+ * by entry set nodes (0x4000 bytes each: header and entries). Every entry starts with its 8-bytes offset.
+ * Entries of all sets are flattened into one sorted array of offsets, so lookup is a single binary search.
+ * <pre>
+ * Node header: 0x0 int index, 0x4 int entries (or sets) count, 0x8 long end offset
+ * </pre>
+ * */
+class BucketTree {
+    static final int NODE_SIZE = 0x4000;
+    private static final int NODE_HEADER_SIZE = 0x10;
+
+    private final long[] offsets;
+    private final int[] entryPositions;
+    private final long endOffset;
+
+    /**
+     * @param table decrypted bucket tree
+     * @param entrySize size of one entry in bytes
+     * @param expectedEntryCount entries count declared in BucketTreeHeader
+     * */
+    BucketTree(byte[] table, int entrySize, int expectedEntryCount) throws Exception{
+        if (table.length < NODE_SIZE)
+            throw new Exception("Bucket tree is too small: "+table.length);
+        int setsCount = getLEint(table, 0x4);
+        if (setsCount < 0 || setsCount > (NODE_SIZE - NODE_HEADER_SIZE) / 8
+                || table.length < (long) NODE_SIZE * (setsCount + 1))
+            throw new Exception("Bucket tree entry sets count is invalid: "+setsCount);
+        this.endOffset = getLElong(table, 0x8);
+
+        int maxEntriesInSet = (NODE_SIZE - NODE_HEADER_SIZE) / entrySize;
+        long[] collectedOffsets = new long[Math.max(0, Math.min(expectedEntryCount, setsCount * maxEntriesInSet))];
+        int[] collectedPositions = new int[collectedOffsets.length];
+        int count = 0;
+        for (int set = 0; set < setsCount; set++){
+            int setPosition = NODE_SIZE * (set + 1);
+            int entriesInSet = getLEint(table, setPosition + 0x4);
+            if (entriesInSet < 0 || entriesInSet > maxEntriesInSet || count + entriesInSet > collectedOffsets.length)
+                throw new Exception("Bucket tree entry set "+set+" has invalid entries count: "+entriesInSet);
+            long setStartOffset = getLElong(table, NODE_HEADER_SIZE + set * 8);
+            for (int i = 0; i < entriesInSet; i++){
+                int position = setPosition + NODE_HEADER_SIZE + i * entrySize;
+                long offset = getLElong(table, position);
+                if ((count > 0 && offset <= collectedOffsets[count - 1]) || (i == 0 && offset != setStartOffset))
+                    throw new Exception("Bucket tree entries are not ordered: entry set "+set+" entry "+i);
+                collectedOffsets[count] = offset;
+                collectedPositions[count] = position;
+                count++;
+            }
+        }
+        if (count != expectedEntryCount)
+            throw new Exception("Bucket tree entries count mismatch: "+count+" found while "+expectedEntryCount+" declared");
+        if (count > 0 && endOffset <= collectedOffsets[count - 1])
+            throw new Exception("Bucket tree end offset is invalid: "+endOffset);
+        this.offsets = collectedOffsets;
+        this.entryPositions = collectedPositions;
+    }
+
+    int size(){ return offsets.length; }
+    long getEndOffset(){ return endOffset; }
+    long getOffset(int entry){ return offsets[entry]; }
+    /**
+     * @return position of entry in table it was parsed from
+     * */
+    int getEntryPosition(int entry){ return entryPositions[entry]; }
+    /**
+     * @return offset where entry ends: next entry offset or end offset of the tree
+     * */
+    long getEntryEnd(int entry){
+        return entry + 1 < offsets.length ? offsets[entry + 1] : endOffset;
+    }
+    /**
+     * @return index of the last entry with offset less or equal to requested or -1 if there is no such entry
+     * */
+    int find(long offset){
+        int index = Arrays.binarySearch(offsets, offset);
+        if (index >= 0)
+            return index;
+        return -index - 2;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.aesctr.ISeekableSource;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads compressed section: every request is split by compression entries; stored blocks are read as is,
+ * zero blocks are filled without any I/O, LZ4 blocks are taken from storage cache or decompressed.
+ * */
+@NotThreadSafe
+class CompressedSource implements ISeekableSource {
+    private final CompressedStorage storage;
+    private final ISeekableSource source;
+
+    CompressedSource(CompressedStorage storage) throws Exception{
+        this.storage = storage;
+        this.source = storage.getProducer().produceSource();
+    }
+
+    @Override
+    public int read(long offset, byte[] b, int off, int len) throws IOException{
+        if (offset < 0 || off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        long size = storage.getSize();
+        if (offset >= size)
+            return -1;
+        if (len > size - offset)
+            len = (int) (size - offset);
+
+        BucketTree entries = storage.getEntries();
+        int done = 0;
+        while (done < len){
+            long current = offset + done;
+            int entry = entries.find(current);
+            long shift = current - entries.getOffset(entry);
+            int chunkSize = (int) Math.min(len - done, entries.getEntryEnd(entry) - current);
+            switch (storage.getType(entry)){
+                case CompressedStorage.TYPE_NONE:
+                    storage.readPhysical(source, storage.getPhysicalOffset(entry) + shift, b, off + done, chunkSize);
+                    break;
+                case CompressedStorage.TYPE_ZEROS:
+                    Arrays.fill(b, off + done, off + done + chunkSize, (byte) 0);
+                    break;
+                default:
+                    byte[] block = storage.getDecompressedBlock(entry, source);
+                    System.arraycopy(block, (int) shift, b, off + done, chunkSize);
+            }
+            done += chunkSize;
+        }
+        return len;
+    }
+
+    @Override
+    public void close() throws IOException{
+        source.close();
+    }
+}
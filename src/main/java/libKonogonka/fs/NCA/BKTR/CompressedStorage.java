@@ -0,0 +1,199 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.aesctr.VirtualStreamProducer;
+import libKonogonka.fs.NCA.NCASectionTableBlock.CompressionInfo;
+import net.jcip.annotations.ThreadSafe;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static libKonogonka.Converter.getLEint;
+import static libKonogonka.Converter.getLElong;
+
+/**
+ * Compressed NCA section: virtual (decompressed) image described by compression bucket tree. Every entry is a block
+ * stored as is, filled with zeroes or compressed with LZ4. Table is loaded once into primitive arrays; only blocks
+ * overlapping requested range are read and decompressed. Recently decompressed blocks are kept in small LRU cache
+ * shared by all sources of this storage.
+ * <pre>
+ * Compression entry (0x18): 0x0 long virtual offset, 0x8 long physical offset, 0x10 byte type (0 - none, 1 - zeroes,
+ * 3 - LZ4), 0x11 byte compression level, 0x12 short reserved, 0x14 int physical size
+ * </pre>
+ * */
+@ThreadSafe
+public class CompressedStorage {
+    static final int COMPRESSION_ENTRY_SIZE = 0x18;
+    static final byte TYPE_NONE = 0;
+    static final byte TYPE_ZEROS = 1;
+    static final byte TYPE_LZ4 = 3;
+
+    private static final int MAX_BLOCK_SIZE = 0x4000000;
+    private static final long CACHE_SIZE = 0x800000;
+    private static final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+    private final InFileStreamProducer producer;
+    private final long sectionPosition;
+
+    private final BucketTree entries;
+    private final long[] physicalOffsets;
+    private final byte[] types;
+    private final int[] physicalSizes;
+
+    private final LinkedHashMap<Integer, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final AtomicLong decompressedBlocksCount = new AtomicLong();
+
+    /**
+     * @param producer producer of decrypted section stream
+     * @param sectionPosition position of section start in stream producer creates
+     * @param compressionInfo compression info of the section FS header
+     * */
+    public CompressedStorage(InFileStreamProducer producer,
+                             long sectionPosition,
+                             CompressionInfo compressionInfo) throws Exception{
+        if (! "BKTR".equals(compressionInfo.getBktrMagic()))
+            throw new Exception("Section has no compression info");
+        if (compressionInfo.getSize() < 0 || compressionInfo.getSize() > Integer.MAX_VALUE)
+            throw new Exception("Compression table size is not supported: "+compressionInfo.getSize());
+        this.producer = producer;
+        this.sectionPosition = sectionPosition;
+
+        byte[] table = new byte[(int) compressionInfo.getSize()];
+        try (ISeekableSource source = producer.produceSource()){
+            int done = 0;
+            while (done < table.length){
+                int read = source.read(sectionPosition + compressionInfo.getOffset() + done, table, done,
+                        table.length - done);
+                if (read <= 0)
+                    throw new Exception("Unable to read compression table at 0x" +
+                            Long.toHexString(compressionInfo.getOffset()));
+                done += read;
+            }
+        }
+
+        this.entries = new BucketTree(table, COMPRESSION_ENTRY_SIZE, compressionInfo.getBktrEntryCount());
+        if (entries.size() == 0 || entries.getOffset(0) != 0)
+            throw new Exception("Compression table doesn't start at virtual offset 0");
+        this.physicalOffsets = new long[entries.size()];
+        this.types = new byte[entries.size()];
+        this.physicalSizes = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++){
+            int position = entries.getEntryPosition(i);
+            physicalOffsets[i] = getLElong(table, position + 0x8);
+            types[i] = table[position + 0x10];
+            physicalSizes[i] = getLEint(table, position + 0x14);
+            long virtualSize = entries.getEntryEnd(i) - entries.getOffset(i);
+            switch (types[i]){
+                case TYPE_NONE:
+                    if (physicalSizes[i] != virtualSize)
+                        throw new Exception("Compression entry "+i+" is not compressed but sizes mismatch: " +
+                                physicalSizes[i]+" / "+virtualSize);
+                    break;
+                case TYPE_ZEROS:
+                    break;
+                case TYPE_LZ4:
+                    if (virtualSize > MAX_BLOCK_SIZE || physicalSizes[i] < 0)
+                        throw new Exception("Compression entry "+i+" has unsupported size: "+virtualSize);
+                    break;
+                default:
+                    throw new Exception("Compression entry "+i+" has unsupported type: "+types[i]);
+            }
+        }
+    }
+
+    /**
+     * @return size of decompressed (virtual) section
+     * */
+    public long getSize(){ return entries.getEndOffset(); }
+    public int getEntriesCount(){ return entries.size(); }
+    /**
+     * @return new source of decompressed section data. Positions are counted from section start.
+     * */
+    public ISeekableSource open() throws Exception{
+        return new CompressedSource(this);
+    }
+    /**
+     * @return producer of decompressed section streams. Positions are counted from section start.
+     * */
+    public VirtualStreamProducer getStreamProducer(){
+        return new VirtualStreamProducer(producer.getFile(), this::open, producer.isEncrypted());
+    }
+
+    /**
+     * @return decompressed block of LZ4 entry, cached or read by provided source
+     * */
+    byte[] getDecompressedBlock(int entry, ISeekableSource source) throws IOException{
+        synchronized (blocks){
+            byte[] block = blocks.get(entry);
+            if (block != null)
+                return block;
+        }
+        byte[] compressed = new byte[physicalSizes[entry]];
+        readPhysical(source, physicalOffsets[entry], compressed, 0, compressed.length);
+        byte[] block = new byte[(int) (entries.getEntryEnd(entry) - entries.getOffset(entry))];
+        int decompressedLength;
+        try {
+            decompressedLength = decompressor.decompress(compressed, 0, compressed.length, block, 0);
+        }
+        catch (Exception e){
+            throw new IOException("Unable to decompress block at 0x"+Long.toHexString(entries.getOffset(entry)), e);
+        }
+        if (decompressedLength != block.length)
+            throw new IOException("Decompression failure. Expected vs. actual decompressed sizes mismatch: " +
+                    block.length + " / " + decompressedLength);
+        decompressedBlocksCount.incrementAndGet();
+
+        synchronized (blocks){
+            if (blocks.put(entry, block) == null)
+                cachedBytes += block.length;
+            Iterator<byte[]> iterator = blocks.values().iterator();
+            while (cachedBytes > CACHE_SIZE && blocks.size() > 1){
+                cachedBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+        return block;
+    }
+
+    void readPhysical(ISeekableSource source, long physicalOffset, byte[] b, int off, int len) throws IOException{
+        int done = 0;
+        while (done < len){
+            int read = source.read(sectionPosition + physicalOffset + done, b, off + done, len - done);
+            if (read <= 0)
+                throw new IOException("Can't read compressed section at 0x"+Long.toHexString(physicalOffset + done));
+            done += read;
+        }
+    }
+
+    // Used by CompressedSource
+    InFileStreamProducer getProducer(){ return producer; }
+    BucketTree getEntries(){ return entries; }
+    long getPhysicalOffset(int entry){ return physicalOffsets[entry]; }
+    byte getType(int entry){ return types[entry]; }
+    long getDecompressedBlocksCount(){ return decompressedBlocksCount.get(); }
+}
@@ -0,0 +1,134 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.MemoryMappedFile;
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.ISeekableSource;
+import net.jcip.annotations.NotThreadSafe;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads sparse section: every request is split by sparse entries; holes are filled with zeroes right away,
+ * stored ranges are read from physical storage and decrypted at their virtual offsets.
+ * File is opened on first read of stored range, so reading holes only never touches the disk.
+ * */
+@NotThreadSafe
+class SparseSource implements ISeekableSource {
+    private static final int MAX_CHUNK_SIZE = 0x100000;
+
+    private final SparseStorage storage;
+    private final AesCtrDecryptForMediaBlocks decryptor;
+
+    private FileChannel channel;
+    private Cipher cipher;
+    private byte[] chunk;
+
+    SparseSource(SparseStorage storage) throws Exception{
+        this.storage = storage;
+        if (storage.getKey() == null)
+            this.decryptor = null;
+        else
+            this.decryptor = new AesCtrDecryptForMediaBlocks(storage.getKey(), storage.getSectionCtr(),
+                    storage.getMediaOffset());
+    }
+
+    @Override
+    public int read(long offset, byte[] b, int off, int len) throws IOException{
+        if (offset < 0 || off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        long size = storage.getSize();
+        if (offset >= size)
+            return -1;
+        if (len > size - offset)
+            len = (int) (size - offset);
+
+        BucketTree entries = storage.getEntries();
+        int done = 0;
+        while (done < len){
+            long current = offset + done;
+            int entry = entries.find(current);
+            int chunkSize = (int) Math.min(len - done, entries.getEntryEnd(entry) - current);
+            if (storage.isHole(entry))
+                Arrays.fill(b, off + done, off + done + chunkSize, (byte) 0);
+            else
+                readStored(current, storage.getPhysicalOffset(entry) + current - entries.getOffset(entry),
+                        b, off + done, chunkSize);
+            done += chunkSize;
+        }
+        return len;
+    }
+
+    private void readStored(long virtualOffset, long physicalOffset, byte[] b, int off, int len) throws IOException{
+        if (channel == null)
+            channel = MemoryMappedFile.openChannel(storage.getFile());
+        int done = 0;
+        while (done < len){
+            int size = Math.min(len - done, MAX_CHUNK_SIZE - 0x10);
+            if (decryptor == null)
+                readRaw(storage.getPhysicalPosition() + physicalOffset + done, b, off + done, size);
+            else
+                readDecrypted(virtualOffset + done, physicalOffset + done, b, off + done, size);
+            done += size;
+        }
+    }
+
+    private void readRaw(long position, byte[] b, int off, int len) throws IOException{
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()){
+            if (channel.read(buffer, position + buffer.position() - off) < 0)
+                throw new IOException("Can't read sparse section data at 0x"+Long.toHexString(position));
+        }
+    }
+
+    private void readDecrypted(long virtualOffset, long physicalOffset, byte[] b, int off, int len) throws IOException{
+        int headBytes = (int) (virtualOffset & 0xF);
+        int alignedLen = (headBytes + len + 0xF) & ~0xF;
+        if (chunk == null || chunk.length < alignedLen)
+            chunk = new byte[Math.min(MAX_CHUNK_SIZE, Math.max(alignedLen, 0x4000))];
+
+        long position = storage.getPhysicalPosition() + physicalOffset - headBytes;
+        int toRead = (int) Math.min(alignedLen, channel.size() - position);
+        if (toRead < headBytes + len)
+            throw new IOException("Can't read sparse section data at 0x"+Long.toHexString(physicalOffset));
+        readRaw(position, chunk, 0, toRead);
+        try {
+            if (cipher == null)
+                cipher = decryptor.createCipherAt(virtualOffset - headBytes);
+            else
+                decryptor.reinitCipherAt(cipher, virtualOffset - headBytes);
+            cipher.doFinal(chunk, 0, toRead, chunk, 0);
+        }
+        catch (Exception e){
+            throw new IOException(e);
+        }
+        System.arraycopy(chunk, headBytes, b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException{
+        if (channel != null)
+            channel.close();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.MemoryMappedFile;
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.VirtualStreamProducer;
+import libKonogonka.fs.NCA.NCAHeaderTableEntry;
+import libKonogonka.fs.NCA.NCASectionTableBlock.NcaFsHeader;
+import libKonogonka.fs.NCA.NCASectionTableBlock.SparseInfo;
+import net.jcip.annotations.ThreadSafe;
+
+import javax.crypto.Cipher;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static libKonogonka.Converter.getLEint;
+import static libKonogonka.Converter.getLElong;
+
+/**
+ * Sparse NCA section: only non-empty ranges of the section are stored in NCA. Sparse bucket tree maps virtual
+ * (section) ranges to physical ranges stored at SparseInfo physical offset or to holes. Holes are served as zeroes
+ * without any I/O or decryption. Stored ranges are decrypted with section key and CTR at their virtual offsets,
+ * as if section was complete. Bucket tree itself is encrypted with section CTR where generation is replaced by
+ * sparse generation.
+ * <pre>
+ * Sparse entry (0x14): 0x0 long virtual offset, 0x8 long physical offset, 0x10 int storage (0 - data, 1 - hole)
+ * </pre>
+ * */
+@ThreadSafe
+public class SparseStorage {
+    static final int SPARSE_ENTRY_SIZE = 0x14;
+
+    private final File file;
+    private final long physicalPosition;
+    private final long mediaOffset;
+    private final byte[] key;
+    private final byte[] sectionCtr;
+
+    private final BucketTree entries;
+    private final long[] physicalOffsets;
+    private final boolean[] holes;
+
+    /**
+     * @param file file that contains NCA
+     * @param ncaOffset NCA position in file
+     * @param tableEntry NCA section table entry
+     * @param fsHeader NCA section FS header
+     * @param key decrypted key of the section or null if section is not encrypted
+     * */
+    public SparseStorage(File file,
+                         long ncaOffset,
+                         NCAHeaderTableEntry tableEntry,
+                         NcaFsHeader fsHeader,
+                         byte[] key) throws Exception{
+        SparseInfo sparseInfo = fsHeader.getSparseInfo();
+        if (! "BKTR".equals(sparseInfo.getBktrMagic()))
+            throw new Exception("Section has no sparse info");
+        if (sparseInfo.getSize() < 0 || sparseInfo.getSize() > Integer.MAX_VALUE)
+            throw new Exception("Sparse table size is not supported: "+sparseInfo.getSize());
+        if (fsHeader.getCryptoType() != 0x01 && key == null)
+            throw new Exception("No decrypted key provided for sparse section");
+        this.file = file;
+        this.physicalPosition = ncaOffset + sparseInfo.getPhysicalOffset();
+        this.mediaOffset = tableEntry.getMediaStartOffset() * 0x200;
+        this.key = fsHeader.getCryptoType() == 0x01 ? null : key;
+        this.sectionCtr = fsHeader.getSectionCTR();
+
+        byte[] table = new byte[(int) sparseInfo.getSize()];
+        try (FileChannel channel = MemoryMappedFile.openChannel(file)){
+            ByteBuffer buffer = ByteBuffer.wrap(table);
+            while (buffer.hasRemaining()){
+                if (channel.read(buffer, physicalPosition + sparseInfo.getOffset() + buffer.position()) < 0)
+                    throw new Exception("Unable to read sparse table at 0x"+Long.toHexString(sparseInfo.getOffset()));
+            }
+        }
+        if (this.key != null){
+            Cipher cipher = new AesCtrDecryptForMediaBlocks(key, makeTableCtr(sectionCtr, sparseInfo), 0)
+                    .createCipherAt(sparseInfo.getPhysicalOffset() + sparseInfo.getOffset());
+            cipher.doFinal(table, 0, table.length, table, 0);
+        }
+
+        this.entries = new BucketTree(table, SPARSE_ENTRY_SIZE, sparseInfo.getBktrEntryCount());
+        if (entries.size() == 0 || entries.getOffset(0) != 0)
+            throw new Exception("Sparse table doesn't start at virtual offset 0");
+        this.physicalOffsets = new long[entries.size()];
+        this.holes = new boolean[entries.size()];
+        for (int i = 0; i < entries.size(); i++){
+            int position = entries.getEntryPosition(i);
+            physicalOffsets[i] = getLElong(table, position + 0x8);
+            holes[i] = getLEint(table, position + 0x10) != 0;
+        }
+    }
+    /**
+     * Sparse generation (16 bits) replaces section generation as its upper half
+     * */
+    private static byte[] makeTableCtr(byte[] sectionCtr, SparseInfo sparseInfo){
+        byte[] ctr = sectionCtr.clone();
+        byte[] generation = sparseInfo.getGeneration();
+        ctr[4] = generation[1];
+        ctr[5] = generation[0];
+        ctr[6] = 0;
+        ctr[7] = 0;
+        return ctr;
+    }
+
+    /**
+     * @return size of virtual section
+     * */
+    public long getSize(){ return entries.getEndOffset(); }
+    public int getEntriesCount(){ return entries.size(); }
+    /**
+     * @return new source of section data. Positions are counted from section start.
+     * */
+    public ISeekableSource open() throws Exception{
+        return new SparseSource(this);
+    }
+    /**
+     * @return producer of section streams. Positions are counted from section start.
+     * */
+    public VirtualStreamProducer getStreamProducer(){
+        return new VirtualStreamProducer(file, this::open, key != null);
+    }
+
+    // Used by SparseSource
+    File getFile(){ return file; }
+    long getPhysicalPosition(){ return physicalPosition; }
+    long getMediaOffset(){ return mediaOffset; }
+    byte[] getKey(){ return key; }
+    byte[] getSectionCtr(){ return sectionCtr; }
+    BucketTree getEntries(){ return entries; }
+    long getPhysicalOffset(int entry){ return physicalOffsets[entry]; }
+    boolean isHole(int entry){ return holes[entry]; }
+}
@@ -18,19 +18,22 @@
 */
 package libKonogonka.fs.NCA;
 
+import libKonogonka.fs.NCA.BKTR.BktrStorage;
+import libKonogonka.fs.NCA.BKTR.CompressedStorage;
+import libKonogonka.fs.NCA.BKTR.SparseStorage;
 import libKonogonka.fs.NCA.NCASectionTableBlock.NcaFsHeader;
 import libKonogonka.fs.PFS0.PFS0Provider;
+import libKonogonka.fs.RomFs.IVFCVerifier;
 import libKonogonka.fs.RomFs.RomFsProvider;
-import libKonogonka.aesctr.AesCtrBufferedInputStream;
 import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.AesCtrParallelExporter;
 import libKonogonka.aesctr.InFileStreamProducer;
 import libKonogonka.exceptions.EmptySectionException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 public class NCAContent {
     private final static Logger log = LogManager.getLogger(NCAContent.class);
@@ -43,6 +46,8 @@ public class NCAContent {
 
     private PFS0Provider pfs0;
     private RomFsProvider romfs;
+    private SparseStorage sparseStorage;
+    private CompressedStorage compressedStorage;
 
     // TODO: if decryptedKey is empty, throw exception?
     public NCAContent(File file,
@@ -59,6 +64,12 @@ public class NCAContent {
         // If nothing to do
         if (ncaHeaderTableEntry.getMediaEndOffset() == 0)
             throw new EmptySectionException("Empty section");
+        if (isSparse())
+            this.sparseStorage = new SparseStorage(file, ncaOffsetPosition, ncaHeaderTableEntry, ncaFsHeader,
+                    decryptedKey);
+        if (isCompressed())
+            this.compressedStorage = new CompressedStorage(makeSectionProducer(), makeSectionPosition(),
+                    ncaFsHeader.getCompressionInfo());
         // If it's PFS0Provider
         if (ncaFsHeader.getSuperBlockPFS0() != null)
             this.proceedPFS0();
@@ -81,6 +92,10 @@ public class NCAContent {
         }
     }
     private void proceedPFS0NotEncrypted() throws Exception{
+        if (isVirtual()){
+            pfs0 = new PFS0Provider(makeDataProducer(), 0, ncaFsHeader.getSuperBlockPFS0(), 0);
+            return;
+        }
         InFileStreamProducer producer = new InFileStreamProducer(file); // no need to bypass ncaOffsetPosition!
         pfs0 = new PFS0Provider(producer,
                 makeOffsetPositionInFile(),
@@ -89,6 +104,10 @@ public class NCAContent {
     }
 
     private void proceedPFS0Encrypted() throws Exception{
+        if (isVirtual()){
+            pfs0 = new PFS0Provider(makeDataProducer(), 0, ncaFsHeader.getSuperBlockPFS0(), 0);
+            return;
+        }
         pfs0 = new PFS0Provider(makeEncryptedProducer(), makeOffsetPositionInFile(), ncaFsHeader.getSuperBlockPFS0(),
                 ncaHeaderTableEntry.getMediaStartOffset());
     }
@@ -101,6 +120,8 @@ public class NCAContent {
             case 0x03:
                 proceedRomFsEncrypted();
                 break;
+            case 0x04:  // BKTR: RomFS is available only along with base NCA, see getPatchedRomfs()
+                break;
             default:
                 throw new Exception("Non-supported 'Crypto type' "+ncaFsHeader.getCryptoType());
         }
@@ -112,11 +133,78 @@ public class NCAContent {
         if (decryptedKey == null)
             throw new Exception("CryptoSection03: unable to proceed. No decrypted key provided.");
 
+        if (isVirtual()){
+            this.romfs = new RomFsProvider(makeDataProducer(),
+                    ncaFsHeader.getSuperBlockIVFC().getLvl6Offset(), 0, 0);
+            return;
+        }
         this.romfs = new RomFsProvider(makeEncryptedProducer(), ncaFsHeader.getSuperBlockIVFC().getLvl6Offset(),
                 makeOffsetPositionInFile(), ncaHeaderTableEntry.getMediaStartOffset());
     }
     public PFS0Provider getPfs0() { return pfs0; }
     public RomFsProvider getRomfs() { return romfs; }
+    /**
+     * @return true if it's a section of update NCA that must be applied on top of base NCA section (BKTR)
+     * */
+    public boolean isPatch(){
+        return ncaFsHeader.getCryptoType() == 0x04;
+    }
+    /**
+     * @return true if section data is compressed (has compression bucket tree)
+     * */
+    public boolean isCompressed(){
+        return "BKTR".equals(ncaFsHeader.getCompressionInfo().getBktrMagic())
+                && ncaFsHeader.getCompressionInfo().getBktrEntryCount() > 0;
+    }
+    /**
+     * @return decompressed view of the section or null if section is not compressed
+     * */
+    public CompressedStorage getCompressedStorage(){ return compressedStorage; }
+    /**
+     * @return true if only non-empty ranges of the section are stored in NCA (has sparse bucket tree)
+     * */
+    public boolean isSparse(){
+        return "BKTR".equals(ncaFsHeader.getSparseInfo().getBktrMagic())
+                && ncaFsHeader.getSparseInfo().getBktrEntryCount() > 0;
+    }
+    /**
+     * @return sparse view of the section or null if section is not sparse
+     * */
+    public SparseStorage getSparseStorage(){ return sparseStorage; }
+    /**
+     * @return true if section data is not a plain region of the file: section is sparse and/or compressed
+     * */
+    private boolean isVirtual(){
+        return sparseStorage != null || compressedStorage != null;
+    }
+    /**
+     * Overlay this update (BKTR) section onto base NCA section. Nothing is written to disk.
+     * @param base RomFS section of base NCA
+     * */
+    public BktrStorage getBktrStorage(NCAContent base) throws Exception{
+        if (! isPatch())
+            throw new Exception("Section is not a patch (BKTR) section");
+        if (base.getRomfs() == null)
+            throw new Exception("Base NCA section has no RomFS");
+        return new BktrStorage(base.makeDataProducer(), base.makeDataPosition(),
+                file, ncaOffsetPosition, ncaHeaderTableEntry, ncaFsHeader, decryptedKey);
+    }
+    /**
+     * @param base RomFS section of base NCA
+     * @return RomFS of the patched game
+     * */
+    public RomFsProvider getPatchedRomfs(NCAContent base) throws Exception{
+        BktrStorage storage = getBktrStorage(base);
+        return new RomFsProvider(storage.getStreamProducer(), ncaFsHeader.getSuperBlockIVFC().getLvl6Offset(), 0, 0);
+    }
+    /**
+     * @return verifier of RomFS section integrity (IVFC hash tree)
+     * */
+    public IVFCVerifier getIVFCVerifier() throws Exception{
+        if (romfs == null)
+            throw new Exception("IVFC verification is available for RomFS sections only");
+        return new IVFCVerifier(makeDataProducer(), makeDataPosition(), ncaFsHeader.getSuperBlockIVFC());
+    }
 
     private InFileStreamProducer makeEncryptedProducer() throws Exception{
         AesCtrDecryptForMediaBlocks decryptor = new AesCtrDecryptForMediaBlocks(decryptedKey, ncaFsHeader.getSectionCTR(),
@@ -124,6 +212,32 @@ public class NCAContent {
         return new InFileStreamProducer(file, ncaOffsetPosition, 0, decryptor,
                 ncaHeaderTableEntry.getMediaStartOffset(), ncaHeaderTableEntry.getMediaEndOffset());
     }
+    /**
+     * @return producer of decrypted section data: sparse view if section is sparse
+     * */
+    private InFileStreamProducer makeSectionProducer() throws Exception{
+        if (sparseStorage != null)
+            return sparseStorage.getStreamProducer();
+        if (ncaFsHeader.getCryptoType() == 0x01)
+            return new InFileStreamProducer(file);
+        if (decryptedKey == null)
+            throw new Exception("Unable to proceed section. No decrypted key provided.");
+        return makeEncryptedProducer();
+    }
+    /**
+     * @return producer of section data as file system sees it: decompressed if section is compressed
+     * */
+    private InFileStreamProducer makeDataProducer() throws Exception{
+        if (compressedStorage != null)
+            return compressedStorage.getStreamProducer();
+        return makeSectionProducer();
+    }
+    private long makeSectionPosition(){
+        return sparseStorage != null ? 0 : makeOffsetPositionInFile();
+    }
+    private long makeDataPosition(){
+        return compressedStorage != null ? 0 : makeSectionPosition();
+    }
     private long makeOffsetPositionInFile(){
         return ncaOffsetPosition + ncaHeaderTableEntry.getMediaStartOffset() * 0x200;
     }
@@ -132,47 +246,45 @@ public class NCAContent {
      * Not so good for PFS0 since there are SHAs list that discourages but good for 'romfs' and things like that
      * */
     public boolean exportMediaBlock(String saveToLocation){
+        return exportMediaBlock(saveToLocation, ForkJoinPool.commonPool());
+    }
+    /**
+     * Export NCA content AS IS. Decryption is split into chunks processed in parallel at provided pool.
+     * */
+    public boolean exportMediaBlock(String saveToLocation, ForkJoinPool pool){
         File location = new File(saveToLocation);
         location.mkdirs();
-        BufferedInputStream stream;
-
-        long mediaStartOffset = ncaHeaderTableEntry.getMediaStartOffset();
-        long mediaEndOffset = ncaHeaderTableEntry.getMediaEndOffset();
-        long mediaBlocksCount = mediaEndOffset - mediaStartOffset;
-
-        try (BufferedOutputStream extractedFileBOS = new BufferedOutputStream(
-                Files.newOutputStream(Paths.get(saveToLocation+File.separator+file.getName()+"_MediaBlock.bin")))){
-            if(ncaFsHeader.getCryptoType()==0x01){
-                stream = new BufferedInputStream(Files.newInputStream(file.toPath()));
-            }
-            else if(ncaFsHeader.getCryptoType()==0x03) {
-                AesCtrDecryptForMediaBlocks decryptor = new AesCtrDecryptForMediaBlocks(decryptedKey,
-                        ncaFsHeader.getSectionCTR(),
-                        mediaStartOffset * 0x200);
-
-                stream = new AesCtrBufferedInputStream(decryptor,
-                        ncaOffsetPosition,
-                        mediaStartOffset,
-                        mediaEndOffset,
-                        Files.newInputStream(file.toPath()),
-                        Files.size(file.toPath()));
-            }
-            else
-                throw new Exception("Crypto type not supported");
-
-            for (int i = 0; i < mediaBlocksCount; i++){
-                byte[] block = new byte[0x200];
-                if (0x200 != stream.read(block))
-                    throw new Exception("Read failure");
-                extractedFileBOS.write(block);
-            }
-            stream.close();
+        try {
+            exportMediaBlock(new File(saveToLocation+File.separator+file.getName()+"_MediaBlock.bin"), pool);
         } catch (Exception e) {
             log.error("Failed to export MediaBlock", e);
             return false;
         }
         return true;
     }
+    /**
+     * Decrypt NCA content into file.
+     * @param saveTo file to write to. Will be overwritten.
+     * @param pool pool to run decryption at
+     * */
+    public void exportMediaBlock(File saveTo, ForkJoinPool pool) throws Exception{
+        long mediaStartOffset = ncaHeaderTableEntry.getMediaStartOffset();
+        AesCtrParallelExporter exporter;
+
+        if(ncaFsHeader.getCryptoType()==0x01){
+            exporter = new AesCtrParallelExporter(pool);
+        }
+        else if(ncaFsHeader.getCryptoType()==0x03) {
+            AesCtrDecryptForMediaBlocks decryptor = new AesCtrDecryptForMediaBlocks(decryptedKey,
+                    ncaFsHeader.getSectionCTR(),
+                    mediaStartOffset * 0x200);
+            exporter = new AesCtrParallelExporter(decryptor, ncaOffsetPosition, mediaStartOffset, pool);
+        }
+        else
+            throw new Exception("Crypto type not supported");
+
+        exporter.export(file, makeOffsetPositionInFile(), getRawDataContentSize(), saveTo);
+    }
 
     public long getRawDataContentSize(){
         return (ncaHeaderTableEntry.getMediaEndOffset() - ncaHeaderTableEntry.getMediaStartOffset()) * 0x200;
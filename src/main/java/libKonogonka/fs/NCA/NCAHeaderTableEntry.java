@@ -23,23 +23,25 @@ import libKonogonka.Converter;
 import java.util.Arrays;
 
 public class NCAHeaderTableEntry {
-    private final long mediaStartOffset;
-    private final long mediaEndOffset;
-    private final byte[] unknwn1;
-    private final byte[] unknwn2;
+    private final byte[] raw;
+    private final int offset;
 
     public NCAHeaderTableEntry(byte[] table) throws Exception{
-        if (table.length < 0x10)
+        this(table, 0);
+    }
+    /**
+     * View of 0x10 bytes of section table entry starting at offset. Fields are decoded on request;
+     * buffer is not copied and must not be changed afterwards.
+     * */
+    public NCAHeaderTableEntry(byte[] table, int offset) throws Exception{
+        if (offset < 0 || table.length - offset < 0x10)
             throw new Exception("Section Table size is too small.");
-
-        this.mediaStartOffset = Converter.getLElongOfInt(table, 0);
-        this.mediaEndOffset = Converter.getLElongOfInt(table, 0x4);
-        this.unknwn1 = Arrays.copyOfRange(table, 0x8, 0xC);
-        this.unknwn2 = Arrays.copyOfRange(table, 0xC, 0x10);
+        this.raw = table;
+        this.offset = offset;
     }
 
-    public long getMediaStartOffset() { return mediaStartOffset; }
-    public long getMediaEndOffset() { return mediaEndOffset; }
-    public byte[] getUnknwn1() { return unknwn1; }
-    public byte[] getUnknwn2() { return unknwn2; }
-}
\ No newline at end of file
+    public long getMediaStartOffset() { return Converter.getLElongOfInt(raw, offset); }
+    public long getMediaEndOffset() { return Converter.getLElongOfInt(raw, offset + 0x4); }
+    public byte[] getUnknwn1() { return Arrays.copyOfRange(raw, offset + 0x8, offset + 0xC); }
+    public byte[] getUnknwn2() { return Arrays.copyOfRange(raw, offset + 0xC, offset + 0x10); }
+}
@@ -30,29 +30,31 @@ import static libKonogonka.Converter.getLEint;
 public class BucketTreeHeader {
     private final static Logger log = LogManager.getLogger(BucketTreeHeader.class);
 
-    private final String magic;
-    private final int version;
-    private final int entryCount;
-    private final byte[] unknown;
+    private final byte[] raw;
+    private final int offset;
 
     BucketTreeHeader(byte[] rawBytes){
-        this.magic = new String(Arrays.copyOfRange(rawBytes, 0x0, 0x4), StandardCharsets.US_ASCII);
-        this.version = getLEint(rawBytes, 0x4);
-        this.entryCount = getLEint(rawBytes, 0x8);
-        this.unknown = Arrays.copyOfRange(rawBytes, 0xc, 0x10);
+        this(rawBytes, 0);
+    }
+    /**
+     * View of 0x10 bytes starting at offset. Fields are decoded on request; buffer is not copied.
+     * */
+    BucketTreeHeader(byte[] raw, int offset){
+        this.raw = raw;
+        this.offset = offset;
     }
 
-    public String getMagic() {return magic;}
-    public int getVersion() {return version;}
-    public int getEntryCount() {return entryCount;}
-    public byte[] getUnknown() {return unknown;}
+    public String getMagic() {return new String(raw, offset, 0x4, StandardCharsets.US_ASCII);}
+    public int getVersion() {return getLEint(raw, offset + 0x4);}
+    public int getEntryCount() {return getLEint(raw, offset + 0x8);}
+    public byte[] getUnknown() {return Arrays.copyOfRange(raw, offset + 0xc, offset + 0x10);}
 
     public void printDebug(){
         log.debug("BucketTreeHeader\n" +
-                "Magic       : " + magic  + "\n" +
-                "Version     : " + version  + "\n" +
-                "EntryCount  :" + entryCount  + "\n" +
-                "Unknown     :" + Converter.byteArrToHexStringAsLE(unknown) + "\n"
+                "Magic       : " + getMagic()  + "\n" +
+                "Version     : " + getVersion()  + "\n" +
+                "EntryCount  :" + getEntryCount()  + "\n" +
+                "Unknown     :" + Converter.byteArrToHexStringAsLE(getUnknown()) + "\n"
         );
     }
 }
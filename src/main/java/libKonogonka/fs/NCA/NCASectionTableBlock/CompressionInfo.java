@@ -29,31 +29,35 @@ import static libKonogonka.Converter.getLElong;
 public class CompressionInfo {
     private final static Logger log = LogManager.getLogger(CompressionInfo.class);
 
-    private final long offset;
-    private final long size;
+    private final byte[] raw;
+    private final int offset;
     private final BucketTreeHeader bktr;
-    private final byte[] unknown;
 
     CompressionInfo(byte[] rawTable){
-        offset = getLElong(rawTable, 0);
-        size = getLElong(rawTable, 0x8);
-        bktr = new BucketTreeHeader(Arrays.copyOfRange(rawTable, 0x10, 0x20));
-        unknown = Arrays.copyOfRange(rawTable, 0x20, 0x28);
+        this(rawTable, 0);
+    }
+    /**
+     * View of 0x28 bytes starting at offset. Fields are decoded on request; buffer is not copied.
+     * */
+    CompressionInfo(byte[] raw, int offset){
+        this.raw = raw;
+        this.offset = offset;
+        this.bktr = new BucketTreeHeader(raw, offset + 0x10);
     }
 
-    public long getOffset() {return offset;}
-    public long getSize() {return size;}
+    public long getOffset() {return getLElong(raw, offset);}
+    public long getSize() {return getLElong(raw, offset + 0x8);}
     public String getBktrMagic() { return bktr.getMagic(); }
     public int getBktrVersion() { return bktr.getVersion(); }
     public int getBktrEntryCount() { return bktr.getEntryCount(); }
     public byte[] getBktrUnknown() { return bktr.getUnknown(); }
-    public byte[] getUnknown() {return unknown;}
+    public byte[] getUnknown() {return Arrays.copyOfRange(raw, offset + 0x20, offset + 0x28);}
 
     public void printDebug(){
         log.debug("CompressionInfo:\n" +
-                "Offset    : " + offset + "\n" +
-                "Size      : " + size + "\n");
+                "Offset    : " + getOffset() + "\n" +
+                "Size      : " + getSize() + "\n");
         bktr.printDebug();
-        log.debug("\nUnknown   : " + Converter.byteArrToHexStringAsLE(unknown));
+        log.debug("\nUnknown   : " + Converter.byteArrToHexStringAsLE(getUnknown()));
     }
 }
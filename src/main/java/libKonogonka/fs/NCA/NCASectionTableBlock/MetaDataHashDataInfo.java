@@ -29,25 +29,29 @@ import static libKonogonka.Converter.getLElong;
 public class MetaDataHashDataInfo {
     private final static Logger log = LogManager.getLogger(MetaDataHashDataInfo.class);
 
-    private final long offset;
-    private final long size;
-    private final byte[] tableHash;
+    private final byte[] raw;
+    private final int offset;
 
     MetaDataHashDataInfo(byte[] rawTable){
-        this.offset = getLElong(rawTable, 0);
-        this.size = getLElong(rawTable, 0x8);
-        this.tableHash = Arrays.copyOfRange(rawTable, 0x10, 0x20);
+        this(rawTable, 0);
+    }
+    /**
+     * View of 0x30 bytes starting at offset. Fields are decoded on request; buffer is not copied.
+     * */
+    MetaDataHashDataInfo(byte[] raw, int offset){
+        this.raw = raw;
+        this.offset = offset;
     }
 
-    public long getOffset() {return offset;}
-    public long getSize() {return size;}
-    public byte[] getTableHash() {return tableHash;}
+    public long getOffset() {return getLElong(raw, offset);}
+    public long getSize() {return getLElong(raw, offset + 0x8);}
+    public byte[] getTableHash() {return Arrays.copyOfRange(raw, offset + 0x10, offset + 0x20);}
 
     public void printDebug(){
         log.debug("MetaDataHashDataInfo:\n" +
-                "Offset       : " + offset + "\n" +
-                "Size         : " + size + "\n" +
-                "Table Hash   : " + Converter.byteArrToHexStringAsLE(tableHash) + "\n"
+                "Offset       : " + getOffset() + "\n" +
+                "Size         : " + getSize() + "\n" +
+                "Table Hash   : " + Converter.byteArrToHexStringAsLE(getTableHash()) + "\n"
         );
     }
 }
@@ -31,100 +31,84 @@ import static libKonogonka.Converter.getLElong;
 public class NcaFsHeader {
     private final static Logger log = LogManager.getLogger(NcaFsHeader.class);
     
-    private final byte[] version;
-    private final byte fsType;
-    private final byte hashType;
-    private final byte cryptoType;
-    private final byte metaDataHashType;
-    private final byte[] padding;
+    private final byte[] raw;
+    private final int offset;
     private SuperBlockIVFC superBlockIVFC;
     private SuperBlockPFS0 superBlockPFS0;
     // BKTR extended
-    private final long PatchInfoOffsetSection1;
-    private final long PatchInfoSizeSection1;
     private final BucketTreeHeader BktrSection1;
-
-    private final long PatchInfoOffsetSection2;
-    private final long PatchInfoSizeSection2;
     private final BucketTreeHeader BktrSection2;
 
-    private final byte[] generation;
-    private final byte[] secureValue;
-    private final byte[] sectionCTR;
     private final SparseInfo sparseInfo;
     private final CompressionInfo compressionInfo;
     private final MetaDataHashDataInfo metaDataHashDataInfo;
-    private final byte[] unknownEndPadding;
     
     public NcaFsHeader(byte[] tableBlockBytes) throws Exception{
+        this(tableBlockBytes, 0);
         if (tableBlockBytes.length != 0x200)
             throw new Exception("Table Block Section size is incorrect.");
-        version = Arrays.copyOfRange(tableBlockBytes, 0, 0x2);
-        fsType = tableBlockBytes[0x2];
-        hashType = tableBlockBytes[0x3];
-        cryptoType = tableBlockBytes[0x4];
-        metaDataHashType = tableBlockBytes[0x6];
-        padding = Arrays.copyOfRange(tableBlockBytes, 0x6, 0x8);
-        byte[] superBlockBytes = Arrays.copyOfRange(tableBlockBytes, 0x8, 0xf8);
+    }
+    /**
+     * View of 0x200 bytes of FS header starting at offset (e.g. decrypted NCA header at 0x400 + 0x200 * section).
+     * Fields are decoded on request; buffer is not copied and must not be changed afterwards.
+     * */
+    public NcaFsHeader(byte[] raw, int offset) throws Exception{
+        if (offset < 0 || raw.length - offset < 0x200)
+            throw new Exception("Table Block Section size is incorrect.");
+        this.raw = raw;
+        this.offset = offset;
+        byte fsType = getFsType();
+        byte hashType = getHashType();
 
         if ((fsType == 0) && (hashType == 0x3))
-            superBlockIVFC = new SuperBlockIVFC(superBlockBytes);
+            superBlockIVFC = new SuperBlockIVFC(raw, offset + 0x8);
         else if ((fsType == 0x1) && (hashType == 0x2))
-            superBlockPFS0 = new SuperBlockPFS0(superBlockBytes);
-
-        PatchInfoOffsetSection1 = getLElong(tableBlockBytes, 0x100);
-        PatchInfoSizeSection1 = getLElong(tableBlockBytes, 0x108);
-        BktrSection1 = new BucketTreeHeader(Arrays.copyOfRange(tableBlockBytes, 0x110, 0x120));
-
-        PatchInfoOffsetSection2 = getLElong(tableBlockBytes, 0x120);
-        PatchInfoSizeSection2 = getLElong(tableBlockBytes, 0x128);
-        BktrSection2 = new BucketTreeHeader(Arrays.copyOfRange(tableBlockBytes, 0x130, 0x140));
-
-        generation = Arrays.copyOfRange(tableBlockBytes, 0x140, 0x144);
-        secureValue = Arrays.copyOfRange(tableBlockBytes, 0x144, 0x148);
-
-        sectionCTR = Converter.flip(Arrays.copyOfRange(tableBlockBytes, 0x140, 0x148));
+            superBlockPFS0 = new SuperBlockPFS0(raw, offset + 0x8);
 
-        sparseInfo = new SparseInfo(Arrays.copyOfRange(tableBlockBytes, 0x148, 0x178));
-        compressionInfo = new CompressionInfo(Arrays.copyOfRange(tableBlockBytes,  0x178, 0x1a0));
-        metaDataHashDataInfo = new MetaDataHashDataInfo(Arrays.copyOfRange(tableBlockBytes,   0x1a0, 0x1d0));
+        BktrSection1 = new BucketTreeHeader(raw, offset + 0x110);
+        BktrSection2 = new BucketTreeHeader(raw, offset + 0x130);
 
-        unknownEndPadding = Arrays.copyOfRange(tableBlockBytes, 0x1d0, 0x200);
+        sparseInfo = new SparseInfo(raw, offset + 0x148);
+        compressionInfo = new CompressionInfo(raw, offset + 0x178);
+        metaDataHashDataInfo = new MetaDataHashDataInfo(raw, offset + 0x1a0);
     }
 
-    public byte[] getVersion() { return version; }
-    public byte getFsType() { return fsType; }
-    public byte getHashType() { return hashType; }
-    public byte getCryptoType() { return cryptoType; }
-    public byte getMetaDataHashType() { return metaDataHashType; }
-    public byte[] getPadding() { return padding; }
+    public byte[] getVersion() { return Arrays.copyOfRange(raw, offset, offset + 0x2); }
+    public byte getFsType() { return raw[offset + 0x2]; }
+    public byte getHashType() { return raw[offset + 0x3]; }
+    public byte getCryptoType() { return raw[offset + 0x4]; }
+    public byte getMetaDataHashType() { return raw[offset + 0x6]; }
+    public byte[] getPadding() { return Arrays.copyOfRange(raw, offset + 0x6, offset + 0x8); }
     public SuperBlockIVFC getSuperBlockIVFC() { return superBlockIVFC; }
     public SuperBlockPFS0 getSuperBlockPFS0() { return superBlockPFS0; }
 
-    public long getPatchInfoOffsetSection1() { return PatchInfoOffsetSection1; }
-    public long getPatchInfoSizeSection1() { return PatchInfoSizeSection1; }
+    public long getPatchInfoOffsetSection1() { return getLElong(raw, offset + 0x100); }
+    public long getPatchInfoSizeSection1() { return getLElong(raw, offset + 0x108); }
     public String getPatchInfoMagicSection1() { return BktrSection1.getMagic(); }
     public int getPatchInfoVersionSection1() { return BktrSection1.getVersion(); }
     public int getEntryCountSection1() { return BktrSection1.getEntryCount(); }
     public byte[] getPatchInfoUnknownSection1() { return BktrSection1.getUnknown(); }
-    public long getPatchInfoOffsetSection2() { return PatchInfoOffsetSection2; }
-    public long getPatchInfoSizeSection2() { return PatchInfoSizeSection2; }
+    public long getPatchInfoOffsetSection2() { return getLElong(raw, offset + 0x120); }
+    public long getPatchInfoSizeSection2() { return getLElong(raw, offset + 0x128); }
     public String getPatchInfoMagicSection2() { return BktrSection2.getMagic(); }
     public int getPatchInfoVersionSection2() { return BktrSection2.getVersion(); }
     public int getEntryCountSection2() { return BktrSection2.getEntryCount(); }
     public byte[] getPatchInfoUnknownSection2() { return BktrSection2.getUnknown(); }
-    public byte[] getGeneration() {return generation;}
-    public byte[] getSecureValue() {return secureValue;}
+    public byte[] getGeneration() {return Arrays.copyOfRange(raw, offset + 0x140, offset + 0x144);}
+    public byte[] getSecureValue() {return Arrays.copyOfRange(raw, offset + 0x144, offset + 0x148);}
     /**
      * Used for Aes Ctr decryption in IV context.
      * */
-    public byte[] getSectionCTR() { return sectionCTR; }
+    public byte[] getSectionCTR() { return Converter.flip(Arrays.copyOfRange(raw, offset + 0x140, offset + 0x148)); }
     public SparseInfo getSparseInfo() {return sparseInfo;}
     public CompressionInfo getCompressionInfo() {return compressionInfo;}
     public MetaDataHashDataInfo getMetaDataHashDataInfo() {return metaDataHashDataInfo;}
-    public byte[] getUnknownEndPadding() { return unknownEndPadding; }
+    public byte[] getUnknownEndPadding() { return Arrays.copyOfRange(raw, offset + 0x1d0, offset + 0x200); }
     
     public void printDebug(){
+        byte fsType = getFsType();
+        byte hashType = getHashType();
+        byte cryptoType = getCryptoType();
         String hashTypeDescription;
         switch (hashType){
             case 0 :
@@ -179,12 +163,12 @@ public class NcaFsHeader {
         }
         
         log.debug("NCASectionBlock:\n" +
-                "Version                          : " + byteArrToHexStringAsLE(version) + "\n" +
+                "Version                          : " + byteArrToHexStringAsLE(getVersion()) + "\n" +
                 "FS Type                          : " + fsType +(fsType == 0?" (RomFS)":fsType == 1?" (PartitionFS)":" (Unknown)")+ "\n" +
                 "Hash Type                        : " + hashType +" ("+ hashTypeDescription + ")\n" +
                 "Crypto Type                      : " + cryptoType + " (" + cryptoTypeDescription + ")\n" +
-                "Meta Data Hash Type              : " + metaDataHashType + "\n" +
-                "Padding                          : " + byteArrToHexStringAsLE(padding) + "\n" +
+                "Meta Data Hash Type              : " + getMetaDataHashType() + "\n" +
+                "Padding                          : " + byteArrToHexStringAsLE(getPadding()) + "\n" +
                 "Super Block IVFC                 : " + (superBlockIVFC == null ? "-\n": "YES\n") +
                 "Super Block PFS0                 : " + (superBlockPFS0 == null ? "-\n": "YES\n") +
                 "================================================================================================\n" +
@@ -246,22 +230,22 @@ public class NcaFsHeader {
                 "================================================================================================\n" +
                 "                    PatchInfo\n" +
                 "================================================================================================\n" +
-                "Indirect Offset                  : " + PatchInfoOffsetSection1 + "\n" +
-                "Indirect Size                    : " + PatchInfoSizeSection1 + "\n" +
+                "Indirect Offset                  : " + getPatchInfoOffsetSection1() + "\n" +
+                "Indirect Size                    : " + getPatchInfoSizeSection1() + "\n" +
                 "Magic ('BKTR')                   : " + BktrSection1.getMagic() + "\n" +
                 "Version                          : " + BktrSection1.getVersion() + "\n" +
                 "EntryCount                       : " + BktrSection1.getEntryCount() + "\n" +
                 "Unknown (reserved)               : " + byteArrToHexStringAsLE(BktrSection1.getUnknown()) + "\n" +
                 "------------------------------------------------------------------------------------------------\n" +
-                "AesCtrEx Offset                  : " + PatchInfoOffsetSection2 + "\n" +
-                "AesCtrEx Size                    : " + PatchInfoSizeSection2 + "\n" +
+                "AesCtrEx Offset                  : " + getPatchInfoOffsetSection2() + "\n" +
+                "AesCtrEx Size                    : " + getPatchInfoSizeSection2() + "\n" +
                 "Magic ('BKTR')                   : " + BktrSection2.getMagic() + "\n" +
                 "Version                          : " + BktrSection2.getVersion() + "\n" +
                 "EntryCount                       : " + BktrSection2.getEntryCount() + "\n" +
                 "Unknown (reserved)               : " + byteArrToHexStringAsLE(BktrSection2.getUnknown()) + "\n" +
                 "================================================================================================\n" +
-                "Generation                       : " + byteArrToHexStringAsLE(generation) + "\n" +
-                "Section CTR                      : " + byteArrToHexStringAsLE(sectionCTR) + "\n" +
+                "Generation                       : " + byteArrToHexStringAsLE(getGeneration()) + "\n" +
+                "Section CTR                      : " + byteArrToHexStringAsLE(getSectionCTR()) + "\n" +
                 "================================================================================================\n" +
                 "                    Sparse Info\n" +
                 "Table Offset                     : " + sparseInfo.getOffset() + "\n" +
@@ -288,7 +272,7 @@ public class NcaFsHeader {
                 "Table Size                       : " + metaDataHashDataInfo.getSize() + "\n" +
                 "Unknown (reserved)               : " + byteArrToHexStringAsLE(metaDataHashDataInfo.getTableHash()) + "\n" +
                 "================================================================================================\n" +
-                "Unknown End Padding              : " + byteArrToHexStringAsLE(unknownEndPadding) + "\n" +
+                "Unknown End Padding              : " + byteArrToHexStringAsLE(getUnknownEndPadding()) + "\n" +
                 "################################################################################################\n"
         );
 
@@ -29,40 +29,40 @@ import static libKonogonka.Converter.getLElong;
 public class SparseInfo {
     private final static Logger log = LogManager.getLogger(SparseInfo.class);
 
-    private final long offset;
-    private final long size;
+    private final byte[] raw;
+    private final int offset;
     private final BucketTreeHeader bktr;
-    private final long physicalOffset;
-    private final byte[] generation;
-    private final byte[] unknown;
 
     SparseInfo(byte[] rawTable){
-        offset = getLElong(rawTable, 0);
-        size = getLElong(rawTable, 0x8);
-        bktr = new BucketTreeHeader(Arrays.copyOfRange(rawTable, 0x10, 0x20));
-        physicalOffset = getLElong(rawTable, 0x20);
-        generation = Arrays.copyOfRange(rawTable, 0x28, 0x2a);
-        unknown = Arrays.copyOfRange(rawTable, 0x2a, 0x30);
+        this(rawTable, 0);
+    }
+    /**
+     * View of 0x30 bytes starting at offset. Fields are decoded on request; buffer is not copied.
+     * */
+    SparseInfo(byte[] raw, int offset){
+        this.raw = raw;
+        this.offset = offset;
+        this.bktr = new BucketTreeHeader(raw, offset + 0x10);
     }
 
-    public long getOffset() { return offset; }
-    public long getSize() { return size; }
+    public long getOffset() { return getLElong(raw, offset); }
+    public long getSize() { return getLElong(raw, offset + 0x8); }
     public String getBktrMagic() { return bktr.getMagic(); }
     public int getBktrVersion() { return bktr.getVersion(); }
     public int getBktrEntryCount() { return bktr.getEntryCount(); }
     public byte[] getBktrUnknown() { return bktr.getUnknown(); }
-    public long getPhysicalOffset() {return physicalOffset;}
-    public byte[] getGeneration() {return generation;}
-    public byte[] getUnknown() {return unknown;}
+    public long getPhysicalOffset() {return getLElong(raw, offset + 0x20);}
+    public byte[] getGeneration() {return Arrays.copyOfRange(raw, offset + 0x28, offset + 0x2a);}
+    public byte[] getUnknown() {return Arrays.copyOfRange(raw, offset + 0x2a, offset + 0x30);}
 
     public void printDebug(){
         log.debug("SparseInfo:\n" +
-        "Offset            : " + offset + "\n" +
-        "Size              : " + size + "\n");
+        "Offset            : " + getOffset() + "\n" +
+        "Size              : " + getSize() + "\n");
         bktr.printDebug();
         log.debug(
-        "\nPhysicalOffset    : " + physicalOffset + "\n" +
-        "Generation        : " + Converter.byteArrToHexStringAsLE(generation) + "\n" +
-        "Unknown           : " + Converter.byteArrToHexStringAsLE(unknown) + "\n");
+        "\nPhysicalOffset    : " + getPhysicalOffset() + "\n" +
+        "Generation        : " + Converter.byteArrToHexStringAsLE(getGeneration()) + "\n" +
+        "Unknown           : " + Converter.byteArrToHexStringAsLE(getUnknown()) + "\n");
     }
-}
\ No newline at end of file
+}
@@ -24,36 +24,31 @@ import static libKonogonka.Converter.getLEint;
 import static libKonogonka.Converter.getLElong;
 
 public class SuperBlockPFS0 {
-    private final byte[] SHA256hash;
-    private final int blockSize;
-    private final int layerCount;
-    private final long hashTableOffset;
-    private final long hashTableSize;
-    private final long pfs0offset;
-    private final long pfs0size;
-    private final byte[] zeroes;
+    private final byte[] raw;
+    private final int offset;
 
     /**
      * Also known as HierarchicalSha256Data
      * @param sbBytes - Chunk of data related for PFS0 Hash Data table
      */
-    SuperBlockPFS0(byte[] sbBytes){
-        SHA256hash = Arrays.copyOfRange(sbBytes, 0, 0x20);
-        blockSize = getLEint(sbBytes, 0x20);
-        layerCount = getLEint(sbBytes, 0x24);
-        hashTableOffset = getLElong(sbBytes, 0x28);
-        hashTableSize = getLElong(sbBytes, 0x30);
-        pfs0offset = getLElong(sbBytes, 0x38);
-        pfs0size = getLElong(sbBytes, 0x40);
-        zeroes = Arrays.copyOfRange(sbBytes, 0x48, 0xf0);
+    public SuperBlockPFS0(byte[] sbBytes){
+        this(sbBytes, 0);
+    }
+    /**
+     * View of 0xf0 bytes of PFS0 Hash Data table starting at offset. Fields are decoded on request;
+     * buffer is not copied and must not be changed afterwards.
+     * */
+    SuperBlockPFS0(byte[] raw, int offset){
+        this.raw = raw;
+        this.offset = offset;
     }
 
-    public byte[] getSHA256hash() { return SHA256hash; }
-    public int getBlockSize() { return blockSize; }
-    public int getLayerCount() { return layerCount; }
-    public long getHashTableOffset() { return hashTableOffset; }
-    public long getHashTableSize() { return hashTableSize; }
-    public long getPfs0offset() { return pfs0offset; }
-    public long getPfs0size() { return pfs0size; }
-    public byte[] getZeroes() { return zeroes; }
+    public byte[] getSHA256hash() { return Arrays.copyOfRange(raw, offset, offset + 0x20); }
+    public int getBlockSize() { return getLEint(raw, offset + 0x20); }
+    public int getLayerCount() { return getLEint(raw, offset + 0x24); }
+    public long getHashTableOffset() { return getLElong(raw, offset + 0x28); }
+    public long getHashTableSize() { return getLElong(raw, offset + 0x30); }
+    public long getPfs0offset() { return getLElong(raw, offset + 0x38); }
+    public long getPfs0size() { return getLElong(raw, offset + 0x40); }
+    public byte[] getZeroes() { return Arrays.copyOfRange(raw, offset + 0x48, offset + 0xf0); }
 }
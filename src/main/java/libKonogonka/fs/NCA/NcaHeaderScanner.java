@@ -0,0 +1,257 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA;
+
+import libKonogonka.CompiledKeySet;
+import libKonogonka.Converter;
+import libKonogonka.MemoryMappedFile;
+import libKonogonka.fs.PFS0.PFS0Header;
+import libKonogonka.fs.PFS0.PFS0subFile;
+import libKonogonka.fs.XCI.HFS0File;
+import libKonogonka.fs.XCI.HFS0Provider;
+import libKonogonka.xtsaes.XTSAESEngine;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reads and decrypts only first 0x400 bytes of NCA header: no key area decryption, no sections parsing.
+ * Accepts plain NCA files, NSP (PFS0) and XCI files; containers are read once and every NCA inside is reported.
+ * Files are processed in parallel, one file per worker at time. Broken files are logged and skipped.
+ * */
+@ThreadSafe
+public class NcaHeaderScanner {
+    private final static Logger log = LogManager.getLogger(NcaHeaderScanner.class);
+
+    public static final int HEADER_SIZE = 0x400;
+    private static final String[] EXTENSIONS = {".nca", ".ncz", ".nsp", ".nsz", ".xci", ".xcz"};
+    private static final String[] XCI_PARTITIONS = {"secure", "normal", "update", "logo"};
+
+    private final XTSAESEngine headerDecryptor;
+
+    public NcaHeaderScanner(CompiledKeySet keys) throws Exception{
+        this.headerDecryptor = keys.getHeaderDecryptor();
+    }
+
+    public NcaHeaderScanner(HashMap<String, String> keys) throws Exception{
+        this.headerDecryptor = XTSAESEngine.createHeaderDecryptor(keys.get("header_key"));
+    }
+    /**
+     * Scan NCA, NSP or XCI file in current thread
+     * */
+    public List<NcaHeaderSummary> scan(File file) throws Exception{
+        List<NcaHeaderSummary> summaries = new ArrayList<>();
+        scan(file, new Buffers(), summaries::add);
+        return summaries;
+    }
+    /**
+     * Scan NCA located at offset of the file (e.g. in container)
+     * @param name name to report
+     * */
+    public NcaHeaderSummary scan(File file, long offset, String name) throws Exception{
+        try (SeekableByteChannel channel = MemoryMappedFile.openChannel(file)){
+            return readSummary(channel, file, offset, name, new Buffers());
+        }
+    }
+    /**
+     * Scan every NCA/NSP/XCI (and their compressed variants) in directory and all subdirectories
+     * @param threads number of threads to use
+     * */
+    public List<NcaHeaderSummary> scanDirectory(File directory, int threads) throws Exception{
+        List<NcaHeaderSummary> summaries = Collections.synchronizedList(new ArrayList<>());
+        scanDirectory(directory, threads, summaries::add);
+        return new ArrayList<>(summaries);
+    }
+    /**
+     * Scan every NCA/NSP/XCI (and their compressed variants) in directory and all subdirectories
+     * @param threads number of threads to use
+     * @param consumer receives summaries as soon as they are ready. Called from worker threads simultaneously.
+     * */
+    public void scanDirectory(File directory, int threads, Consumer<NcaHeaderSummary> consumer) throws Exception{
+        if (threads < 1)
+            throw new Exception("Threads count must be positive: "+threads);
+        List<File> files = new ArrayList<>();
+        collectFiles(directory, files);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            scan(files, executor, threads, consumer);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * Scan files using external executor
+     * @param workers number of tasks to submit, normally equal to number of executor threads
+     * @param consumer receives summaries as soon as they are ready. Called from worker threads simultaneously.
+     * */
+    public void scan(List<File> files,
+                     ExecutorService executor,
+                     int workers,
+                     Consumer<NcaHeaderSummary> consumer) throws Exception{
+        if (workers < 1)
+            throw new Exception("Workers count must be positive: "+workers);
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, files.size()); i++){
+            futures.add(executor.submit(() -> {
+                Buffers buffers = new Buffers();
+                int index;
+                while ((index = next.getAndIncrement()) < files.size()){
+                    File file = files.get(index);
+                    try {
+                        scan(file, buffers, consumer);
+                    }
+                    catch (Exception e){
+                        log.warn("Unable to scan "+file.getAbsolutePath()+": "+e.getMessage());
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    private static void collectFiles(File directory, List<File> files) throws Exception{
+        File[] children = directory.listFiles();
+        if (children == null)
+            throw new Exception("Unable to list directory content: "+directory.getAbsolutePath());
+        Arrays.sort(children);
+        for (File child : children){
+            if (child.isDirectory())
+                collectFiles(child, files);
+            else if (hasSupportedExtension(child.getName()))
+                files.add(child);
+        }
+    }
+
+    private static boolean hasSupportedExtension(String name){
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS){
+            if (lowerCaseName.endsWith(extension))
+                return true;
+        }
+        return false;
+    }
+
+    private void scan(File file, Buffers buffers, Consumer<NcaHeaderSummary> consumer) throws Exception{
+        try (SeekableByteChannel channel = MemoryMappedFile.openChannel(file)){
+            if (channel.size() < HEADER_SIZE)
+                throw new Exception("File is too small");
+            readFully(channel, 0, buffers.encrypted, HEADER_SIZE);
+            if (isMagic(buffers.encrypted, 0, "PFS0"))
+                scanPfs0(channel, file, buffers, consumer);
+            else if (isMagic(buffers.encrypted, 0x100, "HEAD"))
+                scanXci(channel, file, buffers, consumer);
+            else
+                consumer.accept(readSummary(channel, file, 0, file.getName(), buffers));
+        }
+    }
+
+    private void scanPfs0(SeekableByteChannel channel,
+                          File file,
+                          Buffers buffers,
+                          Consumer<NcaHeaderSummary> consumer) throws Exception{
+        // Header is already partly read into buffer: the rest is taken from the same channel
+        long dataStart = 0x10L + (Converter.getLEint(buffers.encrypted, 0x4) & 0xFFFFFFFFL) * 0x18L
+                + (Converter.getLEint(buffers.encrypted, 0x8) & 0xFFFFFFFFL);
+        if (dataStart > channel.size() || dataStart > Integer.MAX_VALUE - 8)
+            throw new Exception("PFS0 header is bigger than file: 0x"+Long.toHexString(dataStart));
+        byte[] headerBytes = buffers.encrypted;
+        if (dataStart > HEADER_SIZE){
+            headerBytes = new byte[(int) dataStart];
+            readFully(channel, 0, headerBytes, headerBytes.length);
+        }
+        PFS0Header header = new PFS0Header(new BufferedInputStream(new ByteArrayInputStream(headerBytes)));
+        for (PFS0subFile subFile : header.getPfs0subFiles()){
+            if (hasNcaExtension(subFile.getName()))
+                consumer.accept(readSummary(channel, file, dataStart + subFile.getOffset(), subFile.getName(), buffers));
+        }
+    }
+
+    private void scanXci(SeekableByteChannel channel,
+                         File file,
+                         Buffers buffers,
+                         Consumer<NcaHeaderSummary> consumer) throws Exception{
+        HFS0Provider main = new HFS0Provider(0xf000, channel, file);
+        for (HFS0File partition : main.getHfs0Files()){
+            if (! Arrays.asList(XCI_PARTITIONS).contains(partition.getName()))
+                continue;
+            HFS0Provider hfs0 = new HFS0Provider(main.getRawFileDataStart() + partition.getOffset(), channel, file);
+            for (HFS0File subFile : hfs0.getHfs0Files()){
+                if (hasNcaExtension(subFile.getName()))
+                    consumer.accept(readSummary(channel, file, hfs0.getRawFileDataStart() + subFile.getOffset(),
+                            subFile.getName(), buffers));
+            }
+        }
+    }
+
+    private static boolean hasNcaExtension(String name){
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        return lowerCaseName.endsWith(".nca") || lowerCaseName.endsWith(".ncz");
+    }
+
+    private static boolean isMagic(byte[] data, int offset, String magic){
+        return magic.equals(new String(data, offset, magic.length(), StandardCharsets.US_ASCII));
+    }
+
+    private NcaHeaderSummary readSummary(SeekableByteChannel channel,
+                                        File file,
+                                        long offset,
+                                        String name,
+                                        Buffers buffers) throws Exception{
+        readFully(channel, offset, buffers.encrypted, HEADER_SIZE);
+        headerDecryptor.processSectors(buffers.encrypted, buffers.decrypted, 0, HEADER_SIZE / XTSAESEngine.NCA_SECTOR_SIZE);
+        return new NcaHeaderSummary(file, offset, name, buffers.decrypted);
+    }
+
+    private static void readFully(SeekableByteChannel channel, long position, byte[] destination, int size) throws Exception{
+        channel.position(position);
+        ByteBuffer buffer = ByteBuffer.wrap(destination, 0, size);
+        while (buffer.hasRemaining()){
+            if (channel.read(buffer) < 0)
+                throw new Exception("Unexpected end of file at 0x"+Long.toHexString(position + buffer.position()));
+        }
+    }
+
+    private static class Buffers {
+        private final byte[] encrypted = new byte[HEADER_SIZE];
+        private final byte[] decrypted = new byte[HEADER_SIZE];
+    }
+}
@@ -0,0 +1,118 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA;
+
+import libKonogonka.Converter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static libKonogonka.Converter.getLElong;
+
+/**
+ * Fields of NCA header (first 0x400 bytes) that describe the content. Created by NcaHeaderScanner.
+ * Field meaning is the same as in NCAProvider.
+ * */
+public class NcaHeaderSummary {
+    private final File file;
+    private final long offset;
+    private final String name;
+
+    private final String magicNumber;
+    private final byte systemOrGcIndicator;
+    private final byte contentType;
+    private final byte cryptoType1;
+    private final byte keyIndex;
+    private final long ncaSize;
+    private final byte[] titleId;
+    private final byte[] contentIndx;
+    private final byte[] sdkVersion;
+    private final byte cryptoType2;
+    private final byte[] rightsId;
+    private final byte cryptoTypeReal;
+
+    /**
+     * @param decryptedHeader at least 0x240 bytes of decrypted NCA header
+     * */
+    NcaHeaderSummary(File file, long offset, String name, byte[] decryptedHeader) throws Exception{
+        this.file = file;
+        this.offset = offset;
+        this.name = name;
+        this.magicNumber = new String(decryptedHeader, 0x200, 0x4, StandardCharsets.US_ASCII);
+        if (! magicNumber.startsWith("NCA"))
+            throw new Exception("Not an NCA or header key is wrong: "+name);
+        this.systemOrGcIndicator = decryptedHeader[0x204];
+        this.contentType = decryptedHeader[0x205];
+        this.cryptoType1 = decryptedHeader[0x206];
+        this.keyIndex = decryptedHeader[0x207];
+        this.ncaSize = getLElong(decryptedHeader, 0x208);
+        this.titleId = Converter.flip(Arrays.copyOfRange(decryptedHeader, 0x210, 0x218));
+        this.contentIndx = Arrays.copyOfRange(decryptedHeader, 0x218, 0x21C);
+        this.sdkVersion = Arrays.copyOfRange(decryptedHeader, 0x21c, 0x220);
+        this.cryptoType2 = decryptedHeader[0x220];
+        this.rightsId = Arrays.copyOfRange(decryptedHeader, 0x230, 0x240);
+
+        byte cryptoType = cryptoType1 < cryptoType2 ? cryptoType2 : cryptoType1;
+        this.cryptoTypeReal = cryptoType > 0 ? (byte) (cryptoType - 1) : cryptoType;
+    }
+
+    /**
+     * @return file that contains NCA (NCA itself, NSP or XCI)
+     * */
+    public File getFile() { return file; }
+    /**
+     * @return position of NCA inside the file
+     * */
+    public long getOffset() { return offset; }
+    /**
+     * @return NCA file name: as stored in container or on disk
+     * */
+    public String getName() { return name; }
+
+    public String getMagicnum() { return magicNumber; }
+    public byte getSystemOrGcIndicator() { return systemOrGcIndicator; }
+    public byte getContentType() { return contentType; }
+    public byte getCryptoType1() { return cryptoType1; }
+    public byte getKeyIndex() { return keyIndex; }
+    public long getNcaSize() { return ncaSize; }
+    public byte[] getTitleId() { return titleId; }
+    public byte[] getContentIndx() { return contentIndx; }
+    public byte[] getSdkVersion() { return sdkVersion; }
+    public byte getCryptoType2() { return cryptoType2; }
+    public byte[] getRightsId() { return rightsId; }
+    public byte getCryptoTypeReal() { return cryptoTypeReal; }
+
+    public boolean hasRightsId(){
+        for (byte b : rightsId){
+            if (b != 0)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString(){
+        return name + " @ " + file.getName() + ":0x" + Long.toHexString(offset) +
+                " title " + Converter.byteArrToHexStringAsLE(titleId) +
+                " type " + contentType +
+                " sdk " + (sdkVersion[3] & 0xff) + "." + (sdkVersion[2] & 0xff) + "." +
+                (sdkVersion[1] & 0xff) + "." + (sdkVersion[0] & 0xff);
+    }
+}
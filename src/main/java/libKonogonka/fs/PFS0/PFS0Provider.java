@@ -28,6 +28,8 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PFS0Provider extends ExportAble implements ISuperProvider {
     private final static Logger log = LogManager.getLogger(PFS0Provider.class);
@@ -42,6 +44,7 @@ public class PFS0Provider extends ExportAble implements ISuperProvider {
 
     private final PFS0Header header;
     private LinkedList<byte[]> pfs0SHA256hashes;
+    private byte[] hashTable;
 
     public PFS0Provider(File nspFile) throws Exception{
         this.producer = new InFileStreamProducer(nspFile);
@@ -64,6 +67,7 @@ public class PFS0Provider extends ExportAble implements ISuperProvider {
         if (toSkip != stream.skip(toSkip))
             throw new Exception("Can't skip bytes prior Hash Table offset");
         collectHashes();
+        stream.close();
 
         this.stream = producer.produce();
         toSkip = offsetPositionInFile + superBlockPFS0.getPfs0offset();
@@ -73,19 +77,25 @@ public class PFS0Provider extends ExportAble implements ISuperProvider {
         this.rawBlockDataStart = superBlockPFS0.getPfs0offset() + 0x10L + (header.getFilesCount() * 0x18L) + header.getStringTableSize();
     }
 
+    /**
+     * Stream must be at hash table offset already
+     * */
     private void collectHashes() throws Exception{
-        pfs0SHA256hashes = new LinkedList<>();
-        long hashTableOffset = superBlockPFS0.getHashTableOffset();
         long hashTableSize = superBlockPFS0.getHashTableSize();
-
-        if (hashTableOffset > 0){
-            if (hashTableOffset != stream.skip(hashTableOffset))
-                throw new Exception("Unable to skip bytes till Hash Table Offset: "+hashTableOffset);
+        if (hashTableSize < 0 || hashTableSize > Integer.MAX_VALUE - 8)
+            throw new Exception("Hash table size is not supported: "+hashTableSize);
+        hashTable = new byte[(int) hashTableSize];
+        int read = 0;
+        while (read < hashTable.length){
+            int chunkSize = stream.read(hashTable, read, hashTable.length - read);
+            if (chunkSize < 0)
+                throw new Exception("Unable to read hash table");
+            read += chunkSize;
         }
+        pfs0SHA256hashes = new LinkedList<>();
         for (int i = 0; i < hashTableSize / 0x20; i++){
             byte[] sectionHash = new byte[0x20];
-            if (0x20 != stream.read(sectionHash))
-                throw new Exception("Unable to read hash");
+            System.arraycopy(hashTable, i * 0x20, sectionHash, 0, 0x20);
             pfs0SHA256hashes.add(sectionHash);
         }
     }
@@ -138,6 +148,39 @@ public class PFS0Provider extends ExportAble implements ISuperProvider {
     public LinkedList<byte[]> getPfs0SHA256hashes() {
         return pfs0SHA256hashes;
     }
+    /**
+     * Check every block of PFS0 region against hash table using as many threads as there are processors.
+     * Available for PFS0 inside NCA only.
+     * */
+    public PFS0VerificationReport verify() throws Exception{
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return verify(executor, threads);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * Check every block of PFS0 region against hash table. Blocks are hashed by 'workers' tasks submitted to
+     * executor, each with its own decryptor and MessageDigest.
+     * */
+    public PFS0VerificationReport verify(ExecutorService executor, int workers) throws Exception{
+        return makeVerifier().verify(executor, workers);
+    }
+    /**
+     * Check every block of PFS0 region against hash table reading it once from the beginning till the end
+     * in current thread.
+     * */
+    public PFS0VerificationReport verifyStreaming() throws Exception{
+        return makeVerifier().verifyStreaming();
+    }
+    private PFS0Verifier makeVerifier() throws Exception{
+        if (superBlockPFS0 == null)
+            throw new Exception("Hash table is available for PFS0 inside NCA only");
+        return new PFS0Verifier(producer, offsetPositionInFile, superBlockPFS0, hashTable);
+    }
 
     @Override
     public File getFile() {
@@ -0,0 +1,65 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.PFS0;
+
+import java.util.BitSet;
+
+/**
+ * Result of PFS0 hash table verification: state of hash table itself (against hash from NCA FS header) and of
+ * every data block.
+ * */
+public class PFS0VerificationReport {
+    private final boolean hashTableValid;
+    private final int blocksCount;
+    private final BitSet invalidBlocks;
+    private final long bytesVerified;
+    private final long elapsedNanos;
+
+    PFS0VerificationReport(boolean hashTableValid, int blocksCount, BitSet invalidBlocks,
+                           long bytesVerified, long elapsedNanos){
+        this.hashTableValid = hashTableValid;
+        this.blocksCount = blocksCount;
+        this.invalidBlocks = invalidBlocks;
+        this.bytesVerified = bytesVerified;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public boolean isValid() { return hashTableValid && invalidBlocks.isEmpty(); }
+    public boolean isHashTableValid() { return hashTableValid; }
+    public int getBlocksCount() { return blocksCount; }
+    public boolean isBlockValid(int block) { return ! invalidBlocks.get(block); }
+    public int[] getInvalidBlocks() { return invalidBlocks.stream().toArray(); }
+    public long getBytesVerified() { return bytesVerified; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public double getMegabytesPerSecond(){
+        if (elapsedNanos == 0)
+            return 0;
+        return bytesVerified / (1024.0 * 1024.0) / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString(){
+        return String.format("PFS0 verification: hash table %s, %d/%d blocks valid, %d bytes, %.2f MB/s",
+                hashTableValid ? "valid" : "corrupted",
+                blocksCount - invalidBlocks.cardinality(),
+                blocksCount,
+                bytesVerified,
+                getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.PFS0;
+
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.NCA.NCASectionTableBlock.SuperBlockPFS0;
+
+import java.io.BufferedInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks PFS0 region of NCA section against SHA-256 hash table: one hash per block of 'block size' bytes,
+ * the last block is hashed as is. Hash table itself is checked against hash stored in NCA FS header.
+ * */
+class PFS0Verifier {
+    private static final int HASH_SIZE = 0x20;
+    private static final int TASK_SIZE = 0x400000;
+
+    private final InFileStreamProducer producer;
+    private final SuperBlockPFS0 superBlock;
+    private final byte[] hashTable;
+    private final long pfs0Position;
+    private final long pfs0Size;
+    private final int blockSize;
+    private final int blocksCount;
+
+    /**
+     * @param sectionOffset position of section (super block offsets are counted from it) in stream producer creates
+     * */
+    PFS0Verifier(InFileStreamProducer producer, long sectionOffset, SuperBlockPFS0 superBlock, byte[] hashTable)
+            throws Exception{
+        if (superBlock.getBlockSize() <= 0)
+            throw new Exception("PFS0 hash block size is incorrect: "+superBlock.getBlockSize());
+        this.producer = producer;
+        this.superBlock = superBlock;
+        this.hashTable = hashTable;
+        this.pfs0Position = sectionOffset + superBlock.getPfs0offset();
+        this.pfs0Size = superBlock.getPfs0size();
+        this.blockSize = superBlock.getBlockSize();
+        long blocks = (pfs0Size + blockSize - 1) / blockSize;
+        if (blocks * HASH_SIZE > hashTable.length)
+            throw new Exception("PFS0 hash table is too small: "+hashTable.length+" bytes for "+blocks+" blocks");
+        this.blocksCount = (int) blocks;
+    }
+
+    private boolean isHashTableValid() throws Exception{
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Arrays.equals(superBlock.getSHA256hash(), digest.digest(hashTable));
+    }
+
+    PFS0VerificationReport verify(ExecutorService executor, int workers) throws Exception{
+        if (workers < 1)
+            throw new Exception("Workers count must be positive: "+workers);
+        long startTime = System.nanoTime();
+        boolean hashTableValid = isHashTableValid();
+        BitSet invalidBlocks = new BitSet(blocksCount);
+        AtomicLong bytesVerified = new AtomicLong();
+        int blocksPerTask = Math.max(1, TASK_SIZE / blockSize);
+        int tasksCount = (blocksCount + blocksPerTask - 1) / blocksPerTask;
+
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, tasksCount); i++)
+            futures.add(executor.submit(() -> work(next, tasksCount, blocksPerTask, invalidBlocks, bytesVerified)));
+
+        Exception exception = null;
+        for (Future<Void> future : futures){
+            try {
+                future.get();
+            }
+            catch (ExecutionException e){
+                next.set(tasksCount);
+                if (exception == null)
+                    exception = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        if (exception != null)
+            throw exception;
+
+        return new PFS0VerificationReport(hashTableValid, blocksCount, invalidBlocks, bytesVerified.get(),
+                System.nanoTime() - startTime);
+    }
+
+    private Void work(AtomicInteger next,
+                      int tasksCount,
+                      int blocksPerTask,
+                      BitSet invalidBlocks,
+                      AtomicLong bytesVerified) throws Exception{
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = new byte[HASH_SIZE];
+        byte[] buffer = new byte[(int) Math.min((long) blocksPerTask * blockSize, pfs0Size)];
+        try (ISeekableSource channel = producer.produceSource()){
+            int task;
+            while ((task = next.getAndIncrement()) < tasksCount){
+                int firstBlock = task * blocksPerTask;
+                int lastBlock = Math.min(firstBlock + blocksPerTask, blocksCount);
+                long start = (long) firstBlock * blockSize;
+                int length = (int) Math.min((long) (lastBlock - firstBlock) * blockSize, pfs0Size - start);
+                if (channel.read(pfs0Position + start, buffer, 0, length) != length)
+                    throw new Exception("Failed to read PFS0 block "+firstBlock);
+
+                for (int block = firstBlock; block < lastBlock; block++){
+                    int position = (block - firstBlock) * blockSize;
+                    digest.update(buffer, position, Math.min(blockSize, length - position));
+                    digest.digest(hash, 0, HASH_SIZE);
+                    if (! isHashEqual(block, hash)){
+                        synchronized (invalidBlocks){
+                            invalidBlocks.set(block);
+                        }
+                    }
+                }
+                bytesVerified.addAndGet(length);
+            }
+        }
+        return null;
+    }
+    /**
+     * Single thread verification reading one stream from the beginning till the end of PFS0 region
+     * */
+    PFS0VerificationReport verifyStreaming() throws Exception{
+        long startTime = System.nanoTime();
+        boolean hashTableValid = isHashTableValid();
+        BitSet invalidBlocks = new BitSet(blocksCount);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = new byte[HASH_SIZE];
+        byte[] buffer = new byte[(int) Math.min(blockSize, Math.max(pfs0Size, 1))];
+        long bytesVerified = 0;
+
+        try (BufferedInputStream stream = producer.produce()){
+            long mustSkip = pfs0Position;
+            while (mustSkip > 0){
+                long skipped = stream.skip(mustSkip);
+                if (skipped <= 0)
+                    throw new Exception("Can't skip bytes prior PFS0 offset");
+                mustSkip -= skipped;
+            }
+            for (int block = 0; block < blocksCount; block++){
+                int length = (int) Math.min(blockSize, pfs0Size - bytesVerified);
+                int read = 0;
+                while (read < length){
+                    int chunkSize = stream.read(buffer, read, length - read);
+                    if (chunkSize < 0)
+                        throw new Exception("Failed to read PFS0 block "+block);
+                    read += chunkSize;
+                }
+                digest.update(buffer, 0, length);
+                digest.digest(hash, 0, HASH_SIZE);
+                if (! isHashEqual(block, hash))
+                    invalidBlocks.set(block);
+                bytesVerified += length;
+            }
+        }
+        return new PFS0VerificationReport(hashTableValid, blocksCount, invalidBlocks, bytesVerified,
+                System.nanoTime() - startTime);
+    }
+
+    private boolean isHashEqual(int block, byte[] hash){
+        int position = block * HASH_SIZE;
+        for (int i = 0; i < HASH_SIZE; i++){
+            if (hashTable[position + i] != hash[i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -35,79 +35,128 @@ public class FileSystemEntry {
 
     private boolean directoryFlag;
     private String name;
-    private final List<FileSystemEntry> content;
-
-    private static byte[] dirsMetadataTable;
-    private static byte[] filesMetadataTable;
+    private volatile List<FileSystemEntry> content;
 
     private long offset;
     private long size;
+    // Lazy mode only: content decoded on first getContent() call. Tables belong to the RomFS image of this entry.
+    private byte[] dirsMetadataTable;
+    private byte[] filesMetadataTable;
+    private int firstSubdirectoryOffset;
+    private int firstFileOffset;
 
     public FileSystemEntry(byte[] dirsMetadataTable, byte[] filesMetadataTable) throws Exception{
-        FileSystemEntry.dirsMetadataTable = dirsMetadataTable;
-        FileSystemEntry.filesMetadataTable = filesMetadataTable;
-        this.content = new ArrayList<>();
+        this(dirsMetadataTable, filesMetadataTable, 0);
+        validateRoot(dirsMetadataTable);
+    }
+    /**
+     * Directory entry with all its content
+     * @param directoryMetaPosition offset of the directory in directory metadata table. 0 for root.
+     * */
+    FileSystemEntry(byte[] dirsMetadataTable, byte[] filesMetadataTable, int directoryMetaPosition){
+        DirectoryMetaData directoryMetaData = new DirectoryMetaData(dirsMetadataTable, directoryMetaPosition);
         this.directoryFlag = true;
-        DirectoryMetaData rootDirectoryMetaData = new DirectoryMetaData();
-        if (rootDirectoryMetaData.dirName.isEmpty())
-            this.name = "ROOT";
-        else
-            this.name = rootDirectoryMetaData.dirName;
+        this.name = makeDirectoryName(directoryMetaData, directoryMetaPosition);
+        this.content = decodeContent(dirsMetadataTable, filesMetadataTable,
+                directoryMetaData.firstSubdirectoryOffset, directoryMetaData.firstFileOffset, false);
+    }
+    /**
+     * Check that directory metadata table starts with root directory record
+     * */
+    static void validateRoot(byte[] dirsMetadataTable) throws Exception{
+        DirectoryMetaData rootDirectoryMetaData = new DirectoryMetaData(dirsMetadataTable, 0);
         if (rootDirectoryMetaData.parentDirectoryOffset != 0)
             throw new Exception("Offset of Parent Directory is incorrect. Expected 0 for root, received value is "+ rootDirectoryMetaData.parentDirectoryOffset);
         if (rootDirectoryMetaData.nextSiblingDirectoryOffset != -1)
             throw new Exception("Offset of next Sibling Directory is incorrect. Expected -1 for root, received value is "+ rootDirectoryMetaData.nextSiblingDirectoryOffset);
-        if (rootDirectoryMetaData.firstSubdirectoryOffset != -1)
-            content.add(getDirectory(rootDirectoryMetaData.firstSubdirectoryOffset));
-        if (rootDirectoryMetaData.firstFileOffset != -1)
-            content.add(getFile(this, rootDirectoryMetaData.firstFileOffset));
-        content.sort(Comparator.comparingLong(FileSystemEntry::getOffset));
     }
-
-    private FileSystemEntry(){
-        this.content = new ArrayList<>();
+    private static String makeDirectoryName(DirectoryMetaData directoryMetaData, int directoryMetaPosition){
+        if (directoryMetaPosition == 0 && directoryMetaData.dirName.isEmpty())
+            return "ROOT";
+        return directoryMetaData.dirName;
     }
-
-    private FileSystemEntry getDirectory(int childDirMetaPosition){
-        FileSystemEntry fileSystemEntry = new FileSystemEntry();
-        fileSystemEntry.directoryFlag = true;
-
-        DirectoryMetaData directoryMetaData = new DirectoryMetaData(childDirMetaPosition);
-        fileSystemEntry.name = directoryMetaData.dirName;
-
-        if (directoryMetaData.nextSiblingDirectoryOffset != -1)
-            this.content.add(getDirectory(directoryMetaData.nextSiblingDirectoryOffset));
-
-        if (directoryMetaData.firstSubdirectoryOffset != -1)
-            fileSystemEntry.content.add(getDirectory(directoryMetaData.firstSubdirectoryOffset));
-
-        if (directoryMetaData.firstFileOffset != -1)
-            fileSystemEntry.content.add(getFile(fileSystemEntry, directoryMetaData.firstFileOffset));
-
-        fileSystemEntry.content.sort(Comparator.comparingLong(FileSystemEntry::getOffset));
-
-        return fileSystemEntry;
+    /**
+     * Single file entry
+     * @param fileMetaPosition offset of the file in file metadata table
+     * */
+    static FileSystemEntry makeFile(byte[] filesMetadataTable, int fileMetaPosition){
+        return makeFile(new FileMetaData(filesMetadataTable, fileMetaPosition));
     }
-
-    private FileSystemEntry getFile(FileSystemEntry directoryContainer, int childFileMetaPosition){
-        FileSystemEntry fileSystemEntry = new FileSystemEntry();
+    private static FileSystemEntry makeFile(FileMetaData fileMetaData){
+        FileSystemEntry fileSystemEntry = new FileSystemEntry(new ArrayList<>());
         fileSystemEntry.directoryFlag = false;
-
-        FileMetaData fileMetaData = new FileMetaData(childFileMetaPosition);
         fileSystemEntry.name = fileMetaData.fileName;
         fileSystemEntry.offset = fileMetaData.fileDataRealOffset;
         fileSystemEntry.size = fileMetaData.fileDataRealLength;
-        if (fileMetaData.nextSiblingFileOffset != -1)
-            directoryContainer.content.add(getFile(directoryContainer, fileMetaData.nextSiblingFileOffset) );
-
         return fileSystemEntry;
     }
+    /**
+     * Directory entry that decodes its content only when getContent() called for the first time.
+     * Sub-directories are lazy as well.
+     * @param directoryMetaPosition offset of the directory in directory metadata table. 0 for root.
+     * */
+    static FileSystemEntry makeLazyDirectory(byte[] dirsMetadataTable,
+                                             byte[] filesMetadataTable,
+                                             int directoryMetaPosition){
+        DirectoryMetaData directoryMetaData = new DirectoryMetaData(dirsMetadataTable, directoryMetaPosition);
+        FileSystemEntry fileSystemEntry = new FileSystemEntry(null);
+        fileSystemEntry.directoryFlag = true;
+        fileSystemEntry.name = makeDirectoryName(directoryMetaData, directoryMetaPosition);
+        fileSystemEntry.dirsMetadataTable = dirsMetadataTable;
+        fileSystemEntry.filesMetadataTable = filesMetadataTable;
+        fileSystemEntry.firstSubdirectoryOffset = directoryMetaData.firstSubdirectoryOffset;
+        fileSystemEntry.firstFileOffset = directoryMetaData.firstFileOffset;
+        return fileSystemEntry;
+    }
+
+    private FileSystemEntry(List<FileSystemEntry> content){
+        this.content = content;
+    }
+
+    private synchronized void decodeLazyContent(){
+        if (content != null)
+            return;
+        content = decodeContent(dirsMetadataTable, filesMetadataTable, firstSubdirectoryOffset, firstFileOffset, true);
+        dirsMetadataTable = null;
+        filesMetadataTable = null;
+    }
+    /**
+     * Walk sibling chains of directory's sub-directories and files
+     * */
+    private static List<FileSystemEntry> decodeContent(byte[] dirsMetadataTable,
+                                                       byte[] filesMetadataTable,
+                                                       int firstSubdirectoryOffset,
+                                                       int firstFileOffset,
+                                                       boolean lazy){
+        List<FileSystemEntry> decodedContent = new ArrayList<>();
+
+        int directoryOffset = firstSubdirectoryOffset;
+        while (directoryOffset != -1){
+            if (lazy)
+                decodedContent.add(makeLazyDirectory(dirsMetadataTable, filesMetadataTable, directoryOffset));
+            else
+                decodedContent.add(new FileSystemEntry(dirsMetadataTable, filesMetadataTable, directoryOffset));
+            directoryOffset = Converter.getLEint(dirsMetadataTable, directoryOffset + 0x4);   // next sibling
+        }
+        int fileOffset = firstFileOffset;
+        while (fileOffset != -1){
+            FileMetaData fileMetaData = new FileMetaData(filesMetadataTable, fileOffset);
+            decodedContent.add(makeFile(fileMetaData));
+            fileOffset = fileMetaData.nextSiblingFileOffset;
+        }
+        decodedContent.sort(Comparator.comparingLong(FileSystemEntry::getOffset));
+        return decodedContent;
+    }
 
     public boolean isDirectory() { return directoryFlag; }
     public boolean isFile() { return ! directoryFlag; }
     public long getOffset() { return offset; }
     public long getSize() { return size; }
-    public List<FileSystemEntry> getContent() { return content; }
+    public List<FileSystemEntry> getContent() {
+        if (content == null)
+            decodeLazyContent();
+        return content;
+    }
     public String getName(){ return name; }
 
 
@@ -120,10 +169,7 @@ public class FileSystemEntry {
 
         private final String dirName;
 
-        private DirectoryMetaData(){
-            this(0);
-        }
-        private DirectoryMetaData(int childDirMetaPosition){
+        private DirectoryMetaData(byte[] dirsMetadataTable, int childDirMetaPosition){
             int i = childDirMetaPosition;
             parentDirectoryOffset = Converter.getLEint(dirsMetadataTable, i);
             i += 4;
@@ -167,11 +213,7 @@ public class FileSystemEntry {
 
         private String fileName;
 
-        private FileMetaData(){
-            this(0);
-        }
-        
-        private FileMetaData(int childFileMetaPosition){
+        private FileMetaData(byte[] filesMetadataTable, int childFileMetaPosition){
             int i = childFileMetaPosition;
             // int containingDirectoryOffset = LoperConverter.getLEint(filesMetadataTable, i); // never used
             i += 4;
@@ -208,9 +250,11 @@ public class FileSystemEntry {
     }
 
     public void printTreeForDebug(int spacerForSizes){
-        log.debug(FileSystemTreeViewMaker.make(content, spacerForSizes));
+        if (log.isDebugEnabled())
+            log.debug(FileSystemTreeViewMaker.make(getContent(), spacerForSizes));
     }
     public void printTreeForDebug(){
-        log.debug(FileSystemTreeViewMaker.make(content, 100));
+        if (log.isDebugEnabled())
+            log.debug(FileSystemTreeViewMaker.make(getContent(), 100));
     }
 }
@@ -0,0 +1,134 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.aesctr.ISeekableSource;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Stream of IVFC level 6 (RomFS) data. Every block is read completely and checked against level 5 hash before
+ * any byte of it is returned, so corrupted data is never handed out: IOException is thrown instead.
+ * Created by IVFCVerifier.openVerifiedStream().
+ * */
+@NotThreadSafe
+public class IVFCVerifiedInputStream extends InputStream {
+    private final ISeekableSource channel;
+    private final long levelOffset;
+    private final long levelSize;
+    private final int blockSize;
+    private final byte[] hashTable;
+    private final MessageDigest digest;
+    private final byte[] block;
+    private final byte[] hash = new byte[IVFCVerifier.HASH_SIZE];
+
+    private long loadedBlock = -1;
+    private long position;
+
+    IVFCVerifiedInputStream(ISeekableSource channel,
+                            long levelOffset,
+                            long levelSize,
+                            int blockSize,
+                            byte[] hashTable,
+                            long position) throws NoSuchAlgorithmException{
+        this.channel = channel;
+        this.levelOffset = levelOffset;
+        this.levelSize = levelSize;
+        this.blockSize = blockSize;
+        this.hashTable = hashTable;
+        this.digest = MessageDigest.getInstance("SHA-256");
+        this.block = new byte[blockSize];
+        this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException{
+        byte[] one = new byte[1];
+        if (read(one, 0, 1) < 0)
+            return -1;
+        return one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException{
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (position >= levelSize)
+            return -1;
+
+        int done = 0;
+        while (done < len && position < levelSize){
+            long blockIndex = position / blockSize;
+            if (blockIndex != loadedBlock)
+                loadBlock(blockIndex);
+            int positionInBlock = (int) (position % blockSize);
+            int size = (int) Math.min(Math.min(len - done, blockSize - positionInBlock), levelSize - position);
+            System.arraycopy(block, positionInBlock, b, off + done, size);
+            done += size;
+            position += size;
+        }
+        return done;
+    }
+
+    private void loadBlock(long blockIndex) throws IOException{
+        long start = blockIndex * blockSize;
+        int length = (int) Math.min(blockSize, levelSize - start);
+        if (channel.read(levelOffset + start, block, 0, length) != length)
+            throw new IOException("Failed to read IVFC level 6 block "+blockIndex);
+        Arrays.fill(block, length, blockSize, (byte) 0);
+        digest.update(block);
+        try {
+            digest.digest(hash, 0, hash.length);
+        }
+        catch (Exception e){
+            throw new IOException(e);
+        }
+        if (! IVFCVerifier.isHashEqual(hashTable, blockIndex, hash)){
+            loadedBlock = -1;
+            throw new IOException("IVFC level 6 block "+blockIndex+" is corrupted");
+        }
+        loadedBlock = blockIndex;
+    }
+
+    @Override
+    public long skip(long n){
+        if (n <= 0)
+            return 0;
+        long skipped = Math.min(n, Math.max(0, levelSize - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available(){
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, levelSize - position));
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
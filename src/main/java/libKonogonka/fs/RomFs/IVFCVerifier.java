@@ -0,0 +1,312 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.NCA.NCASectionTableBlock.SuperBlockIVFC;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks IVFC hash tree of RomFS section. Level 1 is checked against master hash, every next level against
+ * SHA-256 hashes stored in the previous one; level 6 is RomFS itself. Block size of the level is 2^(block size field).
+ * The last incomplete block of the level is hashed as if it's padded by zeroes up to the block size.
+ * */
+public class IVFCVerifier {
+    private final static Logger log = LogManager.getLogger(IVFCVerifier.class);
+
+    static final int LEVELS = 6;
+    static final int HASH_SIZE = 0x20;
+    private static final int TASK_SIZE = 0x400000;
+
+    private final InFileStreamProducer producer;
+    private final byte[] masterHash;
+    private final long[] offsets = new long[LEVELS];
+    private final long[] sizes = new long[LEVELS];
+    private final int[] blockSizes = new int[LEVELS];
+
+    /**
+     * @param producer producer of the stream where section is located
+     * @param sectionOffset position of section (IVFC offsets are counted from it) in stream producer creates
+     * @param superBlock IVFC super block from NCA FS header
+     * */
+    public IVFCVerifier(InFileStreamProducer producer, long sectionOffset, SuperBlockIVFC superBlock) throws Exception{
+        if (! "IVFC".equals(superBlock.getMagic()))
+            throw new Exception("IVFC super block magic is incorrect: "+superBlock.getMagic());
+        this.producer = producer;
+        this.masterHash = Arrays.copyOf(superBlock.getMasterHash(),
+                Math.min(superBlock.getMasterHashSize(), superBlock.getMasterHash().length));
+        setLevel(0, sectionOffset, superBlock.getLvl1Offset(), superBlock.getLvl1Size(), superBlock.getLvl1SBlockSize());
+        setLevel(1, sectionOffset, superBlock.getLvl2Offset(), superBlock.getLvl2Size(), superBlock.getLvl2SBlockSize());
+        setLevel(2, sectionOffset, superBlock.getLvl3Offset(), superBlock.getLvl3Size(), superBlock.getLvl3SBlockSize());
+        setLevel(3, sectionOffset, superBlock.getLvl4Offset(), superBlock.getLvl4Size(), superBlock.getLvl4SBlockSize());
+        setLevel(4, sectionOffset, superBlock.getLvl5Offset(), superBlock.getLvl5Size(), superBlock.getLvl5SBlockSize());
+        setLevel(5, sectionOffset, superBlock.getLvl6Offset(), superBlock.getLvl6Size(), superBlock.getLvl6SBlockSize());
+    }
+
+    private void setLevel(int level, long sectionOffset, long offset, long size, int blockSizePower) throws Exception{
+        if (blockSizePower < 4 || blockSizePower > 24)
+            throw new Exception("IVFC level "+(level+1)+" block size is not supported: 2^"+blockSizePower);
+        if (offset < 0 || size < 0)
+            throw new Exception("IVFC level "+(level+1)+" offset or size is incorrect");
+        offsets[level] = sectionOffset + offset;
+        sizes[level] = size;
+        blockSizes[level] = 1 << blockSizePower;
+    }
+
+    /**
+     * Verify all levels using as many threads as there are processors
+     * */
+    public Report verify() throws Exception{
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return verify(executor, threads);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * Verify all levels. Blocks are split into tasks handled by 'workers' tasks submitted to executor; every
+     * worker has its own channel and decryptor. Verification stops on the first corrupted block. Tasks are taken in
+     * level/block order and always finished, so the first corrupted block is reported no matter how many workers run.
+     * */
+    public Report verify(ExecutorService executor, int workers) throws Exception{
+        if (workers < 1)
+            throw new Exception("Workers count must be positive: "+workers);
+        long startTime = System.nanoTime();
+        byte[][] hashTables = readHashTables();
+
+        List<Task> tasks = new ArrayList<>();
+        for (int level = 0; level < LEVELS; level++){
+            long blocksCount = getBlocksCount(level);
+            if (hashTables[level].length < blocksCount * HASH_SIZE)
+                throw new Exception("IVFC level "+(level+1)+" hash table is too small: "+hashTables[level].length);
+            long blocksPerTask = Math.max(1, TASK_SIZE / blockSizes[level]);
+            for (long block = 0; block < blocksCount; block += blocksPerTask)
+                tasks.add(new Task(level, block, Math.min(blocksPerTask, blocksCount - block)));
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong failure = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong bytesVerified = new AtomicLong();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, tasks.size()); i++)
+            futures.add(executor.submit(() -> work(tasks, next, hashTables, failure, bytesVerified)));
+
+        Exception exception = null;
+        for (Future<Void> future : futures){
+            try {
+                future.get();
+            }
+            catch (ExecutionException e){
+                next.set(tasks.size());
+                if (exception == null)
+                    exception = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        if (exception != null)
+            throw exception;
+
+        long failed = failure.get();
+        boolean valid = failed == Long.MAX_VALUE;
+        Report report = new Report(valid,
+                valid ? 0 : (int) (failed >>> 48) + 1,
+                valid ? -1 : failed & 0xFFFFFFFFFFFFL,
+                bytesVerified.get(),
+                System.nanoTime() - startTime);
+        log.debug(report);
+        return report;
+    }
+    /**
+     * @return table of hashes used to verify every level: master hash for level 1, content of level N-1 for level N
+     * */
+    private byte[][] readHashTables() throws Exception{
+        byte[][] hashTables = new byte[LEVELS][];
+        hashTables[0] = masterHash;
+        try (ISeekableSource channel = producer.produceSource()){
+            for (int level = 0; level < LEVELS - 1; level++)
+                hashTables[level + 1] = readLevel(channel, level);
+        }
+        return hashTables;
+    }
+
+    private byte[] readLevel(ISeekableSource channel, int level) throws Exception{
+        if (sizes[level] > Integer.MAX_VALUE - 8)
+            throw new Exception("IVFC level "+(level+1)+" is too big for hash table: "+sizes[level]);
+        byte[] content = new byte[(int) sizes[level]];
+        if (channel.read(offsets[level], content, 0, content.length) != content.length)
+            throw new Exception("Failed to read IVFC level "+(level+1));
+        return content;
+    }
+
+    private long getBlocksCount(int level){
+        return (sizes[level] + blockSizes[level] - 1) / blockSizes[level];
+    }
+
+    private Void work(List<Task> tasks,
+                      AtomicInteger next,
+                      byte[][] hashTables,
+                      AtomicLong failure,
+                      AtomicLong bytesVerified) throws Exception{
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = new byte[HASH_SIZE];
+        byte[] buffer = null;
+        try (ISeekableSource channel = producer.produceSource()){
+            int index;
+            while ((index = next.getAndIncrement()) < tasks.size()){
+                Task task = tasks.get(index);
+                int blockSize = blockSizes[task.level];
+                long start = task.firstBlock * blockSize;
+                int length = (int) Math.min(task.blocksCount * blockSize, sizes[task.level] - start);
+                int paddedLength = (int) (task.blocksCount * blockSize);
+                if (buffer == null || buffer.length < paddedLength)
+                    buffer = new byte[paddedLength];
+                if (channel.read(offsets[task.level] + start, buffer, 0, length) != length)
+                    throw new Exception("Failed to read IVFC level "+(task.level+1)+" at 0x"+Long.toHexString(start));
+                Arrays.fill(buffer, length, paddedLength, (byte) 0);
+
+                for (int i = 0; i < task.blocksCount; i++){
+                    digest.update(buffer, i * blockSize, blockSize);
+                    digest.digest(hash, 0, HASH_SIZE);
+                    long block = task.firstBlock + i;
+                    if (! isHashEqual(hashTables[task.level], block, hash)){
+                        failure.accumulateAndGet(((long) task.level << 48) | block, Math::min);
+                        next.set(tasks.size());
+                        return null;
+                    }
+                }
+                bytesVerified.addAndGet(length);
+            }
+        }
+        return null;
+    }
+
+    static boolean isHashEqual(byte[] hashTable, long block, byte[] hash){
+        int position = (int) (block * HASH_SIZE);
+        for (int i = 0; i < HASH_SIZE; i++){
+            if (hashTable[position + i] != hash[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Open stream of level 6 (RomFS) data that checks every block against level 5 hash table before returning
+     * anything from it. Levels 1-5 are verified before stream is created.
+     * @param position position inside level 6, e.g. RomFS file data offset + file offset
+     * */
+    public IVFCVerifiedInputStream openVerifiedStream(long position) throws Exception{
+        byte[][] hashTables = readHashTables();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = new byte[HASH_SIZE];
+        for (int level = 0; level < LEVELS - 1; level++){
+            byte[] content = hashTables[level + 1];
+            int blockSize = blockSizes[level];
+            long blocksCount = getBlocksCount(level);
+            if (hashTables[level].length < blocksCount * HASH_SIZE)
+                throw new Exception("IVFC level "+(level+1)+" hash table is too small: "+hashTables[level].length);
+            byte[] block = new byte[blockSize];
+            for (long i = 0; i < blocksCount; i++){
+                int start = (int) (i * blockSize);
+                int length = Math.min(blockSize, content.length - start);
+                System.arraycopy(content, start, block, 0, length);
+                Arrays.fill(block, length, blockSize, (byte) 0);
+                digest.update(block);
+                digest.digest(hash, 0, HASH_SIZE);
+                if (! isHashEqual(hashTables[level], i, hash))
+                    throw new Exception("IVFC level "+(level+1)+" block "+i+" is corrupted");
+            }
+        }
+        if (hashTables[LEVELS - 1].length < getBlocksCount(LEVELS - 1) * HASH_SIZE)
+            throw new Exception("IVFC level 6 hash table is too small: "+hashTables[LEVELS - 1].length);
+        return new IVFCVerifiedInputStream(producer.produceSource(),
+                offsets[LEVELS - 1],
+                sizes[LEVELS - 1],
+                blockSizes[LEVELS - 1],
+                hashTables[LEVELS - 1],
+                position);
+    }
+
+    private static class Task {
+        private final int level;
+        private final long firstBlock;
+        private final long blocksCount;
+
+        private Task(int level, long firstBlock, long blocksCount){
+            this.level = level;
+            this.firstBlock = firstBlock;
+            this.blocksCount = blocksCount;
+        }
+    }
+
+    public static class Report {
+        private final boolean valid;
+        private final int failedLevel;
+        private final long failedBlock;
+        private final long bytesVerified;
+        private final long elapsedNanos;
+
+        private Report(boolean valid, int failedLevel, long failedBlock, long bytesVerified, long elapsedNanos){
+            this.valid = valid;
+            this.failedLevel = failedLevel;
+            this.failedBlock = failedBlock;
+            this.bytesVerified = bytesVerified;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public boolean isValid() { return valid; }
+        /**
+         * @return level (1-6) of the first corrupted block found or 0 if everything is fine
+         * */
+        public int getFailedLevel() { return failedLevel; }
+        /**
+         * @return index of corrupted block inside its level or -1 if everything is fine
+         * */
+        public long getFailedBlock() { return failedBlock; }
+        public long getBytesVerified() { return bytesVerified; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        public double getMegabytesPerSecond(){
+            if (elapsedNanos == 0)
+                return 0;
+            return bytesVerified / (1024.0 * 1024.0) / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString(){
+            if (valid)
+                return String.format("IVFC verified: %d bytes, %.2f MB/s", bytesVerified, getMegabytesPerSecond());
+            return String.format("IVFC verification failed: level %d block %d (%d bytes checked, %.2f MB/s)",
+                    failedLevel, failedBlock, bytesVerified, getMegabytesPerSecond());
+        }
+    }
+}
@@ -27,12 +27,12 @@ import org.apache.logging.log4j.Logger;
  * This class stores information contained in Level 6 Header of the RomFS image
  * ------------------------------------
  * | Header Length (usually 0x50)     |
- * | Directory Hash Table Offset      | Not used by this library
- * | Directory Hash Table Length      | Not used by this library
+ * | Directory Hash Table Offset      | Used for path lookup
+ * | Directory Hash Table Length      | Used for path lookup
  * | Directory Metadata Table Offset  |
  * | Directory Metadata Table Length  |
- * | File Hash Table Offset           | Not used by this library
- * | File Hash Table Length           | Not used by this library
+ * | File Hash Table Offset           | Used for path lookup
+ * | File Hash Table Length           | Used for path lookup
  * | File Metadata Table Offset       |
  * | File Metadata Table Length       |
  * | File Data Offset                 |
@@ -26,14 +26,16 @@ import java.io.BufferedInputStream;
 public class RomFsConstruct {
     private Level6Header header;
 
-    private FileSystemEntry rootEntry;
     private final BufferedInputStream stream;
     private int headerSize;
+    private byte[] directoryHashTable;
     private byte[] directoryMetadataTable;
+    private byte[] fileHashTable;
     private byte[] fileMetadataTable;
 
     private final long offsetPositionInFile;
     private final long level6Offset;
+    private long positionInLevel6;
 
     RomFsConstruct(InFileStreamProducer producer, long level6Offset) throws Exception{
         this(producer, level6Offset, 0);
@@ -51,10 +53,11 @@ public class RomFsConstruct {
         goToStartingPosition();
         constructHeader();
         directoryMetadataTableLengthCheck();
-        directoryMetadataTableConstruct();
         fileMetadataTableLengthCheck();
-        fileMetadataTableConstruct();
-        constructRootFilesystemEntry();
+        directoryHashTable = readTable(header.getDirectoryHashTableOffset(), header.getDirectoryHashTableLength());
+        directoryMetadataTable = readTable(header.getDirectoryMetadataTableOffset(), header.getDirectoryMetadataTableLength());
+        fileHashTable = readTable(header.getFileHashTableOffset(), header.getFileHashTableLength());
+        fileMetadataTable = readTable(header.getFileMetadataTableOffset(), header.getFileMetadataTableLength());
         stream.close();
     }
 
@@ -72,6 +75,7 @@ public class RomFsConstruct {
         System.arraycopy(headerSizeBytes, 0, lv6headerBytes, 0, 0x8);
         System.arraycopy(rawDataChunk, 0, lv6headerBytes, 0x8, headerSize-0x8);
         this.header = new Level6Header(lv6headerBytes);
+        positionInLevel6 = headerSize;
     }
     private byte[] detectHeaderSize() throws Exception{
         byte[] lv6HeaderSizeRaw = new byte[0x8];
@@ -85,28 +89,26 @@ public class RomFsConstruct {
         if (header.getDirectoryMetadataTableLength() < 0)
             throw new Exception("Not supported: DirectoryMetadataTableLength < 0");
     }
-    private void directoryMetadataTableConstruct() throws Exception{
-        skipBytes(header.getDirectoryMetadataTableOffset() - headerSize);
-
-        directoryMetadataTable = new byte[(int) header.getDirectoryMetadataTableLength()];
-        if (stream.read(directoryMetadataTable) != (int) header.getDirectoryMetadataTableLength())
-            throw new Exception("Failed to read "+header.getDirectoryMetadataTableLength());
-    }
 
     private void fileMetadataTableLengthCheck() throws Exception{
         if (header.getFileMetadataTableLength() < 0)
             throw new Exception("Not supported: FileMetadataTableLength < 0");
     }
-    private void fileMetadataTableConstruct() throws Exception{
-        skipBytes(header.getFileMetadataTableOffset() - header.getFileHashTableOffset());
-
-        fileMetadataTable = new byte[(int) header.getFileMetadataTableLength()];
-        if (stream.read(fileMetadataTable) != (int) header.getFileMetadataTableLength())
-            throw new Exception("Failed to read "+header.getFileMetadataTableLength());
-    }
-
-    private void constructRootFilesystemEntry() throws Exception{
-        rootEntry = new FileSystemEntry(directoryMetadataTable, fileMetadataTable);
+    /**
+     * Tables are expected in the order they are defined in header: directory hash table, directory metadata table,
+     * file hash table, file metadata table
+     * */
+    private byte[] readTable(long offset, long length) throws Exception{
+        if (offset < positionInLevel6)
+            throw new Exception(String.format("Not supported: table at 0x%x overlaps previous one (0x%x)",
+                    offset, positionInLevel6));
+        skipBytes(offset - positionInLevel6);
+
+        byte[] table = new byte[(int) length];
+        if (stream.read(table) != (int) length)
+            throw new Exception("Failed to read "+length);
+        positionInLevel6 = offset + length;
+        return table;
     }
 
     private void skipBytes(long size) throws Exception{
@@ -119,7 +121,8 @@ public class RomFsConstruct {
     }
 
     Level6Header getHeader() { return header; }
-    FileSystemEntry getRootEntry(){ return rootEntry; }
+    byte[] getDirectoryHashTable() { return directoryHashTable; }
     byte[] getDirectoryMetadataTable() { return directoryMetadataTable; }
+    byte[] getFileHashTable() { return fileHashTable; }
     byte[] getFileMetadataTable() { return fileMetadataTable;}
 }
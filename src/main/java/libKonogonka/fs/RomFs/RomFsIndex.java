@@ -0,0 +1,225 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.Converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Flat RomFS tree kept in primitive arrays: one slot per directory or file, no object per entry.
+ * Directories take nodes [0, getDirectoryCount()), root is node 0; files take the rest.
+ * Children of a directory are its sub-directories followed by its files, linked through getNextSibling().
+ * Names are not copied: they stay UTF-8 encoded inside metadata tables.
+ * */
+public class RomFsIndex {
+    public static final int NONE = -1;
+
+    private static final int DIRECTORY_ENTRY_SIZE = 0x18;
+    private static final int FILE_ENTRY_SIZE = 0x20;
+
+    private final byte[] dirsMetadataTable;
+    private final byte[] filesMetadataTable;
+    private final int directoryCount;
+
+    private final long[] offsets;
+    private final long[] sizes;
+    private final int[] parent;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] tableOffsets;   // Position of the entry in its metadata table
+
+    public RomFsIndex(byte[] dirsMetadataTable, byte[] filesMetadataTable) throws Exception{
+        this.dirsMetadataTable = dirsMetadataTable;
+        this.filesMetadataTable = filesMetadataTable;
+
+        int[] directoryTableOffsets = collectEntries(dirsMetadataTable, DIRECTORY_ENTRY_SIZE, 0x14);
+        int[] fileTableOffsets = collectEntries(filesMetadataTable, FILE_ENTRY_SIZE, 0x1C);
+        if (directoryTableOffsets.length == 0 || directoryTableOffsets[0] != 0)
+            throw new Exception("Directory metadata table doesn't contain root directory");
+
+        this.directoryCount = directoryTableOffsets.length;
+        int count = directoryCount + fileTableOffsets.length;
+
+        this.offsets = new long[count];
+        this.sizes = new long[count];
+        this.parent = new int[count];
+        this.firstChild = new int[count];
+        this.nextSibling = new int[count];
+        this.tableOffsets = new int[count];
+        System.arraycopy(directoryTableOffsets, 0, tableOffsets, 0, directoryCount);
+        System.arraycopy(fileTableOffsets, 0, tableOffsets, directoryCount, fileTableOffsets.length);
+        Arrays.fill(firstChild, NONE);
+        int[] firstFiles = new int[directoryCount];
+
+        for (int node = 0; node < directoryCount; node++){
+            int position = tableOffsets[node];
+            parent[node] = node == 0 ? NONE : directoryNode(Converter.getLEint(dirsMetadataTable, position));
+            int firstSubdirectory = directoryNode(Converter.getLEint(dirsMetadataTable, position + 0x8));
+            firstFiles[node] = fileNode(Converter.getLEint(dirsMetadataTable, position + 0xC));
+            nextSibling[node] = directoryNode(Converter.getLEint(dirsMetadataTable, position + 0x4));
+            firstChild[node] = firstSubdirectory == NONE ? firstFiles[node] : firstSubdirectory;
+        }
+        for (int node = directoryCount; node < count; node++){
+            int position = tableOffsets[node];
+            parent[node] = directoryNode(Converter.getLEint(filesMetadataTable, position));
+            nextSibling[node] = fileNode(Converter.getLEint(filesMetadataTable, position + 0x4));
+            offsets[node] = Converter.getLElong(filesMetadataTable, position + 0x8);
+            sizes[node] = Converter.getLElong(filesMetadataTable, position + 0x10);
+        }
+        // Last sub-directory continues with the first file of the same parent
+        for (int node = 1; node < directoryCount; node++){
+            if (nextSibling[node] == NONE)
+                nextSibling[node] = firstFiles[parent[node]];
+        }
+    }
+    /**
+     * Entries in metadata tables are stored one after another; each takes fixed part plus name aligned to 4 bytes.
+     * Table may end with zero padding. Real entry is never all zeros (only root has no name and its sibling link is
+     * 0xFFFFFFFF), so collecting stops once the rest of the table is zeros.
+     * */
+    private static int[] collectEntries(byte[] table, int entrySize, int nameLengthField) throws Exception{
+        int end = table.length;
+        while (end > 0 && table[end - 1] == 0)
+            end--;
+        int[] entries = new int[16];
+        int count = 0;
+        int position = 0;
+        while (position < end && position + entrySize <= table.length){
+            int nameLength = Converter.getLEint(table, position + nameLengthField);
+            if (nameLength < 0 || position + entrySize + nameLength > table.length)
+                throw new Exception(String.format("Incorrect name length 0x%x of metadata table entry at 0x%x",
+                        nameLength, position));
+            if (count == entries.length)
+                entries = Arrays.copyOf(entries, count * 2);
+            entries[count++] = position;
+            position += entrySize + ((nameLength + 3) & ~3);
+        }
+        return Arrays.copyOf(entries, count);
+    }
+
+    private int directoryNode(int tableOffset) throws Exception{
+        if (tableOffset == NONE)
+            return NONE;
+        int node = Arrays.binarySearch(tableOffsets, 0, directoryCount, tableOffset);
+        if (node < 0)
+            throw new Exception(String.format("No directory entry at 0x%x", tableOffset));
+        return node;
+    }
+
+    private int fileNode(int tableOffset) throws Exception{
+        if (tableOffset == NONE)
+            return NONE;
+        int node = Arrays.binarySearch(tableOffsets, directoryCount, tableOffsets.length, tableOffset);
+        if (node < 0)
+            throw new Exception(String.format("No file entry at 0x%x", tableOffset));
+        return node;
+    }
+
+    public int getRoot() { return 0; }
+    /**
+     * @return number of nodes: directories including root plus files
+     * */
+    public int size() { return offsets.length; }
+    public int getDirectoryCount() { return directoryCount; }
+    public int getFileCount() { return offsets.length - directoryCount; }
+
+    public boolean isDirectory(int node) { return node < directoryCount; }
+    /**
+     * @return offset of file data relative to RomFS file data region. 0 for directories.
+     * */
+    public long getOffset(int node) { return offsets[node]; }
+    public long getSize(int node) { return sizes[node]; }
+    public int getParent(int node) { return parent[node]; }
+    public int getFirstChild(int node) { return firstChild[node]; }
+    public int getNextSibling(int node) { return nextSibling[node]; }
+
+    public String getName(int node){
+        if (node == 0)
+            return "ROOT";
+        byte[] table = getTable(node);
+        int position = getNamePosition(node);
+        return new String(table, position, getNameLength(node), StandardCharsets.UTF_8);
+    }
+    /**
+     * @return path like '/dir/file.bin'. Root is '/'.
+     * */
+    public String getPath(int node){
+        if (node == 0)
+            return "/";
+        StringBuilder builder = new StringBuilder();
+        for (int i = node; i != 0; i = parent[i])
+            builder.insert(0, getName(i)).insert(0, '/');
+        return builder.toString();
+    }
+    /**
+     * Walk the tree by comparing raw UTF-8 names.
+     * @param path path inside RomFS like '/data/file.bin'. Empty path or '/' stands for root directory.
+     * @return node or NONE
+     * */
+    public int find(String path){
+        int node = 0;
+        for (String pathPart : path.split("/")){
+            if (pathPart.isEmpty())
+                continue;
+            if (! isDirectory(node))
+                return NONE;
+            byte[] name = pathPart.getBytes(StandardCharsets.UTF_8);
+            int child = firstChild[node];
+            while (child != NONE && ! isNameEqual(child, name))
+                child = nextSibling[child];
+            if (child == NONE)
+                return NONE;
+            node = child;
+        }
+        return node;
+    }
+
+    private boolean isNameEqual(int node, byte[] name){
+        if (getNameLength(node) != name.length)
+            return false;
+        byte[] table = getTable(node);
+        int position = getNamePosition(node);
+        for (int i = 0; i < name.length; i++){
+            if (table[position + i] != name[i])
+                return false;
+        }
+        return true;
+    }
+    /**
+     * @return FileSystemEntry for given node, so it could be used with RomFsProvider export and stream methods.
+     * Directory entries are lazy (see RomFsProvider.getLazyRootEntry()).
+     * */
+    public FileSystemEntry getEntry(int node){
+        if (isDirectory(node))
+            return FileSystemEntry.makeLazyDirectory(dirsMetadataTable, filesMetadataTable, tableOffsets[node]);
+        return FileSystemEntry.makeFile(filesMetadataTable, tableOffsets[node]);
+    }
+
+    private byte[] getTable(int node){
+        return isDirectory(node) ? dirsMetadataTable : filesMetadataTable;
+    }
+    private int getNamePosition(int node){
+        return tableOffsets[node] + (isDirectory(node) ? DIRECTORY_ENTRY_SIZE : FILE_ENTRY_SIZE);
+    }
+    private int getNameLength(int node){
+        return Converter.getLEint(getTable(node), tableOffsets[node] + (isDirectory(node) ? 0x14 : 0x1C));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports RomFS files using several workers. Files are sorted by data offset and taken by workers one by one, so
+ * every worker reads forward through the image. Each worker has its own random access channel (and cipher for
+ * encrypted images), nothing is shared between workers except the queue position.
+ * */
+class RomFsParallelExport {
+    private static final int BUFFER_SIZE = 0x100000;
+
+    private final InFileStreamProducer producer;
+    private final long fileDataPosition;
+
+    /**
+     * @param fileDataPosition position of RomFS file data region in the file producer reads
+     * */
+    RomFsParallelExport(InFileStreamProducer producer, long fileDataPosition){
+        this.producer = producer;
+        this.fileDataPosition = fileDataPosition;
+    }
+
+    void export(FileSystemEntry entry, String saveToLocation, ExecutorService executor, int workers) throws Exception{
+        if (workers < 1)
+            throw new Exception("Workers count must be positive: "+workers);
+        List<Task> tasks = collectTasks(entry, saveToLocation);
+
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, tasks.size()); i++)
+            futures.add(executor.submit(() -> work(tasks, next)));
+
+        Exception failure = null;
+        for (Future<Void> future : futures){
+            try {
+                future.get();
+            }
+            catch (ExecutionException e){
+                next.set(tasks.size());     // Stop other workers
+                if (failure == null)
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Create directories and list files that should be exported, ordered by data offset
+     * */
+    static List<Task> collectTasks(FileSystemEntry entry, String saveToLocation){
+        List<Task> tasks = new ArrayList<>();
+        if (entry.isDirectory())
+            collect(entry, saveToLocation, tasks);
+        else {
+            new File(saveToLocation).mkdirs();
+            tasks.add(new Task(entry, new File(saveToLocation, entry.getName())));
+        }
+        tasks.sort(Comparator.comparingLong(task -> task.entry.getOffset()));
+        return tasks;
+    }
+
+    private static void collect(FileSystemEntry directory, String saveToLocation, List<Task> tasks){
+        File location = new File(saveToLocation, directory.getName());
+        location.mkdirs();
+        for (FileSystemEntry entry : directory.getContent()){
+            if (entry.isDirectory())
+                collect(entry, location.getPath(), tasks);
+            else
+                tasks.add(new Task(entry, new File(location, entry.getName())));
+        }
+    }
+
+    private Void work(List<Task> tasks, AtomicInteger next) throws Exception{
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ISeekableSource channel = producer.produceSource()){
+            int index;
+            while ((index = next.getAndIncrement()) < tasks.size()){
+                Task task = tasks.get(index);
+                try {
+                    exportFile(channel, task, buffer);
+                }
+                catch (Exception e){
+                    throw new Exception(task.entry.getName()+": "+e.getLocalizedMessage(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void exportFile(ISeekableSource channel, Task task, byte[] buffer) throws Exception{
+        long position = fileDataPosition + task.entry.getOffset();
+        long size = task.entry.getSize();
+        try (OutputStream outputStream = Files.newOutputStream(task.target.toPath())){
+            long done = 0;
+            while (done < size){
+                int chunkSize = (int) Math.min(buffer.length, size - done);
+                int read = channel.read(position + done, buffer, 0, chunkSize);
+                if (read != chunkSize)
+                    throw new Exception("Read failure. "+chunkSize+"/"+read);
+                outputStream.write(buffer, 0, chunkSize);
+                done += chunkSize;
+            }
+        }
+    }
+
+    static class Task {
+        final FileSystemEntry entry;
+        final File target;
+
+        private Task(FileSystemEntry entry, File target){
+            this.entry = entry;
+            this.target = target;
+        }
+    }
+}
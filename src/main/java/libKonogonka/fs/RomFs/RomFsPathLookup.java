@@ -0,0 +1,113 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.Converter;
+
+/**
+ * Walks RomFS directory and file hash tables the same way console does. Every entry is placed into the bucket
+ * calculated from the parent directory offset and entry name; entries sharing bucket are chained using
+ * 'next hash table bucket' offset of metadata table entry.
+ * */
+class RomFsPathLookup {
+    static final int NOT_FOUND = -1;
+
+    private static final int DIRECTORY_PARENT = 0x0;
+    private static final int DIRECTORY_NEXT_IN_BUCKET = 0x10;
+    private static final int DIRECTORY_NAME_LENGTH = 0x14;
+    private static final int DIRECTORY_NAME = 0x18;
+
+    private static final int FILE_PARENT = 0x0;
+    private static final int FILE_NEXT_IN_BUCKET = 0x18;
+    private static final int FILE_NAME_LENGTH = 0x1C;
+    private static final int FILE_NAME = 0x20;
+
+    private final byte[] directoryHashTable;
+    private final byte[] directoryMetadataTable;
+    private final byte[] fileHashTable;
+    private final byte[] fileMetadataTable;
+
+    RomFsPathLookup(byte[] directoryHashTable,
+                    byte[] directoryMetadataTable,
+                    byte[] fileHashTable,
+                    byte[] fileMetadataTable){
+        this.directoryHashTable = directoryHashTable;
+        this.directoryMetadataTable = directoryMetadataTable;
+        this.fileHashTable = fileHashTable;
+        this.fileMetadataTable = fileMetadataTable;
+    }
+
+    /**
+     * @param parentDirectoryOffset offset of parent directory in directory metadata table. Root is 0.
+     * @param name UTF-8 encoded directory name
+     * @return offset in directory metadata table or NOT_FOUND
+     * */
+    int findDirectory(int parentDirectoryOffset, byte[] name){
+        return find(directoryHashTable, directoryMetadataTable, parentDirectoryOffset, name,
+                DIRECTORY_PARENT, DIRECTORY_NEXT_IN_BUCKET, DIRECTORY_NAME_LENGTH, DIRECTORY_NAME);
+    }
+    /**
+     * @param parentDirectoryOffset offset of parent directory in directory metadata table. Root is 0.
+     * @param name UTF-8 encoded file name
+     * @return offset in file metadata table or NOT_FOUND
+     * */
+    int findFile(int parentDirectoryOffset, byte[] name){
+        return find(fileHashTable, fileMetadataTable, parentDirectoryOffset, name,
+                FILE_PARENT, FILE_NEXT_IN_BUCKET, FILE_NAME_LENGTH, FILE_NAME);
+    }
+
+    private static int find(byte[] hashTable, byte[] metadataTable, int parentDirectoryOffset, byte[] name,
+                            int parentField, int nextInBucketField, int nameLengthField, int nameField){
+        int bucketsCount = hashTable.length / 4;
+        if (bucketsCount == 0)
+            return NOT_FOUND;
+        int bucket = Integer.remainderUnsigned(calculateHash(parentDirectoryOffset, name), bucketsCount);
+        int entryOffset = Converter.getLEint(hashTable, bucket * 4);
+
+        while (entryOffset != NOT_FOUND){
+            if (entryOffset < 0 || entryOffset + nameField > metadataTable.length)
+                return NOT_FOUND;   // Broken table
+            if (Converter.getLEint(metadataTable, entryOffset + parentField) == parentDirectoryOffset &&
+                    isNameEqual(metadataTable, entryOffset + nameLengthField, entryOffset + nameField, name))
+                return entryOffset;
+            entryOffset = Converter.getLEint(metadataTable, entryOffset + nextInBucketField);
+        }
+        return NOT_FOUND;
+    }
+
+    private static boolean isNameEqual(byte[] metadataTable, int nameLengthPosition, int namePosition, byte[] name){
+        int nameLength = Converter.getLEint(metadataTable, nameLengthPosition);
+        if (nameLength != name.length || namePosition + nameLength > metadataTable.length)
+            return false;
+        for (int i = 0; i < nameLength; i++){
+            if (metadataTable[namePosition + i] != name[i])
+                return false;
+        }
+        return true;
+    }
+
+    static int calculateHash(int parentDirectoryOffset, byte[] name){
+        int hash = parentDirectoryOffset ^ 123456789;
+        for (byte b : name){
+            hash = (hash >>> 5) | (hash << 27);
+            hash ^= b & 0xff;
+        }
+        return hash;
+    }
+}
@@ -26,6 +26,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RomFsProvider extends ExportAble {
     private final static Logger log = LogManager.getLogger(RomFsProvider.class);
@@ -33,9 +36,11 @@ public class RomFsProvider extends ExportAble {
     private final InFileStreamProducer producer;
     private final long level6Offset;
     private final Level6Header level6Header;
-    private final FileSystemEntry rootEntry;
+    private FileSystemEntry rootEntry;
+    private RomFsIndex index;
+    private final FileSystemEntry lazyRootEntry;
     private long mediaStartOffset;
-    // Used only for debug
+    private final RomFsPathLookup pathLookup;
     private final byte[] directoryMetadataTable;
     private final byte[] fileMetadataTable;
 
@@ -44,9 +49,12 @@ public class RomFsProvider extends ExportAble {
         RomFsConstruct construct = new RomFsConstruct(producer, level6offset);
         this.level6Offset = level6offset;
         this.level6Header = construct.getHeader();
-        this.rootEntry = construct.getRootEntry();
         this.directoryMetadataTable = construct.getDirectoryMetadataTable();
         this.fileMetadataTable = construct.getFileMetadataTable();
+        this.pathLookup = new RomFsPathLookup(construct.getDirectoryHashTable(), directoryMetadataTable,
+                construct.getFileHashTable(), fileMetadataTable);
+        FileSystemEntry.validateRoot(directoryMetadataTable);
+        this.lazyRootEntry = FileSystemEntry.makeLazyDirectory(directoryMetadataTable, fileMetadataTable, 0);
     }
 
     public RomFsProvider(InFileStreamProducer producer,
@@ -59,22 +67,88 @@ public class RomFsProvider extends ExportAble {
         RomFsConstruct construct = new RomFsConstruct(producer, level6Offset, offsetPositionInFile);
         this.level6Offset = level6Offset;
         this.level6Header = construct.getHeader();
-        this.rootEntry = construct.getRootEntry();
         this.directoryMetadataTable = construct.getDirectoryMetadataTable();
         this.fileMetadataTable = construct.getFileMetadataTable();
+        this.pathLookup = new RomFsPathLookup(construct.getDirectoryHashTable(), directoryMetadataTable,
+                construct.getFileHashTable(), fileMetadataTable);
+        FileSystemEntry.validateRoot(directoryMetadataTable);
+        this.lazyRootEntry = FileSystemEntry.makeLazyDirectory(directoryMetadataTable, fileMetadataTable, 0);
     }
 
     public long getLevel6Offset() { return level6Offset; }
     public Level6Header getHeader() {return level6Header;}
-    public FileSystemEntry getRootEntry() { return rootEntry; }
+    /**
+     * @return root directory with whole tree decoded. Built on first call.
+     * */
+    public synchronized FileSystemEntry getRootEntry(){
+        if (rootEntry == null)
+            rootEntry = new FileSystemEntry(directoryMetadataTable, fileMetadataTable, 0);
+        return rootEntry;
+    }
+    /**
+     * @return root directory where content of every directory is decoded only once it's requested by
+     * getContent(). Preferable for huge images when only part of the tree is needed.
+     * */
+    public FileSystemEntry getLazyRootEntry(){
+        return lazyRootEntry;
+    }
+
+    /**
+     * @return compact tree representation backed by primitive arrays. Built on first call.
+     * */
+    public synchronized RomFsIndex getIndex() throws Exception{
+        if (index == null)
+            index = new RomFsIndex(directoryMetadataTable, fileMetadataTable);
+        return index;
+    }
+
+    /**
+     * Find file or directory using RomFS hash tables without walking the tree.
+     * @param path path inside RomFS like '/data/file.bin'. Empty path or '/' stands for root directory.
+     * @return file or directory entry. Directory entry content is decoded on demand (see getLazyRootEntry()).
+     * @throws FileNotFoundException if nothing found
+     * */
+    public FileSystemEntry lookup(String path) throws Exception{
+        String[] pathParts = path.split("/");
+        int directoryOffset = 0;
+        byte[] lastName = null;
+
+        for (String pathPart : pathParts){
+            if (pathPart.isEmpty())
+                continue;
+            if (lastName != null){
+                directoryOffset = pathLookup.findDirectory(directoryOffset, lastName);
+                if (directoryOffset == RomFsPathLookup.NOT_FOUND)
+                    throw new FileNotFoundException("No file with such name exists: "+path);
+            }
+            lastName = pathPart.getBytes(StandardCharsets.UTF_8);
+        }
 
+        if (lastName == null)
+            return getLazyRootEntry();
+
+        int fileOffset = pathLookup.findFile(directoryOffset, lastName);
+        if (fileOffset != RomFsPathLookup.NOT_FOUND)
+            return FileSystemEntry.makeFile(fileMetadataTable, fileOffset);
+
+        directoryOffset = pathLookup.findDirectory(directoryOffset, lastName);
+        if (directoryOffset != RomFsPathLookup.NOT_FOUND)
+            return FileSystemEntry.makeLazyDirectory(directoryMetadataTable, fileMetadataTable, directoryOffset);
+
+        throw new FileNotFoundException("No file with such name exists: "+path);
+    }
+
+    /**
+     * Directories are exported in a single pass: stream is opened once and files are written in order of their
+     * data offsets.
+     * */
     public boolean exportContent(String saveToLocation, FileSystemEntry entry){
         try{
             if (! saveToLocation.endsWith(File.separator))
                 saveToLocation += File.separator;
 
             if (entry.isDirectory())
-                exportFolderContent(entry, saveToLocation);
+                new RomFsSinglePassExport(producer, getFileDataPosition()).export(entry, saveToLocation);
             else
                 exportSingleFile(entry, saveToLocation);
         }
@@ -85,22 +159,44 @@ public class RomFsProvider extends ExportAble {
         return true;
     }
 
-    private void exportFolderContent(FileSystemEntry entry, String saveToLocation) throws Exception{
-        File contentFile = new File(saveToLocation + entry.getName());
-        contentFile.mkdirs();
-        String currentDirPath = saveToLocation + entry.getName() + File.separator;
-        for (FileSystemEntry fileEntry : entry.getContent()){
-            if (fileEntry.isDirectory())
-                exportFolderContent(fileEntry, currentDirPath);
-            else
-                exportSingleFile(fileEntry, currentDirPath);
+    /**
+     * Export using provided number of threads. Each thread reads its own part of the image.
+     * @throws IllegalArgumentException if threads count is not positive
+     * */
+    public boolean exportContent(String saveToLocation, FileSystemEntry entry, int threads){
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads count must be positive: "+threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return exportContent(saveToLocation, entry, executor, threads);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    /**
+     * Export using provided executor. Files are ordered by data offset and handed out to 'workers' tasks
+     * submitted to executor; every task has its own decryptor.
+     * */
+    public boolean exportContent(String saveToLocation, FileSystemEntry entry, ExecutorService executor, int workers){
+        try{
+            new RomFsParallelExport(producer, getFileDataPosition()).export(entry, saveToLocation, executor, workers);
+        }
+        catch (Exception e){
+            log.error(getFile().getName()+" export failure ", e);
+            return false;
         }
+        return true;
+    }
+
+    private long getFileDataPosition(){
+        return mediaStartOffset * 0x200 + level6Header.getFileDataOffset() + level6Offset;
     }
 
     private void exportSingleFile(FileSystemEntry entry, String saveToLocation) throws Exception {
         try {
             stream = producer.produce();
-            long skipBytes = entry.getOffset() + mediaStartOffset * 0x200 + level6Header.getFileDataOffset() + level6Offset;
+            long skipBytes = getFileDataPosition() + entry.getOffset();
             export(saveToLocation, entry.getName(), skipBytes, entry.getSize());
         }
         catch (Exception e){
@@ -111,8 +207,7 @@ public class RomFsProvider extends ExportAble {
     public InFileStreamProducer getStreamProducer(FileSystemEntry entry) throws Exception{
         if (entry.isDirectory())
             throw new Exception("Directory entries are not supported");
-        return producer.getSuccessor(
-                entry.getOffset() + mediaStartOffset * 0x200 + level6Header.getFileDataOffset() + level6Offset);
+        return producer.getSuccessor(getFileDataPosition() + entry.getOffset());
     }
 
     public File getFile(){
@@ -123,6 +218,6 @@ public class RomFsProvider extends ExportAble {
         level6Header.printDebugInfo();
         new DirectoryMetaTablePlainView(level6Header.getDirectoryMetadataTableLength(), directoryMetadataTable);
         new FileMetaTablePlainView(level6Header.getFileMetadataTableLength(), fileMetadataTable);
-        rootEntry.printTreeForDebug();
+        getRootEntry().printTreeForDebug();
     }
 }
@@ -0,0 +1,101 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.aesctr.InFileStreamProducer;
+
+import java.io.BufferedInputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Exports RomFS files using one stream opened once. Files are ordered by data offset and written while the stream
+ * passes their data, so the whole section is read (and decrypted) only once. Stream is re-opened only when some
+ * file starts before the end of the previous one (files sharing data).
+ * */
+class RomFsSinglePassExport {
+    private static final int BUFFER_SIZE = 0x80000;
+
+    private final InFileStreamProducer producer;
+    private final long fileDataPosition;
+
+    private BufferedInputStream stream;
+    private long position;
+
+    /**
+     * @param fileDataPosition position of RomFS file data region in the stream producer creates
+     * */
+    RomFsSinglePassExport(InFileStreamProducer producer, long fileDataPosition){
+        this.producer = producer;
+        this.fileDataPosition = fileDataPosition;
+    }
+
+    void export(FileSystemEntry entry, String saveToLocation) throws Exception{
+        List<RomFsParallelExport.Task> tasks = RomFsParallelExport.collectTasks(entry, saveToLocation);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            for (RomFsParallelExport.Task task : tasks){
+                try {
+                    moveTo(fileDataPosition + task.entry.getOffset());
+                    exportFile(task, buffer);
+                }
+                catch (Exception e){
+                    throw new Exception(task.entry.getName()+": "+e.getLocalizedMessage(), e);
+                }
+            }
+        }
+        finally {
+            if (stream != null)
+                stream.close();
+        }
+    }
+
+    private void moveTo(long newPosition) throws Exception{
+        if (stream == null || newPosition < position){
+            if (stream != null)
+                stream.close();
+            stream = producer.produce();
+            position = 0;
+        }
+        long mustSkip = newPosition - position;
+        while (mustSkip > 0){
+            long skipped = stream.skip(mustSkip);
+            if (skipped <= 0)
+                throw new Exception("Can't seek to start position: "+newPosition);
+            mustSkip -= skipped;
+        }
+        position = newPosition;
+    }
+
+    private void exportFile(RomFsParallelExport.Task task, byte[] buffer) throws Exception{
+        long size = task.entry.getSize();
+        try (OutputStream outputStream = Files.newOutputStream(task.target.toPath())){
+            long done = 0;
+            while (done < size){
+                int chunkSize = stream.read(buffer, 0, (int) Math.min(buffer.length, size - done));
+                if (chunkSize < 0)
+                    throw new Exception("Read failure. "+size+"/"+done);
+                outputStream.write(buffer, 0, chunkSize);
+                done += chunkSize;
+                position += chunkSize;
+            }
+        }
+    }
+}
@@ -18,10 +18,11 @@
 */
 package libKonogonka.fs.TIK;
 
+import libKonogonka.MemoryMappedFile;
+
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.Arrays;
 
 import static libKonogonka.Converter.*;
@@ -92,7 +93,7 @@ public class TIKProvider  {
         if (file.length() - offset < 0x02c0)
             throw new Exception("File is too small.");
 
-        BufferedInputStream bis = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        BufferedInputStream bis = new BufferedInputStream(MemoryMappedFile.openInputStream(file));
         if (bis.skip(offset) != offset) {
             bis.close();
             throw new Exception("Unable to skip requested range - " + offset);
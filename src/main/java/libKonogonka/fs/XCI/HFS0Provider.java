@@ -25,6 +25,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -46,12 +48,12 @@ public class HFS0Provider extends ExportAble implements ISuperProvider {
 
     private final File file;
 
-    HFS0Provider(long hfsOffsetPosition, RandomAccessFile raf, File file) throws Exception{
+    public HFS0Provider(long hfsOffsetPosition, SeekableByteChannel channel, File file) throws Exception{
         this.file = file;    // Will be used @ getHfs0FilePipedInpStream. It's a bad implementation.
         byte[] hfs0bytes = new byte[16];
 
-        raf.seek(hfsOffsetPosition);
-        if (raf.read(hfs0bytes) != 16){
+        channel.position(hfsOffsetPosition);
+        if (channel.read(ByteBuffer.wrap(hfs0bytes)) != 16){
             throw new Exception("Read HFS0 structure failure. Can't read first 16 bytes on requested offset.");
         }
 
@@ -75,7 +77,7 @@ public class HFS0Provider extends ExportAble implements ISuperProvider {
             // Populate meta information regarding each file inside (?) HFS0
             byte[] metaInfoBytes = new byte[64];
             for (int i = 0; i < filesCount; i++){
-                if (raf.read(metaInfoBytes) != 64)
+                if (channel.read(ByteBuffer.wrap(metaInfoBytes)) != 64)
                     throw new Exception("Read HFS0 File Entry Table failure for file # "+i);
                 offsetSubFile[i] = getLElong(metaInfoBytes, 0);
                 sizeSubFile[i] = getLElong(metaInfoBytes, 8);
@@ -86,11 +88,11 @@ public class HFS0Provider extends ExportAble implements ISuperProvider {
                 stringTableOffsetSubFile[i] = getLEint(metaInfoBytes, 16);
             }
             // Define location of actual data for this HFS0
-            rawFileDataStart = raf.getFilePointer()+stringTableSize;
+            rawFileDataStart = channel.position()+stringTableSize;
             if (stringTableSize <= 0)
                 throw new Exception("String table size of HFS0 less or equal to zero");
             byte[] stringTbl = new byte[stringTableSize];
-            if (raf.read(stringTbl) != stringTableSize){
+            if (channel.read(ByteBuffer.wrap(stringTbl)) != stringTableSize){
                 throw new Exception("Read HFS0 String table failure. Can't read requested string table size ("+stringTableSize+")");
             }
             String[] namesSubFile = new String[filesCount];
@@ -25,79 +25,40 @@ import java.util.Arrays;
 import static libKonogonka.Converter.getLEint;
 import static libKonogonka.Converter.getLElong;
 /**
- * Header information
+ * Header information. Fields are decoded from header bytes on request; array is not copied and must not be changed
+ * afterwards.
  * */
 public class XCIGamecardHeader{
-    private final byte[] rsa2048PKCS1sig;
-    private final boolean magicHead;
-    private final byte[] SecureAreaStartAddr;
-    private final boolean bkupAreaStartAddr;
-    private final byte titleKEKIndexBoth;
-    private final byte titleKEKIndex;
-    private final byte KEKIndex;
-    private final byte gcSize;
-    private final byte gcVersion;
-    private final byte gcFlags;
-    private final byte[] pkgID;
-    private final long valDataEndAddr;
-    private final byte[] gcInfoIV;
-    private final long hfs0partOffset;
-    private final long hfs0headerSize;
-    private final byte[] hfs0headerSHA256;
-    private final byte[] hfs0initDataSHA256;
-    private final int secureModeFlag;
-    private final int titleKeyFlag;
-    private final int keyFlag;
-    private final byte[] normAreaEndAddress;
+    private final byte[] raw;
 
     XCIGamecardHeader(byte[] headerBytes) throws Exception{
         if (headerBytes.length != 400)
             throw new Exception("XCIGamecardHeader Incorrect array size. Expected 400 bytes while received "+headerBytes.length);
-        rsa2048PKCS1sig = Arrays.copyOfRange(headerBytes, 0, 256);
-        magicHead = Arrays.equals(Arrays.copyOfRange(headerBytes, 256, 260), new byte[]{0x48, 0x45, 0x41, 0x44});
-        SecureAreaStartAddr = Arrays.copyOfRange(headerBytes, 260, 264);
-        bkupAreaStartAddr = Arrays.equals(Arrays.copyOfRange(headerBytes, 264, 268), new byte[]{(byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff});
-        titleKEKIndexBoth = headerBytes[268];
-            titleKEKIndex = (byte) ((titleKEKIndexBoth >> 4) & (byte) 0x0F);
-            KEKIndex = (byte) (titleKEKIndexBoth & 0x0F);
-        gcSize = headerBytes[269];
-        gcVersion = headerBytes[270];
-        gcFlags = headerBytes[271];
-        pkgID = Arrays.copyOfRange(headerBytes, 272, 280);
-        valDataEndAddr = getLElong(headerBytes, 280);       //TODO: FIX/simplify //
-        gcInfoIV = Converter.flip(Arrays.copyOfRange(headerBytes, 288, 304));
-        hfs0partOffset = getLElong(headerBytes, 304);
-        hfs0headerSize = getLElong(headerBytes, 312);
-        hfs0headerSHA256 = Arrays.copyOfRange(headerBytes, 320, 352);
-        hfs0initDataSHA256  = Arrays.copyOfRange(headerBytes, 352, 384);
-        secureModeFlag = getLEint(headerBytes, 384);
-        titleKeyFlag = getLEint(headerBytes, 388);
-        keyFlag = getLEint(headerBytes, 392);
-        normAreaEndAddress = Arrays.copyOfRange(headerBytes, 396, 400);
+        this.raw = headerBytes;
     }
 
-    public byte[] getRsa2048PKCS1sig() { return rsa2048PKCS1sig; }
-    public boolean isMagicHeadOk() { return magicHead; }
-    public byte[] getSecureAreaStartAddr() { return SecureAreaStartAddr; }
-    public boolean isBkupAreaStartAddrOk() { return bkupAreaStartAddr; }
-    public byte getTitleKEKIndexBoth() { return titleKEKIndexBoth; }
-    public byte getTitleKEKIndex() { return titleKEKIndex; }
-    public byte getKEKIndex() { return KEKIndex; }
-    public byte getGcSize() { return gcSize; }
-    public byte getGcVersion() { return gcVersion; }
-    public byte getGcFlags() { return gcFlags; }
-    public byte[] getPkgID() { return pkgID; }
-    public long getValDataEndAddr() { return valDataEndAddr; }
-    public byte[] getGcInfoIV() { return gcInfoIV; }
-    public long getHfs0partOffset() { return hfs0partOffset; }
-    public long getHfs0headerSize() { return hfs0headerSize; }
-    public byte[] getHfs0headerSHA256() { return hfs0headerSHA256; }
-    public byte[] getHfs0initDataSHA256() { return hfs0initDataSHA256; }
-    public int getSecureModeFlag() { return secureModeFlag; }
-    public boolean isSecureModeFlagOk(){ return secureModeFlag == 1; }
-    public int getTitleKeyFlag() { return titleKeyFlag; }
-    public boolean istitleKeyFlagOk(){ return titleKeyFlag == 2; }
-    public int getKeyFlag() { return keyFlag; }
-    public boolean iskeyFlagOk(){ return keyFlag == 0; }
-    public byte[] getNormAreaEndAddr() { return normAreaEndAddress; }
-}
\ No newline at end of file
+    public byte[] getRsa2048PKCS1sig() { return Arrays.copyOfRange(raw, 0, 256); }
+    public boolean isMagicHeadOk() { return raw[256] == 0x48 && raw[257] == 0x45 && raw[258] == 0x41 && raw[259] == 0x44; }
+    public byte[] getSecureAreaStartAddr() { return Arrays.copyOfRange(raw, 260, 264); }
+    public boolean isBkupAreaStartAddrOk() { return getLEint(raw, 264) == 0xffffffff; }
+    public byte getTitleKEKIndexBoth() { return raw[268]; }
+    public byte getTitleKEKIndex() { return (byte) ((raw[268] >> 4) & (byte) 0x0F); }
+    public byte getKEKIndex() { return (byte) (raw[268] & 0x0F); }
+    public byte getGcSize() { return raw[269]; }
+    public byte getGcVersion() { return raw[270]; }
+    public byte getGcFlags() { return raw[271]; }
+    public byte[] getPkgID() { return Arrays.copyOfRange(raw, 272, 280); }
+    public long getValDataEndAddr() { return getLElong(raw, 280); }       //TODO: FIX/simplify //
+    public byte[] getGcInfoIV() { return Converter.flip(Arrays.copyOfRange(raw, 288, 304)); }
+    public long getHfs0partOffset() { return getLElong(raw, 304); }
+    public long getHfs0headerSize() { return getLElong(raw, 312); }
+    public byte[] getHfs0headerSHA256() { return Arrays.copyOfRange(raw, 320, 352); }
+    public byte[] getHfs0initDataSHA256() { return Arrays.copyOfRange(raw, 352, 384); }
+    public int getSecureModeFlag() { return getLEint(raw, 384); }
+    public boolean isSecureModeFlagOk(){ return getSecureModeFlag() == 1; }
+    public int getTitleKeyFlag() { return getLEint(raw, 388); }
+    public boolean istitleKeyFlagOk(){ return getTitleKeyFlag() == 2; }
+    public int getKeyFlag() { return getLEint(raw, 392); }
+    public boolean iskeyFlagOk(){ return getKeyFlag() == 0; }
+    public byte[] getNormAreaEndAddr() { return Arrays.copyOfRange(raw, 396, 400); }
+}
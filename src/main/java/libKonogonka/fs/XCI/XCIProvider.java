@@ -18,10 +18,13 @@
 */
 package libKonogonka.fs.XCI;
 
+import libKonogonka.MemoryMappedFile;
+
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.NoSuchFileException;
 
 public class XCIProvider{
     // TODO: Since LOGO partition added, we have to handle it properly. Is it works??
@@ -37,14 +40,14 @@ public class XCIProvider{
     private HFS0Provider hfs0ProviderLogo;
 
     public XCIProvider(File file, String XCI_HEADER_KEY) throws Exception{                                                   // TODO: ADD FILE SIZE CHECK !!! Check xciHdrKey
-        RandomAccessFile raf;
+        SeekableByteChannel channel;
 
         try {
             //xciBIS = new BufferedInputStream(new FileInputStream(file));
-            raf = new RandomAccessFile(file, "r");
+            channel = MemoryMappedFile.openChannel(file);
         }
-        catch (FileNotFoundException fnfe){
-            throw new Exception("XCI File not found: \n  "+fnfe.getMessage());
+        catch (NoSuchFileException nsfe){
+            throw new Exception("XCI File not found: \n  "+nsfe.getMessage());
         }
 
         if (file.length() < 0xf010)
@@ -56,28 +59,28 @@ public class XCIProvider{
             byte[] gamecardCertBytes = new byte[512];
 
             // Creating GC Header class
-            if (raf.read(gamecardHeaderBytes) != 400) {
-                raf.close();
+            if (channel.read(ByteBuffer.wrap(gamecardHeaderBytes)) != 400) {
+                channel.close();
                 throw new Exception("XCI Can't read Gamecard Header bytes.");
             }
             xciGamecardHeader = new XCIGamecardHeader(gamecardHeaderBytes);     // throws exception
             // Creating GC Info class
-            if (raf.read(gamecardInfoBytes) != 112) {
-                raf.close();
+            if (channel.read(ByteBuffer.wrap(gamecardInfoBytes)) != 112) {
+                channel.close();
                 throw new Exception("XCI Can't read Gamecard Header bytes.");
             }
             xciGamecardInfo = new XCIGamecardInfo(gamecardInfoBytes, xciGamecardHeader.getGcInfoIV(), XCI_HEADER_KEY);
             // Creating GC Cerfificate class
-            raf.seek(0x7000);
-            if (raf.read(gamecardCertBytes) != 512) {
-                raf.close();
+            channel.position(0x7000);
+            if (channel.read(ByteBuffer.wrap(gamecardCertBytes)) != 512) {
+                channel.close();
                 throw new Exception("XCI Can't read Gamecard certificate bytes.");
             }
             xciGamecardCert = new XCIGamecardCert(gamecardCertBytes);
 
-            hfs0ProviderMain = new HFS0Provider(0xf000, raf, file);
+            hfs0ProviderMain = new HFS0Provider(0xf000, channel, file);
             if (hfs0ProviderMain.getFilesCount() < 3){
-                raf.close();
+                channel.close();
                 throw new Exception("XCI Can't read Gamecard certificate bytes.");
             }
             // Get all partitions from the main HFS0 file
@@ -85,22 +88,22 @@ public class XCIProvider{
             for (HFS0File hfs0File: hfs0ProviderMain.getHfs0Files()){
                 partition = hfs0File.getName();
                 if (partition.equals("update")) {
-                    hfs0ProviderUpdate = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), raf, file);
+                    hfs0ProviderUpdate = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), channel, file);
                     continue;
                 }
                 if (partition.equals("normal")) {
-                    hfs0ProviderNormal = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), raf, file);
+                    hfs0ProviderNormal = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), channel, file);
                     continue;
                 }
                 if (partition.equals("secure")) {
-                    hfs0ProviderSecure = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), raf, file);
+                    hfs0ProviderSecure = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), channel, file);
                     continue;
                 }
                 if (partition.equals("logo")) {
-                    hfs0ProviderLogo = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), raf, file);
+                    hfs0ProviderLogo = new HFS0Provider(hfs0ProviderMain.getRawFileDataStart() + hfs0File.getOffset(), channel, file);
                 }
             }
-            raf.close();
+            channel.close();
         }
         catch (IOException ioe){
             throw new Exception("XCI Failed file analyze for ["+file.getName()+"]\n  "+ioe.getMessage());
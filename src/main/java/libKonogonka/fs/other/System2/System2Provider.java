@@ -20,6 +20,7 @@ package libKonogonka.fs.other.System2;
 
 import libKonogonka.Converter;
 import libKonogonka.KeyChainHolder;
+import libKonogonka.MemoryMappedFile;
 import libKonogonka.fs.ExportAble;
 import libKonogonka.fs.other.System2.ini1.Ini1Provider;
 import libKonogonka.aesctr.InFileStreamProducer;
@@ -27,7 +28,6 @@ import libKonogonka.aesctr.InFileStreamClassicProducer;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -45,7 +45,7 @@ public class System2Provider extends ExportAble {
         this.keyChainHolder = keyChainHolder;
 
         Path filePath = Paths.get(pathToFile);
-        this.stream = new BufferedInputStream(Files.newInputStream(filePath));
+        this.stream = new BufferedInputStream(MemoryMappedFile.openInputStream(filePath.toFile()));
         readSignatures();
         readHeader();
         this.stream.close();
@@ -30,72 +30,55 @@ import java.util.Arrays;
 public class KIP1Header {
     private final static Logger log = LogManager.getLogger(KIP1Header.class);
 
-    private final String magic;
-    private final String name;
-    private final byte[] programId;
-    private final int version;
-    private final byte mainThreadPriority;
-    private final byte mainThreadCoreNumber;
-    private final byte reserved1;
-    private final byte flags;
+    private final byte[] raw;
     private final SegmentHeader textSegmentHeader;
-    private final int threadAffinityMask;
     private final SegmentHeader roDataSegmentHeader;
-    private final int mainThreadStackSize;
     private final SegmentHeader rwDataSegmentHeader;
-    private final byte[] reserved2;
     private final SegmentHeader bssSegmentHeader;
-    private final byte[] reserved3;
     private final KernelAccessControlProvider kernelCapabilityData;
-    
+
+    /**
+     * Fields are decoded from header bytes on request; array is not copied and must not be changed afterwards.
+     * Segment headers and kernel capabilities are parsed right away.
+     * */
     public KIP1Header(byte[] kip1HeaderBytes) throws Exception{
-        this.magic = new String(kip1HeaderBytes, 0, 0x4);
-        this.name = new String(kip1HeaderBytes, 0x4, 0xC).trim();
-        this.programId = Arrays.copyOfRange(kip1HeaderBytes, 0x10, 0x18);
-        this.version = Converter.getLEint(kip1HeaderBytes, 0x18);
-        this.mainThreadPriority = kip1HeaderBytes[0x1c];
-        this.mainThreadCoreNumber = kip1HeaderBytes[0x1d];
-        this.reserved1 = kip1HeaderBytes[0x1e];
-        this.flags = kip1HeaderBytes[0x1f];
+        this.raw = kip1HeaderBytes;
         this.textSegmentHeader = new SegmentHeader(kip1HeaderBytes, 0x20);
-        this.threadAffinityMask = Converter.getLEint(kip1HeaderBytes, 0x2c);
         this.roDataSegmentHeader = new SegmentHeader(kip1HeaderBytes, 0x30);
-        this.mainThreadStackSize = Converter.getLEint(kip1HeaderBytes, 0x3c);
         this.rwDataSegmentHeader = new SegmentHeader(kip1HeaderBytes, 0x40);
-        this.reserved2 = Arrays.copyOfRange(kip1HeaderBytes, 0x4c, 0x50);
         this.bssSegmentHeader = new SegmentHeader(kip1HeaderBytes, 0x50);
-        this.reserved3 = Arrays.copyOfRange(kip1HeaderBytes, 0x5c, 0x80);
         this.kernelCapabilityData = new KernelAccessControlProvider(Arrays.copyOfRange(kip1HeaderBytes, 0x80, 0x100));
     }
 
-    public String getMagic() { return magic; }
-    public String getName() { return name; }
-    public byte[] getProgramId() { return programId; }
-    public int getVersion() { return version; }
-    public byte getMainThreadPriority() { return mainThreadPriority; }
-    public byte getMainThreadCoreNumber() { return mainThreadCoreNumber; }
-    public byte getReserved1() { return reserved1; }
-    public byte getFlags() { return flags; }
-    public boolean isTextCompressFlag(){ return (flags & 1) == 1; }
-    public boolean isRoDataCompressFlag(){ return (flags >> 1 & 1) == 1; }
-    public boolean isRwDataCompressFlag(){ return (flags >> 2 & 1) == 1; }
-    public boolean is64BitInstruction(){ return (flags >> 3 & 1) == 1; }
-    public boolean isAddressSpace64Bit(){ return (flags >> 4 & 1) == 1; }
-    public boolean isUseSecureMemory(){ return (flags >> 5 & 1) == 1; }
+    public String getMagic() { return new String(raw, 0, 0x4); }
+    public String getName() { return new String(raw, 0x4, 0xC).trim(); }
+    public byte[] getProgramId() { return Arrays.copyOfRange(raw, 0x10, 0x18); }
+    public int getVersion() { return Converter.getLEint(raw, 0x18); }
+    public byte getMainThreadPriority() { return raw[0x1c]; }
+    public byte getMainThreadCoreNumber() { return raw[0x1d]; }
+    public byte getReserved1() { return raw[0x1e]; }
+    public byte getFlags() { return raw[0x1f]; }
+    public boolean isTextCompressFlag(){ return (getFlags() & 1) == 1; }
+    public boolean isRoDataCompressFlag(){ return (getFlags() >> 1 & 1) == 1; }
+    public boolean isRwDataCompressFlag(){ return (getFlags() >> 2 & 1) == 1; }
+    public boolean is64BitInstruction(){ return (getFlags() >> 3 & 1) == 1; }
+    public boolean isAddressSpace64Bit(){ return (getFlags() >> 4 & 1) == 1; }
+    public boolean isUseSecureMemory(){ return (getFlags() >> 5 & 1) == 1; }
     public SegmentHeader getTextSegmentHeader() { return textSegmentHeader; }
-    public int getThreadAffinityMask() { return threadAffinityMask; }
+    public int getThreadAffinityMask() { return Converter.getLEint(raw, 0x2c); }
     public SegmentHeader getRoDataSegmentHeader() { return roDataSegmentHeader; }
-    public int getMainThreadStackSize() { return mainThreadStackSize; }
+    public int getMainThreadStackSize() { return Converter.getLEint(raw, 0x3c); }
     public SegmentHeader getRwDataSegmentHeader() { return rwDataSegmentHeader; }
-    public byte[] getReserved2() { return reserved2; }
+    public byte[] getReserved2() { return Arrays.copyOfRange(raw, 0x4c, 0x50); }
     public SegmentHeader getBssSegmentHeader() { return bssSegmentHeader; }
-    public byte[] getReserved3() { return reserved3; }
+    public byte[] getReserved3() { return Arrays.copyOfRange(raw, 0x5c, 0x80); }
     public KernelAccessControlProvider getKernelCapabilityData() { return kernelCapabilityData; }
 
     public void printDebug(){
         StringBuilder mapIoOrNormalRange = new StringBuilder();
         StringBuilder interruptPairs = new StringBuilder();
         StringBuilder syscallMasks = new StringBuilder();
+        byte flags = getFlags();
 
         kernelCapabilityData.getMapIoOrNormalRange().forEach((bytes, aBoolean) -> {
             mapIoOrNormalRange.append("    ");
@@ -122,13 +105,13 @@ public class KIP1Header {
         });
 
         log.debug("..:: KIP1 ::..\n" +
-                "Magic                            : " + magic + "\n" +
-                "Name                             : " + name + "\n" +
-                "ProgramId                        : " + Converter.byteArrToHexStringAsLE(programId) + "\n" +
-                "Version                          : " + RainbowDump.formatDecHexString(version) + "\n" +
-                "Main thread priority             : " + String.format("0x%x", mainThreadPriority) + "\n" +
-                "Main thread core number          : " + String.format("0x%x", mainThreadCoreNumber) + "\n" +
-                "Reserved 1                       : " + String.format("0x%x", reserved1) + "\n" +
+                "Magic                            : " + getMagic() + "\n" +
+                "Name                             : " + getName() + "\n" +
+                "ProgramId                        : " + Converter.byteArrToHexStringAsLE(getProgramId()) + "\n" +
+                "Version                          : " + RainbowDump.formatDecHexString(getVersion()) + "\n" +
+                "Main thread priority             : " + String.format("0x%x", getMainThreadPriority()) + "\n" +
+                "Main thread core number          : " + String.format("0x%x", getMainThreadCoreNumber()) + "\n" +
+                "Reserved 1                       : " + String.format("0x%x", getReserved1()) + "\n" +
                 "Flags                            : " + Converter.byteToBinaryString(flags) + "\n" +
                 "   0| .text compress             : " + ((flags & 1) == 1 ? "YES" : "NO") + "\n" +
                 "   1| .ro compress               : " + ((flags >> 1 & 1) == 1 ? "YES" : "NO") + "\n" +
@@ -140,22 +123,22 @@ public class KIP1Header {
                 "   Segment offset                : " + RainbowDump.formatDecHexString(textSegmentHeader.getSegmentOffset()) + "\n" +
                 "   Memory offset                 : " + RainbowDump.formatDecHexString(textSegmentHeader.getMemoryOffset()) + "\n" +
                 "   Size                          : " + RainbowDump.formatDecHexString(textSegmentHeader.getSize()) + "\n" +
-                "Thread affinity mask             : " + RainbowDump.formatDecHexString(threadAffinityMask) + "\n" +
+                "Thread affinity mask             : " + RainbowDump.formatDecHexString(getThreadAffinityMask()) + "\n" +
                 ".ro segment header\n" +
                 "   Segment offset                : " + RainbowDump.formatDecHexString(roDataSegmentHeader.getSegmentOffset()) + "\n" +
                 "   Memory offset                 : " + RainbowDump.formatDecHexString(roDataSegmentHeader.getMemoryOffset()) + "\n" +
                 "   Size                          : " + RainbowDump.formatDecHexString(roDataSegmentHeader.getSize()) + "\n" +
-                "Main thread stack size           : " + RainbowDump.formatDecHexString(mainThreadStackSize) + "\n" +
+                "Main thread stack size           : " + RainbowDump.formatDecHexString(getMainThreadStackSize()) + "\n" +
                 ".rw segment header\n" +
                 "   Segment offset                : " + RainbowDump.formatDecHexString(rwDataSegmentHeader.getSegmentOffset()) + "\n" +
                 "   Memory offset                 : " + RainbowDump.formatDecHexString(rwDataSegmentHeader.getMemoryOffset()) + "\n" +
                 "   Size                          : " + RainbowDump.formatDecHexString(rwDataSegmentHeader.getSize()) + "\n" +
-                "Reserved 2                       : " + Converter.byteArrToHexStringAsLE(reserved2) + "\n" +
+                "Reserved 2                       : " + Converter.byteArrToHexStringAsLE(getReserved2()) + "\n" +
                 ".bss segment header\n" +
                 "   Segment offset                : " + RainbowDump.formatDecHexString(bssSegmentHeader.getSegmentOffset()) + "\n" +
                 "   Memory offset                 : " + RainbowDump.formatDecHexString(bssSegmentHeader.getMemoryOffset()) + "\n" +
                 "   Size                          : " + RainbowDump.formatDecHexString(bssSegmentHeader.getSize()) + "\n" +
-                "Reserved 3                       : " + Converter.byteArrToHexStringAsLE(reserved3) + "\n" +
+                "Reserved 3                       : " + Converter.byteArrToHexStringAsLE(getReserved3()) + "\n" +
                 "Kernel capability data\n" +
                 "  Kernel flags available?        : " + kernelCapabilityData.isKernelFlagsAvailable() + "\n" +
                 "          |- CPU ID Hi           : " + kernelCapabilityData.getKernelFlagCpuIdHi() + "\n" +
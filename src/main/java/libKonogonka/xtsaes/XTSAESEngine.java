@@ -0,0 +1,145 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.xtsaes;
+
+import libKonogonka.Converter;
+import net.jcip.annotations.ThreadSafe;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * XTS-AES with Nintendo tweak (sector number stored big-endian) keyed once and shared between threads.
+ * Every thread gets its own initialized XTSAESCipher, so sectors could be processed in parallel.
+ * */
+@ThreadSafe
+public class XTSAESEngine {
+    public static final int NCA_SECTOR_SIZE = 0x200;
+    private static final int LEAF_SIZE = 0x40000;
+
+    private final int sectorSize;
+    private final ThreadLocal<XTSAESCipher> ciphers;
+
+    /**
+     * @param key 0x20 bytes: data key followed by tweak key
+     * @param forEncryption true to encrypt, false to decrypt
+     * @param sectorSize data unit size in bytes
+     * */
+    public XTSAESEngine(byte[] key, boolean forEncryption, int sectorSize) throws Exception{
+        if (key == null || key.length != 0x20)
+            throw new Exception("XTS key must be 0x20 bytes long");
+        if (sectorSize < 0x10)
+            throw new Exception("Sector size is too small: "+sectorSize);
+        this.sectorSize = sectorSize;
+        final byte[] key1 = new byte[0x10];
+        final byte[] key2 = new byte[0x10];
+        System.arraycopy(key, 0, key1, 0, 0x10);
+        System.arraycopy(key, 0x10, key2, 0, 0x10);
+        this.ciphers = ThreadLocal.withInitial(() ->
+                new XTSAESCipher(false).init(forEncryption, new KeyParameter(key1), new KeyParameter(key2)));
+    }
+    /**
+     * @param headerKey 'header_key' from key set: 64 hex symbols
+     * @return new decryptor for NCA headers. Use CompiledKeySet.getHeaderDecryptor() to share one between readers.
+     * */
+    public static XTSAESEngine createHeaderDecryptor(String headerKey) throws Exception{
+        if (headerKey == null)
+            throw new Exception("header_key is not found within key set provided.");
+        if (headerKey.length() != 64)
+            throw new Exception("header_key is too small or too big. Must be 64 symbols.");
+        return new XTSAESEngine(Converter.hexStringToByteArray(headerKey), false, NCA_SECTOR_SIZE);
+    }
+
+    public int getSectorSize() { return sectorSize; }
+
+    /**
+     * Process 'count' sectors in current thread
+     * @param firstSector number of the first sector, used as tweak
+     * */
+    public void processSectors(byte[] in, byte[] out, long firstSector, int count){
+        processSectors(in, 0, out, 0, firstSector, count);
+    }
+
+    public void processSectors(byte[] in, int inOffset, byte[] out, int outOffset, long firstSector, int count){
+        checkBounds(in, inOffset, out, outOffset, count);
+        XTSAESCipher cipher = ciphers.get();
+        for (int i = 0; i < count; i++){
+            int shift = i * sectorSize;
+            cipher.processDataUnit(in, inOffset + shift, sectorSize, out, outOffset + shift, firstSector + i);
+        }
+    }
+    /**
+     * Process 'count' sectors splitting them between threads of provided pool
+     * @param firstSector number of the first sector, used as tweak
+     * */
+    public void processSectors(byte[] in, byte[] out, long firstSector, int count, ForkJoinPool pool){
+        processSectors(in, 0, out, 0, firstSector, count, pool);
+    }
+
+    public void processSectors(byte[] in, int inOffset, byte[] out, int outOffset, long firstSector, int count,
+                               ForkJoinPool pool){
+        checkBounds(in, inOffset, out, outOffset, count);
+        int sectorsPerLeaf = Math.max(1, LEAF_SIZE / sectorSize);
+        if (count <= sectorsPerLeaf){
+            processSectors(in, inOffset, out, outOffset, firstSector, count);
+            return;
+        }
+        pool.invoke(new SectorsTask(in, inOffset, out, outOffset, firstSector, count, sectorsPerLeaf));
+    }
+
+    private void checkBounds(byte[] in, int inOffset, byte[] out, int outOffset, int count){
+        long length = (long) count * sectorSize;
+        if (count < 0 || inOffset < 0 || outOffset < 0 || inOffset + length > in.length || outOffset + length > out.length)
+            throw new IndexOutOfBoundsException("Buffers are too small for "+count+" sectors");
+    }
+
+    private class SectorsTask extends RecursiveAction {
+        private final byte[] in;
+        private final int inOffset;
+        private final byte[] out;
+        private final int outOffset;
+        private final long firstSector;
+        private final int count;
+        private final int sectorsPerLeaf;
+
+        SectorsTask(byte[] in, int inOffset, byte[] out, int outOffset, long firstSector, int count, int sectorsPerLeaf){
+            this.in = in;
+            this.inOffset = inOffset;
+            this.out = out;
+            this.outOffset = outOffset;
+            this.firstSector = firstSector;
+            this.count = count;
+            this.sectorsPerLeaf = sectorsPerLeaf;
+        }
+
+        @Override
+        protected void compute(){
+            if (count <= sectorsPerLeaf){
+                processSectors(in, inOffset, out, outOffset, firstSector, count);
+                return;
+            }
+            int half = count / 2;
+            int shift = half * sectorSize;
+            invokeAll(new SectorsTask(in, inOffset, out, outOffset, firstSector, half, sectorsPerLeaf),
+                    new SectorsTask(in, inOffset + shift, out, outOffset + shift, firstSector + half,
+                            count - half, sectorsPerLeaf));
+        }
+    }
+}
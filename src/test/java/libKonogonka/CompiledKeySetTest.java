@@ -0,0 +1,151 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CompiledKeySetTest {
+    private static final String HEADER_KEY = "00112233445566778899aabbccddeeff0f1e2d3c4b5a69788796a5b4c3d2e1f0";
+    private static final String[] TYPES = {"application", "ocean", "system"};
+
+    private final Random random = new Random(14);
+
+    @DisplayName("CompiledKeySet: key area and title keys match plain AES-ECB decryption")
+    @Test
+    void decrypt() throws Exception{
+        HashMap<String, String> rawKeySet = makeKeySet();
+        CompiledKeySet keySet = new CompiledKeySet(rawKeySet);
+
+        Assertions.assertTrue(keySet.hasKeyAreaKey(CompiledKeySet.KEY_AREA_KEY_OCEAN, 0x0a));
+        Assertions.assertFalse(keySet.hasKeyAreaKey(CompiledKeySet.KEY_AREA_KEY_OCEAN, 0x20));
+        Assertions.assertFalse(keySet.hasKeyAreaKey(3, 0));
+        Assertions.assertFalse(keySet.hasKeyAreaKey(-1, 0));
+        Assertions.assertThrows(Exception.class, () -> keySet.decryptKeyArea(0, 0x20,
+                new byte[0x40], 0, new byte[0x40], 0, 0x40));
+
+        byte[] keyArea = new byte[0x40];
+        random.nextBytes(keyArea);
+        for (int type = 0; type < TYPES.length; type++){
+            for (int generation = 0; generation < 0x11; generation++){
+                byte[] expected = ecbDecrypt(rawKeySet.get(keyAreaKeyName(type, generation)), keyArea);
+                byte[] decrypted = new byte[0x40];
+                keySet.decryptKeyArea(type, generation, keyArea, 0, decrypted, 0, 0x40);
+                Assertions.assertArrayEquals(expected, decrypted);
+            }
+        }
+
+        byte[] rightsId = new byte[0x10];
+        random.nextBytes(rightsId);
+        Assertions.assertNull(keySet.decryptTitleKey(rightsId, 0));
+        Assertions.assertFalse(keySet.hasTitleKey(rightsId));
+        // Title keys added after key set compilation are still visible
+        String encryptedTitleKey = randomHex(0x10);
+        rawKeySet.put(Converter.byteArrToHexStringAsLE(rightsId), encryptedTitleKey);
+        Assertions.assertTrue(keySet.hasTitleKey(rightsId));
+        Assertions.assertArrayEquals(
+                ecbDecrypt(rawKeySet.get(String.format("titlekek_%02x", 5)),
+                        Converter.hexStringToByteArray(encryptedTitleKey)),
+                keySet.decryptTitleKey(rightsId, 5));
+        Assertions.assertNull(keySet.decryptTitleKey(rightsId, 0x20));
+
+        // Keys are parsed on first use, so keys added later are visible as well
+        rawKeySet.put(keyAreaKeyName(CompiledKeySet.KEY_AREA_KEY_OCEAN, 0x20), randomHex(0x10));
+        Assertions.assertTrue(keySet.hasKeyAreaKey(CompiledKeySet.KEY_AREA_KEY_OCEAN, 0x20));
+        byte[] decrypted = new byte[0x40];
+        keySet.decryptKeyArea(CompiledKeySet.KEY_AREA_KEY_OCEAN, 0x20, keyArea, 0, decrypted, 0, 0x40);
+        Assertions.assertArrayEquals(ecbDecrypt(rawKeySet.get(keyAreaKeyName(CompiledKeySet.KEY_AREA_KEY_OCEAN, 0x20)),
+                keyArea), decrypted);
+
+        Assertions.assertSame(keySet.getHeaderDecryptor(), keySet.getHeaderDecryptor());
+    }
+
+    @DisplayName("CompiledKeySet: shared between threads")
+    @Test
+    void concurrentUse() throws Exception{
+        HashMap<String, String> rawKeySet = makeKeySet();
+        CompiledKeySet keySet = new CompiledKeySet(rawKeySet);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int task = 0; task < 32; task++){
+                final long seed = task;
+                futures.add(executor.submit(() -> {
+                    Random taskRandom = new Random(seed);
+                    byte[] keyArea = new byte[0x40];
+                    byte[] decrypted = new byte[0x40];
+                    for (int i = 0; i < 200; i++){
+                        taskRandom.nextBytes(keyArea);
+                        int type = taskRandom.nextInt(TYPES.length);
+                        int generation = taskRandom.nextInt(0x11);
+                        keySet.decryptKeyArea(type, generation, keyArea, 0, decrypted, 0, 0x40);
+                        Assertions.assertArrayEquals(
+                                ecbDecrypt(rawKeySet.get(keyAreaKeyName(type, generation)), keyArea), decrypted);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private HashMap<String, String> makeKeySet(){
+        HashMap<String, String> rawKeySet = new HashMap<>();
+        rawKeySet.put("header_key", HEADER_KEY);
+        for (int generation = 0; generation < 0x11; generation++){
+            for (int type = 0; type < TYPES.length; type++)
+                rawKeySet.put(keyAreaKeyName(type, generation), randomHex(0x10));
+            rawKeySet.put(String.format("titlekek_%02x", generation), randomHex(0x10));
+        }
+        rawKeySet.put("titlekek_source", randomHex(0x10));
+        rawKeySet.put("key_area_key_application_source", randomHex(0x10));
+        return rawKeySet;
+    }
+
+    private static String keyAreaKeyName(int type, int generation){
+        return String.format("key_area_key_%s_%02x", TYPES[type], generation);
+    }
+
+    private String randomHex(int size){
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return Converter.byteArrToHexStringAsLE(bytes);
+    }
+
+    private static byte[] ecbDecrypt(String hexKey, byte[] data) throws Exception{
+        Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Converter.hexStringToByteArray(hexKey), "AES"));
+        return cipher.doFinal(data);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class ConverterTest {
+    @DisplayName("Converter: little-endian readers match ByteBuffer")
+    @Test
+    void littleEndianReaders(){
+        byte[] data = new byte[0x1000];
+        new Random(23).nextBytes(data);
+        data[0x10] = data[0x11] = data[0x12] = data[0x13] = (byte) 0xFF;
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i + 8 <= data.length; i++){
+            Assertions.assertEquals(buffer.getInt(i), Converter.getLEint(data, i));
+            Assertions.assertEquals(buffer.getLong(i), Converter.getLElong(data, i));
+            Assertions.assertEquals(buffer.getInt(i) & 0xFFFFFFFFL, Converter.getLElongOfInt(data, i));
+        }
+        Assertions.assertEquals(0xFFFFFFFFL, Converter.getLElongOfInt(data, 0x10));
+        Assertions.assertEquals(-1, Converter.getLEint(data, 0x10));
+
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> Converter.getLEint(data, data.length - 3));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> Converter.getLElong(data, data.length - 7));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> Converter.getLElongOfInt(data, -1));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka;
+
+import libKonogonka.aesctr.InFileStreamProducer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileLock;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MemoryMappedFileTest {
+    @TempDir
+    File tempDir;
+
+    @AfterEach
+    void disable(){
+        MemoryMappedFile.setEnabled(false);
+        MemoryMappedFile.setRegistryCapacity(16);
+    }
+
+    @DisplayName("MemoryMappedFile: stream, channel and producer read same data as regular file")
+    @Test
+    void mappedReads() throws Exception{
+        byte[] data = new byte[0x12345];
+        new Random(7).nextBytes(data);
+        File file = new File(tempDir, "mapped.bin");
+        Files.write(file.toPath(), data);
+
+        MemoryMappedFile.setEnabled(true);
+        Assertions.assertSame(MemoryMappedFile.get(file), MemoryMappedFile.get(file));
+
+        try (InputStream stream = MemoryMappedFile.openInputStream(file)){
+            Assertions.assertEquals(0x1000, stream.skip(0x1000));
+            byte[] chunk = new byte[0x200];
+            Assertions.assertEquals(0x200, stream.read(chunk));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, 0x1000, 0x1200), chunk);
+            Assertions.assertEquals(data[0x1200] & 0xff, stream.read());
+        }
+
+        try (SeekableByteChannel channel = MemoryMappedFile.openChannel(file)){
+            Assertions.assertEquals(data.length, channel.size());
+            channel.position(data.length - 0x10);
+            ByteBuffer buffer = ByteBuffer.allocate(0x20);
+            Assertions.assertEquals(0x10, channel.read(buffer));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, data.length - 0x10, data.length),
+                    Arrays.copyOf(buffer.array(), 0x10));
+            Assertions.assertEquals(-1, channel.read(buffer));
+        }
+
+        try (BufferedInputStream stream = new InFileStreamProducer(file, 0x333).produce()){
+            byte[] chunk = new byte[0x4000];
+            Assertions.assertEquals(chunk.length, stream.read(chunk));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, 0x333, 0x333 + chunk.length), chunk);
+        }
+    }
+
+    @DisplayName("MemoryMappedFile: file replaced with same size is mapped again")
+    @Test
+    void replacedFile() throws Exception{
+        byte[] data = new byte[0x2000];
+        new Random(11).nextBytes(data);
+        File file = new File(tempDir, "replaced.bin");
+        Files.write(file.toPath(), data);
+
+        MemoryMappedFile.setEnabled(true);
+        MemoryMappedFile first = MemoryMappedFile.get(file);
+
+        byte[] replacement = new byte[data.length];
+        new Random(12).nextBytes(replacement);
+        Files.write(file.toPath(), replacement);
+        Assertions.assertTrue(file.setLastModified(file.lastModified() + 2000));
+
+        MemoryMappedFile second = MemoryMappedFile.get(file);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertSame(second, MemoryMappedFile.get(file));
+
+        try (FileChannel channel = MemoryMappedFile.openChannel(file)){
+            ByteBuffer buffer = ByteBuffer.allocateDirect(0x100);
+            Assertions.assertEquals(0x100, channel.read(buffer, 0x1000));
+            Assertions.assertEquals(0, channel.position());
+            byte[] chunk = new byte[0x100];
+            buffer.flip();
+            buffer.get(chunk);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(replacement, 0x1000, 0x1100), chunk);
+        }
+    }
+
+    @DisplayName("MemoryMappedFile: registry keeps only recently used mappings")
+    @Test
+    void registryCapacity() throws Exception{
+        File[] files = new File[3];
+        for (int i = 0; i < files.length; i++){
+            files[i] = new File(tempDir, "file"+i+".bin");
+            Files.write(files[i].toPath(), new byte[0x1000 * (i + 1)]);
+        }
+        MemoryMappedFile.setEnabled(true);
+        MemoryMappedFile.setRegistryCapacity(2);
+
+        MemoryMappedFile first = MemoryMappedFile.get(files[0]);
+        MemoryMappedFile second = MemoryMappedFile.get(files[1]);
+        Assertions.assertSame(first, MemoryMappedFile.get(files[0]));     // file1 becomes least recently used
+        MemoryMappedFile.get(files[2]);
+        Assertions.assertSame(first, MemoryMappedFile.get(files[0]));
+        Assertions.assertNotSame(second, MemoryMappedFile.get(files[1]));
+        Assertions.assertEquals(0x2000, second.size());                   // evicted mapping is still readable
+        Assertions.assertEquals(0x10, second.read(0x1FF0, new byte[0x10], 0, 0x10));
+
+        MemoryMappedFile.setRegistryCapacity(0);
+        Assertions.assertNotSame(MemoryMappedFile.get(files[0]), MemoryMappedFile.get(files[0]));
+    }
+
+    @DisplayName("MemoryMappedFile: mapped channel maps and locks like regular FileChannel")
+    @Test
+    void mapAndLock() throws Exception{
+        byte[] data = new byte[0x3000];
+        new Random(13).nextBytes(data);
+        File file = new File(tempDir, "lock.bin");
+        Files.write(file.toPath(), data);
+
+        MemoryMappedFile.setEnabled(true);
+        FileChannel channel = MemoryMappedFile.openChannel(file);
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0x1000, 0x100);
+            byte[] chunk = new byte[0x100];
+            mapped.get(chunk);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, 0x1000, 0x1100), chunk);
+            try (FileLock lock = channel.tryLock(0, data.length, true)){
+                Assertions.assertNotNull(lock);
+                Assertions.assertTrue(lock.isShared());
+            }
+        }
+        finally {
+            channel.close();
+        }
+        Assertions.assertThrows(ClosedChannelException.class, () -> channel.map(FileChannel.MapMode.READ_ONLY, 0, 1));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import libKonogonka.synthetic.EncryptedSectionFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+public class AesCtrBufferedInputStreamTest {
+    private static final long NCA_OFFSET = 0x400;
+    private static final long MEDIA_START = 0x6;
+    private static final long MEDIA_END = 0x90;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("AesCtrBufferedInputStream: bulk reads of various sizes")
+    @ParameterizedTest
+    @ValueSource(ints = {0x1, 0x10, 0x1FF, 0x200, 0x201, 0x1000, 0x4321, 0x10000, 0x12800})
+    void bulkReads(int chunkSize) throws Exception{
+        EncryptedSectionFile section = new EncryptedSectionFile(new Random(chunkSize),
+                NCA_OFFSET, MEDIA_START, MEDIA_END, 0x400);
+        byte[] plain = section.getPlain();
+        File file = section.write(tempDir);
+        InFileStreamProducer producer = section.createProducer(file);
+
+        byte[] result = new byte[plain.length];
+        try (BufferedInputStream stream = producer.produce()){
+            int position = 0;
+            while (position < plain.length){
+                int size = Math.min(chunkSize, plain.length - position);
+                Assertions.assertEquals(size, stream.read(result, position, size));
+                position += size;
+            }
+        }
+        Assertions.assertArrayEquals(plain, result);
+
+        long offset = section.getEncryptedStart() + 0x333;
+        try (BufferedInputStream stream = producer.getSuccessor(offset).produce()){
+            int size = (int) Math.min(chunkSize, plain.length - offset);
+            byte[] chunk = new byte[size + 7];
+            Assertions.assertEquals(size, stream.read(chunk, 7, size));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(plain, (int) offset, (int) offset + size),
+                    Arrays.copyOfRange(chunk, 7, chunk.length));
+        }
+    }
+}
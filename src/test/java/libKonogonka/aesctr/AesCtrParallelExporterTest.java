@@ -0,0 +1,75 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import libKonogonka.synthetic.EncryptedSectionFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class AesCtrParallelExporterTest {
+    private static final long NCA_OFFSET = 0x4000;
+    private static final long MEDIA_START = 0x6;
+    private static final long MEDIA_END = 0x6 + 0x14000;  // ~40MB, several parallel chunks
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("AesCtrParallelExporter: parallel decryption matches plain data")
+    @Test
+    void parallelExport() throws Exception{
+        EncryptedSectionFile section = new EncryptedSectionFile(new Random(3), NCA_OFFSET, MEDIA_START, MEDIA_END, 0x200);
+        byte[] plain = section.getPlain();
+        long encryptedStart = section.getEncryptedStart();
+        long encryptedEnd = section.getEncryptedEnd();
+        File file = section.write(tempDir);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AesCtrParallelExporter exporter = new AesCtrParallelExporter(
+                    section.createDecryptor(section.getKey()), NCA_OFFSET, MEDIA_START, pool);
+
+            File whole = new File(tempDir, "whole.bin");
+            exporter.export(file, encryptedStart, encryptedEnd - encryptedStart, whole);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(plain, (int) encryptedStart, (int) encryptedEnd),
+                    Files.readAllBytes(whole.toPath()));
+
+            long offset = encryptedStart + 0x12345;
+            File part = new File(tempDir, "part.bin");
+            exporter.export(file, offset, 0x1234567, part);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(plain, (int) offset, (int) offset + 0x1234567),
+                    Files.readAllBytes(part.toPath()));
+
+            File notEncrypted = new File(tempDir, "notEncrypted.bin");
+            new AesCtrParallelExporter(pool).export(file, 0x10, NCA_OFFSET, notEncrypted);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(plain, 0x10, (int) NCA_OFFSET + 0x10),
+                    Files.readAllBytes(notEncrypted.toPath()));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import libKonogonka.synthetic.EncryptedSectionFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class AesCtrSeekableChannelTest {
+    private static final long NCA_OFFSET = 0x400;
+    private static final long MEDIA_START = 0x6;
+    private static final long MEDIA_END = 0x90;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("AesCtrSeekableChannel: random reads match plain data and AesCtrBufferedInputStream")
+    @Test
+    void randomReads() throws Exception{
+        Random random = new Random(42);
+        EncryptedSectionFile section = new EncryptedSectionFile(random, NCA_OFFSET, MEDIA_START, MEDIA_END, 0x333);
+        byte[] plain = section.getPlain();
+        File file = section.write(tempDir);
+        InFileStreamProducer producer = section.createProducer(file);
+
+        try (AesCtrSeekableChannel channel = producer.produceSeekable()){
+            Assertions.assertEquals(plain.length, channel.size());
+            for (int i = 0; i < 500; i++){
+                int offset = random.nextInt(plain.length);
+                int length = random.nextInt(0x1000) + 1;
+                byte[] read = new byte[length];
+                int readCount = channel.read(offset, read, 0, length);
+                int expected = Math.min(length, plain.length - offset);
+                Assertions.assertEquals(expected, readCount);
+                Assertions.assertArrayEquals(Arrays.copyOfRange(plain, offset, offset + expected),
+                        Arrays.copyOf(read, expected), "Offset 0x"+Integer.toHexString(offset));
+            }
+            Assertions.assertEquals(-1, channel.read(plain.length, new byte[1], 0, 1));
+        }
+
+        long offset = section.getEncryptedStart() + 0x1234;
+        byte[] fromStream = new byte[0x800];
+        try (AesCtrBufferedInputStream stream = (AesCtrBufferedInputStream) producer.getSuccessor(offset).produce();
+             AesCtrSeekableChannel channel = producer.getSuccessor(offset).produceSeekable()){
+            Assertions.assertEquals(fromStream.length, stream.read(fromStream));
+            byte[] fromChannel = new byte[fromStream.length];
+            Assertions.assertEquals(fromChannel.length, channel.read(ByteBuffer.wrap(fromChannel)));
+            Assertions.assertEquals(offset + fromChannel.length, channel.position());
+            Assertions.assertArrayEquals(fromStream, fromChannel);
+        }
+    }
+}
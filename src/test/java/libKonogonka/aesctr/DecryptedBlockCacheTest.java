@@ -0,0 +1,188 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.aesctr;
+
+import libKonogonka.synthetic.EncryptedSectionFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DecryptedBlockCacheTest {
+    private static final long NCA_OFFSET = 0x400;
+    private static final long MEDIA_START = 0x6;
+    private static final long MEDIA_END = 0x190;
+
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(20);
+
+    @DisplayName("DecryptedBlockCache: pages are evicted in LRU order within capacity")
+    @Test
+    void lruEviction() throws Exception{
+        byte[] data = new byte[0x10000];
+        random.nextBytes(data);
+        int[] reads = new int[1];
+        ISeekableSource counting = new ISeekableSource() {
+            @Override
+            public int read(long offset, byte[] b, int off, int len){
+                reads[0]++;
+                if (offset >= data.length)
+                    return -1;
+                int size = (int) Math.min(len, data.length - offset);
+                System.arraycopy(data, (int) offset, b, off, size);
+                return size;
+            }
+            @Override
+            public void close(){ }
+        };
+        File file = new File(tempDir, "file.bin");
+        Files.write(file.toPath(), data);
+
+        DecryptedBlockCache cache = new DecryptedBlockCache(0x800, 0x200, 1);
+        AesCtrDecryptForMediaBlocks decryptor = new AesCtrDecryptForMediaBlocks(new byte[0x10], new byte[0x10], 0);
+        try (ISeekableSource source = cache.wrap(counting, file, 0, decryptor)){
+            byte[] read = new byte[0x10];
+            for (int page = 0; page < 4; page++)
+                source.read(page * 0x200L + 1, read, 0, read.length);
+            Assertions.assertEquals(4, reads[0]);
+            Assertions.assertEquals(4, cache.getMisses());
+            Assertions.assertEquals(0x800, cache.getCachedBytes());
+
+            source.read(0, read, 0, read.length);               // page 0 becomes most recently used
+            source.read(4 * 0x200L, read, 0, read.length);      // evicts page 1
+            Assertions.assertEquals(1, cache.getHits());
+            Assertions.assertEquals(1, cache.getEvictions());
+            source.read(0, read, 0, read.length);
+            Assertions.assertEquals(2, cache.getHits());
+            source.read(0x200, read, 0, read.length);
+            Assertions.assertEquals(6, reads[0]);
+
+            byte[] spanning = new byte[0x450];
+            Assertions.assertEquals(spanning.length, source.read(0x3F0, spanning, 0, spanning.length));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, 0x3F0, 0x840), spanning);
+            Assertions.assertEquals(0x10, source.read(data.length - 0x10, spanning, 0, spanning.length));
+            Assertions.assertEquals(-1, source.read(data.length, spanning, 0, spanning.length));
+        }
+        Assertions.assertTrue(cache.getCachedBytes() <= 0x800);
+    }
+
+    @DisplayName("DecryptedBlockCache: encrypted producer streams and sources read through installed cache")
+    @Test
+    void installedCache() throws Exception{
+        EncryptedSectionFile section = new EncryptedSectionFile(random, NCA_OFFSET, MEDIA_START, MEDIA_END, 0x123);
+        byte[] plain = section.getPlain();
+        InFileStreamProducer producer = section.createProducer(section.write(tempDir));
+        DecryptedBlockCache cache = new DecryptedBlockCache(0x100000);
+        DecryptedBlockCache.install(cache);
+        try {
+            long offset = section.getEncryptedStart() + 0x345;
+            for (int i = 0; i < 3; i++){
+                try (BufferedInputStream stream = producer.getSuccessor(offset).produce()){
+                    byte[] read = new byte[0x3000];
+                    int done = 0;
+                    int count;
+                    while (done < read.length && (count = stream.read(read, done, read.length - done)) > 0)
+                        done += count;
+                    Assertions.assertArrayEquals(Arrays.copyOfRange(plain, (int) offset, (int) offset + read.length), read);
+                }
+            }
+            long misses = cache.getMisses();
+            Assertions.assertTrue(misses > 0);
+            Assertions.assertTrue(cache.getHits() >= 2 * misses);
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < 8; t++){
+                    long seed = t;
+                    results.add(executor.submit(() -> {
+                        Random threadRandom = new Random(seed);
+                        try (ISeekableSource source = producer.produceSource()){
+                            for (int i = 0; i < 200; i++){
+                                int position = threadRandom.nextInt(plain.length);
+                                byte[] read = new byte[threadRandom.nextInt(0x2000) + 1];
+                                int expected = Math.min(read.length, plain.length - position);
+                                if (source.read(position, read, 0, read.length) != expected
+                                        || ! Arrays.equals(Arrays.copyOfRange(plain, position, position + expected),
+                                                           Arrays.copyOf(read, expected)))
+                                    return false;
+                            }
+                        }
+                        return true;
+                    }));
+                }
+                for (Future<Boolean> result : results)
+                    Assertions.assertTrue(result.get());
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+        finally {
+            DecryptedBlockCache.install(null);
+        }
+    }
+
+    @DisplayName("DecryptedBlockCache: same section opened with different keys doesn't share pages")
+    @Test
+    void differentKeys() throws Exception{
+        EncryptedSectionFile section = new EncryptedSectionFile(random, NCA_OFFSET, MEDIA_START, MEDIA_END, 0);
+        byte[] wrongKey = new byte[0x10];
+        random.nextBytes(wrongKey);
+        byte[] plain = section.getPlain();
+        long encryptedStart = section.getEncryptedStart();
+        File file = section.write(tempDir);
+
+        DecryptedBlockCache cache = new DecryptedBlockCache(0x100000);
+        DecryptedBlockCache.install(cache);
+        try {
+            byte[] expected = Arrays.copyOfRange(plain, (int) encryptedStart, plain.length);
+            byte[] wrong = readSection(section.createProducer(file, wrongKey), encryptedStart, expected.length);
+            Assertions.assertFalse(Arrays.equals(expected, wrong));
+            long misses = cache.getMisses();
+            byte[] right = readSection(section.createProducer(file), encryptedStart, expected.length);
+            Assertions.assertArrayEquals(expected, right);
+            Assertions.assertEquals(2 * misses, cache.getMisses());
+        }
+        finally {
+            DecryptedBlockCache.install(null);
+        }
+    }
+
+    private static byte[] readSection(InFileStreamProducer producer, long position, int size) throws Exception{
+        byte[] data = new byte[size];
+        try (ISeekableSource source = producer.produceSource()){
+            Assertions.assertEquals(size, source.read(position, data, 0, size));
+        }
+        return data;
+    }
+}
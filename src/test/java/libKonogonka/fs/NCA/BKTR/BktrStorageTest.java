@@ -0,0 +1,163 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.NCA.NCAHeaderTableEntry;
+import libKonogonka.fs.NCA.NCASectionTableBlock.NcaFsHeader;
+import libKonogonka.fs.RomFs.RomFsProvider;
+import libKonogonka.synthetic.BktrPatchBuilder;
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class BktrStorageTest {
+    private static final long BASE_SECTION_POSITION = 0x600;
+    private static final long MEDIA_START = 0xC;
+
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(17);
+    private final byte[] key = new byte[0x10];
+
+    @DisplayName("BktrStorage: random reads of patched section")
+    @Test
+    void randomAccess() throws Exception{
+        random.nextBytes(key);
+        byte[] base = new byte[0x40000];
+        random.nextBytes(base);
+        byte[] target = Arrays.copyOf(base, 0x48000);
+        for (int i = 0; i < 30; i++){
+            byte[] changed = new byte[random.nextInt(0x1000) + 1];
+            random.nextBytes(changed);
+            System.arraycopy(changed, 0, target, random.nextInt(target.length - changed.length), changed.length);
+        }
+        byte[] appended = new byte[target.length - base.length];
+        random.nextBytes(appended);
+        System.arraycopy(appended, 0, target, base.length, appended.length);
+
+        BktrStorage storage = makeStorage(base, target, 0x200, 5, 3);
+        Assertions.assertTrue(storage.getRelocationEntriesCount() > 10);
+        Assertions.assertTrue(storage.getSubsectionEntriesCount() > 3);
+        Assertions.assertEquals(target.length, storage.getSize());
+
+        try (ISeekableSource source = storage.open()){
+            for (int i = 0; i < 500; i++){
+                int offset = random.nextInt(target.length);
+                int length = random.nextInt(0x3000) + 1;
+                byte[] read = new byte[length];
+                int expectedLength = Math.min(length, target.length - offset);
+                Assertions.assertEquals(expectedLength, source.read(offset, read, 0, length));
+                Assertions.assertArrayEquals(Arrays.copyOfRange(target, offset, offset + expectedLength),
+                        Arrays.copyOf(read, expectedLength), "Offset 0x"+Integer.toHexString(offset));
+            }
+            Assertions.assertEquals(-1, source.read(target.length, new byte[0x10], 0, 0x10));
+        }
+
+        try (BufferedInputStream stream = storage.getStreamProducer().produce()){
+            byte[] whole = new byte[target.length];
+            int done = 0;
+            int read;
+            while (done < whole.length && (read = stream.read(whole, done, whole.length - done)) > 0)
+                done += read;
+            Assertions.assertArrayEquals(target, whole);
+            Assertions.assertEquals(-1, stream.read());
+        }
+
+        try (BufferedInputStream stream = storage.getStreamProducer().getSuccessor(0x12345).produce()){
+            byte[] part = new byte[0x100];
+            Assertions.assertEquals(part.length, stream.read(part));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(target, 0x12345, 0x12445), part);
+        }
+    }
+
+    @DisplayName("BktrStorage: RomFS of patched section")
+    @Test
+    void patchedRomFs() throws Exception{
+        random.nextBytes(key);
+        Map<String, byte[]> content = new TreeMap<>();
+        RomFsImageBuilder baseBuilder = new RomFsImageBuilder();
+        RomFsImageBuilder patchedBuilder = new RomFsImageBuilder();
+        for (int i = 0; i < 30; i++){
+            byte[] data = new byte[random.nextInt(0x4000)];
+            random.nextBytes(data);
+            String path = "/data"+(i % 3)+"/file"+i+".bin";
+            baseBuilder.addFile(path, data);
+            if (i % 7 == 0){
+                data = data.clone();
+                random.nextBytes(data);
+            }
+            patchedBuilder.addFile(path, data);
+            content.put(path, data);
+        }
+        byte[] base = baseBuilder.build();
+        byte[] target = patchedBuilder.build();
+
+        BktrStorage storage = makeStorage(base, target, 0x100, 818, 1023);
+        RomFsProvider provider = new RomFsProvider(storage.getStreamProducer(), 0, 0, 0);
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            byte[] data = new byte[entry.getValue().length];
+            try (BufferedInputStream stream = provider.getStreamProducer(provider.lookup(entry.getKey())).produce()){
+                int done = 0;
+                int read;
+                while (done < data.length && (read = stream.read(data, done, data.length - done)) > 0)
+                    done += read;
+            }
+            Assertions.assertArrayEquals(entry.getValue(), data, entry.getKey());
+        }
+
+        File exported = new File(tempDir, "exported");
+        Assertions.assertTrue(provider.exportContent(exported.getPath(), provider.getRootEntry(), 4));
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            Assertions.assertArrayEquals(entry.getValue(),
+                    Files.readAllBytes(new File(exported, "ROOT"+entry.getKey()).toPath()), entry.getKey());
+        }
+    }
+
+    private BktrStorage makeStorage(byte[] base, byte[] target, int blockSize, int relocationsPerSet,
+                                    int subsectionsPerSet) throws Exception{
+        File baseFile = new File(tempDir, "base.bin");
+        byte[] baseFileContent = new byte[(int) BASE_SECTION_POSITION + base.length];
+        System.arraycopy(base, 0, baseFileContent, (int) BASE_SECTION_POSITION, base.length);
+        Files.write(baseFile.toPath(), baseFileContent);
+
+        BktrPatchBuilder.Patch patch = new BktrPatchBuilder(base)
+                .setEntriesPerSet(relocationsPerSet, subsectionsPerSet)
+                .build(target, blockSize, key, MEDIA_START, 3, 0x5ec0);
+        File patchFile = new File(tempDir, "patch.nca");
+        byte[] patchFileContent = new byte[(int) (MEDIA_START * 0x200) + patch.getSection().length];
+        System.arraycopy(patch.getSection(), 0, patchFileContent, (int) (MEDIA_START * 0x200), patch.getSection().length);
+        Files.write(patchFile.toPath(), patchFileContent);
+
+        return new BktrStorage(new InFileStreamProducer(baseFile), BASE_SECTION_POSITION, patchFile, 0,
+                new NCAHeaderTableEntry(patch.getTableEntry()), new NcaFsHeader(patch.getFsHeader()), key);
+    }
+}
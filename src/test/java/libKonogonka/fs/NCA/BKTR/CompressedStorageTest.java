@@ -0,0 +1,202 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.NCA.NCAHeaderTableEntry;
+import libKonogonka.fs.NCA.NCASectionTableBlock.NcaFsHeader;
+import libKonogonka.fs.RomFs.RomFsProvider;
+import libKonogonka.synthetic.CompressedSectionBuilder;
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class CompressedStorageTest {
+    private static final long MEDIA_START = 0x6;
+
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(18);
+    private final byte[] key = new byte[0x10];
+
+    @DisplayName("CompressedStorage: random reads of encrypted and plain compressed section")
+    @Test
+    void randomAccess() throws Exception{
+        random.nextBytes(key);
+        byte[] image = makeImage(0x61234);
+        for (byte[] sectionKey : new byte[][]{key, null}){
+            CompressedSectionBuilder.Section section = new CompressedSectionBuilder()
+                    .setBlockSize(0x4000)
+                    .setEntriesPerSet(5)
+                    .build(image, sectionKey, MEDIA_START, 2, 0x1805);
+            Assertions.assertTrue(section.getEntriesCount(0) > 0);
+            Assertions.assertTrue(section.getEntriesCount(1) > 0);
+            Assertions.assertTrue(section.getEntriesCount(3) > 0);
+
+            CompressedStorage storage = makeStorage(section, sectionKey);
+            Assertions.assertEquals(image.length, storage.getSize());
+            try (ISeekableSource source = storage.open()){
+                for (int i = 0; i < 300; i++){
+                    int offset = random.nextInt(image.length);
+                    int length = random.nextInt(0x9000) + 1;
+                    byte[] read = new byte[length];
+                    int expectedLength = Math.min(length, image.length - offset);
+                    Assertions.assertEquals(expectedLength, source.read(offset, read, 0, length));
+                    Assertions.assertArrayEquals(Arrays.copyOfRange(image, offset, offset + expectedLength),
+                            Arrays.copyOf(read, expectedLength), "Offset 0x"+Integer.toHexString(offset));
+                }
+                Assertions.assertEquals(-1, source.read(image.length, new byte[0x10], 0, 0x10));
+            }
+            try (BufferedInputStream stream = storage.getStreamProducer().getSuccessor(0x5678).produce()){
+                byte[] whole = new byte[image.length - 0x5678];
+                int done = 0;
+                int read;
+                while (done < whole.length && (read = stream.read(whole, done, whole.length - done)) > 0)
+                    done += read;
+                Assertions.assertArrayEquals(Arrays.copyOfRange(image, 0x5678, image.length), whole);
+                Assertions.assertEquals(-1, stream.read());
+            }
+        }
+    }
+
+    @DisplayName("CompressedStorage: only overlapping blocks are decompressed")
+    @Test
+    void decompressOverlappingBlocksOnly() throws Exception{
+        random.nextBytes(key);
+        byte[] image = new byte[0x100000];
+        byte[] text = "Compressible line of text that repeats again and again\n".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < image.length; i++)
+            image[i] = text[i % text.length];
+        CompressedSectionBuilder.Section section = new CompressedSectionBuilder()
+                .setBlockSize(0x10000)
+                .build(image, key, MEDIA_START, 0, 0);
+        Assertions.assertEquals(0x10, section.getEntriesCount(3));
+
+        CompressedStorage storage = makeStorage(section, key);
+        try (ISeekableSource source = storage.open()){
+            byte[] read = new byte[0x1000];
+            Assertions.assertEquals(read.length, source.read(0x53000, read, 0, read.length));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(image, 0x53000, 0x54000), read);
+            Assertions.assertEquals(1, storage.getDecompressedBlocksCount());
+
+            Assertions.assertEquals(read.length, source.read(0x54000, read, 0, read.length));
+            Assertions.assertEquals(1, storage.getDecompressedBlocksCount());
+
+            Assertions.assertEquals(read.length, source.read(0x5F800, read, 0, read.length));
+            Assertions.assertArrayEquals(Arrays.copyOfRange(image, 0x5F800, 0x60800), read);
+            Assertions.assertEquals(2, storage.getDecompressedBlocksCount());
+        }
+    }
+
+    @DisplayName("CompressedStorage: RomFS of compressed section")
+    @Test
+    void compressedRomFs() throws Exception{
+        random.nextBytes(key);
+        Map<String, byte[]> content = new TreeMap<>();
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        for (int i = 0; i < 40; i++){
+            byte[] data = Arrays.copyOf(makeImage(random.nextInt(0x8000)), random.nextInt(0x8000));
+            String path = "/dir"+(i % 4)+"/file"+i+".bin";
+            builder.addFile(path, data);
+            content.put(path, data);
+        }
+        byte[] image = builder.build();
+        CompressedSectionBuilder.Section section = new CompressedSectionBuilder()
+                .setBlockSize(0x2000)
+                .setEntriesPerSet(11)
+                .build(image, key, MEDIA_START, 1, 7);
+        CompressedStorage storage = makeStorage(section, key);
+
+        RomFsProvider provider = new RomFsProvider(storage.getStreamProducer(), 0, 0, 0);
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            byte[] data = new byte[entry.getValue().length];
+            try (BufferedInputStream stream = provider.getStreamProducer(provider.lookup(entry.getKey())).produce()){
+                int done = 0;
+                int read;
+                while (done < data.length && (read = stream.read(data, done, data.length - done)) > 0)
+                    done += read;
+            }
+            Assertions.assertArrayEquals(entry.getValue(), data, entry.getKey());
+        }
+
+        File exported = new File(tempDir, "exported");
+        Assertions.assertTrue(provider.exportContent(exported.getPath(), provider.getRootEntry(), 4));
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            Assertions.assertArrayEquals(entry.getValue(),
+                    Files.readAllBytes(new File(exported, "ROOT"+entry.getKey()).toPath()), entry.getKey());
+        }
+    }
+    /**
+     * Image of zero, random and text regions of different lengths
+     * */
+    private byte[] makeImage(int size){
+        byte[] image = new byte[size];
+        byte[] text = "libKonogonka compressed section test text ".getBytes(StandardCharsets.US_ASCII);
+        int position = 0;
+        while (position < size){
+            int length = Math.min(size - position, random.nextInt(0x10000) + 1);
+            switch (random.nextInt(3)){
+                case 0:
+                    break;
+                case 1:
+                    byte[] noise = new byte[length];
+                    random.nextBytes(noise);
+                    System.arraycopy(noise, 0, image, position, length);
+                    break;
+                default:
+                    for (int i = 0; i < length; i++)
+                        image[position + i] = text[i % text.length];
+            }
+            position += length;
+        }
+        return image;
+    }
+
+    private CompressedStorage makeStorage(CompressedSectionBuilder.Section section, byte[] sectionKey) throws Exception{
+        File file = new File(tempDir, "compressed.nca");
+        byte[] fileContent = new byte[(int) (MEDIA_START * 0x200) + section.getSection().length];
+        System.arraycopy(section.getSection(), 0, fileContent, (int) (MEDIA_START * 0x200), section.getSection().length);
+        Files.write(file.toPath(), fileContent);
+
+        NCAHeaderTableEntry tableEntry = new NCAHeaderTableEntry(section.getTableEntry());
+        NcaFsHeader fsHeader = new NcaFsHeader(section.getFsHeader());
+        InFileStreamProducer producer;
+        if (sectionKey == null)
+            producer = new InFileStreamProducer(file);
+        else
+            producer = new InFileStreamProducer(file, 0, 0,
+                    new AesCtrDecryptForMediaBlocks(sectionKey, fsHeader.getSectionCTR(), MEDIA_START * 0x200),
+                    tableEntry.getMediaStartOffset(), tableEntry.getMediaEndOffset());
+        return new CompressedStorage(producer, MEDIA_START * 0x200, fsHeader.getCompressionInfo());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA.BKTR;
+
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.fs.NCA.NCAHeaderTableEntry;
+import libKonogonka.fs.NCA.NCASectionTableBlock.NcaFsHeader;
+import libKonogonka.fs.RomFs.RomFsProvider;
+import libKonogonka.synthetic.RomFsImageBuilder;
+import libKonogonka.synthetic.SparseSectionBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class SparseStorageTest {
+    private static final long MEDIA_START = 0x40;
+    private static final long PHYSICAL_OFFSET = 0x1000;
+
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(19);
+    private final byte[] key = new byte[0x10];
+
+    @DisplayName("SparseStorage: random reads of encrypted and plain sparse section")
+    @Test
+    void randomAccess() throws Exception{
+        random.nextBytes(key);
+        byte[] image = new byte[0x80000];
+        for (int offset = 0; offset < image.length; offset += 0x4000){
+            if (random.nextInt(3) == 0)
+                continue;
+            byte[] block = new byte[0x4000];
+            random.nextBytes(block);
+            System.arraycopy(block, 0, image, offset, block.length);
+        }
+        for (byte[] sectionKey : new byte[][]{key, null}){
+            SparseSectionBuilder.Section section = new SparseSectionBuilder()
+                    .setEntriesPerSet(3)
+                    .build(image, sectionKey, MEDIA_START, PHYSICAL_OFFSET, 4, 0x1904, (short) 0x8001);
+            Assertions.assertTrue(section.getHolesCount() > 0);
+
+            SparseStorage storage = makeStorage(section, sectionKey);
+            Assertions.assertEquals(image.length, storage.getSize());
+            try (ISeekableSource source = storage.open()){
+                for (int i = 0; i < 300; i++){
+                    int offset = random.nextInt(image.length);
+                    int length = random.nextInt(0x9000) + 1;
+                    byte[] read = new byte[length];
+                    int expectedLength = Math.min(length, image.length - offset);
+                    Assertions.assertEquals(expectedLength, source.read(offset, read, 0, length));
+                    Assertions.assertArrayEquals(Arrays.copyOfRange(image, offset, offset + expectedLength),
+                            Arrays.copyOf(read, expectedLength), "Offset 0x"+Integer.toHexString(offset));
+                }
+                Assertions.assertEquals(-1, source.read(image.length, new byte[0x10], 0, 0x10));
+            }
+            try (BufferedInputStream stream = storage.getStreamProducer().getSuccessor(0x789).produce()){
+                byte[] whole = new byte[image.length - 0x789];
+                int done = 0;
+                int read;
+                while (done < whole.length && (read = stream.read(whole, done, whole.length - done)) > 0)
+                    done += read;
+                Assertions.assertArrayEquals(Arrays.copyOfRange(image, 0x789, image.length), whole);
+            }
+        }
+    }
+
+    @DisplayName("SparseStorage: holes are served without touching the file")
+    @Test
+    void holesWithoutIo() throws Exception{
+        random.nextBytes(key);
+        byte[] image = new byte[0x20000];
+        random.nextBytes(image);
+        Arrays.fill(image, 0x8000, 0x14000, (byte) 0);
+        SparseSectionBuilder.Section section = new SparseSectionBuilder()
+                .build(image, key, MEDIA_START, PHYSICAL_OFFSET, 0, 0, (short) 1);
+        Assertions.assertEquals(3, section.getHolesCount());
+
+        SparseStorage storage = makeStorage(section, key);
+        Assertions.assertEquals(3, storage.getEntriesCount());
+        Files.delete(new File(tempDir, "sparse.nca").toPath());
+        try (ISeekableSource source = storage.open()){
+            byte[] read = new byte[0xC000];
+            Arrays.fill(read, (byte) 0x5A);
+            Assertions.assertEquals(read.length, source.read(0x8000, read, 0, read.length));
+            Assertions.assertArrayEquals(new byte[read.length], read);
+            Assertions.assertThrows(IOException.class, () -> source.read(0x7000, read, 0, 0x10));
+        }
+    }
+
+    @DisplayName("SparseStorage: RomFS of sparse section")
+    @Test
+    void sparseRomFs() throws Exception{
+        random.nextBytes(key);
+        Map<String, byte[]> content = new TreeMap<>();
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        for (int i = 0; i < 20; i++){
+            byte[] data = new byte[random.nextInt(0x10000)];
+            if (i % 3 != 0)
+                random.nextBytes(data);
+            String path = "/dir"+(i % 2)+"/file"+i+".bin";
+            builder.addFile(path, data);
+            content.put(path, data);
+        }
+        byte[] romFs = builder.build();
+        byte[] image = Arrays.copyOf(romFs, (romFs.length + 0x1FF) & ~0x1FF);
+        SparseSectionBuilder.Section section = new SparseSectionBuilder()
+                .setBlockSize(0x1000)
+                .build(image, key, MEDIA_START, PHYSICAL_OFFSET, 1, 2, (short) 3);
+        Assertions.assertTrue(section.getHolesCount() > 0);
+        SparseStorage storage = makeStorage(section, key);
+
+        RomFsProvider provider = new RomFsProvider(storage.getStreamProducer(), 0, 0, 0);
+        File exported = new File(tempDir, "exported");
+        Assertions.assertTrue(provider.exportContent(exported.getPath(), provider.getRootEntry(), 3));
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            Assertions.assertArrayEquals(entry.getValue(),
+                    Files.readAllBytes(new File(exported, "ROOT"+entry.getKey()).toPath()), entry.getKey());
+        }
+    }
+
+    private SparseStorage makeStorage(SparseSectionBuilder.Section section, byte[] sectionKey) throws Exception{
+        File file = new File(tempDir, "sparse.nca");
+        byte[] storage = section.getPhysicalStorage();
+        byte[] fileContent = new byte[(int) PHYSICAL_OFFSET + storage.length];
+        System.arraycopy(storage, 0, fileContent, (int) PHYSICAL_OFFSET, storage.length);
+        Files.write(file.toPath(), fileContent);
+        return new SparseStorage(file, 0, new NCAHeaderTableEntry(section.getTableEntry()),
+                new NcaFsHeader(section.getFsHeader()), sectionKey);
+    }
+}
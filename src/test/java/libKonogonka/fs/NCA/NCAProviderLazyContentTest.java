@@ -0,0 +1,105 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA;
+
+import libKonogonka.Converter;
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.synthetic.NcaHeaderBuilder;
+import libKonogonka.synthetic.Pfs0ImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class NCAProviderLazyContentTest {
+    private static final String HEADER_KEY = "00112233445566778899aabbccddeeff0f1e2d3c4b5a69788796a5b4c3d2e1f0";
+    private static final String KEY_AREA_KEY = "0f0e0d0c0b0a09080706050403020100";
+    private static final long MEDIA_START = 6;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("NCAProvider: section content created on first request and shared")
+    @Test
+    void lazyContent() throws Exception{
+        Random random = new Random(16);
+        byte[] keyArea = new byte[0x40];
+        random.nextBytes(keyArea);
+        byte[] subFile = new byte[0x1234];
+        random.nextBytes(subFile);
+        Pfs0ImageBuilder.Section section = new Pfs0ImageBuilder()
+                .addFile("main", subFile)
+                .addFile("main.npdm", new byte[0x80])
+                .buildSection(0x1000);
+        byte[] sectionData = section.getData();
+        long mediaEnd = MEDIA_START + sectionData.length / 0x200;
+        long sectionCtr = 0x0000000100000000L;
+
+        Cipher keyAreaCipher = Cipher.getInstance("AES/ECB/NoPadding");
+        keyAreaCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Converter.hexStringToByteArray(KEY_AREA_KEY), "AES"));
+        byte[] header = new NcaHeaderBuilder()
+                .setTitleId(0x0100000000001000L)
+                .setKeyArea(keyAreaCipher.doFinal(keyArea))
+                .setSection(0, MEDIA_START, mediaEnd, 1, 2, 3, section.getSuperBlock(), sectionCtr)
+                .build(HEADER_KEY);
+
+        byte[] encryptedSection = new byte[sectionData.length];
+        byte[] sectionCtrBytes = ByteBuffer.allocate(8).putLong(sectionCtr).array();
+        new AesCtrDecryptForMediaBlocks(Arrays.copyOfRange(keyArea, 0x20, 0x30), sectionCtrBytes, MEDIA_START * 0x200)
+                .createCipherAt(0)
+                .doFinal(sectionData, 0, sectionData.length, encryptedSection, 0);
+
+        // Only header is written: section can't be parsed until the rest is appended
+        File nca = new File(tempDir, "program.nca");
+        Files.write(nca.toPath(), Arrays.copyOf(header, (int) (MEDIA_START * 0x200)));
+        HashMap<String, String> keys = new HashMap<>();
+        keys.put("header_key", HEADER_KEY);
+        keys.put("key_area_key_application_00", KEY_AREA_KEY);
+        NCAProvider provider = new NCAProvider(nca, keys);
+        Files.write(nca.toPath(), encryptedSection, StandardOpenOption.APPEND);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<NCAContent>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++)
+                futures.add(executor.submit(() -> provider.getNCAContentProvider(0)));
+            NCAContent content = futures.get(0).get();
+            Assertions.assertNotNull(content);
+            for (Future<NCAContent> future : futures)
+                Assertions.assertSame(content, future.get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals("main", provider.getNCAContentProvider(0).getPfs0().getHeader().getPfs0subFiles()[0].getName());
+        Assertions.assertTrue(provider.getNCAContentProvider(0).getPfs0().verify().isValid());
+        Assertions.assertNull(provider.getNCAContentProvider(1));
+        Assertions.assertThrows(Exception.class, () -> provider.getNCAContentProvider(4));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA;
+
+import libKonogonka.KeyChainHolder;
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.ISeekableSource;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.PFS0.PFS0Provider;
+import libKonogonka.fs.RomFs.RomFsProvider;
+import libKonogonka.synthetic.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+public class NCAProviderSyntheticTest {
+    private static final long HOLLOW_FILE_SIZE = 0x140000000L;     // 5 GB
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("NCAProvider: generated NCA with PFS0, RomFS and multi-GB hollow PFS0 sections")
+    @Test
+    void syntheticNca() throws Exception{
+        TestKeys keys = new TestKeys(22);
+        File keysFile = new File(tempDir, "prod.keys");
+        keys.writeTo(keysFile);
+
+        byte[] main = SyntheticContent.compressible(0x12345, 1);
+        byte[] npdm = SyntheticContent.random(0x380, 2);
+        byte[] romFsFile = SyntheticContent.random(0x23456, 3);
+        byte[] beforeHollow = SyntheticContent.random(0x1000, 4);
+        NcaBuilder builder = new NcaBuilder(keys, 5)
+                .setTitleId(0x0100000000010000L)
+                .setKeyGeneration(5)
+                .addPfs0Section(new Pfs0ImageBuilder()
+                        .addFile("main", main)
+                        .addFile("main.npdm", npdm)
+                        .buildSection(0x1000))
+                .addRomFsSection(new IvfcImageBuilder(new RomFsImageBuilder()
+                        .addFile("/data/file.bin", romFsFile)
+                        .build(), 14).build())
+                .addPfs0Section(new Pfs0ImageBuilder()
+                        .addFile("small", beforeHollow)
+                        .addHollowFile("large", HOLLOW_FILE_SIZE)
+                        .buildSection(0x100000));
+        File file = new File(tempDir, "synthetic.nca");
+        builder.writeTo(file);
+        Assertions.assertEquals(builder.getSize(), file.length());
+        Assertions.assertTrue(file.length() > HOLLOW_FILE_SIZE);
+
+        NCAProvider provider = new NCAProvider(file, new KeyChainHolder(keysFile, keys.getXciHeaderKey()).getRawKeySet());
+        Assertions.assertEquals(6, provider.getCryptoType2());
+        Assertions.assertEquals(file.length(), provider.getNcaSize());
+        Assertions.assertEquals("NCA3", provider.getMagicnum());
+        Assertions.assertArrayEquals(ByteBuffer.allocate(8).putLong(0x0100000000010000L).array(), provider.getTitleId());
+        Assertions.assertArrayEquals(builder.getSectionKey(), provider.getDecryptedKey2());
+        for (int i = 0; i < 3; i++){
+            Assertions.assertEquals(builder.getMediaStartOffset(i), provider.getTableEntry(i).getMediaStartOffset());
+            Assertions.assertArrayEquals(ByteBuffer.allocate(8).putLong(NcaBuilder.getSectionCtr(i)).array(),
+                    provider.getSectionBlock(i).getSectionCTR());
+        }
+        Assertions.assertEquals(0x1000, provider.getSectionBlock0().getSuperBlockPFS0().getBlockSize());
+        Assertions.assertEquals("IVFC", provider.getSectionBlock1().getSuperBlockIVFC().getMagic());
+        Assertions.assertNull(provider.getSectionBlock3().getSuperBlockPFS0());
+        Assertions.assertNull(provider.getSectionBlock3().getSuperBlockIVFC());
+
+        PFS0Provider exeFs = provider.getNCAContentProvider(0).getPfs0();
+        Assertions.assertArrayEquals(main, readAll(exeFs.getStreamProducer("main"), main.length));
+        Assertions.assertArrayEquals(npdm, readAll(exeFs.getStreamProducer("main.npdm"), npdm.length));
+        Assertions.assertTrue(exeFs.verify().isValid());
+
+        RomFsProvider romFs = provider.getNCAContentProvider(1).getRomfs();
+        Assertions.assertArrayEquals(romFsFile,
+                readAll(romFs.getStreamProducer(romFs.lookup("/data/file.bin")), romFsFile.length));
+
+        PFS0Provider hollow = provider.getNCAContentProvider(2).getPfs0();
+        Assertions.assertEquals(HOLLOW_FILE_SIZE, hollow.getHeader().getPfs0subFiles()[1].getSize());
+        Assertions.assertArrayEquals(beforeHollow, readAll(hollow.getStreamProducer("small"), beforeHollow.length));
+        // Hollow content is never written: it's decrypted into AES-CTR key stream
+        long mediaStart = builder.getMediaStartOffset(2);
+        InFileStreamProducer large = hollow.getStreamProducer("large");
+        long position = file.length() - 0x1230;     // key stream below is calculated from 0x10-aligned position
+        byte[] read = new byte[0x1000];
+        try (ISeekableSource source = large.produceSource()){
+            Assertions.assertEquals(read.length, source.read(position, read, 0, read.length));
+        }
+        byte[] sectionCtr = ByteBuffer.allocate(8).putLong(NcaBuilder.getSectionCtr(2)).array();
+        byte[] keyStream = new AesCtrDecryptForMediaBlocks(builder.getSectionKey(), sectionCtr, mediaStart * 0x200)
+                .createCipherAt(position - mediaStart * 0x200)
+                .update(new byte[read.length]);
+        Assertions.assertArrayEquals(keyStream, read);
+    }
+
+    private static byte[] readAll(InFileStreamProducer producer, int size) throws Exception{
+        byte[] data = new byte[size];
+        try (BufferedInputStream stream = producer.produce()){
+            int done = 0;
+            int read;
+            while (done < size && (read = stream.read(data, done, size - done)) > 0)
+                done += read;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NCA;
+
+import libKonogonka.CompiledKeySet;
+import libKonogonka.Converter;
+import libKonogonka.synthetic.NcaHeaderBuilder;
+import libKonogonka.synthetic.Pfs0ImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+public class NcaHeaderScannerTest {
+    private static final String HEADER_KEY = "00112233445566778899aabbccddeeff0f1e2d3c4b5a69788796a5b4c3d2e1f0";
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("NcaHeaderScanner: NCA files and NSP content scanned in parallel")
+    @Test
+    void scanDirectory() throws Exception{
+        HashMap<String, String> keys = new HashMap<>();
+        keys.put("header_key", HEADER_KEY);
+        Map<String, Long> expectedTitleIds = new TreeMap<>();
+
+        File subdirectory = new File(tempDir, "sub");
+        Assertions.assertTrue(subdirectory.mkdir());
+        for (int i = 0; i < 20; i++){
+            long titleId = 0x0100000000010000L + i;
+            byte[] nca = makeNca(titleId, i % 3);
+            File file = new File(i % 2 == 0 ? tempDir : subdirectory, "plain"+i+".nca");
+            Files.write(file.toPath(), nca);
+            expectedTitleIds.put(file.getName(), titleId);
+        }
+        for (int i = 0; i < 5; i++){
+            Pfs0ImageBuilder nsp = new Pfs0ImageBuilder();
+            nsp.addFile("ticket"+i+".tik", new byte[0x2c0]);
+            // Last container has header bigger than NCA header: it's read from the channel once again
+            for (int j = 0; j < (i == 4 ? 48 : 3); j++){
+                long titleId = 0x0100000000020000L + i * 0x100 + j;
+                String name = "nsp"+i+"_"+j+".nca";
+                nsp.addFile(name, makeNca(titleId, j));
+                expectedTitleIds.put(name, titleId);
+            }
+            Files.write(new File(tempDir, "container"+i+".nsp").toPath(), nsp.build());
+        }
+        Files.write(new File(tempDir, "broken.nca").toPath(), new byte[0x1000]);
+        Files.write(new File(tempDir, "readme.txt").toPath(), new byte[0x1000]);
+
+        NcaHeaderScanner scanner = new NcaHeaderScanner(new CompiledKeySet(keys));
+        List<NcaHeaderSummary> summaries = scanner.scanDirectory(tempDir, 4);
+        Exception threadsException = Assertions.assertThrows(Exception.class, () -> scanner.scanDirectory(tempDir, 0));
+        Assertions.assertEquals("Threads count must be positive: 0", threadsException.getMessage());
+
+        Map<String, Long> titleIds = new TreeMap<>();
+        for (NcaHeaderSummary summary : summaries){
+            Assertions.assertEquals("NCA3", summary.getMagicnum());
+            Assertions.assertEquals(1, summary.getCryptoTypeReal());
+            Assertions.assertArrayEquals(new byte[]{0, 1, 2, 15}, summary.getSdkVersion());
+            Assertions.assertFalse(summary.hasRightsId());
+            titleIds.put(summary.getName(), Converter.getLElong(Converter.flip(summary.getTitleId()), 0));
+        }
+        Assertions.assertEquals(expectedTitleIds, titleIds);
+
+        NcaHeaderSummary single = new NcaHeaderScanner(keys).scan(new File(tempDir, "container1.nsp")).get(1);
+        Assertions.assertEquals("nsp1_1.nca", single.getName());
+        Assertions.assertEquals(1, single.getContentType());
+        Assertions.assertEquals(0x1000, single.getNcaSize());
+    }
+
+    private static byte[] makeNca(long titleId, int contentType) throws Exception{
+        byte[] header = new NcaHeaderBuilder()
+                .setTitleId(titleId)
+                .setContentType(contentType)
+                .setKeyGeneration(1)
+                .setNcaSize(0x1000)
+                .setSdkVersion(15, 2, 1, 0)
+                .build(HEADER_KEY);
+        return Arrays.copyOf(header, 0x1000);
+    }
+}
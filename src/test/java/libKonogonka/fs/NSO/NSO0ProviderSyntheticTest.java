@@ -0,0 +1,54 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.NSO;
+
+import libKonogonka.synthetic.Nso0Builder;
+import libKonogonka.synthetic.SyntheticContent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class NSO0ProviderSyntheticTest {
+    @TempDir
+    File tempDir;
+
+    @DisplayName("NSO0Provider: generated NSO0 is decompressed")
+    @Test
+    void syntheticNso0() throws Exception{
+        byte[] text = SyntheticContent.compressible(0x23456, 1);
+        byte[] roData = SyntheticContent.compressible(0x4567, 2);
+        byte[] data = SyntheticContent.random(0x1234, 3);
+        File file = new File(tempDir, "main");
+        Files.write(file.toPath(), new Nso0Builder(text, roData, data)
+                .setCompressed(true, true, false)
+                .setBssSize(0x2000)
+                .build());
+
+        NSO0Provider provider = new NSO0Provider(file);
+        Assertions.assertEquals(0x2000, provider.getHeader().getBssSize());
+        NSO0Raw raw = provider.getAsDecompressedNSO0();
+        Assertions.assertArrayEquals(text, raw.getTextRaw());
+        Assertions.assertArrayEquals(roData, raw.getRodataRaw());
+        Assertions.assertArrayEquals(data, raw.getDataRaw());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.PFS0;
+
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.NCA.NCASectionTableBlock.SuperBlockPFS0;
+import libKonogonka.synthetic.Pfs0ImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PFS0VerifyTest {
+    private static final long MEDIA_START = 0x2;
+    private static final int BLOCK_SIZE = 0x1000;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("PFS0Provider: hash table verification, parallel and streaming")
+    @Test
+    void verify() throws Exception{
+        Random random = new Random(3);
+        Pfs0ImageBuilder builder = new Pfs0ImageBuilder();
+        for (int i = 0; i < 5; i++){
+            byte[] data = new byte[0x8000 * (i + 1) + i * 7];
+            random.nextBytes(data);
+            builder.addFile("file"+i, data);
+        }
+        Pfs0ImageBuilder.Section section = builder.buildSection(BLOCK_SIZE);
+        SuperBlockPFS0 superBlock = new SuperBlockPFS0(section.getSuperBlock());
+        int sectionOffset = (int) (MEDIA_START * 0x200);
+
+        byte[] file = new byte[sectionOffset + section.getData().length];
+        System.arraycopy(section.getData(), 0, file, sectionOffset, section.getData().length);
+        File valid = new File(tempDir, "valid.nca");
+        Files.write(valid.toPath(), file);
+
+        PFS0Provider provider = new PFS0Provider(new InFileStreamProducer(valid), sectionOffset, superBlock, MEDIA_START);
+        Assertions.assertEquals(5, provider.getHeader().getFilesCount());
+        int blocksCount = (int) ((superBlock.getPfs0size() + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        Assertions.assertEquals(blocksCount, provider.getPfs0SHA256hashes().size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PFS0VerificationReport report = provider.verify(executor, 4);
+            Assertions.assertTrue(report.isValid(), report.toString());
+            Assertions.assertEquals(blocksCount, report.getBlocksCount());
+            Assertions.assertEquals(superBlock.getPfs0size(), report.getBytesVerified());
+            Assertions.assertTrue(provider.verifyStreaming().isValid());
+
+            int[] corruptedBlocks = {3, 17, blocksCount - 1};
+            for (int block : corruptedBlocks)
+                file[sectionOffset + section.getPfs0Offset() + block * BLOCK_SIZE + 0x20] ^= 0x5A;
+            File corrupted = new File(tempDir, "corrupted.nca");
+            Files.write(corrupted.toPath(), file);
+            PFS0Provider corruptedProvider = new PFS0Provider(new InFileStreamProducer(corrupted), sectionOffset,
+                    superBlock, MEDIA_START);
+
+            report = corruptedProvider.verify(executor, 3);
+            Assertions.assertFalse(report.isValid());
+            Assertions.assertTrue(report.isHashTableValid());
+            Assertions.assertArrayEquals(corruptedBlocks, report.getInvalidBlocks());
+            Assertions.assertFalse(report.isBlockValid(17));
+            Assertions.assertTrue(report.isBlockValid(16));
+            Assertions.assertArrayEquals(corruptedBlocks, corruptedProvider.verifyStreaming().getInvalidBlocks());
+
+            file[sectionOffset + 0x10] ^= 1;
+            Files.write(corrupted.toPath(), file);
+            corruptedProvider = new PFS0Provider(new InFileStreamProducer(corrupted), sectionOffset,
+                    superBlock, MEDIA_START);
+            Assertions.assertFalse(corruptedProvider.verify(executor, 2).isHashTableValid());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.fs.NCA.NCASectionTableBlock.SuperBlockIVFC;
+import libKonogonka.synthetic.IvfcImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class IVFCVerifierTest {
+    private static final int SECTION_OFFSET = 0xC00;
+    private static final int BLOCK_SIZE_POWER = 9;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("IVFCVerifier: valid and corrupted hash trees")
+    @Test
+    void verify() throws Exception{
+        Random random = new Random(5);
+        byte[] data = new byte[0x180000 + 0x123];
+        random.nextBytes(data);
+        IvfcImageBuilder builder = new IvfcImageBuilder(data, BLOCK_SIZE_POWER).build();
+        SuperBlockIVFC superBlock = new SuperBlockIVFC(builder.getSuperBlock());
+
+        byte[] file = new byte[SECTION_OFFSET + builder.getSection().length];
+        System.arraycopy(builder.getSection(), 0, file, SECTION_OFFSET, builder.getSection().length);
+        File valid = new File(tempDir, "valid.bin");
+        Files.write(valid.toPath(), file);
+
+        IVFCVerifier verifier = new IVFCVerifier(new InFileStreamProducer(valid), SECTION_OFFSET, superBlock);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            IVFCVerifier.Report report = verifier.verify(executor, 4);
+            Assertions.assertTrue(report.isValid(), report.toString());
+            Assertions.assertTrue(report.getBytesVerified() > data.length);
+            Assertions.assertTrue(report.getMegabytesPerSecond() > 0);
+
+            byte[] read = new byte[0x1000];
+            try (IVFCVerifiedInputStream stream = verifier.openVerifiedStream(data.length - 0x1000)){
+                Assertions.assertEquals(read.length, stream.read(read));
+                Assertions.assertEquals(-1, stream.read());
+            }
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, data.length - 0x1000, data.length), read);
+
+            int corruptedBlock = 0x777;
+            file[(int) (SECTION_OFFSET + builder.getLevelOffset(6) + corruptedBlock * 0x200L + 0x10)] ^= 1;
+            File corrupted = new File(tempDir, "corrupted.bin");
+            Files.write(corrupted.toPath(), file);
+            IVFCVerifier corruptedVerifier = new IVFCVerifier(new InFileStreamProducer(corrupted), SECTION_OFFSET, superBlock);
+            report = corruptedVerifier.verify(executor, 4);
+            Assertions.assertFalse(report.isValid());
+            Assertions.assertEquals(6, report.getFailedLevel());
+            Assertions.assertEquals(corruptedBlock, report.getFailedBlock());
+
+            try (IVFCVerifiedInputStream stream = corruptedVerifier.openVerifiedStream((corruptedBlock - 1) * 0x200L)){
+                Assertions.assertEquals(0x200, stream.read(new byte[0x200]));
+                Assertions.assertThrows(IOException.class, () -> stream.read(new byte[0x10]));
+            }
+
+            int firstCorruptedBlock = 0x10;
+            file[(int) (SECTION_OFFSET + builder.getLevelOffset(6) + firstCorruptedBlock * 0x200L)] ^= 1;
+            Files.write(corrupted.toPath(), file);
+            for (int i = 0; i < 5; i++){
+                report = corruptedVerifier.verify(executor, 4);
+                Assertions.assertEquals(6, report.getFailedLevel());
+                Assertions.assertEquals(firstCorruptedBlock, report.getFailedBlock());
+            }
+
+            file[(int) (SECTION_OFFSET + builder.getLevelOffset(4) + 3)] ^= 1;
+            Files.write(corrupted.toPath(), file);
+            report = corruptedVerifier.verify(executor, 4);
+            Assertions.assertFalse(report.isValid());
+            Assertions.assertEquals(4, report.getFailedLevel(), report.toString());
+            Assertions.assertEquals(0, report.getFailedBlock());
+            Assertions.assertThrows(Exception.class, () -> corruptedVerifier.openVerifiedStream(0));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
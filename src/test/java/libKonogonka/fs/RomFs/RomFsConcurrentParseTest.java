@@ -0,0 +1,102 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+
+public class RomFsConcurrentParseTest {
+    private static final int THREADS = 8;
+    private static final int IMAGES = 64;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("RomFsProvider: different images parsed concurrently do not mix their trees")
+    @Test
+    void concurrentParse() throws Exception{
+        List<File> images = new ArrayList<>();
+        List<TreeMap<String, Long>> expected = new ArrayList<>();
+        for (int i = 0; i < IMAGES; i++){
+            RomFsImageBuilder builder = new RomFsImageBuilder();
+            TreeMap<String, Long> files = new TreeMap<>();
+            int filesCount = 5 + i * 3;
+            for (int j = 0; j < filesCount; j++){
+                String path = "/image"+i+"/dir"+(j % (i % 5 + 1))+"/file"+j+".bin";
+                int size = (i * 31 + j) % 200;
+                builder.addFile(path, new byte[size]);
+                files.put(path, (long) size);
+            }
+            File image = new File(tempDir, "romfs_"+i+".bin");
+            builder.writeTo(image);
+            images.add(image);
+            expected.add(files);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++){
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int round = 0; round < 4; round++){
+                        for (int i = thread; i < IMAGES; i += THREADS){
+                            int index = (i + round * 3) % IMAGES;
+                            RomFsProvider provider = new RomFsProvider(images.get(index), 0);
+                            Assertions.assertEquals(expected.get(index), collect(provider.getRootEntry()));
+                            Assertions.assertEquals(expected.get(index), collect(provider.getLazyRootEntry()));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get(5, TimeUnit.MINUTES);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TreeMap<String, Long> collect(FileSystemEntry root){
+        TreeMap<String, Long> files = new TreeMap<>();
+        collect(root.getContent(), "", files);
+        return files;
+    }
+
+    private static void collect(List<FileSystemEntry> content, String path, TreeMap<String, Long> files){
+        for (FileSystemEntry entry : content){
+            if (entry.isDirectory())
+                collect(entry.getContent(), path+"/"+entry.getName(), files);
+            else
+                files.put(path+"/"+entry.getName(), entry.getSize());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class RomFsIndexTest {
+    @TempDir
+    File tempDir;
+
+    @DisplayName("RomFsIndex: flat index matches directory tree")
+    @Test
+    void index() throws Exception{
+        Map<String, byte[]> content = new TreeMap<>();
+        for (int i = 0; i < 120; i++)
+            content.put("/d"+(i % 3)+"/e"+(i % 5)+"/file"+i+".dat", ("data "+i).getBytes(StandardCharsets.UTF_8));
+        content.put("/top.bin", new byte[]{1, 2, 3});
+        content.put("/d1/ファイル.bin", new byte[]{4});
+
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        content.forEach(builder::addFile);
+        builder.addDirectory("/d0/empty");
+        File image = new File(tempDir, "romfs.bin");
+        builder.writeTo(image);
+
+        RomFsProvider provider = new RomFsProvider(image, 0);
+        RomFsIndex index = provider.getIndex();
+        Assertions.assertSame(index, provider.getIndex());
+        Assertions.assertEquals(content.size(), index.getFileCount());
+        Assertions.assertEquals(1 + 3 + 15 + 1, index.getDirectoryCount());
+        Assertions.assertEquals("ROOT", index.getName(index.getRoot()));
+
+        Map<String, byte[]> found = new TreeMap<>();
+        collect(index, index.getRoot(), provider, found);
+        Assertions.assertEquals(content.keySet(), found.keySet());
+        for (Map.Entry<String, byte[]> entry : content.entrySet())
+            Assertions.assertArrayEquals(entry.getValue(), found.get(entry.getKey()), entry.getKey());
+
+        for (String path : content.keySet()){
+            int node = index.find(path);
+            Assertions.assertFalse(index.isDirectory(node));
+            Assertions.assertEquals(path, index.getPath(node));
+            FileSystemEntry entry = provider.lookup(path);
+            Assertions.assertEquals(entry.getOffset(), index.getOffset(node));
+            Assertions.assertEquals(entry.getSize(), index.getSize(node));
+        }
+        int empty = index.find("/d0/empty/");
+        Assertions.assertTrue(index.isDirectory(empty));
+        Assertions.assertEquals(RomFsIndex.NONE, index.getFirstChild(empty));
+        Assertions.assertEquals(index.getRoot(), index.find("/"));
+        Assertions.assertEquals(RomFsIndex.NONE, index.find("/d0/missing"));
+        Assertions.assertEquals(RomFsIndex.NONE, index.find("/top.bin/file"));
+    }
+
+    @DisplayName("RomFsIndex: zero padding at the end of metadata tables is not taken as entries")
+    @Test
+    void paddedTables() throws Exception{
+        RomFsImageBuilder builder = new RomFsImageBuilder()
+                .addFile("/a/file1.bin", new byte[]{1})
+                .addFile("/a/b/file2.bin", new byte[]{2, 3})
+                .addFile("/top.bin", new byte[]{4});
+        ByteBuffer image = ByteBuffer.wrap(builder.build()).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] dirsTable = Arrays.copyOfRange(image.array(), (int) image.getLong(0x18),
+                (int) (image.getLong(0x18) + image.getLong(0x20)));
+        byte[] filesTable = Arrays.copyOfRange(image.array(), (int) image.getLong(0x38),
+                (int) (image.getLong(0x38) + image.getLong(0x40)));
+
+        RomFsIndex padded = new RomFsIndex(Arrays.copyOf(dirsTable, dirsTable.length + 0x40),
+                Arrays.copyOf(filesTable, filesTable.length + 0x44));
+        Assertions.assertEquals(3, padded.getDirectoryCount());
+        Assertions.assertEquals(3, padded.getFileCount());
+        Assertions.assertEquals(6, padded.size());
+        Assertions.assertEquals("/a/b/file2.bin", padded.getPath(padded.find("/a/b/file2.bin")));
+        Assertions.assertEquals(2, padded.getSize(padded.find("/a/b/file2.bin")));
+    }
+
+    private static void collect(RomFsIndex index, int directory, RomFsProvider provider, Map<String, byte[]> found)
+            throws Exception{
+        for (int child = index.getFirstChild(directory); child != RomFsIndex.NONE; child = index.getNextSibling(child)){
+            Assertions.assertEquals(directory, index.getParent(child));
+            if (index.isDirectory(child)){
+                collect(index, child, provider, found);
+                continue;
+            }
+            byte[] data = new byte[(int) index.getSize(child)];
+            try (BufferedInputStream stream = provider.getStreamProducer(index.getEntry(child)).produce()){
+                Assertions.assertEquals(data.length, stream.read(data));
+            }
+            found.put(index.getPath(child), data);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class RomFsLazyTreeTest {
+    @TempDir
+    File tempDir;
+
+    @DisplayName("RomFsProvider: lazy tree equals eagerly built tree")
+    @Test
+    void lazyTree() throws Exception{
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        for (int i = 0; i < 300; i++)
+            builder.addFile("/a"+(i % 4)+"/b"+(i % 7)+"/c"+(i % 2)+"/file"+i, new byte[i % 17]);
+        builder.addFile("/top.bin", new byte[]{1, 2, 3});
+        builder.addDirectory("/a0/empty");
+        File image = new File(tempDir, "romfs.bin");
+        builder.writeTo(image);
+
+        RomFsProvider provider = new RomFsProvider(image, 0);
+        FileSystemEntry lazyRoot = provider.getLazyRootEntry();
+        Assertions.assertEquals("ROOT", lazyRoot.getName());
+        Assertions.assertEquals(5, lazyRoot.getContent().size());
+
+        assertTreeEquals(provider.getRootEntry(), lazyRoot);
+        Assertions.assertSame(provider.getRootEntry(), provider.getRootEntry());
+    }
+
+    private static void assertTreeEquals(FileSystemEntry expected, FileSystemEntry actual){
+        Assertions.assertEquals(expected.getName(), actual.getName());
+        Assertions.assertEquals(expected.isDirectory(), actual.isDirectory());
+        Assertions.assertEquals(expected.getOffset(), actual.getOffset());
+        Assertions.assertEquals(expected.getSize(), actual.getSize());
+        List<FileSystemEntry> expectedContent = sorted(expected.getContent());
+        List<FileSystemEntry> actualContent = sorted(actual.getContent());
+        Assertions.assertEquals(expectedContent.size(), actualContent.size(), expected.getName());
+        for (int i = 0; i < expectedContent.size(); i++)
+            assertTreeEquals(expectedContent.get(i), actualContent.get(i));
+    }
+
+    private static List<FileSystemEntry> sorted(List<FileSystemEntry> content){
+        List<FileSystemEntry> copy = new ArrayList<>(content);
+        copy.sort(Comparator.comparing(FileSystemEntry::getName));
+        return copy;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RomFsLookupTest {
+    @TempDir
+    File tempDir;
+
+    @DisplayName("RomFsProvider: lookup by path using hash tables")
+    @Test
+    void lookup() throws Exception{
+        Map<String, byte[]> content = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++)
+            content.put("/data/level"+(i % 3)+"/sub"+(i % 5)+"/file_"+i+".bin", ("content #"+i).getBytes(StandardCharsets.UTF_8));
+        content.put("/root_file.txt", "root".getBytes(StandardCharsets.UTF_8));
+        content.put("/data/テスト.bin", "utf-8".getBytes(StandardCharsets.UTF_8));
+
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        content.forEach(builder::addFile);
+        builder.addDirectory("/empty");
+        File image = new File(tempDir, "romfs.bin");
+        builder.writeTo(image);
+
+        RomFsProvider provider = new RomFsProvider(image, 0);
+
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            FileSystemEntry fileEntry = provider.lookup(entry.getKey());
+            Assertions.assertTrue(fileEntry.isFile());
+            Assertions.assertEquals(entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1), fileEntry.getName());
+            Assertions.assertEquals(entry.getValue().length, fileEntry.getSize());
+
+            byte[] data = new byte[(int) fileEntry.getSize()];
+            try (BufferedInputStream stream = provider.getStreamProducer(fileEntry).produce()){
+                Assertions.assertEquals(data.length, stream.read(data));
+            }
+            Assertions.assertArrayEquals(entry.getValue(), data);
+        }
+
+        FileSystemEntry directory = provider.lookup("data/level1/");
+        Assertions.assertTrue(directory.isDirectory());
+        Assertions.assertEquals("level1", directory.getName());
+        Assertions.assertEquals(5, directory.getContent().size());
+        for (FileSystemEntry subDirectory : directory.getContent())
+            Assertions.assertTrue(subDirectory.isDirectory());
+
+        Assertions.assertTrue(provider.lookup("/empty").getContent().isEmpty());
+        Assertions.assertSame(provider.getLazyRootEntry(), provider.lookup("/"));
+
+        Assertions.assertThrows(FileNotFoundException.class, () -> provider.lookup("/data/level1/sub0/file_0.bin"));
+        Assertions.assertThrows(FileNotFoundException.class, () -> provider.lookup("/data/missing/file_0.bin"));
+        Assertions.assertThrows(FileNotFoundException.class, () -> provider.lookup("/root_file.txt/file"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.InFileStreamProducer;
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class RomFsParallelExportTest {
+    private static final long MEDIA_START = 0x3;
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("RomFsProvider: parallel export of plain and encrypted images")
+    @Test
+    void parallelExport() throws Exception{
+        Random random = new Random(7);
+        Map<String, byte[]> content = new TreeMap<>();
+        for (int i = 0; i < 60; i++){
+            byte[] data = new byte[random.nextInt(i % 10 == 0 ? 0x300000 : 0x5000)];
+            random.nextBytes(data);
+            content.put("/dir"+(i % 4)+"/sub"+(i % 3)+"/file"+i+".bin", data);
+        }
+        content.put("/empty.bin", new byte[0]);
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        content.forEach(builder::addFile);
+        byte[] image = builder.build();
+
+        File plainFile = new File(tempDir, "romfs.bin");
+        Files.write(plainFile.toPath(), image);
+        RomFsProvider plainProvider = new RomFsProvider(plainFile, 0);
+        checkExport(plainProvider, content, "plain");
+
+        byte[] key = new byte[0x10];
+        byte[] sectionCtr = new byte[0x10];
+        random.nextBytes(key);
+        random.nextBytes(sectionCtr);
+        int encryptedStart = (int) (MEDIA_START * 0x200);
+        long mediaEnd = MEDIA_START + (image.length + 0x1FF) / 0x200;
+        byte[] encrypted = new byte[(int) (mediaEnd * 0x200)];
+        Cipher cipher = new AesCtrDecryptForMediaBlocks(key, sectionCtr, encryptedStart).createCipherAt(0);
+        cipher.doFinal(image, 0, image.length, encrypted, encryptedStart);
+        File encryptedFile = new File(tempDir, "encrypted.nca");
+        Files.write(encryptedFile.toPath(), encrypted);
+
+        InFileStreamProducer producer = new InFileStreamProducer(encryptedFile, 0, 0,
+                new AesCtrDecryptForMediaBlocks(key, sectionCtr, encryptedStart), MEDIA_START, mediaEnd);
+        RomFsProvider encryptedProvider = new RomFsProvider(producer, 0, encryptedStart, MEDIA_START);
+        checkExport(encryptedProvider, content, "encrypted");
+    }
+
+    private void checkExport(RomFsProvider provider, Map<String, byte[]> content, String name) throws Exception{
+        File sequential = new File(tempDir, name+"_sequential");
+        File parallel = new File(tempDir, name+"_parallel");
+        Assertions.assertTrue(provider.exportContent(sequential.getPath(), provider.getRootEntry()));
+        Assertions.assertTrue(provider.exportContent(parallel.getPath(), provider.getLazyRootEntry(), 4));
+
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            String path = "ROOT"+entry.getKey();
+            Assertions.assertArrayEquals(entry.getValue(), Files.readAllBytes(new File(sequential, path).toPath()), path);
+            Assertions.assertArrayEquals(entry.getValue(), Files.readAllBytes(new File(parallel, path).toPath()), path);
+        }
+
+        File single = new File(tempDir, name+"_single");
+        String path = "/dir2/sub1/file10.bin";
+        Assertions.assertTrue(provider.exportContent(single.getPath(), provider.lookup(path), 2));
+        Assertions.assertArrayEquals(content.get(path), Files.readAllBytes(new File(single, "file10.bin").toPath()));
+
+        IllegalArgumentException threadsException = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> provider.exportContent(single.getPath(), provider.getRootEntry(), 0));
+        Assertions.assertEquals("Threads count must be positive: 0", threadsException.getMessage());
+    }
+}
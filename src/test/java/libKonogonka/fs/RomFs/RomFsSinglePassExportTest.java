@@ -0,0 +1,73 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.RomFs;
+
+import libKonogonka.synthetic.RomFsImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class RomFsSinglePassExportTest {
+    @TempDir
+    File tempDir;
+
+    @DisplayName("RomFsProvider: single pass export handles files sharing data")
+    @Test
+    void singlePassExport() throws Exception{
+        Random random = new Random(11);
+        Map<String, byte[]> content = new TreeMap<>();
+        RomFsImageBuilder builder = new RomFsImageBuilder();
+        for (int i = 0; i < 40; i++){
+            byte[] data = new byte[random.nextInt(0x3000)];
+            random.nextBytes(data);
+            String path = "/a"+(i % 2)+"/b"+(i % 5)+"/file"+i+".bin";
+            content.put(path, data);
+            builder.addFile(path, data);
+        }
+        builder.addFileSharingData("/copies/file3.bin", "/a1/b3/file3.bin");
+        builder.addFileSharingData("/a0/b0/copy_of_file21.bin", "/a1/b1/file21.bin");
+        content.put("/copies/file3.bin", content.get("/a1/b3/file3.bin"));
+        content.put("/a0/b0/copy_of_file21.bin", content.get("/a1/b1/file21.bin"));
+        File image = new File(tempDir, "romfs.bin");
+        builder.writeTo(image);
+
+        RomFsProvider provider = new RomFsProvider(image, 0);
+        Assertions.assertEquals(provider.lookup("/copies/file3.bin").getOffset(),
+                provider.lookup("/a1/b3/file3.bin").getOffset());
+
+        File target = new File(tempDir, "exported");
+        Assertions.assertTrue(provider.exportContent(target.getPath(), provider.getRootEntry()));
+        for (Map.Entry<String, byte[]> entry : content.entrySet()){
+            String path = "ROOT"+entry.getKey();
+            Assertions.assertArrayEquals(entry.getValue(), Files.readAllBytes(new File(target, path).toPath()), path);
+        }
+
+        File subdirectory = new File(tempDir, "subdirectory");
+        Assertions.assertTrue(provider.exportContent(subdirectory.getPath(), provider.lookup("/a0/b0")));
+        Assertions.assertArrayEquals(content.get("/a0/b0/copy_of_file21.bin"),
+                Files.readAllBytes(new File(subdirectory, "b0/copy_of_file21.bin").toPath()));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.XCI;
+
+import libKonogonka.synthetic.SyntheticContent;
+import libKonogonka.synthetic.TestKeys;
+import libKonogonka.synthetic.XciImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static libKonogonka.Converter.getLEint;
+
+public class XCIProviderSyntheticTest {
+    private static final long HOLLOW_FILE_SIZE = 0x180000000L;     // 6 GB
+
+    @TempDir
+    File tempDir;
+
+    @DisplayName("XCIProvider: generated XCI with regular and multi-GB hollow files")
+    @Test
+    void syntheticXci() throws Exception{
+        TestKeys keys = new TestKeys(22);
+        byte[] updateFile = SyntheticContent.random(0x800, 1);
+        byte[] secureFile = SyntheticContent.random(0x12345, 2);
+        byte[] logoFile = SyntheticContent.random(0x100, 3);
+        File file = new File(tempDir, "synthetic.xci");
+        new XciImageBuilder(keys, 4)
+                .setFirmwareVersion(0x1234)
+                .addFile("update", "update.nca", updateFile)
+                .addFile("secure", "program.nca", secureFile)
+                .addHollowFile("secure", "data.nca", HOLLOW_FILE_SIZE)
+                .addFile("logo", "logo.nca", logoFile)
+                .writeTo(file);
+        Assertions.assertTrue(file.length() > HOLLOW_FILE_SIZE);
+
+        XCIProvider provider = new XCIProvider(file, keys.getXciHeaderKey());
+        Assertions.assertTrue(provider.getGCHeader().isMagicHeadOk());
+        Assertions.assertTrue(provider.getGCHeader().isSecureModeFlagOk());
+        Assertions.assertEquals(0x1234, provider.getGCInfo().getFwVersion());
+        Assertions.assertEquals(4, provider.getHfs0ProviderMain().getFilesCount());
+        Assertions.assertEquals(0, provider.getHfs0ProviderNormal().getFilesCount());
+
+        HFS0Provider secure = provider.getHfs0ProviderSecure();
+        HFS0File[] partitions = provider.getHfs0ProviderMain().getHfs0Files();
+        Assertions.assertEquals((provider.getHfs0ProviderMain().getRawFileDataStart() + partitions[2].getOffset()) / 0x200,
+                getLEint(provider.getGCHeader().getSecureAreaStartAddr(), 0));
+        Assertions.assertArrayEquals(secureFile, readAll(secure, "program.nca", secureFile.length));
+        Assertions.assertArrayEquals(updateFile, readAll(provider.getHfs0ProviderUpdate(), "update.nca", updateFile.length));
+        Assertions.assertArrayEquals(logoFile, readAll(provider.getHfs0ProviderLogo(), "logo.nca", logoFile.length));
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        HFS0File program = secure.getHfs0Files()[0];
+        Assertions.assertArrayEquals(digest.digest(Arrays.copyOf(secureFile, (int) program.getHashedRegionSize())),
+                program.getSHA256Hash());
+
+        HFS0File hollow = secure.getHfs0Files()[1];
+        Assertions.assertEquals(HOLLOW_FILE_SIZE, hollow.getSize());
+        long hollowEnd = secure.getRawFileDataStart() + hollow.getOffset() + hollow.getSize();
+        Assertions.assertEquals(file.length() - partitions[3].getSize(), hollowEnd);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")){
+            byte[] tail = new byte[0x200];
+            raf.seek(hollowEnd - tail.length);
+            raf.readFully(tail);
+            Assertions.assertArrayEquals(new byte[tail.length], tail);
+        }
+    }
+
+    private static byte[] readAll(HFS0Provider provider, String name, int size) throws Exception{
+        byte[] data = new byte[size];
+        try (BufferedInputStream stream = provider.getStreamProducer(name).produce()){
+            int done = 0;
+            int read;
+            while (done < size && (read = stream.read(data, done, size - done)) > 0)
+                done += read;
+        }
+        return data;
+    }
+}
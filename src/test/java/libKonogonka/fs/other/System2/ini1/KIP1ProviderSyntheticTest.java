@@ -0,0 +1,56 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.fs.other.System2.ini1;
+
+import libKonogonka.synthetic.Kip1Builder;
+import libKonogonka.synthetic.SyntheticContent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class KIP1ProviderSyntheticTest {
+    @TempDir
+    File tempDir;
+
+    @DisplayName("KIP1Provider: generated KIP1 is decompressed")
+    @Test
+    void syntheticKip1() throws Exception{
+        byte[] text = SyntheticContent.compressible(0x12345, 1);
+        byte[] roData = SyntheticContent.compressible(0x3456, 2);
+        byte[] rwData = SyntheticContent.random(0x800, 3);
+        File file = new File(tempDir, "Synthetic.kip1");
+        Files.write(file.toPath(), new Kip1Builder(text, roData, rwData)
+                .setName("Synthetic")
+                .setCompressed(true, true, false)
+                .build());
+
+        KIP1Provider provider = new KIP1Provider(file.getAbsolutePath());
+        Assertions.assertEquals("KIP1", provider.getHeader().getMagic());
+        Assertions.assertEquals("Synthetic", provider.getHeader().getName());
+        Assertions.assertEquals(file.length(), provider.getSize());
+        KIP1Raw raw = provider.getAsDecompressed();
+        Assertions.assertArrayEquals(text, raw.getTextRaw());
+        Assertions.assertArrayEquals(roData, raw.getRoDataRaw());
+        Assertions.assertArrayEquals(rwData, raw.getRwDataRaw());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds update NCA section (BKTR) that turns base section into target: blocks equal to base at the same offset
+ * are relocated to base, others are stored in patch. Patch data is split into subsections with own generations.
+ * Layout of section: patch data, relocation bucket tree, subsection bucket tree. Everything AES-CTR encrypted.
+ * */
+public class BktrPatchBuilder {
+    private static final int NODE_SIZE = BucketTreeWriter.NODE_SIZE;
+    private static final int SUBSECTION_SIZE = 0x4000;
+
+    private final byte[] base;
+    private int relocationsPerSet = (NODE_SIZE - 0x10) / 0x14;
+    private int subsectionsPerSet = (NODE_SIZE - 0x10) / 0x10;
+
+    public BktrPatchBuilder(byte[] base){
+        this.base = base;
+    }
+    /**
+     * Limit entries count in bucket tree entry sets to make trees with many sets out of small images
+     * */
+    public BktrPatchBuilder setEntriesPerSet(int relocations, int subsections){
+        this.relocationsPerSet = relocations;
+        this.subsectionsPerSet = subsections;
+        return this;
+    }
+    /**
+     * @param target patched section content
+     * @param blockSize granularity of comparison with base, must be multiple of 0x10
+     * @param key section key
+     * @param mediaStartOffset section start in 0x200 blocks from NCA start
+     * @param generation section generation from FS header
+     * @param secureValue section secure value from FS header
+     * */
+    public Patch build(byte[] target,
+                       int blockSize,
+                       byte[] key,
+                       long mediaStartOffset,
+                       int generation,
+                       int secureValue) throws Exception{
+        List<long[]> relocations = new ArrayList<>();   // virtual offset, physical offset, storage
+        ByteArrayOutputStream patchData = new ByteArrayOutputStream();
+        for (int virtualOffset = 0; virtualOffset < target.length; virtualOffset += blockSize){
+            int size = Math.min(blockSize, target.length - virtualOffset);
+            boolean sameAsBase = virtualOffset + size <= base.length && Arrays.equals(
+                    Arrays.copyOfRange(target, virtualOffset, virtualOffset + size),
+                    Arrays.copyOfRange(base, virtualOffset, virtualOffset + size));
+            long storage = sameAsBase ? 0 : 1;
+            long physicalOffset = sameAsBase ? virtualOffset : patchData.size();
+            long[] last = relocations.isEmpty() ? null : relocations.get(relocations.size() - 1);
+            if (last == null || last[2] != storage
+                    || last[1] + (virtualOffset - last[0]) != physicalOffset)
+                relocations.add(new long[]{virtualOffset, physicalOffset, storage});
+            if (! sameAsBase)
+                patchData.write(target, virtualOffset, size);
+        }
+        while (patchData.size() % SUBSECTION_SIZE != 0)
+            patchData.write(0);
+        int patchDataSize = patchData.size();
+
+        List<long[]> subsections = new ArrayList<>();   // physical offset, generation
+        for (int offset = 0; offset < patchDataSize; offset += SUBSECTION_SIZE)
+            subsections.add(new long[]{offset, 0x100 + offset / SUBSECTION_SIZE});
+
+        byte[] relocationTable = BucketTreeWriter.write(relocations, 0x14, relocationsPerSet, target.length,
+                (tree, position, entry) -> {
+                    tree.putLong(position + 8, entry[1]);
+                    tree.putInt(position + 0x10, (int) entry[2]);
+                });
+        byte[] subsectionTable = BucketTreeWriter.write(subsections, 0x10, subsectionsPerSet, patchDataSize,
+                (tree, position, entry) -> tree.putInt(position + 0xC, (int) entry[1]));
+
+        byte[] section = new byte[patchDataSize + relocationTable.length + subsectionTable.length];
+        System.arraycopy(patchData.toByteArray(), 0, section, 0, patchDataSize);
+        System.arraycopy(relocationTable, 0, section, patchDataSize, relocationTable.length);
+        System.arraycopy(subsectionTable, 0, section, patchDataSize + relocationTable.length, subsectionTable.length);
+
+        byte[] sectionCtr = ByteBuffer.allocate(8).putInt(secureValue).putInt(generation).array();
+        for (long[] subsection : subsections){
+            byte[] ctr = sectionCtr.clone();
+            ByteBuffer.wrap(ctr).putInt(4, (int) subsection[1]);
+            encrypt(section, (int) subsection[0], SUBSECTION_SIZE, key, ctr, mediaStartOffset);
+        }
+        encrypt(section, patchDataSize, section.length - patchDataSize, key, sectionCtr, mediaStartOffset);
+
+        ByteBuffer fsHeader = ByteBuffer.allocate(0x200).order(ByteOrder.LITTLE_ENDIAN);
+        fsHeader.putShort(0, (short) 2);
+        fsHeader.put(2, (byte) 0);
+        fsHeader.put(3, (byte) 3);
+        fsHeader.put(4, (byte) 4);
+        putPatchInfo(fsHeader, 0x100, patchDataSize, relocationTable.length, relocations.size());
+        putPatchInfo(fsHeader, 0x120, patchDataSize + relocationTable.length, subsectionTable.length,
+                subsections.size());
+        fsHeader.putInt(0x140, generation);
+        fsHeader.putInt(0x144, secureValue);
+
+        ByteBuffer tableEntry = ByteBuffer.allocate(0x10).order(ByteOrder.LITTLE_ENDIAN);
+        tableEntry.putInt((int) mediaStartOffset);
+        tableEntry.putInt((int) (mediaStartOffset + section.length / 0x200));
+        return new Patch(section, fsHeader.array(), tableEntry.array(), relocations.size());
+    }
+
+    private static void putPatchInfo(ByteBuffer fsHeader, int position, long offset, long size, int entryCount){
+        fsHeader.putLong(position, offset);
+        fsHeader.putLong(position + 8, size);
+        fsHeader.position(position + 0x10);
+        fsHeader.put("BKTR".getBytes(StandardCharsets.US_ASCII));
+        fsHeader.putInt(position + 0x14, 1);
+        fsHeader.putInt(position + 0x18, entryCount);
+    }
+
+    private static void encrypt(byte[] data, int offset, int length, byte[] key, byte[] sectionCtr,
+                                long mediaStartOffset) throws Exception{
+        Cipher cipher = new AesCtrDecryptForMediaBlocks(key, sectionCtr, mediaStartOffset * 0x200)
+                .createCipherAt(offset);
+        cipher.doFinal(data, offset, length, data, offset);
+    }
+
+    public static class Patch {
+        private final byte[] section;
+        private final byte[] fsHeader;
+        private final byte[] tableEntry;
+        private final int relocationsCount;
+
+        private Patch(byte[] section, byte[] fsHeader, byte[] tableEntry, int relocationsCount){
+            this.section = section;
+            this.fsHeader = fsHeader;
+            this.tableEntry = tableEntry;
+            this.relocationsCount = relocationsCount;
+        }
+        /**
+         * @return encrypted section, size is multiple of 0x200
+         * */
+        public byte[] getSection() { return section; }
+        /**
+         * @return NCA FS header of the section (0x200 bytes); super block is empty
+         * */
+        public byte[] getFsHeader() { return fsHeader; }
+        /**
+         * @return NCA section table entry (0x10 bytes)
+         * */
+        public byte[] getTableEntry() { return tableEntry; }
+        public int getRelocationsCount() { return relocationsCount; }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BLZ (backward LZ77) compression as it's used in KIP1: data is compressed from the end; footer holds
+ * compressed size, footer size and size increase after decompression.
+ * */
+public class BlzCompressor {
+    private BlzCompressor(){}
+
+    /**
+     * @param data data to compress, must be compressible
+     * @param delta count of leading bytes stored not compressed
+     * */
+    public static byte[] compress(byte[] data, int delta){
+        ByteArrayOutputStream reversed = new ByteArrayOutputStream();   // in the order decompressor consumes it
+        Map<Integer, Integer> lastPositions = new HashMap<>();
+        byte[] tokens = new byte[16];
+        int position = data.length;
+        while (position > delta){
+            int control = 0;
+            int tokensLength = 0;
+            for (int bit = 0; bit < 8 && position > delta; bit++){
+                int start = position - 3;
+                Integer candidate = start >= delta ? lastPositions.get(key(data, start)) : null;
+                int length = 0;
+                int displacement = candidate == null ? 0 : candidate - start;
+                if (displacement >= 3 && displacement <= 0x1002){
+                    length = 3;
+                    while (length < 18 && length < displacement && start > delta
+                            && data[start - 1] == data[start - 1 + displacement]){
+                        start--;
+                        length++;
+                    }
+                }
+                if (length >= 3){
+                    control |= 0x80 >> bit;
+                    int value = ((length - 3) << 12) | (displacement - 3);
+                    tokens[tokensLength++] = (byte) (value >> 8);
+                    tokens[tokensLength++] = (byte) value;
+                }
+                else {
+                    start = position - 1;
+                    tokens[tokensLength++] = data[start];
+                }
+                for (int i = start; i < position; i++){
+                    if (i + 3 <= data.length)
+                        lastPositions.put(key(data, i), i);
+                }
+                position = start;
+            }
+            reversed.write(control);
+            reversed.write(tokens, 0, tokensLength);
+        }
+        byte[] stream = reversed.toByteArray();
+        int padding = (4 - (delta + stream.length) % 4) % 4;
+        int footerSize = padding + 12;
+        int compressedSize = delta + stream.length + footerSize;
+        if (compressedSize >= data.length)
+            throw new IllegalArgumentException("Data is not compressible");
+
+        ByteBuffer compressed = ByteBuffer.allocate(compressedSize).order(ByteOrder.LITTLE_ENDIAN);
+        compressed.put(data, 0, delta);
+        for (int i = stream.length - 1; i >= 0; i--)
+            compressed.put(stream[i]);
+        for (int i = 0; i < padding; i++)
+            compressed.put((byte) 0xFF);
+        compressed.putInt(stream.length + footerSize);
+        compressed.putInt(footerSize);
+        compressed.putInt(data.length - compressedSize);
+        return compressed.array();
+    }
+
+    private static int key(byte[] data, int position){
+        return (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8 | (data[position + 2] & 0xFF) << 16;
+    }
+}
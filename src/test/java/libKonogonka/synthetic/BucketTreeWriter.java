@@ -0,0 +1,58 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Writes bucket tree as NCA stores it: offset node followed by entry set nodes, 0x4000 bytes each.
+ * First element of every entry is its offset; the rest is written by EntryWriter.
+ * */
+class BucketTreeWriter {
+    static final int NODE_SIZE = 0x4000;
+
+    interface EntryWriter {
+        void write(ByteBuffer tree, int position, long[] entry);
+    }
+
+    static byte[] write(List<long[]> entries, int entrySize, int entriesPerSet, long endOffset, EntryWriter writer){
+        int setsCount = (entries.size() + entriesPerSet - 1) / entriesPerSet;
+        ByteBuffer tree = ByteBuffer.allocate(NODE_SIZE * (setsCount + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        tree.putInt(0, 0);
+        tree.putInt(4, setsCount);
+        tree.putLong(8, endOffset);
+        for (int set = 0; set < setsCount; set++){
+            int first = set * entriesPerSet;
+            int last = Math.min(entries.size(), first + entriesPerSet);
+            tree.putLong(0x10 + set * 8, entries.get(first)[0]);
+            int setPosition = NODE_SIZE * (set + 1);
+            tree.putInt(setPosition, set);
+            tree.putInt(setPosition + 4, last - first);
+            tree.putLong(setPosition + 8, last < entries.size() ? entries.get(last)[0] : endOffset);
+            for (int i = first; i < last; i++){
+                int position = setPosition + 0x10 + (i - first) * entrySize;
+                tree.putLong(position, entries.get(i)[0]);
+                writer.write(tree, position, entries.get(i));
+            }
+        }
+        return tree.array();
+    }
+}
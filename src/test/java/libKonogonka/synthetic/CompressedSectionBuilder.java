@@ -0,0 +1,165 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds compressed NCA section out of image: image is split into blocks, zero blocks are stored as 'zeroes' entries,
+ * blocks that LZ4 makes smaller are stored compressed, others are stored as is.
+ * Layout of section: blocks data, compression bucket tree. Everything AES-CTR encrypted unless no key provided.
+ * */
+public class CompressedSectionBuilder {
+    private int blockSize = 0x10000;
+    private int entriesPerSet = (BucketTreeWriter.NODE_SIZE - 0x10) / 0x18;
+
+    public CompressedSectionBuilder setBlockSize(int blockSize){
+        this.blockSize = blockSize;
+        return this;
+    }
+    /**
+     * Limit entries count in bucket tree entry sets to make trees with many sets out of small images
+     * */
+    public CompressedSectionBuilder setEntriesPerSet(int entriesPerSet){
+        this.entriesPerSet = entriesPerSet;
+        return this;
+    }
+    /**
+     * @param image decompressed section content
+     * @param key section key or null to build not encrypted section
+     * @param mediaStartOffset section start in 0x200 blocks from NCA start
+     * @param generation section generation from FS header
+     * @param secureValue section secure value from FS header
+     * */
+    public Section build(byte[] image, byte[] key, long mediaStartOffset, int generation, int secureValue)
+            throws Exception{
+        LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        List<long[]> entries = new ArrayList<>();   // virtual offset, physical offset, type, physical size
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] typesCount = new int[4];
+        for (int virtualOffset = 0; virtualOffset < image.length; virtualOffset += blockSize){
+            int size = Math.min(blockSize, image.length - virtualOffset);
+            byte[] compressed = new byte[compressor.maxCompressedLength(size)];
+            int compressedSize = compressor.compress(image, virtualOffset, size, compressed, 0);
+            int type;
+            if (isZeroes(image, virtualOffset, size)){
+                type = 1;
+                entries.add(new long[]{virtualOffset, data.size(), type, 0});
+            }
+            else if (compressedSize < size){
+                type = 3;
+                entries.add(new long[]{virtualOffset, data.size(), type, compressedSize});
+                data.write(compressed, 0, compressedSize);
+            }
+            else {
+                type = 0;
+                entries.add(new long[]{virtualOffset, data.size(), type, size});
+                data.write(image, virtualOffset, size);
+            }
+            typesCount[type]++;
+        }
+        while (data.size() % 0x200 != 0)
+            data.write(0);
+        int dataSize = data.size();
+
+        byte[] table = BucketTreeWriter.write(entries, 0x18, entriesPerSet, image.length,
+                (tree, position, entry) -> {
+                    tree.putLong(position + 8, entry[1]);
+                    tree.put(position + 0x10, (byte) entry[2]);
+                    tree.putInt(position + 0x14, (int) entry[3]);
+                });
+        byte[] section = new byte[dataSize + table.length];
+        System.arraycopy(data.toByteArray(), 0, section, 0, dataSize);
+        System.arraycopy(table, 0, section, dataSize, table.length);
+
+        byte[] sectionCtr = ByteBuffer.allocate(8).putInt(secureValue).putInt(generation).array();
+        if (key != null){
+            Cipher cipher = new AesCtrDecryptForMediaBlocks(key, sectionCtr, mediaStartOffset * 0x200)
+                    .createCipherAt(0);
+            cipher.doFinal(section, 0, section.length, section, 0);
+        }
+
+        ByteBuffer fsHeader = ByteBuffer.allocate(0x200).order(ByteOrder.LITTLE_ENDIAN);
+        fsHeader.putShort(0, (short) 2);
+        fsHeader.put(2, (byte) 0);
+        fsHeader.put(3, (byte) 3);
+        fsHeader.put(4, (byte) (key == null ? 1 : 3));
+        fsHeader.putInt(0x140, generation);
+        fsHeader.putInt(0x144, secureValue);
+        fsHeader.putLong(0x178, dataSize);
+        fsHeader.putLong(0x180, table.length);
+        fsHeader.position(0x188);
+        fsHeader.put("BKTR".getBytes(StandardCharsets.US_ASCII));
+        fsHeader.putInt(0x18C, 1);
+        fsHeader.putInt(0x190, entries.size());
+
+        ByteBuffer tableEntry = ByteBuffer.allocate(0x10).order(ByteOrder.LITTLE_ENDIAN);
+        tableEntry.putInt((int) mediaStartOffset);
+        tableEntry.putInt((int) (mediaStartOffset + section.length / 0x200));
+        return new Section(section, fsHeader.array(), tableEntry.array(), typesCount);
+    }
+
+    private static boolean isZeroes(byte[] data, int offset, int size){
+        for (int i = offset; i < offset + size; i++){
+            if (data[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    public static class Section {
+        private final byte[] section;
+        private final byte[] fsHeader;
+        private final byte[] tableEntry;
+        private final int[] typesCount;
+
+        private Section(byte[] section, byte[] fsHeader, byte[] tableEntry, int[] typesCount){
+            this.section = section;
+            this.fsHeader = fsHeader;
+            this.tableEntry = tableEntry;
+            this.typesCount = typesCount;
+        }
+        /**
+         * @return section as stored in NCA, size is multiple of 0x200
+         * */
+        public byte[] getSection() { return section; }
+        /**
+         * @return NCA FS header of the section (0x200 bytes); super block is empty
+         * */
+        public byte[] getFsHeader() { return fsHeader; }
+        /**
+         * @return NCA section table entry (0x10 bytes)
+         * */
+        public byte[] getTableEntry() { return tableEntry; }
+        /**
+         * @return count of entries of provided type: 0 - stored as is, 1 - zeroes, 3 - LZ4
+         * */
+        public int getEntriesCount(int type) { return typesCount[type]; }
+    }
+}
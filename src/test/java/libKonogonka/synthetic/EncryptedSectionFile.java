@@ -0,0 +1,79 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+import libKonogonka.aesctr.InFileStreamProducer;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Single AES-CTR section placed at ncaOffset: media blocks [mediaStart, mediaEnd) are encrypted, the rest of file
+ * (header area and tail) stays plain. Key, section CTR and plain data are taken from random in this order.
+ * */
+public class EncryptedSectionFile {
+    private static final int MEDIA_SIZE = 0x200;
+
+    private final long ncaOffset;
+    private final long mediaStart;
+    private final long mediaEnd;
+    private final byte[] key = new byte[0x10];
+    private final byte[] sectionCtr = new byte[0x10];
+    private final byte[] plain;
+
+    public EncryptedSectionFile(Random random, long ncaOffset, long mediaStart, long mediaEnd, int tailSize){
+        this.ncaOffset = ncaOffset;
+        this.mediaStart = mediaStart;
+        this.mediaEnd = mediaEnd;
+        random.nextBytes(key);
+        random.nextBytes(sectionCtr);
+        this.plain = new byte[(int) (ncaOffset + mediaEnd * MEDIA_SIZE + tailSize)];
+        random.nextBytes(plain);
+    }
+    /**
+     * Write encrypted image as 'synthetic.nca' into directory
+     * */
+    public File write(File directory) throws Exception{
+        int encryptedStart = (int) getEncryptedStart();
+        byte[] encrypted = plain.clone();
+        // Encryption is the same operation as decryption for CTR
+        createDecryptor(key).createCipherAt(0).doFinal(plain, encryptedStart,
+                (int) getEncryptedEnd() - encryptedStart, encrypted, encryptedStart);
+        File file = new File(directory, "synthetic.nca");
+        Files.write(file.toPath(), encrypted);
+        return file;
+    }
+
+    public AesCtrDecryptForMediaBlocks createDecryptor(byte[] key) throws Exception{
+        return new AesCtrDecryptForMediaBlocks(key, sectionCtr, mediaStart * MEDIA_SIZE);
+    }
+    public InFileStreamProducer createProducer(File file) throws Exception{
+        return createProducer(file, key);
+    }
+    public InFileStreamProducer createProducer(File file, byte[] key) throws Exception{
+        return new InFileStreamProducer(file, ncaOffset, 0, createDecryptor(key), mediaStart, mediaEnd);
+    }
+
+    public byte[] getKey() { return key; }
+    public byte[] getPlain() { return plain; }
+    public long getEncryptedStart() { return ncaOffset + mediaStart * MEDIA_SIZE; }
+    public long getEncryptedEnd() { return ncaOffset + mediaEnd * MEDIA_SIZE; }
+}
@@ -0,0 +1,179 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds HFS0 image. Entries could be regular files, hollow files (declared only: never written, so in sparse file
+ * they take no space and read as zeroes) or nested HFS0 partitions as they're stored in XCI.
+ * Header is padded to 0x200 with string table.
+ * */
+public class Hfs0ImageBuilder {
+    private static final int ENTRY_SIZE = 0x40;
+    private static final int HASHED_REGION_SIZE = 0x200;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public Hfs0ImageBuilder addFile(String name, byte[] data){
+        entries.add(new Entry(name, data.length, data, null));
+        return this;
+    }
+    public Hfs0ImageBuilder addHollowFile(String name, long size){
+        entries.add(new Entry(name, size, null, null));
+        return this;
+    }
+    public Hfs0ImageBuilder addPartition(String name, Hfs0ImageBuilder partition){
+        entries.add(new Entry(name, partition.getSize(), null, partition));
+        return this;
+    }
+
+    public byte[] buildHeader() throws Exception{
+        ByteArrayOutputStream stringTable = new ByteArrayOutputStream();
+        int[] nameOffsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++){
+            nameOffsets[i] = stringTable.size();
+            byte[] name = entries.get(i).name.getBytes(StandardCharsets.UTF_8);
+            stringTable.write(name, 0, name.length);
+            stringTable.write(0);
+        }
+        int headerSize = getHeaderSize(stringTable.size());
+        int stringTableSize = headerSize - 0x10 - entries.size() * ENTRY_SIZE;
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("HFS0".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(entries.size());
+        header.putInt(stringTableSize);
+        header.putInt(0);
+        long offset = 0;
+        for (int i = 0; i < entries.size(); i++){
+            Entry entry = entries.get(i);
+            byte[] hashedRegion = entry.getHashedRegion();
+            header.putLong(offset);
+            header.putLong(entry.size);
+            header.putInt(nameOffsets[i]);
+            header.putInt(hashedRegion.length);
+            header.putLong(0);
+            header.put(digest.digest(hashedRegion));
+            offset += entry.size;
+        }
+        header.put(stringTable.toByteArray());
+        return header.array();
+    }
+
+    private int getHeaderSize(int stringTableSize){
+        return (0x10 + entries.size() * ENTRY_SIZE + stringTableSize + 0x1FF) & ~0x1FF;
+    }
+
+    public long getSize(){
+        int stringTableSize = 0;
+        long size = 0;
+        for (Entry entry : entries){
+            stringTableSize += entry.name.getBytes(StandardCharsets.UTF_8).length + 1;
+            size += entry.size;
+        }
+        return getHeaderSize(stringTableSize) + size;
+    }
+    /**
+     * @return image in memory, hollow files are filled with zeroes
+     * */
+    public byte[] build() throws Exception{
+        long size = getSize();
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image is too big, use writeTo() instead");
+        byte[] image = new byte[(int) size];
+        write(ByteBuffer.wrap(image), 0);
+        return image;
+    }
+
+    private void write(ByteBuffer image, int position) throws Exception{
+        byte[] header = buildHeader();
+        System.arraycopy(header, 0, image.array(), position, header.length);
+        position += header.length;
+        for (Entry entry : entries){
+            if (entry.data != null)
+                System.arraycopy(entry.data, 0, image.array(), position, entry.data.length);
+            else if (entry.partition != null)
+                entry.partition.write(image, position);
+            position += entry.size;
+        }
+    }
+    /**
+     * Write image to the file at provided position. Hollow files are skipped.
+     * @return position of image end
+     * */
+    public long writeTo(FileChannel channel, long position) throws Exception{
+        byte[] header = buildHeader();
+        channel.write(ByteBuffer.wrap(header), position);
+        position += header.length;
+        for (Entry entry : entries){
+            if (entry.data != null)
+                channel.write(ByteBuffer.wrap(entry.data), position);
+            else if (entry.partition != null)
+                entry.partition.writeTo(channel, position);
+            position += entry.size;
+        }
+        return position;
+    }
+    /**
+     * Write image as sparse file: hollow files take no space
+     * */
+    public void writeTo(File file) throws Exception{
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+            raf.setLength(0);
+            raf.setLength(writeTo(raf.getChannel(), 0));
+        }
+    }
+
+    private static class Entry {
+        private final String name;
+        private final long size;
+        private final byte[] data;
+        private final Hfs0ImageBuilder partition;
+
+        private Entry(String name, long size, byte[] data, Hfs0ImageBuilder partition){
+            this.name = name;
+            this.size = size;
+            this.data = data;
+            this.partition = partition;
+        }
+        /**
+         * @return beginning of the entry covered by hash: header of partition or first 0x200 bytes of file
+         * */
+        private byte[] getHashedRegion() throws Exception{
+            if (partition != null)
+                return partition.buildHeader();
+            int regionSize = (int) Math.min(size, HASHED_REGION_SIZE);
+            if (data != null)
+                return Arrays.copyOf(data, regionSize);
+            return new byte[regionSize];
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Builds IVFC protected section: levels 1-5 of hashes followed by level 6 data, plus super block
+ * (as it's stored in NCA FS header at 0x8, 0xF0 bytes).
+ * */
+public class IvfcImageBuilder {
+    private static final int LEVELS = 6;
+
+    private final byte[] data;
+    private final int blockSizePower;
+
+    private byte[] section;
+    private byte[] superBlock;
+    private final long[] offsets = new long[LEVELS];
+
+    /**
+     * @param data level 6 content, e.g. RomFS image
+     * @param blockSizePower block size of every level is 2^blockSizePower
+     * */
+    public IvfcImageBuilder(byte[] data, int blockSizePower){
+        this.data = data;
+        this.blockSizePower = blockSizePower;
+    }
+
+    public IvfcImageBuilder build() throws Exception{
+        int blockSize = 1 << blockSizePower;
+        byte[][] levels = new byte[LEVELS][];
+        levels[LEVELS - 1] = data;
+        for (int level = LEVELS - 2; level >= 0; level--)
+            levels[level] = hashBlocks(levels[level + 1], blockSize);
+        byte[] masterHash = hashBlocks(levels[0], blockSize);
+        if (masterHash.length != 0x20)
+            throw new Exception("Level 1 doesn't fit one block");
+
+        long size = 0;
+        for (int level = 0; level < LEVELS; level++){
+            offsets[level] = size;
+            size = align(size + levels[level].length, blockSize);
+        }
+        section = new byte[(int) size];
+        for (int level = 0; level < LEVELS; level++)
+            System.arraycopy(levels[level], 0, section, (int) offsets[level], levels[level].length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(0xF0).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("IVFC".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0x20000);
+        buffer.putInt(0x20);
+        buffer.putInt(LEVELS + 1);
+        for (int level = 0; level < LEVELS; level++){
+            buffer.putLong(offsets[level]);
+            buffer.putLong(levels[level].length);
+            buffer.putInt(blockSizePower);
+            buffer.putInt(0);
+        }
+        buffer.position(0xC0);
+        buffer.put(masterHash);
+        superBlock = buffer.array();
+        return this;
+    }
+
+    private static byte[] hashBlocks(byte[] content, int blockSize) throws Exception{
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        int blocksCount = (content.length + blockSize - 1) / blockSize;
+        byte[] hashes = new byte[blocksCount * 0x20];
+        for (int i = 0; i < blocksCount; i++){
+            byte[] block = Arrays.copyOfRange(content, i * blockSize, (i + 1) * blockSize);   // zero padded
+            System.arraycopy(digest.digest(block), 0, hashes, i * 0x20, 0x20);
+        }
+        return hashes;
+    }
+
+    private static long align(long value, int alignment){
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    public byte[] getSection() { return section; }
+    public byte[] getSuperBlock() { return superBlock; }
+    /**
+     * @param level 1-6
+     * @return offset of level inside section
+     * */
+    public long getLevelOffset(int level) { return offsets[level - 1]; }
+}
@@ -0,0 +1,105 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds KIP1: header with .text, .rodata and .data segments, each of them optionally BLZ-compressed.
+ * Kernel capabilities are left empty (0xFF-filled).
+ * */
+public class Kip1Builder {
+    private static final int HEADER_SIZE = 0x100;
+
+    private final byte[][] segments;
+    private final boolean[] compressed = {true, true, true};
+    private String name = "Synthetic";
+    private long programId = 0x0100000000000042L;
+    private int version = 1;
+    private int bssSize = 0x1000;
+
+    public Kip1Builder(byte[] text, byte[] roData, byte[] rwData){
+        this.segments = new byte[][]{text, roData, rwData};
+    }
+    /**
+     * @param name up to 0xC ASCII characters
+     * */
+    public Kip1Builder setName(String name){
+        this.name = name;
+        return this;
+    }
+    public Kip1Builder setProgramId(long programId){
+        this.programId = programId;
+        return this;
+    }
+    public Kip1Builder setVersion(int version){
+        this.version = version;
+        return this;
+    }
+    public Kip1Builder setBssSize(int bssSize){
+        this.bssSize = bssSize;
+        return this;
+    }
+    public Kip1Builder setCompressed(boolean text, boolean roData, boolean rwData){
+        compressed[0] = text;
+        compressed[1] = roData;
+        compressed[2] = rwData;
+        return this;
+    }
+
+    public byte[] build(){
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("KIP1".getBytes(StandardCharsets.US_ASCII));
+        header.put(Arrays.copyOf(name.getBytes(StandardCharsets.US_ASCII), 0xC));
+        header.putLong(programId);
+        header.putInt(version);
+        header.put((byte) 0x2C);                  // main thread priority
+        header.put((byte) 3);                     // main thread core number
+        header.put((byte) 0);
+        int flags = 0b11000;                      // 64-bit instructions, 64-bit address space
+        for (int i = 0; i < 3; i++)
+            flags |= compressed[i] ? 1 << i : 0;
+        header.put((byte) flags);
+
+        byte[][] stored = new byte[3][];
+        int memoryAddress = 0;
+        for (int i = 0; i < 3; i++){
+            stored[i] = compressed[i] ? BlzCompressor.compress(segments[i], 0) : segments[i];
+            header.putInt(0x20 + i * 0x10, memoryAddress);
+            header.putInt(0x24 + i * 0x10, segments[i].length);
+            header.putInt(0x28 + i * 0x10, stored[i].length);
+            memoryAddress += (segments[i].length + 0xFFF) & ~0xFFF;
+        }
+        header.putInt(0x2C, 0x8);                 // thread affinity mask
+        header.putInt(0x3C, 0x4000);              // main thread stack size
+        header.putInt(0x50, memoryAddress);
+        header.putInt(0x54, bssSize);
+        Arrays.fill(header.array(), 0x80, HEADER_SIZE, (byte) 0xFF);
+
+        ByteArrayOutputStream kip1 = new ByteArrayOutputStream();
+        kip1.write(header.array(), 0, HEADER_SIZE);
+        for (byte[] segment : stored)
+            kip1.write(segment, 0, segment.length);
+        return kip1.toByteArray();
+    }
+}
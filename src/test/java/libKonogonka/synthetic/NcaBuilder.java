@@ -0,0 +1,189 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+
+import javax.crypto.Cipher;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds complete NCA3: header encrypted with header key of TestKeys, key area encrypted with key area key and
+ * sections encrypted with AES-CTR (crypto type 3) or stored as is (crypto type 1). Sections are placed one after
+ * another starting right after header.
+ * Sections may end with hollow part that is never written: in sparse file it takes no space, so multi-GB NCAs are
+ * cheap to create. Encrypted hollow part reads as AES-CTR key stream.
+ * */
+public class NcaBuilder {
+    private static final int HEADER_SIZE = 0xC00;
+    private static final int MEDIA_SIZE = 0x200;
+    private static final int ENCRYPTION_CHUNK_SIZE = 0x100000;
+
+    private final TestKeys keys;
+    private final NcaHeaderBuilder header = new NcaHeaderBuilder();
+    private final List<Section> sections = new ArrayList<>();
+    private final byte[] keyArea = new byte[0x40];
+    private int keyIndex;
+    private int keyGeneration;
+
+    public NcaBuilder(TestKeys keys, long seed){
+        this.keys = keys;
+        new Random(seed).nextBytes(keyArea);
+    }
+
+    public NcaBuilder setContentType(int contentType){
+        header.setContentType(contentType);
+        return this;
+    }
+    public NcaBuilder setTitleId(long titleId){
+        header.setTitleId(titleId);
+        return this;
+    }
+    public NcaBuilder setKeyIndex(int keyIndex){
+        this.keyIndex = keyIndex;
+        header.setKeyIndex(keyIndex);
+        return this;
+    }
+    public NcaBuilder setKeyGeneration(int keyGeneration){
+        this.keyGeneration = keyGeneration;
+        header.setKeyGeneration(keyGeneration);
+        return this;
+    }
+    /**
+     * @param keyArea 0x40 bytes of decrypted key area
+     * */
+    public NcaBuilder setKeyArea(byte[] keyArea){
+        System.arraycopy(keyArea, 0, this.keyArea, 0, 0x40);
+        return this;
+    }
+
+    public NcaBuilder addPfs0Section(Pfs0ImageBuilder.Section section){
+        return addSection(section.getData(), section.getSize(), 1, 2, 3, section.getSuperBlock());
+    }
+    /**
+     * @param ivfc built IVFC image of RomFS
+     * */
+    public NcaBuilder addRomFsSection(IvfcImageBuilder ivfc){
+        byte[] data = ivfc.getSection();
+        return addSection(data, data.length, 0, 3, 3, ivfc.getSuperBlock());
+    }
+    /**
+     * @param data beginning of the section
+     * @param size section size; everything after data is hollow
+     * @param superBlock 0xF0 bytes
+     * */
+    public NcaBuilder addSection(byte[] data, long size, int fsType, int hashType, int cryptoType, byte[] superBlock){
+        if (sections.size() == 4)
+            throw new IllegalStateException("NCA can't have more than 4 sections");
+        if (size < data.length)
+            throw new IllegalArgumentException("Section size is less than data size");
+        sections.add(new Section(data, size, fsType, hashType, cryptoType, superBlock));
+        return this;
+    }
+
+    /**
+     * @return decrypted key of AES-CTR sections
+     * */
+    public byte[] getSectionKey(){
+        return Arrays.copyOfRange(keyArea, 0x20, 0x30);
+    }
+    /**
+     * @return upper half of AES-CTR IV of section as it's stored in FS header: generation 0, secure value index+1
+     * */
+    public static long getSectionCtr(int index){
+        return (long) (index + 1) << 32;
+    }
+    public long getMediaStartOffset(int index){
+        long position = HEADER_SIZE / MEDIA_SIZE;
+        for (int i = 0; i < index; i++)
+            position += sections.get(i).getMediaSize();
+        return position;
+    }
+    public long getSize(){
+        return getMediaStartOffset(sections.size()) * MEDIA_SIZE;
+    }
+
+    public void writeTo(File file) throws Exception{
+        long size = getSize();
+        header.setNcaSize(size);
+        header.setKeyArea(keys.encryptKeyArea(keyIndex, keyGeneration, keyArea));
+        for (int i = 0; i < sections.size(); i++){
+            Section section = sections.get(i);
+            long mediaStart = getMediaStartOffset(i);
+            header.setSection(i, mediaStart, mediaStart + section.getMediaSize(), section.fsType, section.hashType,
+                    section.cryptoType, section.superBlock, getSectionCtr(i));
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            channel.write(ByteBuffer.wrap(header.build(keys.getHeaderKey())), 0);
+            for (int i = 0; i < sections.size(); i++)
+                writeSection(channel, i);
+            raf.setLength(size);
+        }
+    }
+
+    private void writeSection(FileChannel channel, int index) throws Exception{
+        Section section = sections.get(index);
+        long mediaStart = getMediaStartOffset(index);
+        long position = mediaStart * MEDIA_SIZE;
+        if (section.cryptoType == 1){
+            channel.write(ByteBuffer.wrap(section.data), position);
+            return;
+        }
+        byte[] sectionCtr = ByteBuffer.allocate(8).putLong(getSectionCtr(index)).array();
+        Cipher cipher = new AesCtrDecryptForMediaBlocks(getSectionKey(), sectionCtr, mediaStart * MEDIA_SIZE)
+                .createCipherAt(0);
+        byte[] encrypted = new byte[ENCRYPTION_CHUNK_SIZE];
+        for (int offset = 0; offset < section.data.length; offset += ENCRYPTION_CHUNK_SIZE){
+            int length = Math.min(ENCRYPTION_CHUNK_SIZE, section.data.length - offset);
+            int encryptedLength = cipher.update(section.data, offset, length, encrypted, 0);
+            channel.write(ByteBuffer.wrap(encrypted, 0, encryptedLength), position + offset);
+        }
+    }
+
+    private static class Section {
+        private final byte[] data;
+        private final long size;
+        private final int fsType;
+        private final int hashType;
+        private final int cryptoType;
+        private final byte[] superBlock;
+
+        private Section(byte[] data, long size, int fsType, int hashType, int cryptoType, byte[] superBlock){
+            this.data = data;
+            this.size = size;
+            this.fsType = fsType;
+            this.hashType = hashType;
+            this.cryptoType = cryptoType;
+            this.superBlock = superBlock;
+        }
+        private long getMediaSize(){
+            return (size + MEDIA_SIZE - 1) / MEDIA_SIZE;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.Converter;
+import libKonogonka.xtsaes.XTSAESEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds NCA3 header (0xC00 bytes) and encrypts it with header key the same way console does.
+ * */
+public class NcaHeaderBuilder {
+    private final ByteBuffer header = ByteBuffer.allocate(0xC00).order(ByteOrder.LITTLE_ENDIAN);
+
+    public NcaHeaderBuilder(){
+        header.position(0x200);
+        header.put("NCA3".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public NcaHeaderBuilder setContentType(int contentType){
+        header.put(0x205, (byte) contentType);
+        return this;
+    }
+    /**
+     * @param keyGeneration 'real' key generation: stored as generation+1 in crypto type 2 field when above 0
+     * */
+    public NcaHeaderBuilder setKeyGeneration(int keyGeneration){
+        header.put(0x206, (byte) (keyGeneration == 0 ? 0 : 2));
+        header.put(0x220, (byte) (keyGeneration == 0 ? 0 : keyGeneration + 1));
+        return this;
+    }
+
+    public NcaHeaderBuilder setKeyIndex(int keyIndex){
+        header.put(0x207, (byte) keyIndex);
+        return this;
+    }
+
+    public NcaHeaderBuilder setNcaSize(long size){
+        header.putLong(0x208, size);
+        return this;
+    }
+    /**
+     * @param titleId as it's displayed (big-endian)
+     * */
+    public NcaHeaderBuilder setTitleId(long titleId){
+        header.putLong(0x210, titleId);
+        return this;
+    }
+
+    public NcaHeaderBuilder setSdkVersion(int major, int minor, int micro, int revision){
+        header.put(0x21c, (byte) revision);
+        header.put(0x21d, (byte) micro);
+        header.put(0x21e, (byte) minor);
+        header.put(0x21f, (byte) major);
+        return this;
+    }
+
+    public NcaHeaderBuilder setRightsId(byte[] rightsId){
+        System.arraycopy(rightsId, 0, header.array(), 0x230, 0x10);
+        return this;
+    }
+    /**
+     * @param encryptedKeyArea 0x40 bytes, already encrypted with key area key
+     * */
+    public NcaHeaderBuilder setKeyArea(byte[] encryptedKeyArea){
+        System.arraycopy(encryptedKeyArea, 0, header.array(), 0x300, 0x40);
+        return this;
+    }
+
+    /**
+     * Define section: table entry and FS header
+     * @param mediaStartOffset section start in 0x200 blocks from NCA start
+     * @param mediaEndOffset section end in 0x200 blocks from NCA start
+     * @param superBlock 0xF0 bytes
+     * @param sectionCtr upper half of AES-CTR IV (generation and secure value)
+     * */
+    public NcaHeaderBuilder setSection(int index,
+                                       long mediaStartOffset,
+                                       long mediaEndOffset,
+                                       int fsType,
+                                       int hashType,
+                                       int cryptoType,
+                                       byte[] superBlock,
+                                       long sectionCtr){
+        header.putInt(0x240 + index * 0x10, (int) mediaStartOffset);
+        header.putInt(0x244 + index * 0x10, (int) mediaEndOffset);
+        int fsHeaderOffset = 0x400 + index * 0x200;
+        header.putShort(fsHeaderOffset, (short) 2);
+        header.put(fsHeaderOffset + 2, (byte) fsType);
+        header.put(fsHeaderOffset + 3, (byte) hashType);
+        header.put(fsHeaderOffset + 4, (byte) cryptoType);
+        System.arraycopy(superBlock, 0, header.array(), fsHeaderOffset + 8, superBlock.length);
+        header.putLong(fsHeaderOffset + 0x140, sectionCtr);
+        return this;
+    }
+
+    public byte[] buildPlain(){
+        return header.array().clone();
+    }
+
+    public byte[] build(String headerKey) throws Exception{
+        XTSAESEngine encryptor = new XTSAESEngine(Converter.hexStringToByteArray(headerKey), true,
+                XTSAESEngine.NCA_SECTOR_SIZE);
+        byte[] encrypted = new byte[0xC00];
+        encryptor.processSectors(header.array(), encrypted, 0, 6);
+        return encrypted;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Builds NSO0 with .text, .rodata and .data segments, each of them optionally LZ4-compressed. Segments are always
+ * hashed with SHA-256.
+ * */
+public class Nso0Builder {
+    private static final int HEADER_SIZE = 0x100;
+
+    private final byte[][] segments;
+    private final boolean[] compressed = {true, true, true};
+    private int bssSize = 0x1000;
+
+    public Nso0Builder(byte[] text, byte[] roData, byte[] data){
+        this.segments = new byte[][]{text, roData, data};
+    }
+    public Nso0Builder setCompressed(boolean text, boolean roData, boolean data){
+        compressed[0] = text;
+        compressed[1] = roData;
+        compressed[2] = data;
+        return this;
+    }
+    public Nso0Builder setBssSize(int bssSize){
+        this.bssSize = bssSize;
+        return this;
+    }
+
+    public byte[] build() throws Exception{
+        LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("NSO0".getBytes(StandardCharsets.US_ASCII));
+        int flags = 0b111000;                     // check hashes of all segments
+        for (int i = 0; i < 3; i++)
+            flags |= compressed[i] ? 1 << i : 0;
+        header.putInt(0xC, flags);
+
+        byte[][] stored = new byte[3][];
+        int fileOffset = HEADER_SIZE;
+        int memoryOffset = 0;
+        for (int i = 0; i < 3; i++){
+            if (compressed[i]){
+                byte[] buffer = new byte[compressor.maxCompressedLength(segments[i].length)];
+                stored[i] = Arrays.copyOf(buffer, compressor.compress(segments[i], buffer));
+            }
+            else
+                stored[i] = segments[i];
+            header.putInt(0x10 + i * 0x10, fileOffset);
+            header.putInt(0x14 + i * 0x10, memoryOffset);
+            header.putInt(0x18 + i * 0x10, segments[i].length);
+            header.putInt(0x60 + i * 4, stored[i].length);
+            header.position(0xA0 + i * 0x20);
+            header.put(digest.digest(segments[i]));
+            fileOffset += stored[i].length;
+            memoryOffset += (segments[i].length + 0xFFF) & ~0xFFF;
+        }
+        header.putInt(0x3C, bssSize);
+
+        ByteArrayOutputStream nso = new ByteArrayOutputStream();
+        nso.write(header.array(), 0, HEADER_SIZE);
+        for (byte[] segment : stored)
+            nso.write(segment, 0, segment.length);
+        return nso.toByteArray();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds PFS0 image and, optionally, NCA PFS0 section: SHA-256 hash table of PFS0 blocks followed by PFS0 itself,
+ * plus super block (as it's stored in NCA FS header at 0x8, 0xF0 bytes).
+ * Hollow files are declared in header only: built image ends before their content, so large images could be
+ * written as sparse files. Hashes of blocks not fully built are left empty.
+ * */
+public class Pfs0ImageBuilder {
+    private final List<String> names = new ArrayList<>();
+    private final List<byte[]> contents = new ArrayList<>();
+    private final List<Long> sizes = new ArrayList<>();
+    private long hollowSize;
+
+    public Pfs0ImageBuilder addFile(String name, byte[] data){
+        if (hollowSize > 0)
+            throw new IllegalStateException("Regular files must be added before hollow ones");
+        names.add(name);
+        contents.add(data);
+        sizes.add((long) data.length);
+        return this;
+    }
+    /**
+     * Declare file which content is never built; must be added after all regular files
+     * */
+    public Pfs0ImageBuilder addHollowFile(String name, long size){
+        names.add(name);
+        sizes.add(size);
+        hollowSize += size;
+        return this;
+    }
+
+    public byte[] build(){
+        ByteArrayOutputStream stringTable = new ByteArrayOutputStream();
+        int[] nameOffsets = new int[names.size()];
+        for (int i = 0; i < names.size(); i++){
+            nameOffsets[i] = stringTable.size();
+            byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+            stringTable.write(name, 0, name.length);
+            stringTable.write(0);
+        }
+        while (stringTable.size() % 0x20 != 0)
+            stringTable.write(0);
+
+        int headerSize = 0x10 + names.size() * 0x18 + stringTable.size();
+        long dataSize = 0;
+        for (byte[] content : contents)
+            dataSize += content.length;
+        if (headerSize + dataSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image is too big, add large files as hollow ones");
+
+        ByteBuffer image = ByteBuffer.allocate((int) (headerSize + dataSize)).order(ByteOrder.LITTLE_ENDIAN);
+        image.put("PFS0".getBytes(StandardCharsets.US_ASCII));
+        image.putInt(names.size());
+        image.putInt(stringTable.size());
+        image.putInt(0);
+        long offset = 0;
+        for (int i = 0; i < names.size(); i++){
+            image.putLong(offset);
+            image.putLong(sizes.get(i));
+            image.putInt(nameOffsets[i]);
+            image.putInt(0);
+            offset += sizes.get(i);
+        }
+        image.put(stringTable.toByteArray());
+        for (byte[] content : contents)
+            image.put(content);
+        return image.array();
+    }
+
+    /**
+     * @return size of PFS0 image including content of hollow files
+     * */
+    public long getImageSize(){
+        return build().length + hollowSize;
+    }
+
+    /**
+     * @return NCA section: hash table at 0, PFS0 right after it aligned to 0x200
+     * */
+    public Section buildSection(int blockSize) throws Exception{
+        byte[] pfs0 = build();
+        long pfs0Size = pfs0.length + hollowSize;
+        long blocksCount = (pfs0Size + blockSize - 1) / blockSize;
+        if (blocksCount * 0x20 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Block size is too small for image of size "+pfs0Size);
+        byte[] hashTable = new byte[(int) blocksCount * 0x20];
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long hashedBlocksCount = hollowSize == 0 ? blocksCount : pfs0.length / blockSize;
+        for (int i = 0; i < hashedBlocksCount; i++){
+            digest.update(pfs0, i * blockSize, Math.min(blockSize, pfs0.length - i * blockSize));
+            System.arraycopy(digest.digest(), 0, hashTable, i * 0x20, 0x20);
+        }
+        int pfs0Offset = (hashTable.length + 0x1FF) & ~0x1FF;
+        byte[] section = new byte[(pfs0Offset + pfs0.length + 0x1FF) & ~0x1FF];
+        System.arraycopy(hashTable, 0, section, 0, hashTable.length);
+        System.arraycopy(pfs0, 0, section, pfs0Offset, pfs0.length);
+
+        ByteBuffer superBlock = ByteBuffer.allocate(0xF0).order(ByteOrder.LITTLE_ENDIAN);
+        superBlock.put(digest.digest(hashTable));
+        superBlock.putInt(blockSize);
+        superBlock.putInt(2);
+        superBlock.putLong(0);
+        superBlock.putLong(hashTable.length);
+        superBlock.putLong(pfs0Offset);
+        superBlock.putLong(pfs0Size);
+        return new Section(section, (pfs0Offset + pfs0Size + 0x1FF) & ~0x1FFL, superBlock.array(), pfs0Offset);
+    }
+
+    public static class Section {
+        private final byte[] data;
+        private final long size;
+        private final byte[] superBlock;
+        private final int pfs0Offset;
+
+        private Section(byte[] data, long size, byte[] superBlock, int pfs0Offset){
+            this.data = data;
+            this.size = size;
+            this.superBlock = superBlock;
+            this.pfs0Offset = pfs0Offset;
+        }
+        /**
+         * @return section data built; content of hollow files is not included
+         * */
+        public byte[] getData() { return Arrays.copyOf(data, data.length); }
+        /**
+         * @return section size including content of hollow files
+         * */
+        public long getSize() { return size; }
+        public byte[] getSuperBlock() { return superBlock; }
+        public int getPfs0Offset() { return pfs0Offset; }
+    }
+}
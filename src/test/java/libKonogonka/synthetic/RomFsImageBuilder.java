@@ -0,0 +1,271 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds RomFS (Level 6) image the same way official tools do: header, file data at 0x200, then directory hash
+ * table, directory metadata table, file hash table and file metadata table.
+ * */
+public class RomFsImageBuilder {
+    private static final int HEADER_SIZE = 0x50;
+    private static final int FILE_DATA_OFFSET = 0x200;
+
+    private final Directory root = new Directory("", null);
+
+    /**
+     * @param path like '/dir/subdir/file.bin'. Missing directories are created.
+     * */
+    public RomFsImageBuilder addFile(String path, byte[] data){
+        String[] parts = trim(path).split("/");
+        Directory directory = root;
+        for (int i = 0; i < parts.length - 1; i++)
+            directory = directory.getOrCreate(parts[i]);
+        directory.files.add(new FileNode(parts[parts.length - 1], directory, data));
+        return this;
+    }
+    /**
+     * Add file that points to the same data as already added file does (deduplicated content).
+     * @param path like '/dir/subdir/file.bin'. Missing directories are created.
+     * @param sourcePath path of the file added before
+     * */
+    public RomFsImageBuilder addFileSharingData(String path, String sourcePath){
+        FileNode source = findFile(sourcePath);
+        addFile(path, source.data);
+        findFile(path).sameDataAs = source;
+        return this;
+    }
+
+    private FileNode findFile(String path){
+        String[] parts = trim(path).split("/");
+        Directory directory = root;
+        for (int i = 0; i < parts.length - 1; i++)
+            directory = directory.getOrCreate(parts[i]);
+        byte[] name = parts[parts.length - 1].getBytes(StandardCharsets.UTF_8);
+        for (FileNode fileNode : directory.files){
+            if (Arrays.equals(fileNode.nameBytes, name))
+                return fileNode;
+        }
+        throw new IllegalArgumentException("No such file: "+path);
+    }
+    /**
+     * @param path like '/dir/subdir'
+     * */
+    public RomFsImageBuilder addDirectory(String path){
+        Directory directory = root;
+        for (String part : trim(path).split("/"))
+            directory = directory.getOrCreate(part);
+        return this;
+    }
+
+    private static String trim(String path){
+        while (path.startsWith("/"))
+            path = path.substring(1);
+        return path;
+    }
+
+    public void writeTo(File file) throws Exception{
+        Files.write(file.toPath(), build());
+    }
+
+    public byte[] build(){
+        List<Directory> directories = new ArrayList<>();
+        List<FileNode> files = new ArrayList<>();
+        directories.add(root);
+        for (int i = 0; i < directories.size(); i++){
+            Directory directory = directories.get(i);
+            directories.addAll(directory.directories);
+        }
+        for (Directory directory : directories)
+            files.addAll(directory.files);
+
+        int directoryTableSize = 0;
+        for (Directory directory : directories){
+            directory.metaOffset = directoryTableSize;
+            directoryTableSize += 0x18 + align(directory.nameBytes.length, 4);
+        }
+        int fileTableSize = 0;
+        long dataSize = 0;
+        for (FileNode fileNode : files){
+            fileNode.metaOffset = fileTableSize;
+            fileTableSize += 0x20 + align(fileNode.nameBytes.length, 4);
+            if (fileNode.sameDataAs != null)
+                continue;
+            fileNode.dataOffset = dataSize;
+            dataSize = align(dataSize + fileNode.data.length, 0x10);
+        }
+        for (FileNode fileNode : files){
+            if (fileNode.sameDataAs != null)
+                fileNode.dataOffset = fileNode.sameDataAs.dataOffset;
+        }
+
+        int directoryBuckets = getBucketsCount(directories.size());
+        int fileBuckets = getBucketsCount(files.size());
+        int[] directoryHashTable = new int[directoryBuckets];
+        int[] fileHashTable = new int[fileBuckets];
+        Arrays.fill(directoryHashTable, -1);
+        Arrays.fill(fileHashTable, -1);
+
+        long directoryHashTableOffset = align(FILE_DATA_OFFSET + dataSize, 4);
+        long directoryMetadataTableOffset = directoryHashTableOffset + directoryBuckets * 4L;
+        long fileHashTableOffset = directoryMetadataTableOffset + directoryTableSize;
+        long fileMetadataTableOffset = fileHashTableOffset + fileBuckets * 4L;
+        long imageSize = fileMetadataTableOffset + fileTableSize;
+
+        ByteBuffer image = ByteBuffer.allocate((int) imageSize).order(ByteOrder.LITTLE_ENDIAN);
+        image.putLong(0, HEADER_SIZE);
+        image.putLong(0x8, directoryHashTableOffset);
+        image.putLong(0x10, directoryBuckets * 4L);
+        image.putLong(0x18, directoryMetadataTableOffset);
+        image.putLong(0x20, directoryTableSize);
+        image.putLong(0x28, fileHashTableOffset);
+        image.putLong(0x30, fileBuckets * 4L);
+        image.putLong(0x38, fileMetadataTableOffset);
+        image.putLong(0x40, fileTableSize);
+        image.putLong(0x48, FILE_DATA_OFFSET);
+
+        for (FileNode fileNode : files){
+            image.position((int) (FILE_DATA_OFFSET + fileNode.dataOffset));
+            image.put(fileNode.data);
+        }
+
+        for (Directory directory : directories){
+            int parentOffset = directory.parent == null ? 0 : directory.parent.metaOffset;
+            int bucket = Integer.remainderUnsigned(calculateHash(parentOffset, directory.nameBytes), directoryBuckets);
+            int position = (int) (directoryMetadataTableOffset + directory.metaOffset);
+            image.putInt(position, parentOffset);
+            image.putInt(position + 0x4, directory.getNextSibling());
+            image.putInt(position + 0x8, directory.directories.isEmpty() ? -1 : directory.directories.get(0).metaOffset);
+            image.putInt(position + 0xC, directory.files.isEmpty() ? -1 : directory.files.get(0).metaOffset);
+            image.putInt(position + 0x10, directoryHashTable[bucket]);
+            image.putInt(position + 0x14, directory.nameBytes.length);
+            image.position(position + 0x18);
+            image.put(directory.nameBytes);
+            directoryHashTable[bucket] = directory.metaOffset;
+        }
+
+        for (FileNode fileNode : files){
+            int parentOffset = fileNode.parent.metaOffset;
+            int bucket = Integer.remainderUnsigned(calculateHash(parentOffset, fileNode.nameBytes), fileBuckets);
+            int position = (int) (fileMetadataTableOffset + fileNode.metaOffset);
+            image.putInt(position, parentOffset);
+            image.putInt(position + 0x4, fileNode.getNextSibling());
+            image.putLong(position + 0x8, fileNode.dataOffset);
+            image.putLong(position + 0x10, fileNode.data.length);
+            image.putInt(position + 0x18, fileHashTable[bucket]);
+            image.putInt(position + 0x1C, fileNode.nameBytes.length);
+            image.position(position + 0x20);
+            image.put(fileNode.nameBytes);
+            fileHashTable[bucket] = fileNode.metaOffset;
+        }
+
+        for (int i = 0; i < directoryBuckets; i++)
+            image.putInt((int) (directoryHashTableOffset + i * 4L), directoryHashTable[i]);
+        for (int i = 0; i < fileBuckets; i++)
+            image.putInt((int) (fileHashTableOffset + i * 4L), fileHashTable[i]);
+
+        return image.array();
+    }
+
+    /**
+     * @return offset where file data region starts inside the image
+     * */
+    public static long getFileDataOffset(){
+        return FILE_DATA_OFFSET;
+    }
+
+    private static int getBucketsCount(int entriesCount){
+        if (entriesCount < 3)
+            return 3;
+        return entriesCount | 1;
+    }
+
+    private static long align(long value, int alignment){
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static int calculateHash(int parentOffset, byte[] name){
+        int hash = parentOffset ^ 123456789;
+        for (byte b : name){
+            hash = (hash >>> 5) | (hash << 27);
+            hash ^= b & 0xff;
+        }
+        return hash;
+    }
+
+    private static class Directory {
+        private final byte[] nameBytes;
+        private final Directory parent;
+        private final List<Directory> directories = new ArrayList<>();
+        private final List<FileNode> files = new ArrayList<>();
+        private int metaOffset;
+
+        private Directory(String name, Directory parent){
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.parent = parent;
+        }
+        private Directory getOrCreate(String name){
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            for (Directory directory : directories){
+                if (Arrays.equals(directory.nameBytes, bytes))
+                    return directory;
+            }
+            Directory directory = new Directory(name, this);
+            directories.add(directory);
+            return directory;
+        }
+        private int getNextSibling(){
+            if (parent == null)
+                return -1;
+            int index = parent.directories.indexOf(this);
+            if (index + 1 < parent.directories.size())
+                return parent.directories.get(index + 1).metaOffset;
+            return -1;
+        }
+    }
+
+    private static class FileNode {
+        private final byte[] nameBytes;
+        private final Directory parent;
+        private final byte[] data;
+        private int metaOffset;
+        private long dataOffset;
+        private FileNode sameDataAs;
+
+        private FileNode(String name, Directory parent, byte[] data){
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.parent = parent;
+            this.data = data;
+        }
+        private int getNextSibling(){
+            int index = parent.files.indexOf(this);
+            if (index + 1 < parent.files.size())
+                return parent.files.get(index + 1).metaOffset;
+            return -1;
+        }
+    }
+}
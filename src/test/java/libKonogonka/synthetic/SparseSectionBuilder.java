@@ -0,0 +1,162 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.aesctr.AesCtrDecryptForMediaBlocks;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds sparse NCA section out of image: blocks of zeroes become holes, other blocks are encrypted at their
+ * virtual offsets and stored one by one. Layout of physical storage: stored blocks, sparse bucket tree encrypted
+ * with sparse generation. Nothing is encrypted unless key provided.
+ * */
+public class SparseSectionBuilder {
+    private int blockSize = 0x4000;
+    private int entriesPerSet = (BucketTreeWriter.NODE_SIZE - 0x10) / 0x14;
+
+    public SparseSectionBuilder setBlockSize(int blockSize){
+        this.blockSize = blockSize;
+        return this;
+    }
+    /**
+     * Limit entries count in bucket tree entry sets to make trees with many sets out of small images
+     * */
+    public SparseSectionBuilder setEntriesPerSet(int entriesPerSet){
+        this.entriesPerSet = entriesPerSet;
+        return this;
+    }
+    /**
+     * @param image section content, size must be multiple of 0x200
+     * @param key section key or null to build not encrypted section
+     * @param mediaStartOffset (virtual) section start in 0x200 blocks from NCA start
+     * @param physicalOffset physical storage position in NCA
+     * @param generation section generation from FS header
+     * @param secureValue section secure value from FS header
+     * @param sparseGeneration generation used to encrypt sparse bucket tree
+     * */
+    public Section build(byte[] image, byte[] key, long mediaStartOffset, long physicalOffset,
+                         int generation, int secureValue, short sparseGeneration) throws Exception{
+        byte[] sectionCtr = ByteBuffer.allocate(8).putInt(secureValue).putInt(generation).array();
+        byte[] encrypted = image.clone();
+        if (key != null){
+            Cipher cipher = new AesCtrDecryptForMediaBlocks(key, sectionCtr, mediaStartOffset * 0x200)
+                    .createCipherAt(0);
+            cipher.doFinal(encrypted, 0, encrypted.length, encrypted, 0);
+        }
+
+        List<long[]> entries = new ArrayList<>();   // virtual offset, physical offset, storage
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int holesCount = 0;
+        for (int virtualOffset = 0; virtualOffset < image.length; virtualOffset += blockSize){
+            int size = Math.min(blockSize, image.length - virtualOffset);
+            long storage = isZeroes(image, virtualOffset, size) ? 1 : 0;
+            long[] last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+            if (last == null || last[2] != storage
+                    || (storage == 0 && last[1] + (virtualOffset - last[0]) != data.size()))
+                entries.add(new long[]{virtualOffset, storage == 0 ? data.size() : 0, storage});
+            if (storage == 0)
+                data.write(encrypted, virtualOffset, size);
+            else
+                holesCount++;
+        }
+        while (data.size() % 0x200 != 0)
+            data.write(0);
+        int dataSize = data.size();
+
+        byte[] table = BucketTreeWriter.write(entries, 0x14, entriesPerSet, image.length,
+                (tree, position, entry) -> {
+                    tree.putLong(position + 8, entry[1]);
+                    tree.putInt(position + 0x10, (int) entry[2]);
+                });
+        if (key != null){
+            byte[] tableCtr = ByteBuffer.allocate(8).putInt(secureValue).putInt(sparseGeneration << 16).array();
+            Cipher cipher = new AesCtrDecryptForMediaBlocks(key, tableCtr, 0).createCipherAt(physicalOffset + dataSize);
+            cipher.doFinal(table, 0, table.length, table, 0);
+        }
+        byte[] storage = new byte[dataSize + table.length];
+        System.arraycopy(data.toByteArray(), 0, storage, 0, dataSize);
+        System.arraycopy(table, 0, storage, dataSize, table.length);
+
+        ByteBuffer fsHeader = ByteBuffer.allocate(0x200).order(ByteOrder.LITTLE_ENDIAN);
+        fsHeader.putShort(0, (short) 2);
+        fsHeader.put(2, (byte) 0);
+        fsHeader.put(3, (byte) 3);
+        fsHeader.put(4, (byte) (key == null ? 1 : 3));
+        fsHeader.putInt(0x140, generation);
+        fsHeader.putInt(0x144, secureValue);
+        fsHeader.putLong(0x148, dataSize);
+        fsHeader.putLong(0x150, table.length);
+        fsHeader.position(0x158);
+        fsHeader.put("BKTR".getBytes(StandardCharsets.US_ASCII));
+        fsHeader.putInt(0x15C, 1);
+        fsHeader.putInt(0x160, entries.size());
+        fsHeader.putLong(0x168, physicalOffset);
+        fsHeader.putShort(0x170, sparseGeneration);
+
+        ByteBuffer tableEntry = ByteBuffer.allocate(0x10).order(ByteOrder.LITTLE_ENDIAN);
+        tableEntry.putInt((int) mediaStartOffset);
+        tableEntry.putInt((int) (mediaStartOffset + image.length / 0x200));
+        return new Section(storage, fsHeader.array(), tableEntry.array(), holesCount);
+    }
+
+    private static boolean isZeroes(byte[] data, int offset, int size){
+        for (int i = offset; i < offset + size; i++){
+            if (data[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    public static class Section {
+        private final byte[] physicalStorage;
+        private final byte[] fsHeader;
+        private final byte[] tableEntry;
+        private final int holesCount;
+
+        private Section(byte[] physicalStorage, byte[] fsHeader, byte[] tableEntry, int holesCount){
+            this.physicalStorage = physicalStorage;
+            this.fsHeader = fsHeader;
+            this.tableEntry = tableEntry;
+            this.holesCount = holesCount;
+        }
+        /**
+         * @return physical storage to be placed at physical offset of NCA, size is multiple of 0x200
+         * */
+        public byte[] getPhysicalStorage() { return physicalStorage; }
+        /**
+         * @return NCA FS header of the section (0x200 bytes); super block is empty
+         * */
+        public byte[] getFsHeader() { return fsHeader; }
+        /**
+         * @return NCA section table entry (0x10 bytes) of complete (virtual) section
+         * */
+        public byte[] getTableEntry() { return tableEntry; }
+        /**
+         * @return count of blocks turned into holes
+         * */
+        public int getHolesCount() { return holesCount; }
+    }
+}
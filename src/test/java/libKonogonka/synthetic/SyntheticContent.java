@@ -0,0 +1,55 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import java.util.Random;
+
+/**
+ * Content for synthetic containers. Everything is generated from seeds, so files are reproducible.
+ * */
+public class SyntheticContent {
+    private SyntheticContent(){}
+
+    public static byte[] random(int size, long seed){
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+    /**
+     * Looks like code: short runs of random 'instructions' repeated with variations, compresses about 2-3 times
+     * */
+    public static byte[] compressible(int size, long seed){
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        byte[] dictionary = new byte[0x400];
+        random.nextBytes(dictionary);
+        int position = 0;
+        while (position < size){
+            int length = Math.min(size - position, 4 + random.nextInt(0x20));
+            if (random.nextInt(4) == 0){
+                for (int i = 0; i < length; i++)
+                    data[position + i] = (byte) random.nextInt();
+            }
+            else
+                System.arraycopy(dictionary, random.nextInt(dictionary.length - 0x24), data, position, length);
+            position += length;
+        }
+        return data;
+    }
+}
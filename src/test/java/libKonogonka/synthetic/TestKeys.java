@@ -0,0 +1,106 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.Converter;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Key set generated from seed: header key, key area keys of all three types, title keks and XCI header key for
+ * every generation. Nothing here is real, it's only used to produce and read synthetic containers.
+ * */
+public class TestKeys {
+    public static final int GENERATIONS = 0x10;
+    private static final String[] KEY_AREA_KEY_TYPES = {"application", "ocean", "system"};
+
+    private final TreeMap<String, String> keys = new TreeMap<>();
+    private final String xciHeaderKey;
+
+    public TestKeys(long seed){
+        Random random = new Random(seed);
+        keys.put("header_key", randomHex(random, 0x20));
+        for (int generation = 0; generation < GENERATIONS; generation++){
+            for (String type : KEY_AREA_KEY_TYPES)
+                keys.put(String.format("key_area_key_%s_%02x", type, generation), randomHex(random, 0x10));
+            keys.put(String.format("titlekek_%02x", generation), randomHex(random, 0x10));
+        }
+        xciHeaderKey = randomHex(random, 0x10);
+    }
+
+    private static String randomHex(Random random, int size){
+        byte[] key = new byte[size];
+        random.nextBytes(key);
+        return Converter.byteArrToHexStringAsLE(key);
+    }
+
+    public String getHeaderKey(){ return keys.get("header_key"); }
+    public String getXciHeaderKey(){ return xciHeaderKey; }
+    /**
+     * @param keyIndex 0 - application, 1 - ocean, 2 - system
+     * */
+    public byte[] getKeyAreaKey(int keyIndex, int generation){
+        return Converter.hexStringToByteArray(
+                keys.get(String.format("key_area_key_%s_%02x", KEY_AREA_KEY_TYPES[keyIndex], generation)));
+    }
+    public byte[] getTitleKek(int generation){
+        return Converter.hexStringToByteArray(keys.get(String.format("titlekek_%02x", generation)));
+    }
+    /**
+     * @param keyArea 0x40 bytes of decrypted key area
+     * @return key area as it's stored in NCA header
+     * */
+    public byte[] encryptKeyArea(int keyIndex, int generation, byte[] keyArea) throws Exception{
+        return encryptEcb(getKeyAreaKey(keyIndex, generation), keyArea);
+    }
+    /**
+     * @return title key as it's stored in ticket
+     * */
+    public byte[] encryptTitleKey(int generation, byte[] titleKey) throws Exception{
+        return encryptEcb(getTitleKek(generation), titleKey);
+    }
+
+    private static byte[] encryptEcb(byte[] key, byte[] data) throws Exception{
+        Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return cipher.doFinal(data);
+    }
+    /**
+     * @return keys as NCAProvider accepts them
+     * */
+    public HashMap<String, String> asMap(){
+        return new HashMap<>(keys);
+    }
+    /**
+     * Save as 'prod.keys' to be loaded by KeyChainHolder
+     * */
+    public void writeTo(File file) throws Exception{
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")){
+            for (Map.Entry<String, String> entry : keys.entrySet())
+                writer.println(entry.getKey() + " = " + entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.synthetic;
+
+import libKonogonka.Converter;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds XCI: gamecard header with gamecard info encrypted by XCI header key of TestKeys, certificate at 0x7000
+ * and root HFS0 at 0xF000 with 'update', 'normal' and 'secure' partitions ('logo' is added once it has files).
+ * Signatures are random. Hollow files make multi-GB images that take almost no disk space.
+ * */
+public class XciImageBuilder {
+    private static final int CERT_OFFSET = 0x7000;
+    private static final int ROOT_HFS0_OFFSET = 0xF000;
+    private static final int HEADER_SIZE = 0x190;
+    private static final int INFO_SIZE = 0x70;
+
+    private final TestKeys keys;
+    private final Random random;
+    private final Map<String, Hfs0ImageBuilder> partitions = new LinkedHashMap<>();
+    private long firmwareVersion = 0x0000000C00000000L;
+
+    public XciImageBuilder(TestKeys keys, long seed){
+        this.keys = keys;
+        this.random = new Random(seed);
+        partitions.put("update", new Hfs0ImageBuilder());
+        partitions.put("normal", new Hfs0ImageBuilder());
+        partitions.put("secure", new Hfs0ImageBuilder());
+    }
+
+    /**
+     * @param partition 'update', 'normal', 'secure' or 'logo'
+     * */
+    public XciImageBuilder addFile(String partition, String name, byte[] data){
+        getPartition(partition).addFile(name, data);
+        return this;
+    }
+    public XciImageBuilder addHollowFile(String partition, String name, long size){
+        getPartition(partition).addHollowFile(name, size);
+        return this;
+    }
+    private Hfs0ImageBuilder getPartition(String partition){
+        if ("logo".equals(partition))
+            return partitions.computeIfAbsent(partition, name -> new Hfs0ImageBuilder());
+        Hfs0ImageBuilder builder = partitions.get(partition);
+        if (builder == null)
+            throw new IllegalArgumentException("No such partition: "+partition);
+        return builder;
+    }
+    public XciImageBuilder setFirmwareVersion(long firmwareVersion){
+        this.firmwareVersion = firmwareVersion;
+        return this;
+    }
+
+    public void writeTo(File file) throws Exception{
+        Hfs0ImageBuilder root = new Hfs0ImageBuilder();
+        long secureOffset = 0;
+        long partitionOffset = 0;
+        for (Map.Entry<String, Hfs0ImageBuilder> partition : partitions.entrySet()){
+            if ("secure".equals(partition.getKey()))
+                secureOffset = partitionOffset;
+            root.addPartition(partition.getKey(), partition.getValue());
+            partitionOffset += partition.getValue().getSize();
+        }
+        byte[] rootHeader = root.buildHeader();
+        secureOffset += ROOT_HFS0_OFFSET + rootHeader.length;
+        long size = ROOT_HFS0_OFFSET + root.getSize();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            channel.write(ByteBuffer.wrap(buildHeader(rootHeader, secureOffset, size)), 0);
+            channel.write(ByteBuffer.wrap(buildCertificate()), CERT_OFFSET);
+            root.writeTo(channel, ROOT_HFS0_OFFSET);
+            raf.setLength(size);
+        }
+    }
+
+    private byte[] buildHeader(byte[] rootHeader, long secureOffset, long size) throws Exception{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + INFO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(randomBytes(0x100));                             // RSA-2048 signature
+        header.put("HEAD".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) (secureOffset / 0x200));                // secure area start
+        header.putInt(0xFFFFFFFF);                                  // backup area start
+        header.put((byte) 0);                                       // title KEK index, KEK index
+        header.put(getGamecardSize(size));
+        header.put((byte) 0);                                       // version
+        header.put((byte) 0);                                       // flags
+        header.put(randomBytes(8));                                 // package ID
+        header.putLong((size + 0x1FF) / 0x200 - 1);                 // valid data end
+        byte[] iv = randomBytes(0x10);
+        header.put(iv);
+        header.putLong(ROOT_HFS0_OFFSET);
+        header.putLong(rootHeader.length);
+        header.put(MessageDigest.getInstance("SHA-256").digest(rootHeader));
+        header.put(randomBytes(0x20));                              // initial data hash
+        header.putInt(1);                                           // secure mode
+        header.putInt(2);                                           // title key flag
+        header.putInt(0);                                           // key flag
+        header.putInt((int) (secureOffset / 0x200));                // normal area end
+
+        ByteBuffer info = ByteBuffer.allocate(INFO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        info.putLong(firmwareVersion);
+        info.putInt(0x00A10011);                                    // access control flags: 25MHz
+        info.putInt(0x1388);                                        // read wait time 1
+        Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(Converter.hexStringToByteArray(keys.getXciHeaderKey()), "AES"),
+                new IvParameterSpec(Converter.flip(iv)));
+        header.put(cipher.doFinal(info.array()));
+        return header.array();
+    }
+
+    private byte[] buildCertificate(){
+        byte[] certificate = new byte[0x200];
+        Arrays.fill(certificate, (byte) 0xFF);
+        System.arraycopy(randomBytes(0x100), 0, certificate, 0, 0x100);
+        System.arraycopy("HEAD".getBytes(StandardCharsets.US_ASCII), 0, certificate, 0x100, 4);
+        certificate[0x108] = 0;                                     // KEK index
+        System.arraycopy(randomBytes(0x10), 0, certificate, 0x110, 0x10);  // device ID
+        return certificate;
+    }
+
+    private static byte getGamecardSize(long size){
+        if (size <= 0x40000000L)
+            return (byte) 0xFA;
+        if (size <= 0x80000000L)
+            return (byte) 0xF8;
+        if (size <= 0x100000000L)
+            return (byte) 0xF0;
+        if (size <= 0x200000000L)
+            return (byte) 0xE0;
+        if (size <= 0x400000000L)
+            return (byte) 0xE1;
+        return (byte) 0xE2;
+    }
+
+    private byte[] randomBytes(int size){
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    Copyright 2019-2023 Dmitry Isaenko
+
+    This file is part of libKonogonka.
+
+    libKonogonka is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    libKonogonka is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with libKonogonka.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package libKonogonka.xtsaes;
+
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class XTSAESEngineTest {
+    private static final String HEADER_KEY = "00112233445566778899aabbccddeeff0f1e2d3c4b5a69788796a5b4c3d2e1f0";
+
+    @DisplayName("XTSAESEngine: bulk and parallel processing match XTSAESCipher")
+    @Test
+    void processSectors() throws Exception{
+        Random random = new Random(13);
+        byte[] key = new byte[0x20];
+        random.nextBytes(key);
+        int sectors = 0x2000 + 3;
+        byte[] plain = new byte[sectors * 0x200];
+        random.nextBytes(plain);
+
+        XTSAESCipher reference = new XTSAESCipher(false).init(true,
+                new KeyParameter(Arrays.copyOfRange(key, 0, 0x10)),
+                new KeyParameter(Arrays.copyOfRange(key, 0x10, 0x20)));
+        byte[] expected = new byte[plain.length];
+        long firstSector = 0x1234;
+        for (int i = 0; i < sectors; i++)
+            reference.processDataUnit(plain, i * 0x200, 0x200, expected, i * 0x200, firstSector + i);
+
+        XTSAESEngine encryptor = new XTSAESEngine(key, true, 0x200);
+        byte[] encrypted = new byte[plain.length];
+        encryptor.processSectors(plain, encrypted, firstSector, sectors, ForkJoinPool.commonPool());
+        Assertions.assertArrayEquals(expected, encrypted);
+
+        XTSAESEngine decryptor = new XTSAESEngine(key, false, 0x200);
+        byte[] decrypted = new byte[plain.length];
+        decryptor.processSectors(encrypted, decrypted, firstSector, sectors);
+        Assertions.assertArrayEquals(plain, decrypted);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++){
+                final int sector = t * 0x100;
+                futures.add(executor.submit(() -> {
+                    byte[] result = new byte[0x100 * 0x200];
+                    for (int i = 0; i < 50; i++)
+                        decryptor.processSectors(encrypted, sector * 0x200, result, 0, firstSector + sector, 0x100);
+                    return result;
+                }));
+            }
+            for (int t = 0; t < futures.size(); t++)
+                Assertions.assertArrayEquals(Arrays.copyOfRange(plain, t * 0x100 * 0x200, (t + 1) * 0x100 * 0x200),
+                        futures.get(t).get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(XTSAESEngine.NCA_SECTOR_SIZE, XTSAESEngine.createHeaderDecryptor(HEADER_KEY).getSectorSize());
+        Assertions.assertThrows(Exception.class, () -> XTSAESEngine.createHeaderDecryptor("00"));
+    }
+}